@@ -0,0 +1,32 @@
+package io.github.ableron;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the JMH command line does, but with the <code>gc</code> profiler enabled by default,
+ * so that allocation per operation is reported alongside throughput.
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws Exception {
+    var commandLineOptions = new CommandLineOptions(args);
+
+    if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams()
+      || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+      Main.main(args);
+      return;
+    }
+
+    var options = new OptionsBuilder().parent(commandLineOptions);
+
+    if (commandLineOptions.getProfilers().isEmpty()) {
+      options.addProfiler(GCProfiler.class);
+    }
+
+    new Runner(options.build()).run();
+  }
+}
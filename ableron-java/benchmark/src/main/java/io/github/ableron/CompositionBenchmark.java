@@ -0,0 +1,86 @@
+package io.github.ableron;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Composition of pages whose fragments are all cached, i.e. the CPU and allocation cost of composing a page
+ * without any network I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompositionBenchmark {
+
+  @Param({"10KB/1", "10KB/20", "200KB/20", "200KB/200", "2MB/20", "2MB/200"})
+  public String page;
+
+  private final AbleronConfig config = AbleronConfig.builder()
+    .requestHeadersForward(List.of("User-Agent"))
+    .cacheMaxSizeInBytes(1024 * 1024 * 1024)
+    .build();
+
+  private final TransclusionProcessor transclusionProcessor = new TransclusionProcessor(config);
+
+  private String content;
+
+  private ByteBuffer encodedContent;
+
+  private List<IncludeScanner.IncludeTag> includeTags;
+
+  private List<Include> resolvedIncludes;
+
+  @Setup
+  public void setUp() {
+    var pageFixture = PageFixture.of(page);
+    content = pageFixture.getContent();
+    encodedContent = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    pageFixture.populateFragmentCache(transclusionProcessor, config, PageFixture.PARENT_REQUEST_HEADERS);
+    includeTags = IncludeScanner.scan(content);
+    var expirationTime = Instant.now().plus(1, ChronoUnit.DAYS);
+    resolvedIncludes = includeTags.stream()
+      .map(includeTag -> includeTag.toInclude(content))
+      .map(include -> include.resolveWith(new Fragment(include.getSrc(), 200, PageFixture.fragmentContent(include.getSrc()), expirationTime, Map.of()), 0, "cached src"))
+      .collect(Collectors.toList());
+  }
+
+  @TearDown
+  public void tearDown() {
+    transclusionProcessor.close();
+  }
+
+  @Benchmark
+  public String resolveIncludes() {
+    return transclusionProcessor.resolveIncludes(content, PageFixture.PARENT_REQUEST_HEADERS).getContent();
+  }
+
+  @Benchmark
+  public TransclusionResult resolveIncludesOfEncodedContent() throws IOException {
+    var transclusionResult = transclusionProcessor.resolveIncludes(encodedContent, StandardCharsets.UTF_8, PageFixture.PARENT_REQUEST_HEADERS);
+    transclusionResult.writeContentTo(OutputStream.nullOutputStream());
+    return transclusionResult;
+  }
+
+  /**
+   * Adding already resolved includes to the transclusion result and assembling the content.
+   */
+  @Benchmark
+  public String addResolvedIncludes() {
+    var transclusionResult = new TransclusionResult(content, includeTags, resolvedIncludes, transclusionProcessor.getFragmentCache().stats(), false, false);
+    resolvedIncludes.forEach(transclusionResult::addResolvedInclude);
+    return transclusionResult.getContent();
+  }
+}
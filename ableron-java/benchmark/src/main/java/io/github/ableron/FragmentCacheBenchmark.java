@@ -0,0 +1,111 @@
+package io.github.ableron;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fragment cache access and the computations performed per fragment lookup and per loaded fragment.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FragmentCacheBenchmark {
+
+  private static final int CACHED_FRAGMENTS = 10_000;
+
+  private final AbleronConfig config = AbleronConfig.builder()
+    .requestHeadersForwardVary(List.of("Accept-Language"))
+    .cacheMaxSizeInBytes(1024 * 1024 * 1024)
+    .build();
+
+  private final FragmentCache fragmentCache = new FragmentCache(config);
+
+  private final String[] cacheKeys = new String[CACHED_FRAGMENTS];
+
+  private final Fragment fragment = new Fragment(
+    "https://fragments.example.com/teaser",
+    200,
+    PageFixture.fragmentContent("https://fragments.example.com/teaser"),
+    Instant.now().plus(1, ChronoUnit.DAYS),
+    Map.of()
+  );
+
+  private final Include include = new Include(
+    "<ableron-include src=\"https://fragments.example.com/recommendations\" headers=\"X-Correlation-Id\" cookies=\"session, ab-test\"/>",
+    Map.of("src", "https://fragments.example.com/recommendations", "headers", "X-Correlation-Id", "cookies", "session, ab-test"),
+    null
+  );
+
+  private final Map<String, List<String>> responseHeadersWithCacheControl = Map.of(
+    "Cache-Control", List.of("public, max-age=300, s-maxage=600, stale-while-revalidate=60"),
+    "Age", List.of("42")
+  );
+
+  private final Map<String, List<String>> responseHeadersWithExpires = Map.of(
+    "Date", List.of("Wed, 21 Oct 2015 07:28:00 GMT"),
+    "Expires", List.of("Wed, 21 Oct 2015 07:38:00 GMT")
+  );
+
+  private Map<String, List<String>> fragmentRequestHeaders;
+
+  private int index = 0;
+
+  @Setup
+  public void setUp() {
+    for (var i = 0; i < CACHED_FRAGMENTS; i++) {
+      cacheKeys[i] = "https://fragments.example.com/teaser/" + i;
+      fragmentCache.set(cacheKeys[i], fragment);
+    }
+
+    fragmentRequestHeaders = include.buildRequestHeaders(PageFixture.PARENT_REQUEST_HEADERS, config);
+  }
+
+  @TearDown
+  public void tearDown() {
+    fragmentCache.close();
+  }
+
+  private String nextCacheKey() {
+    index = (index + 1) % CACHED_FRAGMENTS;
+    return cacheKeys[index];
+  }
+
+  @Benchmark
+  public Optional<Fragment> getHit() {
+    return fragmentCache.get(nextCacheKey());
+  }
+
+  @Benchmark
+  public Optional<Fragment> getMiss() {
+    return fragmentCache.get("https://fragments.example.com/uncached");
+  }
+
+  @Benchmark
+  public FragmentCache set() {
+    return fragmentCache.set(nextCacheKey(), fragment);
+  }
+
+  @Benchmark
+  public String buildFragmentCacheKey() {
+    return include.buildFragmentCacheKey(include.getSrc(), fragmentRequestHeaders, config);
+  }
+
+  @Benchmark
+  public Instant calculateResponseExpirationTimeFromCacheControl() {
+    return HttpUtil.calculateResponseExpirationTime(responseHeadersWithCacheControl);
+  }
+
+  @Benchmark
+  public Instant calculateResponseExpirationTimeFromExpires() {
+    return HttpUtil.calculateResponseExpirationTime(responseHeadersWithExpires);
+  }
+}
@@ -0,0 +1,85 @@
+package io.github.ableron;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finding include tags in pages. Compares the include tag scanner with the regular expressions it replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncludeScanningBenchmark {
+
+  /**
+   * Regular expression formerly used to find include tags. Used as baseline.
+   */
+  private static final Pattern INCLUDE_PATTERN =
+    Pattern.compile("<(ableron-include)\\s(([^\">]|\"[^\"]*\")*?)(/>|>(.*?)</\\1>)", Pattern.DOTALL);
+
+  /**
+   * Regular expression formerly used to parse include tag attributes. Used as baseline.
+   */
+  private static final Pattern ATTRIBUTES_PATTERN = Pattern.compile("\\s*([a-zA-Z0-9_-]+)(=\"([^\"]+)\")?");
+
+  @Param({"10KB/1", "10KB/20", "200KB/20", "200KB/200", "2MB/20", "2MB/200"})
+  public String page;
+
+  private final TransclusionProcessor transclusionProcessor = new TransclusionProcessor();
+
+  private String content;
+
+  private byte[] encodedContent;
+
+  @Setup
+  public void setUp() {
+    content = PageFixture.of(page).getContent();
+    encodedContent = content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @TearDown
+  public void tearDown() {
+    transclusionProcessor.close();
+  }
+
+  @Benchmark
+  public Set<Include> findIncludes() {
+    return transclusionProcessor.findIncludes(content);
+  }
+
+  @Benchmark
+  public Set<Include> findIncludesWithRegex() {
+    var includes = new ArrayList<Include>();
+    var matcher = INCLUDE_PATTERN.matcher(content);
+
+    while (matcher.find()) {
+      var attributes = ATTRIBUTES_PATTERN.matcher(matcher.group(2))
+        .results()
+        .collect(Collectors.toMap(result -> result.group(1), result -> result.group(3) != null ? result.group(3) : "", (first, second) -> first));
+      includes.add(new Include(matcher.group(0), attributes, matcher.group(5)));
+    }
+
+    return Set.copyOf(includes);
+  }
+
+  @Benchmark
+  public List<IncludeScanner.IncludeTag> scanEncodedContent() {
+    return IncludeScanner.scan(ByteContent.of(ByteBuffer.wrap(encodedContent), StandardCharsets.UTF_8));
+  }
+
+  @Benchmark
+  public boolean mayContainIncludeTags() {
+    return IncludeScanner.mayContainIncludeTags(encodedContent, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,168 @@
+package io.github.ableron;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generated page used as benchmark fixture.<br>
+ * <br>
+ * Pages consist of product tiles as filler and of includes which are distributed evenly across the page.
+ * Include tags alternate between self-closing tags and tags with fallback content, attributes with timeouts,
+ * fallback URLs, headers and cookies to forward as well as attribute values containing <code>&gt;</code>.
+ * Pages are generated deterministically, so that results of different runs are comparable.
+ */
+final class PageFixture {
+
+  /**
+   * Parent request headers passed to fragment requests.
+   */
+  static final Map<String, List<String>> PARENT_REQUEST_HEADERS = Map.of(
+    "Accept-Language", List.of("de-DE,de;q=0.9,en;q=0.8"),
+    "X-Correlation-Id", List.of("a1b2c3d4"),
+    "Cookie", List.of("session=s3ss10n; ab-test=b; tracking=t"),
+    "User-Agent", List.of("Mozilla/5.0 (X11; Linux x86_64)")
+  );
+
+  private static final String PAGE_START = "<!DOCTYPE html>\n<html lang=\"de\">\n<head>\n<meta charset=\"utf-8\">\n"
+    + "<title>Benchmark</title>\n<link rel=\"stylesheet\" href=\"/assets/main.css\">\n</head>\n<body>\n";
+
+  private static final String PAGE_END = "</body>\n</html>\n";
+
+  private static final String[] WORDS = {
+    "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+    "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "<b>enim</b>"
+  };
+
+  private final String content;
+
+  private PageFixture(String content) {
+    this.content = content;
+  }
+
+  /**
+   * Generates the page described by the given spec.
+   *
+   * @param spec Page size and number of includes, separated by slash, e.g. <code>200KB/50</code>.
+   *             Sizes are given in <code>KB</code> or <code>MB</code>
+   * @return The page
+   */
+  static PageFixture of(String spec) {
+    var parts = spec.split("/");
+    return generate(parseSize(parts[0]), Integer.parseInt(parts[1]));
+  }
+
+  /**
+   * Generates a page of approximately the given size with the given number of includes.
+   */
+  static PageFixture generate(int size, int includeCount) {
+    var random = new Random(42);
+    var page = new StringBuilder(size + 4096).append(PAGE_START);
+    var bodySize = size - PAGE_START.length() - PAGE_END.length();
+    var tileIndex = 0;
+
+    for (var includeIndex = 0; includeIndex < includeCount; includeIndex++) {
+      var nextIncludePosition = PAGE_START.length() + (long) bodySize * includeIndex / includeCount;
+
+      while (page.length() < nextIncludePosition) {
+        appendProductTile(page, tileIndex++, random);
+      }
+
+      appendInclude(page, includeIndex);
+    }
+
+    while (page.length() < size - PAGE_END.length()) {
+      appendProductTile(page, tileIndex++, random);
+    }
+
+    return new PageFixture(page.append(PAGE_END).toString());
+  }
+
+  private static int parseSize(String size) {
+    var normalizedSize = size.trim().toUpperCase();
+
+    if (normalizedSize.endsWith("MB")) {
+      return Integer.parseInt(normalizedSize.substring(0, normalizedSize.length() - 2)) * 1024 * 1024;
+    }
+
+    if (normalizedSize.endsWith("KB")) {
+      return Integer.parseInt(normalizedSize.substring(0, normalizedSize.length() - 2)) * 1024;
+    }
+
+    return Integer.parseInt(normalizedSize);
+  }
+
+  private static void appendProductTile(StringBuilder page, int index, Random random) {
+    page.append("<div class=\"product-tile\" data-product-id=\"").append(index).append("\">\n")
+      .append("  <h2 class=\"product-tile__name\">Product ").append(index).append("</h2>\n")
+      .append("  <p class=\"product-tile__description\">");
+
+    for (var i = 0; i < 24; i++) {
+      page.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+
+    page.append("</p>\n")
+      .append("  <a href=\"/product/").append(index).append("?ref=tile&amp;pos=").append(index % 24).append("\">Details</a>\n")
+      .append("</div>\n");
+  }
+
+  private static void appendInclude(StringBuilder page, int index) {
+    switch (index % 3) {
+      case 0:
+        page.append("<ableron-include id=\"teaser-").append(index).append("\" src=\"https://fragments.example.com/teaser/")
+          .append(index).append("\"/>\n");
+        break;
+      case 1:
+        page.append("<ableron-include\n  id=\"recommendations-").append(index).append("\"\n")
+          .append("  src=\"https://fragments.example.com/recommendations?slot=").append(index).append("&amp;limit=12\"\n")
+          .append("  src-timeout=\"500ms\"\n")
+          .append("  fallback-src=\"https://fallback.example.com/recommendations\"\n")
+          .append("  fallback-src-timeout=\"1s\"\n")
+          .append("  headers=\"Accept-Language, X-Correlation-Id\"\n")
+          .append("  cookies=\"session, ab-test\">\n")
+          .append("  <section class=\"recommendations recommendations--fallback\">\n")
+          .append("    <h2>Recommended for you</h2>\n")
+          .append("    <ul><li><a href=\"/bestsellers\">Bestsellers</a></li><li><a href=\"/new\">New arrivals</a></li></ul>\n")
+          .append("  </section>\n")
+          .append("</ableron-include>\n");
+        break;
+      default:
+        page.append("<ableron-include id=\"banner-").append(index).append("\" src=\"https://fragments.example.com/banner?variant=a&amp;n=")
+          .append(index).append("\" data-tracking=\"{&quot;slot&quot;:").append(index).append(",&quot;rule&quot;:&quot;price>100&quot;}\" headers=\"Accept-Language\">")
+          .append("<div class=\"banner\"><img src=\"/assets/banner.png\" alt=\"Sale\"></div></ableron-include>\n");
+        break;
+    }
+  }
+
+  /**
+   * @return Content of a fragment of approximately 1KB, which resolves an include of this page
+   */
+  static String fragmentContent(String url) {
+    var fragment = new StringBuilder("<div class=\"fragment\" data-src=\"").append(url.replace("\"", "&quot;")).append("\">");
+
+    while (fragment.length() < 1024) {
+      fragment.append("<p>Fragment content with <a href=\"/link\">link</a> and some text.</p>");
+    }
+
+    return fragment.append("</div>").toString();
+  }
+
+  /**
+   * Populates the fragment cache of the given processor with a fragment for each include of this page, as
+   * requested with the given parent request headers.
+   */
+  void populateFragmentCache(TransclusionProcessor transclusionProcessor, AbleronConfig config, Map<String, List<String>> parentRequestHeaders) {
+    var expirationTime = Instant.now().plus(1, ChronoUnit.DAYS);
+
+    for (var include : transclusionProcessor.findIncludes(content)) {
+      var fragmentCacheKey = include.buildFragmentCacheKey(include.getSrc(), include.buildRequestHeaders(parentRequestHeaders, config), config);
+      transclusionProcessor.getFragmentCache().set(fragmentCacheKey, new Fragment(include.getSrc(), 200, fragmentContent(include.getSrc()), expirationTime, Map.of()));
+    }
+  }
+
+  String getContent() {
+    return content;
+  }
+}
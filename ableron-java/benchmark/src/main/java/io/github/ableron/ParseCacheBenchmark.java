@@ -0,0 +1,39 @@
+package io.github.ableron;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding include tags in pages and creating their include definitions with the parse cache disabled
+ * (<code>parseCacheMaxSize=0</code>) and enabled.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseCacheBenchmark {
+
+  @Param({"10KB/1", "10KB/20", "200KB/20", "200KB/200", "2MB/20", "2MB/200"})
+  public String page;
+
+  @Param({"0", "1048576"})
+  public long parseCacheMaxSize;
+
+  private ParseCache parseCache;
+
+  private String content;
+
+  @Setup
+  public void setUp() {
+    parseCache = new ParseCache(parseCacheMaxSize);
+    content = PageFixture.of(page).getContent();
+  }
+
+  @Benchmark
+  public ParseCache.ParsedContent parse() {
+    return parseCache.parse(content);
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.ableron.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Behaviour of the fragments served by the {@link FragmentServer}.<br>
+ * <br>
+ * Latency is jittered uniformly between the base latency and base latency plus jitter. In addition, one
+ * out of hundred responses is delayed by ten times the jitter to model the latency tail of real services.
+ */
+enum FragmentProfile {
+
+  /**
+   * Fast fragment with a long time to live.
+   */
+  FAST("fast", 5, 5, "max-age=60"),
+
+  /**
+   * Slow fragment with a long time to live.
+   */
+  SLOW("slow", 150, 100, "max-age=60"),
+
+  /**
+   * Fragment whose body is written in several chunks with delays in between.
+   */
+  SLOW_BODY("slow-body", 10, 10, "max-age=60"),
+
+  /**
+   * Fragment which does not respond within the request timeout.
+   */
+  TIMEOUT("timeout", 10_000, 0, "max-age=60"),
+
+  /**
+   * Fragment which fails with status code 503 during periodic error storms and sporadically in between.
+   */
+  ERROR_STORM("error-storm", 10, 10, "max-age=5"),
+
+  /**
+   * Fragment with gzip compressed body.
+   */
+  GZIP("gzip", 10, 10, "max-age=60"),
+
+  /**
+   * Fragment with a time to live of one second.
+   */
+  SHORT_TTL("short-ttl", 10, 10, "max-age=1"),
+
+  /**
+   * Fragment which must not be cached.
+   */
+  NO_STORE("no-store", 10, 10, "no-store");
+
+  /**
+   * Number of chunks the body of {@link #SLOW_BODY} fragments is written in.
+   */
+  static final int SLOW_BODY_CHUNKS = 4;
+
+  /**
+   * Delay between the chunks of {@link #SLOW_BODY} fragments.
+   */
+  static final int SLOW_BODY_CHUNK_DELAY_MILLIS = 50;
+
+  /**
+   * Period of error storms of {@link #ERROR_STORM} fragments.
+   */
+  private static final long ERROR_STORM_PERIOD_MILLIS = 10_000;
+
+  /**
+   * Duration of error storms of {@link #ERROR_STORM} fragments.
+   */
+  private static final long ERROR_STORM_DURATION_MILLIS = 2_000;
+
+  /**
+   * Error rate of {@link #ERROR_STORM} fragments outside of error storms.
+   */
+  private static final double ERROR_STORM_BASE_ERROR_RATE = 0.02;
+
+  private final String name;
+  private final int latencyMillis;
+  private final int jitterMillis;
+  private final String cacheControl;
+
+  FragmentProfile(String name, int latencyMillis, int jitterMillis, String cacheControl) {
+    this.name = name;
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    this.cacheControl = cacheControl;
+  }
+
+  /**
+   * @param name Name of the profile, e.g. <code>slow-body</code>
+   * @return The profile
+   * @throws IllegalArgumentException In case there is no profile with the given name
+   */
+  static FragmentProfile of(String name) {
+    return Arrays.stream(values())
+      .filter(profile -> profile.name.equals(name))
+      .findFirst()
+      .orElseThrow(() -> new IllegalArgumentException("Unknown fragment profile '" + name + "'. Known profiles: " + names()));
+  }
+
+  static String names() {
+    return Arrays.stream(values()).map(FragmentProfile::getName).collect(Collectors.joining(", "));
+  }
+
+  String getName() {
+    return name;
+  }
+
+  String getCacheControl() {
+    return cacheControl;
+  }
+
+  /**
+   * @return Time to wait before sending the response headers
+   */
+  long nextLatencyMillis() {
+    var random = ThreadLocalRandom.current();
+    var latency = latencyMillis + (jitterMillis > 0 ? random.nextInt(jitterMillis + 1) : 0);
+    return random.nextInt(100) == 0 ? latency + 10L * jitterMillis : latency;
+  }
+
+  /**
+   * @return Whether to fail the current request with status code 503
+   */
+  boolean nextRequestFails() {
+    if (this != ERROR_STORM) {
+      return false;
+    }
+
+    return System.currentTimeMillis() % ERROR_STORM_PERIOD_MILLIS < ERROR_STORM_DURATION_MILLIS
+      || ThreadLocalRandom.current().nextDouble() < ERROR_STORM_BASE_ERROR_RATE;
+  }
+}
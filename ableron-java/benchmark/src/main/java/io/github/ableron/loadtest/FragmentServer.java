@@ -0,0 +1,159 @@
+package io.github.ableron.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server serving fragments with the behaviour of their {@link FragmentProfile}.<br>
+ * <br>
+ * Fragments are served at <code>/fragment/{profile}/{id}</code>. Each request is handled on its own thread,
+ * so that latency of one fragment does not delay other fragments.
+ */
+class FragmentServer implements AutoCloseable {
+
+  private static final int FRAGMENT_SIZE = 2048;
+
+  private final HttpServer httpServer;
+  private final ExecutorService executor;
+  private final LongAdder requestCount = new LongAdder();
+  private final Map<Integer, LongAdder> statusCodeCounts = new ConcurrentHashMap<>();
+
+  private FragmentServer(HttpServer httpServer, ExecutorService executor) {
+    this.httpServer = httpServer;
+    this.executor = executor;
+  }
+
+  /**
+   * Starts the server on an ephemeral port of the loopback interface.
+   */
+  static FragmentServer start() throws IOException {
+    var httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+    var executor = Executors.newCachedThreadPool(runnable -> {
+      var thread = new Thread(runnable, "fragment-server");
+      thread.setDaemon(true);
+      return thread;
+    });
+    var fragmentServer = new FragmentServer(httpServer, executor);
+    httpServer.createContext("/fragment/", fragmentServer::handle);
+    httpServer.setExecutor(executor);
+    httpServer.start();
+    return fragmentServer;
+  }
+
+  /**
+   * @return URL of the fragment with the given profile and id
+   */
+  String fragmentUrl(FragmentProfile profile, int id) {
+    return "http://" + httpServer.getAddress().getHostString() + ":" + httpServer.getAddress().getPort()
+      + "/fragment/" + profile.getName() + "/" + id;
+  }
+
+  /**
+   * @return Number of requests received so far
+   */
+  long getRequestCount() {
+    return requestCount.sum();
+  }
+
+  /**
+   * @return Number of responses sent so far by status code
+   */
+  Map<Integer, Long> getStatusCodeCounts() {
+    var counts = new TreeMap<Integer, Long>();
+    statusCodeCounts.forEach((statusCode, count) -> counts.put(statusCode, count.sum()));
+    return counts;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.increment();
+
+    try (exchange) {
+      var path = exchange.getRequestURI().getPath().split("/");
+      var profile = FragmentProfile.of(path[2]);
+      Thread.sleep(profile.nextLatencyMillis());
+
+      if (profile.nextRequestFails()) {
+        sendResponseHeaders(exchange, 503, -1);
+        return;
+      }
+
+      var body = fragmentContent(profile, path[3]);
+      exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+      exchange.getResponseHeaders().set("Cache-Control", profile.getCacheControl());
+
+      switch (profile) {
+        case GZIP:
+          exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+          body = gzip(body);
+          sendResponseHeaders(exchange, 200, body.length);
+          exchange.getResponseBody().write(body);
+          break;
+        case SLOW_BODY:
+          sendResponseHeaders(exchange, 200, 0);
+          var chunkSize = body.length / FragmentProfile.SLOW_BODY_CHUNKS + 1;
+
+          for (var offset = 0; offset < body.length; offset += chunkSize) {
+            exchange.getResponseBody().write(body, offset, Math.min(chunkSize, body.length - offset));
+            exchange.getResponseBody().flush();
+            Thread.sleep(FragmentProfile.SLOW_BODY_CHUNK_DELAY_MILLIS);
+          }
+          break;
+        default:
+          sendResponseHeaders(exchange, 200, body.length);
+          exchange.getResponseBody().write(body);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      // client gave up waiting for the fragment, e.g. due to request timeout
+    }
+  }
+
+  private void sendResponseHeaders(HttpExchange exchange, int statusCode, long responseLength) throws IOException {
+    statusCodeCounts.computeIfAbsent(statusCode, key -> new LongAdder()).increment();
+    exchange.sendResponseHeaders(statusCode, responseLength);
+  }
+
+  private static byte[] fragmentContent(FragmentProfile profile, String id) {
+    var fragment = new StringBuilder(FRAGMENT_SIZE + 128)
+      .append("<div class=\"fragment fragment--").append(profile.getName()).append("\" data-id=\"").append(id).append("\">");
+
+    while (fragment.length() < FRAGMENT_SIZE) {
+      fragment.append("<p>Fragment content with <a href=\"/link\">link</a> and some text.</p>");
+    }
+
+    return fragment.append("</div>").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    var out = new ByteArrayOutputStream(bytes.length);
+
+    try (var gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return out.toByteArray();
+  }
+
+  @Override
+  public void close() {
+    httpServer.stop(0);
+    executor.shutdownNow();
+  }
+}
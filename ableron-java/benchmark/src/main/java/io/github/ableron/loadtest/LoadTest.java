@@ -0,0 +1,299 @@
+package io.github.ableron.loadtest;
+
+import io.github.ableron.Ableron;
+import io.github.ableron.AbleronConfig;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test composing pages with includes of fragments served by a local {@link FragmentServer}.<br>
+ * <br>
+ * Pages of a configurable mix are composed by a fixed number of threads for a given duration. After warmup,
+ * composition time, fragment requests per page and fragment cache hit ratio are reported. Runs offline,
+ * the fragment server listens on the loopback interface only.<br>
+ * <br>
+ * Usage: <code>java -cp benchmarks.jar io.github.ableron.loadtest.LoadTest [--option=value ...]</code>
+ */
+public class LoadTest {
+
+  private static final List<String> DEFAULT_PAGES = List.of(
+    "70:fast*10+slow*2+gzip*2+short-ttl*2+no-store*1",
+    "20:fast*5+slow-body*2+error-storm*3",
+    "10:fast*5+timeout*1"
+  );
+
+  private static final String USAGE = String.join("\n",
+    "Options:",
+    "  --concurrency=<n>                  Number of threads composing pages. Default: 32",
+    "  --duration=<duration>              Duration of the measurement, e.g. 30s or 2m. Default: 30s",
+    "  --warmup=<duration>                Duration of the warmup, which is not measured. Default: 5s",
+    "  --page=<weight>:<profile>*<n>+...  Page type with its weight and its includes. Repeatable. Default:",
+    "                                     " + String.join("\n                                     ", DEFAULT_PAGES),
+    "  --page-size=<size>                 Size of each page aside from includes, e.g. 100KB. Default: 100KB",
+    "  --distinct-fragments=<n>           Number of distinct fragments per profile. Controls the cache hit ratio. Default: 100",
+    "  --request-timeout=<duration>       Timeout for requesting fragments. Default: 1s",
+    "  --composition-deadline=<duration>  Maximum time to resolve all includes of a page. Default: none",
+    "  --resolve-thread-pool-size=<n>     Number of threads used to resolve includes. Default: 64",
+    "  --virtual-threads=<true|false>     Whether to resolve includes on virtual threads (Java 21+). Default: false",
+    "Fragment profiles: " + FragmentProfile.names());
+
+  public static void main(String[] args) throws Exception {
+    var options = parseOptions(args);
+
+    if (options.containsKey("help")) {
+      System.out.println(USAGE);
+      return;
+    }
+
+    var concurrency = Integer.parseInt(option(options, "concurrency", "32"));
+    var duration = parseDuration(option(options, "duration", "30s"));
+    var warmup = parseDuration(option(options, "warmup", "5s"));
+    var pageSize = parseSize(option(options, "page-size", "100KB"));
+    var distinctFragments = Integer.parseInt(option(options, "distinct-fragments", "100"));
+    var pageSpecs = options.containsKey("page") ? Arrays.asList(options.get("page").split(",")) : DEFAULT_PAGES;
+    var configBuilder = AbleronConfig.builder()
+      .requestTimeout(parseDuration(option(options, "request-timeout", "1s")))
+      .resolveThreadPoolSize(Integer.parseInt(option(options, "resolve-thread-pool-size", "64")))
+      .virtualThreadsEnabled(Boolean.parseBoolean(option(options, "virtual-threads", "false")));
+
+    if (options.containsKey("composition-deadline")) {
+      configBuilder.compositionDeadline(parseDuration(options.get("composition-deadline")));
+    }
+
+    try (var fragmentServer = FragmentServer.start(); var ableron = new Ableron(configBuilder.build())) {
+      var pageTypes = new ArrayList<PageType>();
+
+      for (var pageSpec : pageSpecs) {
+        pageTypes.add(PageType.parse(pageSpec, pageSize, distinctFragments, fragmentServer));
+      }
+
+      System.out.printf("Composing %s for %s after %s warmup with %d threads%n", pageTypes, duration, warmup, concurrency);
+      new LoadTest(ableron, fragmentServer, pageTypes, concurrency).run(warmup, duration);
+    }
+  }
+
+  private final Ableron ableron;
+  private final FragmentServer fragmentServer;
+  private final List<PageType> pageTypes;
+  private final int totalWeight;
+  private final int concurrency;
+  private volatile boolean measuring;
+  private volatile boolean stopped;
+
+  private LoadTest(Ableron ableron, FragmentServer fragmentServer, List<PageType> pageTypes, int concurrency) {
+    this.ableron = ableron;
+    this.fragmentServer = fragmentServer;
+    this.pageTypes = pageTypes;
+    this.totalWeight = pageTypes.stream().mapToInt(PageType::getWeight).sum();
+    this.concurrency = concurrency;
+  }
+
+  private void run(Duration warmup, Duration duration) throws Exception {
+    var threadIndex = new AtomicInteger();
+    ExecutorService drivers = Executors.newFixedThreadPool(concurrency, runnable -> {
+      var thread = new Thread(runnable, "load-test-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    try {
+      var results = new ArrayList<Future<Samples>>();
+
+      for (var i = 0; i < concurrency; i++) {
+        results.add(drivers.submit(this::composePages));
+      }
+
+      Thread.sleep(warmup.toMillis());
+      var cacheStats = ableron.getCacheStats();
+      var hitCountAtStart = cacheStats.hitCount();
+      var missCountAtStart = cacheStats.missCount();
+      var fragmentRequestsAtStart = fragmentServer.getRequestCount();
+      var statusCodeCountsAtStart = fragmentServer.getStatusCodeCounts();
+      var startTime = System.nanoTime();
+      measuring = true;
+      Thread.sleep(duration.toMillis());
+      measuring = false;
+      var elapsedNanos = System.nanoTime() - startTime;
+      var hitCount = cacheStats.hitCount() - hitCountAtStart;
+      var missCount = cacheStats.missCount() - missCountAtStart;
+      var fragmentRequests = fragmentServer.getRequestCount() - fragmentRequestsAtStart;
+      var statusCodeCounts = fragmentServer.getStatusCodeCounts();
+      statusCodeCounts.replaceAll((statusCode, count) -> count - statusCodeCountsAtStart.getOrDefault(statusCode, 0L));
+      stopped = true;
+
+      var samples = new Samples();
+
+      for (var result : results) {
+        samples.addAll(result.get());
+      }
+
+      report(samples, elapsedNanos, fragmentRequests, hitCount, missCount, statusCodeCounts);
+    } finally {
+      drivers.shutdownNow();
+      drivers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private Samples composePages() {
+    var samples = new Samples();
+
+    while (!stopped) {
+      var pageType = nextPageType();
+      var content = pageType.render();
+      var startTime = System.nanoTime();
+      var transclusionResult = ableron.resolveIncludes(content, Map.of());
+      var compositionTime = System.nanoTime() - startTime;
+
+      if (measuring) {
+        samples.add(compositionTime, transclusionResult.getProcessedIncludesCount());
+      }
+    }
+
+    return samples;
+  }
+
+  private PageType nextPageType() {
+    var value = ThreadLocalRandom.current().nextInt(totalWeight);
+
+    for (var pageType : pageTypes) {
+      value -= pageType.getWeight();
+
+      if (value < 0) {
+        return pageType;
+      }
+    }
+
+    return pageTypes.get(pageTypes.size() - 1);
+  }
+
+  private static void report(Samples samples, long elapsedNanos, long fragmentRequests, long hitCount, long missCount, Map<Integer, Long> statusCodeCounts) {
+    var pages = samples.size();
+
+    if (pages == 0) {
+      System.out.println("No pages composed");
+      return;
+    }
+
+    var compositionTimes = samples.sortedCompositionTimes();
+    System.out.printf(Locale.ROOT, "Pages composed:             %d (%.1f pages/s)%n", pages, pages * 1e9 / elapsedNanos);
+    System.out.printf(Locale.ROOT, "Composition time (ms):      p50 %.2f | p99 %.2f | p999 %.2f | max %.2f%n",
+      percentileMillis(compositionTimes, 0.5), percentileMillis(compositionTimes, 0.99),
+      percentileMillis(compositionTimes, 0.999), compositionTimes[compositionTimes.length - 1] / 1e6);
+    System.out.printf(Locale.ROOT, "Includes per page:          %.2f%n", (double) samples.includeCount() / pages);
+    System.out.printf(Locale.ROOT, "Fragment requests per page: %.2f%n", (double) fragmentRequests / pages);
+    System.out.printf(Locale.ROOT, "Fragment cache hit ratio:   %.1f %% (%d hits, %d misses)%n",
+      hitCount + missCount > 0 ? 100.0 * hitCount / (hitCount + missCount) : 0, hitCount, missCount);
+    System.out.printf("Fragment responses:         %s%n", statusCodeCounts);
+  }
+
+  private static double percentileMillis(long[] sortedValues, double percentile) {
+    var index = (int) Math.ceil(percentile * sortedValues.length) - 1;
+    return sortedValues[Math.max(index, 0)] / 1e6;
+  }
+
+  private static Map<String, String> parseOptions(String[] args) {
+    var options = new LinkedHashMap<String, String>();
+
+    for (var arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("Invalid option '" + arg + "'\n" + USAGE);
+      }
+
+      var separatorIndex = arg.indexOf('=');
+      var name = separatorIndex > 0 ? arg.substring(2, separatorIndex) : arg.substring(2);
+      var value = separatorIndex > 0 ? arg.substring(separatorIndex + 1) : "";
+      options.merge(name, value, (previous, next) -> previous + "," + next);
+    }
+
+    return options;
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    return options.getOrDefault(name, defaultValue);
+  }
+
+  static Duration parseDuration(String duration) {
+    var normalizedDuration = duration.trim().toLowerCase(Locale.ROOT);
+
+    if (normalizedDuration.endsWith("ms")) {
+      return Duration.ofMillis(Long.parseLong(normalizedDuration.substring(0, normalizedDuration.length() - 2)));
+    }
+
+    if (normalizedDuration.endsWith("s")) {
+      return Duration.ofSeconds(Long.parseLong(normalizedDuration.substring(0, normalizedDuration.length() - 1)));
+    }
+
+    if (normalizedDuration.endsWith("m")) {
+      return Duration.ofMinutes(Long.parseLong(normalizedDuration.substring(0, normalizedDuration.length() - 1)));
+    }
+
+    return Duration.ofMillis(Long.parseLong(normalizedDuration));
+  }
+
+  static int parseSize(String size) {
+    var normalizedSize = size.trim().toUpperCase(Locale.ROOT);
+
+    if (normalizedSize.endsWith("MB")) {
+      return Integer.parseInt(normalizedSize.substring(0, normalizedSize.length() - 2)) * 1024 * 1024;
+    }
+
+    if (normalizedSize.endsWith("KB")) {
+      return Integer.parseInt(normalizedSize.substring(0, normalizedSize.length() - 2)) * 1024;
+    }
+
+    return Integer.parseInt(normalizedSize);
+  }
+
+  /**
+   * Composition times and include counts of the pages composed by one thread.
+   */
+  private static class Samples {
+
+    private long[] compositionTimes = new long[1024];
+    private int size;
+    private long includeCount;
+
+    void add(long compositionTime, int includes) {
+      if (size == compositionTimes.length) {
+        compositionTimes = Arrays.copyOf(compositionTimes, size * 2);
+      }
+
+      compositionTimes[size++] = compositionTime;
+      includeCount += includes;
+    }
+
+    void addAll(Samples samples) {
+      for (var i = 0; i < samples.size; i++) {
+        add(samples.compositionTimes[i], 0);
+      }
+
+      includeCount += samples.includeCount;
+    }
+
+    int size() {
+      return size;
+    }
+
+    long includeCount() {
+      return includeCount;
+    }
+
+    long[] sortedCompositionTimes() {
+      var sortedCompositionTimes = Arrays.copyOf(compositionTimes, size);
+      Arrays.sort(sortedCompositionTimes);
+      return sortedCompositionTimes;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package io.github.ableron.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Type of page composed by the {@link LoadTest}, e.g. a product page with ten fast and two slow fragments.<br>
+ * <br>
+ * Each rendered page includes randomly chosen fragments of the configured profiles, so that the number of
+ * distinct fragments per profile determines the fragment cache hit ratio. Includes are distributed evenly
+ * across the filler content of the page.
+ */
+class PageType {
+
+  private static final String FILLER = "<div class=\"product-tile\"><h2>Product</h2><p>Lorem ipsum dolor sit amet,"
+    + " consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore.</p><a href=\"/product\">Details</a></div>\n";
+
+  private final String spec;
+  private final int weight;
+  private final List<FragmentProfile> includes;
+  private final String fillerSegment;
+  private final int distinctFragments;
+  private final FragmentServer fragmentServer;
+
+  private PageType(String spec, int weight, List<FragmentProfile> includes, int pageSize, int distinctFragments, FragmentServer fragmentServer) {
+    this.spec = spec;
+    this.weight = weight;
+    this.includes = includes;
+    this.fillerSegment = FILLER.repeat(Math.max(1, pageSize / (includes.size() + 1) / FILLER.length()));
+    this.distinctFragments = distinctFragments;
+    this.fragmentServer = fragmentServer;
+  }
+
+  /**
+   * Parses a page type.
+   *
+   * @param spec Weight and includes of the page, e.g. <code>70:fast*10+slow*2</code>
+   */
+  static PageType parse(String spec, int pageSize, int distinctFragments, FragmentServer fragmentServer) {
+    var weightAndIncludes = spec.split(":", 2);
+
+    if (weightAndIncludes.length != 2) {
+      throw new IllegalArgumentException("Invalid page '" + spec + "'. Expected <weight>:<profile>*<count>+...");
+    }
+
+    var includes = new ArrayList<FragmentProfile>();
+
+    for (var include : weightAndIncludes[1].split("\\+")) {
+      var profileAndCount = include.split("\\*", 2);
+      var count = profileAndCount.length == 2 ? Integer.parseInt(profileAndCount[1].trim()) : 1;
+
+      for (var i = 0; i < count; i++) {
+        includes.add(FragmentProfile.of(profileAndCount[0].trim()));
+      }
+    }
+
+    return new PageType(spec, Integer.parseInt(weightAndIncludes[0].trim()), includes, pageSize, distinctFragments, fragmentServer);
+  }
+
+  int getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return Content of a new page of this type
+   */
+  String render() {
+    var random = ThreadLocalRandom.current();
+    var page = new StringBuilder(fillerSegment.length() * (includes.size() + 1) + includes.size() * 160)
+      .append("<!DOCTYPE html>\n<html>\n<body>\n")
+      .append(fillerSegment);
+
+    for (var profile : includes) {
+      page.append("<ableron-include src=\"").append(fragmentServer.fragmentUrl(profile, random.nextInt(distinctFragments)))
+        .append("\"><div class=\"fallback\">Fallback</div></ableron-include>\n")
+        .append(fillerSegment);
+    }
+
+    return page.append("</body>\n</html>\n").toString();
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+}
@@ -3,11 +3,20 @@ package io.github.ableron;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
-public class Ableron {
+public class Ableron implements AutoCloseable {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final AbleronConfig ableronConfig;
@@ -30,6 +39,46 @@ public class Ableron {
     return ableronConfig;
   }
 
+  /**
+   * @return Stats of the executor used to resolve includes, e.g. to monitor its saturation
+   */
+  public ExecutorStats getResolveExecutorStats() {
+    return transclusionProcessor.getResolveExecutorStats();
+  }
+
+  /**
+   * @return Latencies of composing pages and resolving includes, e.g. to monitor their percentiles
+   */
+  public CompositionStats getCompositionStats() {
+    return transclusionProcessor.getCompositionStats();
+  }
+
+  /**
+   * @return Stats of the fragment cache, e.g. to monitor its hit ratio
+   */
+  public CacheStats getCacheStats() {
+    return transclusionProcessor.getFragmentCache().stats();
+  }
+
+  /**
+   * @return Cache for the include tags found in content, e.g. to monitor its hit ratio
+   */
+  public ParseCache getParseCache() {
+    return transclusionProcessor.getParseCache();
+  }
+
+  /**
+   * Starts the composition of a page. Allows to start resolving includes while the page is still being
+   * rendered, e.g. as soon as an include tag has been written, so that fragment latency overlaps with
+   * rendering the page.
+   *
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return The page composition
+   */
+  public PageComposition startPageComposition(Map<String, List<String>> parentRequestHeaders) {
+    return transclusionProcessor.startPageComposition(parentRequestHeaders);
+  }
+
   /**
    * Resolves all includes in the given content.
    *
@@ -44,4 +93,198 @@ public class Ableron {
 
     return new TransclusionResult(content);
   }
+
+  /**
+   * Resolves all includes in the given content within the given composition deadline. Overrides the
+   * composition deadline from the config.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param compositionDeadline Maximum time to resolve all includes
+   * @return Transclusion result including the content with resolved includes as well as metadata
+   */
+  public TransclusionResult resolveIncludes(String content, Map<String, List<String>> parentRequestHeaders, Duration compositionDeadline) {
+    Objects.requireNonNull(compositionDeadline, "compositionDeadline must not be null");
+
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludes(content, parentRequestHeaders, compositionDeadline);
+    }
+
+    return new TransclusionResult(content);
+  }
+
+  /**
+   * Resolves all includes in the given content without blocking the calling thread.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Future of the transclusion result including the content with resolved includes as well as metadata
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(String content, Map<String, List<String>> parentRequestHeaders) {
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludesAsync(content, parentRequestHeaders);
+    }
+
+    return CompletableFuture.completedFuture(new TransclusionResult(content));
+  }
+
+  /**
+   * Resolves all includes in the given content within the given composition deadline without blocking the
+   * calling thread. Overrides the composition deadline from the config.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param compositionDeadline Maximum time to resolve all includes
+   * @return Future of the transclusion result including the content with resolved includes as well as metadata
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(String content, Map<String, List<String>> parentRequestHeaders, Duration compositionDeadline) {
+    Objects.requireNonNull(compositionDeadline, "compositionDeadline must not be null");
+
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludesAsync(content, parentRequestHeaders, compositionDeadline);
+    }
+
+    return CompletableFuture.completedFuture(new TransclusionResult(content));
+  }
+
+  /**
+   * Resolves all includes in the given encoded content without decoding it to a string.
+   *
+   * @param content The encoded content to resolve the includes of
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Transclusion result including the content with resolved includes as segments as well as metadata
+   * @see #resolveIncludes(ByteBuffer, Charset, Map)
+   */
+  public TransclusionResult resolveIncludes(byte[] content, Charset charset, Map<String, List<String>> parentRequestHeaders) {
+    Objects.requireNonNull(content, "content must not be null");
+    return resolveIncludes(ByteBuffer.wrap(content), charset, parentRequestHeaders);
+  }
+
+  /**
+   * Resolves all includes in the given encoded content without decoding it to a string.<br>
+   * <br>
+   * Content of an ASCII compatible charset like UTF-8 or ISO-8859-1 is scanned for include tags directly.
+   * Fragments of the same charset are kept encoded. The content with resolved includes is provided as segments
+   * via {@link TransclusionResult#getContentSegments()} and {@link TransclusionResult#writeContentTo(OutputStream)}
+   * without being assembled.
+   *
+   * @param content The encoded content to resolve the includes of. Its position is not modified
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Transclusion result including the content with resolved includes as segments as well as metadata
+   */
+  public TransclusionResult resolveIncludes(ByteBuffer content, Charset charset, Map<String, List<String>> parentRequestHeaders) {
+    return resolveIncludesAsync(content, charset, parentRequestHeaders).join();
+  }
+
+  /**
+   * Resolves all includes in the given encoded content without decoding it to a string and without blocking
+   * the calling thread.
+   *
+   * @param content The encoded content to resolve the includes of. Its position is not modified
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Future of the transclusion result including the content with resolved includes as segments as well as metadata
+   * @see #resolveIncludes(ByteBuffer, Charset, Map)
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(ByteBuffer content, Charset charset, Map<String, List<String>> parentRequestHeaders) {
+    Objects.requireNonNull(content, "content must not be null");
+    Objects.requireNonNull(charset, "charset must not be null");
+
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludesAsync(content, charset, parentRequestHeaders);
+    }
+
+    return CompletableFuture.completedFuture(new TransclusionResult(ByteContent.of(content, charset)));
+  }
+
+  /**
+   * Resolves all includes in the given content and writes the content to the given writer in document order.
+   * Static content and includes are written and flushed as soon as all content before them is available, so
+   * that the time to first byte does not depend on the slowest fragment.<br>
+   * <br>
+   * Writing does not start before primary includes have been resolved. Status code and response headers
+   * to forward can thus be applied in <code>beforeFirstWrite</code>.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param writer The writer to write the content with resolved includes to. Is flushed but not closed
+   * @param beforeFirstWrite Invoked before anything is written to the writer
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the writer fails
+   */
+  public TransclusionResult resolveIncludes(String content, Map<String, List<String>> parentRequestHeaders, Writer writer, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    Objects.requireNonNull(writer, "writer must not be null");
+    Objects.requireNonNull(beforeFirstWrite, "beforeFirstWrite must not be null");
+
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludes(content, parentRequestHeaders, writer, beforeFirstWrite);
+    }
+
+    var transclusionResult = new TransclusionResult(content);
+    beforeFirstWrite.accept(transclusionResult);
+    writer.write(transclusionResult.getContent());
+    writer.flush();
+    return transclusionResult;
+  }
+
+  /**
+   * Resolves all includes in the given content and writes the content to the given output stream in
+   * document order.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param outputStream The output stream to write the content with resolved includes to. Is flushed but not closed
+   * @param charset The charset to encode the content with
+   * @param beforeFirstWrite Invoked before anything is written to the output stream
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the output stream fails
+   * @see #resolveIncludes(String, Map, Writer, Consumer)
+   */
+  public TransclusionResult resolveIncludes(String content, Map<String, List<String>> parentRequestHeaders, OutputStream outputStream, Charset charset, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    Objects.requireNonNull(outputStream, "outputStream must not be null");
+    Objects.requireNonNull(charset, "charset must not be null");
+    return resolveIncludes(content, parentRequestHeaders, new OutputStreamWriter(outputStream, charset), beforeFirstWrite);
+  }
+
+  /**
+   * Resolves all includes in the given encoded content and writes the content to the given output stream in
+   * document order without decoding it to a string. Parts of content of an ASCII compatible charset like UTF-8
+   * or ISO-8859-1 are written without being copied.
+   *
+   * @param content The encoded content to resolve the includes of. Its position is not modified
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param outputStream The output stream to write the content with resolved includes to. Is flushed but not closed
+   * @param beforeFirstWrite Invoked before anything is written to the output stream
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the output stream fails
+   * @see #resolveIncludes(String, Map, Writer, Consumer)
+   */
+  public TransclusionResult resolveIncludes(ByteBuffer content, Charset charset, Map<String, List<String>> parentRequestHeaders, OutputStream outputStream, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    Objects.requireNonNull(content, "content must not be null");
+    Objects.requireNonNull(charset, "charset must not be null");
+    Objects.requireNonNull(outputStream, "outputStream must not be null");
+    Objects.requireNonNull(beforeFirstWrite, "beforeFirstWrite must not be null");
+
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludes(content, charset, parentRequestHeaders, outputStream, beforeFirstWrite);
+    }
+
+    var transclusionResult = new TransclusionResult(ByteContent.of(content, charset));
+    beforeFirstWrite.accept(transclusionResult);
+    transclusionResult.writeContentTo(outputStream);
+    outputStream.flush();
+    return transclusionResult;
+  }
+
+  /**
+   * Releases all resources held by Ableron, i.e. shuts down its thread pools. Executors provided via
+   * config are not shut down.
+   */
+  @Override
+  public void close() {
+    transclusionProcessor.close();
+  }
 }
@@ -4,6 +4,9 @@ import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 
 public class AbleronConfig {
@@ -51,6 +54,12 @@ public class AbleronConfig {
    */
   private long cacheMaxSizeInBytes = 1024 * 1024 * 50;
 
+  /**
+   * Maximum size in bytes the cache for the include definitions of include tags may have.
+   * Defaults to 0, which disables the cache.
+   */
+  private long parseCacheMaxSizeInBytes = 0;
+
   /**
    * Whether to enable auto-refreshing of cached fragments.
    */
@@ -68,6 +77,73 @@ public class AbleronConfig {
    */
   private int cacheAutoRefreshInactiveFragmentsMaxRefreshs = 2;
 
+  /**
+   * Period of time after expiration, in which cached fragments are served stale while they are
+   * revalidated in the background.<br>
+   * Used for fragments which do not specify the stale-while-revalidate Cache-Control directive.
+   * Defaults to zero, i.e. expired fragments are not served.
+   */
+  private Duration cacheStaleWhileRevalidateDefault = Duration.ZERO;
+
+  /**
+   * Period of time after expiration, in which cached fragments are served stale in case they cannot
+   * be loaded from their source, e.g. due to a timeout or an error status code.<br>
+   * Used for fragments which do not specify the stale-if-error Cache-Control directive.
+   * Defaults to zero, i.e. expired fragments are not served in case of errors.
+   */
+  private Duration cacheStaleIfErrorDefault = Duration.ZERO;
+
+  /**
+   * Maximum time to resolve all includes of a page. Includes, which are not resolved when the deadline
+   * passes, are resolved with a stale fragment, if available, or with their fallback content.
+   * Defaults to no deadline.
+   */
+  private Duration compositionDeadline = null;
+
+  /**
+   * Number of threads of the thread pool used to resolve includes.
+   * Not used, if a resolve executor is provided or virtual threads are enabled.
+   * Defaults to 64.
+   */
+  private int resolveThreadPoolSize = 64;
+
+  /**
+   * Maximum number of tasks waiting for a thread of the thread pool used to resolve includes.
+   * Includes, which cannot be resolved due to a saturated thread pool, are resolved with their
+   * fallback content.
+   * Not used, if a resolve executor is provided or virtual threads are enabled.
+   * Defaults to 1000.
+   */
+  private int resolveThreadPoolQueueCapacity = 1000;
+
+  /**
+   * Executor to resolve includes with. If provided, it is used instead of the built-in thread pool
+   * and it is not shut down when Ableron is closed. Includes are resolved with their fallback content
+   * due to a saturated executor only in case it is a {@link java.util.concurrent.ThreadPoolExecutor}
+   * with a full queue.
+   */
+  private Executor resolveExecutor = null;
+
+  /**
+   * Number of threads of the scheduler used to trigger auto-refreshs of cached fragments.
+   * Not used, if an auto refresh scheduler is provided.
+   * Defaults to 3.
+   */
+  private int cacheAutoRefreshThreadPoolSize = 3;
+
+  /**
+   * Scheduler to trigger auto-refreshs of cached fragments with. If provided, it is used instead of the
+   * built-in scheduler and it is not shut down when Ableron is closed.
+   */
+  private ScheduledExecutorService cacheAutoRefreshScheduler = null;
+
+  /**
+   * Whether to resolve includes and to perform auto-refreshs of cached fragments on virtual threads.
+   * Only takes effect on Java 21+.
+   * Defaults to false.
+   */
+  private boolean virtualThreadsEnabled = false;
+
   /**
    * Whether to append UI composition stats as HTML comment to the content.
    * Defaults to false.
@@ -80,6 +156,12 @@ public class AbleronConfig {
    */
   private boolean statsExposeFragmentUrl = false;
 
+  /**
+   * Metrics to record measurements of UI composition with.
+   * Defaults to metrics which discard all measurements.
+   */
+  private AbleronMetrics metrics = AbleronMetrics.NOOP;
+
   private AbleronConfig() {}
 
   public static Builder builder() {
@@ -110,6 +192,10 @@ public class AbleronConfig {
     return cacheMaxSizeInBytes;
   }
 
+  public long getParseCacheMaxSizeInBytes() {
+    return parseCacheMaxSizeInBytes;
+  }
+
   public boolean cacheAutoRefreshEnabled() {
     return cacheAutoRefreshEnabled;
   }
@@ -122,6 +208,42 @@ public class AbleronConfig {
     return cacheAutoRefreshInactiveFragmentsMaxRefreshs;
   }
 
+  public Duration getCacheStaleWhileRevalidateDefault() {
+    return cacheStaleWhileRevalidateDefault;
+  }
+
+  public Duration getCacheStaleIfErrorDefault() {
+    return cacheStaleIfErrorDefault;
+  }
+
+  public Optional<Duration> getCompositionDeadline() {
+    return Optional.ofNullable(compositionDeadline);
+  }
+
+  public int getResolveThreadPoolSize() {
+    return resolveThreadPoolSize;
+  }
+
+  public int getResolveThreadPoolQueueCapacity() {
+    return resolveThreadPoolQueueCapacity;
+  }
+
+  public Optional<Executor> getResolveExecutor() {
+    return Optional.ofNullable(resolveExecutor);
+  }
+
+  public int getCacheAutoRefreshThreadPoolSize() {
+    return cacheAutoRefreshThreadPoolSize;
+  }
+
+  public Optional<ScheduledExecutorService> getCacheAutoRefreshScheduler() {
+    return Optional.ofNullable(cacheAutoRefreshScheduler);
+  }
+
+  public boolean virtualThreadsEnabled() {
+    return virtualThreadsEnabled;
+  }
+
   public boolean statsAppendToContent() {
     return statsAppendToContent;
   }
@@ -130,6 +252,10 @@ public class AbleronConfig {
     return statsExposeFragmentUrl;
   }
 
+  public AbleronMetrics getMetrics() {
+    return metrics;
+  }
+
   public static class Builder {
 
     private final AbleronConfig ableronConfig = new AbleronConfig();
@@ -167,6 +293,11 @@ public class AbleronConfig {
       return this;
     }
 
+    public Builder parseCacheMaxSizeInBytes(long parseCacheMaxSizeInBytes) {
+      ableronConfig.parseCacheMaxSizeInBytes = parseCacheMaxSizeInBytes;
+      return this;
+    }
+
     public Builder statsAppendToContent(boolean statsAppendToContent) {
       ableronConfig.statsAppendToContent = statsAppendToContent;
       return this;
@@ -187,11 +318,61 @@ public class AbleronConfig {
       return this;
     }
 
+    public Builder cacheStaleWhileRevalidateDefault(Duration cacheStaleWhileRevalidateDefault) {
+      ableronConfig.cacheStaleWhileRevalidateDefault = Objects.requireNonNull(cacheStaleWhileRevalidateDefault, "cacheStaleWhileRevalidateDefault must not be null");
+      return this;
+    }
+
+    public Builder cacheStaleIfErrorDefault(Duration cacheStaleIfErrorDefault) {
+      ableronConfig.cacheStaleIfErrorDefault = Objects.requireNonNull(cacheStaleIfErrorDefault, "cacheStaleIfErrorDefault must not be null");
+      return this;
+    }
+
+    public Builder compositionDeadline(Duration compositionDeadline) {
+      ableronConfig.compositionDeadline = Objects.requireNonNull(compositionDeadline, "compositionDeadline must not be null");
+      return this;
+    }
+
+    public Builder resolveThreadPoolSize(int resolveThreadPoolSize) {
+      ableronConfig.resolveThreadPoolSize = resolveThreadPoolSize;
+      return this;
+    }
+
+    public Builder resolveThreadPoolQueueCapacity(int resolveThreadPoolQueueCapacity) {
+      ableronConfig.resolveThreadPoolQueueCapacity = resolveThreadPoolQueueCapacity;
+      return this;
+    }
+
+    public Builder resolveExecutor(Executor resolveExecutor) {
+      ableronConfig.resolveExecutor = Objects.requireNonNull(resolveExecutor, "resolveExecutor must not be null");
+      return this;
+    }
+
+    public Builder cacheAutoRefreshThreadPoolSize(int cacheAutoRefreshThreadPoolSize) {
+      ableronConfig.cacheAutoRefreshThreadPoolSize = cacheAutoRefreshThreadPoolSize;
+      return this;
+    }
+
+    public Builder cacheAutoRefreshScheduler(ScheduledExecutorService cacheAutoRefreshScheduler) {
+      ableronConfig.cacheAutoRefreshScheduler = Objects.requireNonNull(cacheAutoRefreshScheduler, "cacheAutoRefreshScheduler must not be null");
+      return this;
+    }
+
+    public Builder virtualThreadsEnabled(boolean virtualThreadsEnabled) {
+      ableronConfig.virtualThreadsEnabled = virtualThreadsEnabled;
+      return this;
+    }
+
     public Builder statsExposeFragmentUrl(boolean statsExposeFragmentUrl) {
       ableronConfig.statsExposeFragmentUrl = statsExposeFragmentUrl;
       return this;
     }
 
+    public Builder metrics(AbleronMetrics metrics) {
+      ableronConfig.metrics = Objects.requireNonNull(metrics, "metrics must not be null");
+      return this;
+    }
+
     public AbleronConfig build() {
       return ableronConfig;
     }
@@ -0,0 +1,46 @@
+package io.github.ableron;
+
+/**
+ * Receives measurements of UI composition, e.g. to publish them via a metrics library.<br>
+ * <br>
+ * Methods are invoked on the hot path, partly on threads of the HTTP client. Implementations must be
+ * thread-safe and must not block. All methods do nothing by default.
+ */
+public interface AbleronMetrics {
+
+  /**
+   * Metrics which discard all measurements.
+   */
+  AbleronMetrics NOOP = new AbleronMetrics() {};
+
+  /**
+   * Records the composition of a page.
+   *
+   * @param compositionTimeNanos Time it took to resolve all includes of the page
+   * @param includeCount Number of includes of the page
+   */
+  default void recordComposition(long compositionTimeNanos, int includeCount) {}
+
+  /**
+   * Records the resolution of an include.
+   *
+   * @param fragmentSource Source of the fragment the include has been resolved with, e.g.
+   *                       <code>cached src</code>, <code>remote src</code>, <code>remote fallback-src</code>
+   *                       or <code>fallback content</code>
+   * @param resolveTimeNanos Time it took to resolve the include
+   */
+  default void recordIncludeResolved(String fragmentSource, long resolveTimeNanos) {}
+
+  /**
+   * Records a response of the origin of a fragment.
+   *
+   * @param statusCode HTTP status code of the response
+   * @param fetchTimeNanos Time it took to receive the response
+   */
+  default void recordFragmentResponse(int statusCode, long fetchTimeNanos) {}
+
+  /**
+   * Records a fragment request which has not been answered within its request timeout.
+   */
+  default void recordFragmentRequestTimeout() {}
+}
@@ -0,0 +1,161 @@
+package io.github.ableron;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoded content, which is scanned for include tags without decoding it.<br>
+ * <br>
+ * Each byte is exposed as one character. As include tags consist of ASCII characters only, they are found at
+ * the same positions as in the decoded content, given the charset of the content is ASCII compatible, i.e.
+ * encodes ASCII characters as single bytes which never occur as part of other characters. Only the parts of
+ * the content which are actually needed, e.g. attribute values, are decoded.
+ */
+class ByteContent implements CharSequence {
+
+  /**
+   * ASCII characters which must be encoded identically for the content to be scannable.
+   */
+  private static final String SCANNED_CHARACTERS = IncludeScanner.INCLUDE_TAG_START + "</>=\" \t\n\u000B\f\r_-0123456789"
+    + "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+  /**
+   * Whether charsets are ASCII compatible by charset.
+   */
+  private static final Map<Charset, Boolean> ASCII_COMPATIBLE_CHARSETS = new ConcurrentHashMap<>();
+
+  private final byte[] bytes;
+  private final int offset;
+  private final int length;
+  private final Charset charset;
+
+  private ByteContent(byte[] bytes, int offset, int length, Charset charset) {
+    this.bytes = bytes;
+    this.offset = offset;
+    this.length = length;
+    this.charset = charset;
+  }
+
+  /**
+   * Creates the content of the remaining bytes of the given buffer. Does not copy the bytes, in case
+   * the buffer is backed by an accessible array.
+   *
+   * @param content The encoded content. Its position is not modified
+   * @param charset Charset of the content
+   * @return The content
+   */
+  static ByteContent of(ByteBuffer content, Charset charset) {
+    if (content.hasArray()) {
+      return new ByteContent(content.array(), content.arrayOffset() + content.position(), content.remaining(), charset);
+    }
+
+    var bytes = new byte[content.remaining()];
+    content.duplicate().get(bytes);
+    return new ByteContent(bytes, 0, bytes.length, charset);
+  }
+
+  /**
+   * @param charset The charset
+   * @return Whether content of the given charset can be scanned for include tags without decoding it
+   */
+  static boolean isAsciiCompatible(Charset charset) {
+    return ASCII_COMPATIBLE_CHARSETS.computeIfAbsent(charset, ByteContent::checkAsciiCompatible);
+  }
+
+  private static boolean checkAsciiCompatible(Charset charset) {
+    return (StandardCharsets.UTF_8.equals(charset) || charset.newEncoder().maxBytesPerChar() == 1f)
+      && Arrays.equals(SCANNED_CHARACTERS.getBytes(charset), SCANNED_CHARACTERS.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  Charset getCharset() {
+    return charset;
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    return (char) (bytes[offset + index] & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return new ByteContent(bytes, offset + start, end - start, charset);
+  }
+
+  /**
+   * @return Index of the first occurrence of the given ASCII character at or after the given index or -1
+   */
+  int indexOf(char c, int fromIndex) {
+    for (var i = Math.max(fromIndex, 0); i < length; i++) {
+      if (bytes[offset + i] == c) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * @return Index of the first occurrence of the given ASCII string at or after the given index or -1
+   */
+  int indexOf(String str, int fromIndex) {
+    var first = (byte) str.charAt(0);
+    var last = length - str.length();
+
+    for (var i = Math.max(fromIndex, 0); i <= last; i++) {
+      if (bytes[offset + i] == first && regionMatches(i, str)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private boolean regionMatches(int index, String str) {
+    for (var j = 1; j < str.length(); j++) {
+      if (bytes[offset + index + j] != str.charAt(j)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Decodes the given part of the content.
+   *
+   * @param start Start index, inclusive
+   * @param end End index, exclusive
+   * @return The decoded part
+   */
+  String decode(int start, int end) {
+    return new String(bytes, offset + start, end - start, charset);
+  }
+
+  /**
+   * Exposes the given part of the content as buffer without copying it.
+   *
+   * @param start Start index, inclusive
+   * @param end End index, exclusive
+   * @return Buffer containing the given part. Must not be modified
+   */
+  ByteBuffer slice(int start, int end) {
+    return ByteBuffer.wrap(bytes, offset + start, end - start).slice();
+  }
+
+  /**
+   * @return The decoded content
+   */
+  @Override
+  public String toString() {
+    return decode(0, length);
+  }
+}
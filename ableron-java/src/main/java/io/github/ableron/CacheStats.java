@@ -9,6 +9,13 @@ public class CacheStats {
   private final LongAdder missCount = new LongAdder();
   private final LongAdder refreshSuccessCount = new LongAdder();
   private final LongAdder refreshFailureCount = new LongAdder();
+  private final LongAdder coalescedRequestCount = new LongAdder();
+  private final LongAdder staleHitCount = new LongAdder();
+  private final LongAdder staleIfErrorHitCount = new LongAdder();
+  private final LongAdder notModifiedCount = new LongAdder();
+  private final LongAdder cancelledRequestCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private final LatencyHistogram fragmentFetchTime = new LatencyHistogram();
   private final LongSupplier itemCountSupplier;
 
   public CacheStats() {
@@ -54,4 +61,79 @@ public class CacheStats {
   public void recordRefreshFailure() {
     refreshFailureCount.increment();
   }
+
+  /**
+   * @return Number of fragment requests which have been served by joining an identical in-flight request
+   */
+  public long coalescedRequestCount() {
+    return coalescedRequestCount.sum();
+  }
+
+  public void recordCoalescedRequest() {
+    coalescedRequestCount.increment();
+  }
+
+  /**
+   * @return Number of cache hits which returned an expired fragment while it is being revalidated
+   */
+  public long staleHitCount() {
+    return staleHitCount.sum();
+  }
+
+  public void recordStaleHit() {
+    staleHitCount.increment();
+  }
+
+  /**
+   * @return Number of expired fragments which have been served because their source could not be loaded
+   */
+  public long staleIfErrorHitCount() {
+    return staleIfErrorHitCount.sum();
+  }
+
+  public void recordStaleIfErrorHit() {
+    staleIfErrorHitCount.increment();
+  }
+
+  /**
+   * @return Number of cached fragments which have been revalidated via conditional request without
+   * transferring the fragment again
+   */
+  public long notModifiedCount() {
+    return notModifiedCount.sum();
+  }
+
+  public void recordNotModified() {
+    notModifiedCount.increment();
+  }
+
+  /**
+   * @return Number of in-flight fragment requests which have been cancelled, e.g. due to a timeout or
+   * because the composition deadline passed
+   */
+  public long cancelledRequestCount() {
+    return cancelledRequestCount.sum();
+  }
+
+  public void recordCancelledRequest() {
+    cancelledRequestCount.increment();
+  }
+
+  /**
+   * @return Number of fragments which have been removed from the cache due to its maximum size
+   */
+  public long evictionCount() {
+    return evictionCount.sum();
+  }
+
+  public void recordEviction() {
+    evictionCount.increment();
+  }
+
+  /**
+   * @return Histogram of the time it took to load fragments from their origin
+   */
+  public LatencyHistogram fragmentFetchTime() {
+    return fragmentFetchTime;
+  }
 }
@@ -0,0 +1,72 @@
+package io.github.ableron;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps track of the in-flight futures of an operation in order to cancel them all at once, e.g. the fragment
+ * requests of an include whose resolution is cancelled because the composition deadline passed.
+ */
+public class CancellationScope {
+
+  private final List<CompletableFuture<?>> futures = new ArrayList<>();
+  private boolean cancelled = false;
+
+  /**
+   * Tracks the given future. In case this scope has already been cancelled, the future is cancelled immediately.
+   *
+   * @param future The future to track
+   * @return The given future
+   */
+  public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+    synchronized (futures) {
+      if (!cancelled) {
+        futures.removeIf(CompletableFuture::isDone);
+        futures.add(future);
+        return future;
+      }
+    }
+
+    future.cancel(true);
+    return future;
+  }
+
+  /**
+   * Cancels all tracked futures. Futures tracked afterwards are cancelled immediately.
+   */
+  public void cancel() {
+    List<CompletableFuture<?>> futuresToCancel;
+
+    synchronized (futures) {
+      cancelled = true;
+      futuresToCancel = new ArrayList<>(futures);
+      futures.clear();
+    }
+
+    futuresToCancel.forEach(future -> future.cancel(true));
+  }
+
+  public boolean isCancelled() {
+    synchronized (futures) {
+      return cancelled;
+    }
+  }
+
+  /**
+   * Cancels the given upstream future once the given dependent future is cancelled. Completion stages do not
+   * propagate cancellation to the stages they depend on by themselves.
+   *
+   * @param dependent The dependent future
+   * @param upstream The future the dependent future depends on
+   * @return The dependent future
+   */
+  public static <T> CompletableFuture<T> propagateCancellation(CompletableFuture<T> dependent, CompletableFuture<?> upstream) {
+    dependent.whenComplete((value, throwable) -> {
+      if (dependent.isCancelled()) {
+        upstream.cancel(true);
+      }
+    });
+    return dependent;
+  }
+}
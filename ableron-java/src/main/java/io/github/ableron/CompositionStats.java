@@ -0,0 +1,25 @@
+package io.github.ableron;
+
+/**
+ * Latencies of UI composition. Recorded for every page and include, independent of the configured
+ * {@link AbleronMetrics}.
+ */
+public class CompositionStats {
+
+  private final LatencyHistogram compositionTime = new LatencyHistogram();
+  private final LatencyHistogram includeResolveTime = new LatencyHistogram();
+
+  /**
+   * @return Histogram of the time it took to resolve all includes of a page
+   */
+  public LatencyHistogram compositionTime() {
+    return compositionTime;
+  }
+
+  /**
+   * @return Histogram of the time it took to resolve an include
+   */
+  public LatencyHistogram includeResolveTime() {
+    return includeResolveTime;
+  }
+}
@@ -0,0 +1,63 @@
+package io.github.ableron;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+public class ExecutorStats {
+
+  private final IntSupplier activeCountSupplier;
+  private final IntSupplier queueSizeSupplier;
+  private final LongAdder rejectionCount = new LongAdder();
+
+  public ExecutorStats() {
+    this(() -> 0, () -> 0);
+  }
+
+  public ExecutorStats(IntSupplier activeCountSupplier, IntSupplier queueSizeSupplier) {
+    this.activeCountSupplier = activeCountSupplier;
+    this.queueSizeSupplier = queueSizeSupplier;
+  }
+
+  /**
+   * Creates stats for the given executor. Active and queued task counts are only available for
+   * executors of type {@link ThreadPoolExecutor}.
+   *
+   * @param executor The executor
+   * @return Stats of the executor
+   */
+  public static ExecutorStats of(Executor executor) {
+    if (executor instanceof ThreadPoolExecutor) {
+      var threadPoolExecutor = (ThreadPoolExecutor) executor;
+      return new ExecutorStats(threadPoolExecutor::getActiveCount, () -> threadPoolExecutor.getQueue().size());
+    }
+
+    return new ExecutorStats();
+  }
+
+  /**
+   * @return Approximate number of threads actively executing tasks
+   */
+  public int activeCount() {
+    return activeCountSupplier.getAsInt();
+  }
+
+  /**
+   * @return Number of tasks waiting for execution
+   */
+  public int queueSize() {
+    return queueSizeSupplier.getAsInt();
+  }
+
+  /**
+   * @return Number of tasks which have been rejected due to a saturated executor
+   */
+  public long rejectionCount() {
+    return rejectionCount.sum();
+  }
+
+  public void recordRejection() {
+    rejectionCount.increment();
+  }
+}
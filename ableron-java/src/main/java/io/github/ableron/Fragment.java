@@ -1,5 +1,7 @@
 package io.github.ableron;
 
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -8,32 +10,189 @@ import java.util.Optional;
 
 public class Fragment {
 
-  private final String content;
+  /**
+   * Content of the fragment. Decoded lazily in case the fragment has been created with encoded content.
+   */
+  private volatile String content;
+
+  /**
+   * Encoded content of the fragment. Null, if the fragment has been created with decoded content.
+   */
+  private final byte[] encodedContent;
+
+  /**
+   * Charset of the encoded content. Null, if the fragment has been created with decoded content.
+   */
+  private final Charset charset;
+
   private final Instant expirationTime;
+  private final Duration staleWhileRevalidate;
+  private final Duration staleIfError;
   private final String url;
   private final int statusCode;
   private final Map<String, List<String>> responseHeaders;
 
+  /**
+   * Value of the ETag response header used to revalidate the fragment.
+   */
+  private final String eTag;
+
+  /**
+   * Value of the Last-Modified response header used to revalidate the fragment.
+   */
+  private final String lastModified;
+
+  /**
+   * Point in time the response of the fragment has been received or the fragment has been revalidated.
+   */
+  private final Instant responseTime;
+
   public Fragment(int statusCode, String content) {
     this(null, statusCode, content, Instant.EPOCH, Map.of());
   }
 
   public Fragment(String url, int statusCode, String content, Instant expirationTime, Map<String, List<String>> responseHeaders) {
+    this(url, statusCode, content, expirationTime, Duration.ZERO, responseHeaders);
+  }
+
+  public Fragment(String url, int statusCode, String content, Instant expirationTime, Duration staleWhileRevalidate, Map<String, List<String>> responseHeaders) {
+    this(url, statusCode, content, expirationTime, staleWhileRevalidate, Duration.ZERO, responseHeaders);
+  }
+
+  public Fragment(String url, int statusCode, String content, Instant expirationTime, Duration staleWhileRevalidate, Duration staleIfError, Map<String, List<String>> responseHeaders) {
+    this(url, statusCode, Objects.requireNonNull(content, "content must not be null"), null, null, expirationTime, staleWhileRevalidate, staleIfError, responseHeaders, null, null, Instant.now());
+  }
+
+  /**
+   * Constructs a new fragment whose content is kept encoded. The content is not decoded before it is
+   * requested via {@link #getContent()}, which is not necessary in case it is written to content of the same charset.
+   */
+  public Fragment(String url, int statusCode, byte[] content, Charset charset, Instant expirationTime, Duration staleWhileRevalidate, Duration staleIfError, Map<String, List<String>> responseHeaders) {
+    this(url, statusCode, null, Objects.requireNonNull(content, "content must not be null"), Objects.requireNonNull(charset, "charset must not be null"), expirationTime, staleWhileRevalidate, staleIfError, responseHeaders, null, null, Instant.now());
+  }
+
+  private Fragment(String url, int statusCode, String content, byte[] encodedContent, Charset charset, Instant expirationTime, Duration staleWhileRevalidate, Duration staleIfError, Map<String, List<String>> responseHeaders, String eTag, String lastModified, Instant responseTime) {
     this.url = url;
     this.statusCode = statusCode;
-    this.content = Objects.requireNonNull(content, "content must not be null");
+    this.content = content;
+    this.encodedContent = encodedContent;
+    this.charset = charset;
     this.expirationTime = Objects.requireNonNull(expirationTime, "expirationTime must not be null");
+    this.staleWhileRevalidate = Objects.requireNonNull(staleWhileRevalidate, "staleWhileRevalidate must not be null");
+    this.staleIfError = Objects.requireNonNull(staleIfError, "staleIfError must not be null");
     this.responseHeaders = Objects.requireNonNull(responseHeaders, "responseHeaders must not be null");
+    this.eTag = eTag;
+    this.lastModified = lastModified;
+    this.responseTime = responseTime;
+  }
+
+  /**
+   * Creates a copy of this fragment with the given validators.
+   *
+   * @param eTag Value of the ETag response header. May be null
+   * @param lastModified Value of the Last-Modified response header. May be null
+   * @return The fragment with validators
+   */
+  public Fragment withValidators(String eTag, String lastModified) {
+    return new Fragment(url, statusCode, content, encodedContent, charset, expirationTime, staleWhileRevalidate, staleIfError, responseHeaders, eTag, lastModified, responseTime);
+  }
+
+  /**
+   * Creates a copy of this fragment with a new lifetime, e.g. after the fragment has been revalidated.
+   * Content, response headers and validators are retained.
+   *
+   * @param expirationTime The new expiration time
+   * @param staleWhileRevalidate The new stale-while-revalidate period
+   * @param staleIfError The new stale-if-error period
+   * @return The fragment with the new lifetime
+   */
+  public Fragment withLifetime(Instant expirationTime, Duration staleWhileRevalidate, Duration staleIfError) {
+    return new Fragment(url, statusCode, content, encodedContent, charset, expirationTime, staleWhileRevalidate, staleIfError, responseHeaders, eTag, lastModified, Instant.now());
   }
 
   public String getContent() {
+    var content = this.content;
+
+    if (content == null) {
+      content = new String(encodedContent, charset);
+      this.content = content;
+    }
+
     return content;
   }
 
+  /**
+   * @return The content encoded with the given charset. Not copied in case the fragment has been created with
+   * content of the given charset. Thus, must not be modified
+   */
+  byte[] getContentBytes(Charset charset) {
+    return charset.equals(this.charset) ? encodedContent : getContent().getBytes(charset);
+  }
+
+  /**
+   * @return Approximate size of the content without decoding it
+   */
+  int getContentSize() {
+    return encodedContent != null ? encodedContent.length : content.length();
+  }
+
   public Instant getExpirationTime() {
     return expirationTime;
   }
 
+  /**
+   * @return Period of time the fragment has been fresh for when its response has been received or when it
+   * has been revalidated
+   */
+  Duration getFreshnessLifetime() {
+    return responseTime.isBefore(expirationTime) ? Duration.between(responseTime, expirationTime) : Duration.ZERO;
+  }
+
+  /**
+   * @return Period of time after expiration, in which the fragment may be served stale while it is
+   * revalidated in the background
+   */
+  public Duration getStaleWhileRevalidate() {
+    return staleWhileRevalidate;
+  }
+
+  /**
+   * @return Point in time until which the fragment may be served stale while it is revalidated
+   */
+  public Instant getStaleWhileRevalidateExpirationTime() {
+    return expirationTime.plus(staleWhileRevalidate);
+  }
+
+  /**
+   * @return Period of time after expiration, in which the fragment may be served stale in case it cannot
+   * be loaded from its source
+   */
+  public Duration getStaleIfError() {
+    return staleIfError;
+  }
+
+  /**
+   * @return Point in time until which the fragment may be served stale in case it cannot be loaded from its source
+   */
+  public Instant getStaleIfErrorExpirationTime() {
+    return expirationTime.plus(staleIfError);
+  }
+
+  public Optional<String> getETag() {
+    return Optional.ofNullable(eTag);
+  }
+
+  public Optional<String> getLastModified() {
+    return Optional.ofNullable(lastModified);
+  }
+
+  /**
+   * @return Whether the fragment can be revalidated via conditional request
+   */
+  public boolean hasValidators() {
+    return eTag != null || lastModified != null;
+  }
+
   public Optional<String> getUrl() {
     return Optional.ofNullable(url);
   }
@@ -12,49 +12,180 @@ import java.time.Instant;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
-public class FragmentCache {
+public class FragmentCache implements AutoCloseable {
 
   private final static long ONE_MINUTE_IN_MILLIS = Duration.ofMinutes(1).toMillis();
+
+  /**
+   * Period of time after expiration, in which fragments with validators are kept in the cache in order
+   * to revalidate them via conditional request. These fragments are not served. Fragments which are already
+   * expired when set, e.g. fragments without freshness lifetime, are not kept, even if they have validators.
+   */
+  private final static Duration VALIDATORS_RETENTION = Duration.ofMinutes(5);
+
+  /**
+   * Period of time in which a stale fragment is not revalidated again after its revalidation failed.
+   */
+  private final static Duration REVALIDATION_BACKOFF = Duration.ofSeconds(1);
   private final Logger logger = LoggerFactory.getLogger(getClass());
-  private final Cache<String, Fragment> fragmentCache;
+  private final Cache<String, CacheEntry> fragmentCache;
   private final boolean autoRefreshEnabled;
   private final int maxRefreshAttempts;
   private final Map<String, Integer> refreshAttempts = new ConcurrentHashMap<>();
   private final Set<String> activeFragments = new ConcurrentHashMap<String, Boolean>().keySet(true);
   private final Integer inactiveFragmentsMaxRefreshs;
   private final Map<String, Integer> inactiveFragmentRefreshs = new ConcurrentHashMap<>();
+  private final Set<String> revalidatingFragments = ConcurrentHashMap.newKeySet();
   private final CacheStats stats;
-  private final ScheduledExecutorService autoRefreshScheduler = Executors.newScheduledThreadPool(3);
+  private final RequestCoalescer<Optional<Fragment>> requestCoalescer;
+  private final ScheduledExecutorService autoRefreshScheduler;
+
+  /**
+   * Whether the auto refresh scheduler has been created by this cache and thus is to be shut down
+   * when this cache is closed.
+   */
+  private final boolean ownsAutoRefreshScheduler;
+
+  /**
+   * Incremented each time the cache is cleared. Auto refreshs registered before clearing the cache
+   * are discarded.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * Executor to perform due auto refreshs in. The scheduler threads are only used to trigger
+   * auto refreshs.
+   */
+  private final Executor autoRefreshExecutor;
 
   public FragmentCache(AbleronConfig config) {
+    this(config, Runnable::run);
+  }
+
+  public FragmentCache(AbleronConfig config, Executor autoRefreshExecutor) {
+    this.autoRefreshExecutor = autoRefreshExecutor;
+    this.ownsAutoRefreshScheduler = config.getCacheAutoRefreshScheduler().isEmpty();
+    this.autoRefreshScheduler = config.getCacheAutoRefreshScheduler()
+      .orElseGet(() -> Executors.newScheduledThreadPool(config.getCacheAutoRefreshThreadPoolSize()));
     this.autoRefreshEnabled = config.cacheAutoRefreshEnabled();
     this.maxRefreshAttempts = config.getCacheAutoRefreshMaxAttempts();
     this.inactiveFragmentsMaxRefreshs = config.getCacheAutoRefreshInactiveFragmentsMaxRefreshs();
     this.fragmentCache = buildFragmentCache(config.getCacheMaxSizeInBytes());
     this.stats = new CacheStats(this.fragmentCache::estimatedSize);
+    this.requestCoalescer = new RequestCoalescer<>(this.stats::recordCoalescedRequest);
   }
 
+  /**
+   * Gets a fragment from the cache.<br>
+   * <br>
+   * Expired fragments are returned as long as they are within their stale-while-revalidate period or, in case
+   * loading the fragment from its source recently failed, within their stale-if-error period. In this case, the
+   * fragment is revalidated in the background.
+   *
+   * @param cacheKey Cache key of the fragment
+   * @return The cached fragment or an empty Optional in case the fragment is not cached
+   */
   public Optional<Fragment> get(String cacheKey) {
-    var fragmentFromCache = Optional.ofNullable(fragmentCache.getIfPresent(cacheKey));
+    return get(cacheKey, fragment -> true, true);
+  }
+
+  /**
+   * Gets a fragment from the cache like {@link #get(String)}, but only in case it matches the given condition
+   * and without recording anything otherwise. Used to try the cache before resolving an include the regular way,
+   * which records the miss.
+   *
+   * @param cacheKey Cache key of the fragment
+   * @param condition Condition the cached fragment has to match
+   * @return The cached fragment or an empty Optional in case no matching fragment is cached
+   */
+  Optional<Fragment> getIfCached(String cacheKey, Predicate<Fragment> condition) {
+    return get(cacheKey, condition, false);
+  }
 
-    if (fragmentFromCache.isPresent()) {
-      this.stats.recordHit();
+  private Optional<Fragment> get(String cacheKey, Predicate<Fragment> condition, boolean recordMiss) {
+    var cacheEntry = fragmentCache.getIfPresent(cacheKey);
+    var now = Instant.now();
+    var isFresh = cacheEntry != null && cacheEntry.fragment.getExpirationTime().isAfter(now);
 
-      if (this.autoRefreshEnabled) {
-        this.activeFragments.add(cacheKey);
+    if (cacheEntry == null || (!isFresh && !cacheEntry.isServableStale(now)) || !condition.test(cacheEntry.fragment)) {
+      if (recordMiss) {
+        this.stats.recordMiss();
       }
-    } else {
-      this.stats.recordMiss();
+
+      return Optional.empty();
+    }
+
+    this.stats.recordHit();
+
+    if (this.autoRefreshEnabled) {
+      this.activeFragments.add(cacheKey);
     }
 
-    return fragmentFromCache;
+    if (!isFresh) {
+      this.stats.recordStaleHit();
+      this.revalidate(cacheKey, cacheEntry, now);
+    }
+
+    return Optional.of(cacheEntry.fragment);
+  }
+
+  /**
+   * Gets a fragment from the cache regardless of its expiration time, e.g. to revalidate it. Does not
+   * record any stats.
+   *
+   * @param cacheKey Cache key of the fragment
+   * @return The cached fragment or an empty Optional in case the fragment is not cached
+   */
+  public Optional<Fragment> peek(String cacheKey) {
+    return Optional.ofNullable(fragmentCache.getIfPresent(cacheKey)).map(cacheEntry -> cacheEntry.fragment);
+  }
+
+  /**
+   * Gets an expired fragment from the cache, which is to be served because loading it from its source failed.<br>
+   * <br>
+   * Returns the fragment only if it is within its stale-if-error period. Until the fragment has been revalidated
+   * successfully, subsequent calls of {@link #get(String)} return the stale fragment immediately instead of
+   * waiting for the source again.
+   *
+   * @param cacheKey Cache key of the fragment
+   * @return The stale fragment or an empty Optional
+   */
+  public Optional<Fragment> getStaleIfError(String cacheKey) {
+    var cacheEntry = fragmentCache.getIfPresent(cacheKey);
+
+    if (cacheEntry == null || !cacheEntry.fragment.getStaleIfErrorExpirationTime().isAfter(Instant.now())) {
+      return Optional.empty();
+    }
+
+    cacheEntry.sourceFailing = true;
+    this.stats.recordStaleIfErrorHit();
+    return Optional.of(cacheEntry.fragment);
+  }
+
+  /**
+   * Loads a fragment via the given loader. Concurrent loads of the same cache key, e.g. cache misses of
+   * concurrent requests and auto refreshs, share one request to the fragment source, as long as their
+   * timeout does not exceed the timeout of the in-flight request.
+   *
+   * @param cacheKey Cache key of the fragment
+   * @param timeout Timeout for loading the fragment
+   * @param loader Loader performing the actual request honoring the given timeout
+   * @return The loaded fragment or an empty Optional in case the fragment could not be loaded within the timeout
+   */
+  public CompletableFuture<Optional<Fragment>> load(String cacheKey, Duration timeout, Supplier<CompletableFuture<Optional<Fragment>>> loader) {
+    return requestCoalescer.load(cacheKey, timeout, Optional.empty(), loader);
   }
 
   public FragmentCache set(String cacheKey, Fragment fragment) {
@@ -62,7 +193,32 @@ public class FragmentCache {
   }
 
   public FragmentCache set(String cacheKey, Fragment fragment, Supplier<Fragment> autoRefresh) {
-    this.fragmentCache.put(cacheKey, fragment);
+    return setWithAsyncAutoRefresh(cacheKey, fragment, autoRefresh == null ? null : () -> {
+      try {
+        return CompletableFuture.completedFuture(autoRefresh.get());
+      } catch (Exception e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    });
+  }
+
+  /**
+   * Puts the given fragment into the cache. Fragments which are already expired and beyond their
+   * stale-while-revalidate and stale-if-error periods are not cached. Fragments with validators are kept
+   * in the cache for some time after expiration in order to revalidate them via conditional request.
+   *
+   * @param cacheKey Cache key of the fragment
+   * @param fragment The fragment
+   * @param autoRefresh Supplier for asynchronously loading the refreshed fragment, if auto refresh is enabled or
+   *                    the fragment is served stale
+   * @return This cache
+   */
+  public FragmentCache setWithAsyncAutoRefresh(String cacheKey, Fragment fragment, Supplier<CompletableFuture<Fragment>> autoRefresh) {
+    if (!getRetentionTime(fragment).isAfter(Instant.now())) {
+      return this;
+    }
+
+    this.fragmentCache.put(cacheKey, new CacheEntry(fragment, autoRefresh));
 
     if (this.autoRefreshEnabled && autoRefresh != null && fragment.getExpirationTime().isAfter(Instant.now())) {
       this.registerAutoRefresh(cacheKey, autoRefresh, this.calculateFragmentRefreshDelay(fragment));
@@ -72,40 +228,146 @@ public class FragmentCache {
   }
 
   public FragmentCache clear() {
-    this.autoRefreshScheduler.shutdownNow();
+    this.generation.incrementAndGet();
     this.refreshAttempts.clear();
     this.activeFragments.clear();
     this.inactiveFragmentRefreshs.clear();
+    this.revalidatingFragments.clear();
     this.fragmentCache.invalidateAll();
     return this;
   }
 
+  /**
+   * Clears the cache and shuts down the auto refresh scheduler, if it has not been provided via config.
+   */
+  @Override
+  public void close() {
+    this.clear();
+
+    if (this.ownsAutoRefreshScheduler) {
+      this.autoRefreshScheduler.shutdownNow();
+    }
+  }
+
   public CacheStats stats() {
     return this.stats;
   }
 
-  private void registerAutoRefresh(String cacheKey, Supplier<Fragment> autoRefresh, long refreshDelayMs) {
-    autoRefreshScheduler.schedule(() -> {
-      if (shouldPerformAutoRefresh(cacheKey)) {
-        try {
-          var fragment = autoRefresh.get();
+  /**
+   * Schedules the auto refresh of the currently cached fragment. The auto refresh is discarded, in case the fragment
+   * is replaced in the meantime, e.g. after a revalidation, so that each fragment is refreshed only once.
+   */
+  private void registerAutoRefresh(String cacheKey, Supplier<CompletableFuture<Fragment>> autoRefresh, long refreshDelayMs) {
+    var scheduledGeneration = generation.get();
+    var scheduledCacheEntry = fragmentCache.getIfPresent(cacheKey);
 
-          if (isFragmentCacheable(fragment)) {
-            var oldCacheEntry = fragmentCache.getIfPresent(cacheKey);
-            this.set(cacheKey, fragment, autoRefresh);
-            this.handleSuccessfulCacheRefresh(cacheKey, oldCacheEntry);
-          } else {
-            this.handleFailedCacheRefreshAttempt(cacheKey, autoRefresh);
-          }
-        } catch (Exception e) {
-          logger.error("[Ableron] Unable to refresh cached fragment '{}'", cacheKey, e);
-          this.handleFailedCacheRefreshAttempt(cacheKey, autoRefresh);
+    try {
+      autoRefreshScheduler.schedule(() -> {
+        var cacheEntry = fragmentCache.getIfPresent(cacheKey);
+
+        if (scheduledGeneration != generation.get() || (cacheEntry != null && cacheEntry != scheduledCacheEntry)) {
+          return;
+        }
+
+        if (shouldPerformAutoRefresh(cacheKey)) {
+          autoRefreshExecutor.execute(() -> performAutoRefresh(cacheKey, autoRefresh, scheduledGeneration));
+        } else {
+          inactiveFragmentRefreshs.remove(cacheKey);
+          logger.debug("[Ableron] Stopping auto refresh of fragment '{}': Inactive fragment", cacheKey);
         }
+      }, refreshDelayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      logger.debug("[Ableron] Unable to register auto refresh of fragment '{}': Scheduler shut down", cacheKey);
+    }
+  }
+
+  /**
+   * Revalidates a stale fragment in the background. Only one revalidation per fragment is performed at a time.
+   * The revalidated fragment is cached like a loaded one. In case the revalidation failed, the stale fragment is
+   * not revalidated again for some time and is served within its stale-if-error period.
+   */
+  private void revalidate(String cacheKey, CacheEntry cacheEntry, Instant now) {
+    if (cacheEntry.autoRefresh == null || cacheEntry.revalidationBackoffExpirationTime.isAfter(now) || !revalidatingFragments.add(cacheKey)) {
+      return;
+    }
+
+    var revalidationGeneration = generation.get();
+    CompletableFuture<Fragment> revalidatedFragment;
+    logger.debug("[Ableron] Revalidating stale fragment '{}'", cacheKey);
+
+    try {
+      revalidatedFragment = cacheEntry.autoRefresh.get();
+    } catch (Exception e) {
+      revalidatedFragment = CompletableFuture.failedFuture(e);
+    }
+
+    revalidatedFragment.whenComplete((fragment, throwable) -> {
+      if (revalidationGeneration != generation.get()) {
+        revalidatingFragments.remove(cacheKey);
+        return;
+      }
+
+      if (throwable == null && isFragmentCacheable(fragment)) {
+        this.refreshAttempts.remove(cacheKey);
+        this.inactiveFragmentRefreshs.remove(cacheKey);
+        this.setWithAsyncAutoRefresh(cacheKey, fragment, cacheEntry.autoRefresh);
       } else {
-        inactiveFragmentRefreshs.remove(cacheKey);
-        logger.debug("[Ableron] Stopping auto refresh of fragment '{}': Inactive fragment", cacheKey);
+        logger.error("[Ableron] Unable to revalidate stale fragment '{}'. Retry in {}ms at the earliest", cacheKey, REVALIDATION_BACKOFF.toMillis());
+        cacheEntry.sourceFailing = true;
+        cacheEntry.revalidationBackoffExpirationTime = Instant.now().plus(REVALIDATION_BACKOFF);
       }
-    }, refreshDelayMs, TimeUnit.MILLISECONDS);
+
+      revalidatingFragments.remove(cacheKey);
+    });
+  }
+
+  private void performAutoRefresh(String cacheKey, Supplier<CompletableFuture<Fragment>> autoRefresh, long scheduledGeneration) {
+    CompletableFuture<Fragment> refreshedFragment;
+
+    try {
+      refreshedFragment = autoRefresh.get();
+    } catch (Exception e) {
+      refreshedFragment = CompletableFuture.failedFuture(e);
+    }
+
+    refreshedFragment.whenComplete((fragment, throwable) -> {
+      if (scheduledGeneration != generation.get()) {
+        return;
+      }
+
+      try {
+        if (throwable != null) {
+          throw (throwable instanceof CompletionException && throwable.getCause() != null) ? throwable.getCause() : throwable;
+        }
+
+        if (isFragmentCacheable(fragment)) {
+          var oldCacheEntry = fragmentCache.getIfPresent(cacheKey);
+          this.setWithAsyncAutoRefresh(cacheKey, fragment, autoRefresh);
+          this.handleSuccessfulCacheRefresh(cacheKey, oldCacheEntry != null ? oldCacheEntry.fragment : null);
+        } else {
+          this.handleFailedCacheRefreshAttempt(cacheKey, autoRefresh);
+        }
+      } catch (Throwable e) {
+        logger.error("[Ableron] Unable to refresh cached fragment '{}'", cacheKey, e);
+        this.handleFailedCacheRefreshAttempt(cacheKey, autoRefresh);
+      }
+    });
+  }
+
+  /**
+   * @return Point in time until which the fragment is kept in the cache
+   */
+  private static Instant getRetentionTime(Fragment fragment) {
+    var staleWhileRevalidateExpirationTime = fragment.getStaleWhileRevalidateExpirationTime();
+    var staleIfErrorExpirationTime = fragment.getStaleIfErrorExpirationTime();
+    var retentionTime = staleIfErrorExpirationTime.isAfter(staleWhileRevalidateExpirationTime) ? staleIfErrorExpirationTime : staleWhileRevalidateExpirationTime;
+
+    if (fragment.hasValidators() && fragment.getExpirationTime().isAfter(Instant.now())) {
+      var validatorsRetentionTime = fragment.getExpirationTime().plus(VALIDATORS_RETENTION);
+      return validatorsRetentionTime.isAfter(retentionTime) ? validatorsRetentionTime : retentionTime;
+    }
+
+    return retentionTime;
   }
 
   private long calculateFragmentRefreshDelay(Fragment fragment) {
@@ -145,7 +407,7 @@ public class FragmentCache {
     }
   }
 
-  private void handleFailedCacheRefreshAttempt(String cacheKey, Supplier<Fragment> autoRefresh) {
+  private void handleFailedCacheRefreshAttempt(String cacheKey, Supplier<CompletableFuture<Fragment>> autoRefresh) {
     var attempts = Optional.ofNullable(this.refreshAttempts.get(cacheKey)).orElse(0) + 1;
     this.stats.recordRefreshFailure();
 
@@ -161,29 +423,30 @@ public class FragmentCache {
     }
   }
 
-  private Cache<String, Fragment> buildFragmentCache(long cacheMaxSizeInBytes) {
+  private Cache<String, CacheEntry> buildFragmentCache(long cacheMaxSizeInBytes) {
     final var evictedCacheItemCount = new AtomicLong();
     final var evictedCacheItemCounterStartTimeMillis = new AtomicLong(System.currentTimeMillis());
 
     return Caffeine.newBuilder()
       .maximumWeight(cacheMaxSizeInBytes)
-      .weigher((String fragmentCacheKey, Fragment fragment) -> fragmentCacheKey.length() + fragment.getContent().length())
-      .expireAfter(new Expiry<String, Fragment>() {
-        public long expireAfterCreate(String fragmentCacheKey, Fragment fragment, long currentTime) {
-          long milliseconds = fragment.getExpirationTime()
+      .weigher((String fragmentCacheKey, CacheEntry cacheEntry) -> fragmentCacheKey.length() + cacheEntry.fragment.getContentSize())
+      .expireAfter(new Expiry<String, CacheEntry>() {
+        public long expireAfterCreate(String fragmentCacheKey, CacheEntry cacheEntry, long currentTime) {
+          long milliseconds = getRetentionTime(cacheEntry.fragment)
             .minusMillis(Instant.now().toEpochMilli())
             .toEpochMilli();
           return TimeUnit.MILLISECONDS.toNanos(milliseconds);
         }
-        public long expireAfterUpdate(String fragmentCacheKey, Fragment fragment, long currentTime, long currentDuration) {
-          return expireAfterCreate(fragmentCacheKey, fragment, currentTime);
+        public long expireAfterUpdate(String fragmentCacheKey, CacheEntry cacheEntry, long currentTime, long currentDuration) {
+          return expireAfterCreate(fragmentCacheKey, cacheEntry, currentTime);
         }
-        public long expireAfterRead(String fragmentCacheKey, Fragment fragment, long currentTime, long currentDuration) {
+        public long expireAfterRead(String fragmentCacheKey, CacheEntry cacheEntry, long currentTime, long currentDuration) {
           return currentDuration;
         }
       })
-      .evictionListener((String fragmentCacheKey, Fragment fragment, RemovalCause cause) -> {
+      .evictionListener((String fragmentCacheKey, CacheEntry cacheEntry, RemovalCause cause) -> {
         if (cause == RemovalCause.SIZE) {
+          stats.recordEviction();
           evictedCacheItemCount.incrementAndGet();
 
           if (evictedCacheItemCount.get() == 1
@@ -195,4 +458,34 @@ public class FragmentCache {
       })
       .build();
   }
+
+  private static class CacheEntry {
+
+    private final Fragment fragment;
+
+    /**
+     * Supplier for asynchronously loading the refreshed fragment. May be null.
+     */
+    private final Supplier<CompletableFuture<Fragment>> autoRefresh;
+
+    /**
+     * Whether loading the fragment from its source failed since it has been cached.
+     */
+    private volatile boolean sourceFailing = false;
+
+    /**
+     * Point in time before which the fragment is not revalidated again, because its last revalidation failed.
+     */
+    private volatile Instant revalidationBackoffExpirationTime = Instant.EPOCH;
+
+    private CacheEntry(Fragment fragment, Supplier<CompletableFuture<Fragment>> autoRefresh) {
+      this.fragment = fragment;
+      this.autoRefresh = autoRefresh;
+    }
+
+    private boolean isServableStale(Instant now) {
+      return fragment.getStaleWhileRevalidateExpirationTime().isAfter(now)
+        || (sourceFailing && fragment.getStaleIfErrorExpirationTime().isAfter(now));
+    }
+  }
 }
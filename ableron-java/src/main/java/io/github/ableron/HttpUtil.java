@@ -10,6 +10,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
@@ -22,6 +23,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
@@ -49,15 +52,102 @@ public class HttpUtil {
   public static final String HEADER_CACHE_CONTROL = "Cache-Control";
   public static final String HEADER_COOKIE = "Cookie";
   public static final String HEADER_DATE = "Date";
+  public static final String HEADER_ETAG = "ETag";
   public static final String HEADER_EXPIRES = "Expires";
+  public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+  public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+  public static final String HEADER_LAST_MODIFIED = "Last-Modified";
   public static final String HEADER_USER_AGENT = "User-Agent";
 
   private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset\\s*=\\s*\"?([^\\s;\"]+)");
 
+  /**
+   * Loads the given URL. Blocks until the response has been received or the request timed out.
+   *
+   * @see #loadUrlAsync(String, HttpClient, Map, Duration)
+   */
   public static Optional<HttpResponse<byte[]>> loadUrl(String uri, HttpClient httpClient, Map<String, List<String>> requestHeaders, Duration requestTimeout) {
+    return loadUrlAsync(uri, httpClient, requestHeaders, requestTimeout).join();
+  }
+
+  /**
+   * Loads the given URL without blocking the calling thread.<br>
+   * <br>
+   * The returned future never completes exceptionally. In case the URL could not be loaded, e.g. due to an
+   * invalid URL, a network error or the request timeout being exceeded, it completes with an empty Optional.
+   *
+   * @param uri The URL to load
+   * @param httpClient The HTTP client to use
+   * @param requestHeaders Request headers to send
+   * @param requestTimeout Timeout for the request
+   * @return Future of the response
+   */
+  public static CompletableFuture<Optional<HttpResponse<byte[]>>> loadUrlAsync(String uri, HttpClient httpClient, Map<String, List<String>> requestHeaders, Duration requestTimeout) {
+    return loadUrlAsync(uri, httpClient, requestHeaders, requestTimeout, () -> {});
+  }
+
+  /**
+   * Loads the given URL without blocking the calling thread.<br>
+   * <br>
+   * The returned future never completes exceptionally. In case the URL could not be loaded, e.g. due to an
+   * invalid URL, a network error or the request timeout being exceeded, it completes with an empty Optional.<br>
+   * <br>
+   * In case the request timeout is exceeded or the returned future is cancelled, the underlying HTTP exchange
+   * is cancelled as well, so that no connection is kept busy receiving a response nobody waits for.
+   *
+   * @param uri The URL to load
+   * @param httpClient The HTTP client to use
+   * @param requestHeaders Request headers to send
+   * @param requestTimeout Timeout for the request
+   * @param onCancelled Invoked in case the in-flight HTTP exchange has been cancelled
+   * @return Future of the response
+   */
+  public static CompletableFuture<Optional<HttpResponse<byte[]>>> loadUrlAsync(String uri, HttpClient httpClient, Map<String, List<String>> requestHeaders, Duration requestTimeout, Runnable onCancelled) {
+    return loadUrlAsync(uri, httpClient, requestHeaders, requestTimeout, onCancelled, () -> {});
+  }
+
+  /**
+   * Loads the given URL without blocking the calling thread like
+   * {@link #loadUrlAsync(String, HttpClient, Map, Duration, Runnable)}.
+   *
+   * @param onTimeout Invoked in case the request timeout has been exceeded
+   */
+  static CompletableFuture<Optional<HttpResponse<byte[]>>> loadUrlAsync(String uri, HttpClient httpClient, Map<String, List<String>> requestHeaders, Duration requestTimeout, Runnable onCancelled, Runnable onTimeout) {
+    try {
+      return loadUrlAsync(HttpRequest.newBuilder().uri(URI.create(uri)).GET(), uri, httpClient, requestHeaders, requestTimeout, onCancelled, onTimeout);
+    } catch (Exception e) {
+      logger.error("[Ableron] Unable to load '{}': {}", uri, Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName()));
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+  }
+
+  /**
+   * Loads the URL of the given request template without blocking the calling thread. Allows to parse the URL
+   * once for multiple requests.
+   *
+   * @param requestTemplate Template of the GET request to the URL. Is copied, not modified
+   * @param uri The URL to load
+   * @param httpClient The HTTP client to use
+   * @param requestHeaders Request headers to send
+   * @param requestTimeout Timeout for the request
+   * @param onCancelled Invoked in case the in-flight HTTP exchange has been cancelled
+   * @return Future of the response
+   * @see #loadUrlAsync(String, HttpClient, Map, Duration, Runnable)
+   */
+  public static CompletableFuture<Optional<HttpResponse<byte[]>>> loadUrlAsync(HttpRequest.Builder requestTemplate, String uri, HttpClient httpClient, Map<String, List<String>> requestHeaders, Duration requestTimeout, Runnable onCancelled) {
+    return loadUrlAsync(requestTemplate, uri, httpClient, requestHeaders, requestTimeout, onCancelled, () -> {});
+  }
+
+  /**
+   * Loads the URL of the given request template without blocking the calling thread like
+   * {@link #loadUrlAsync(HttpRequest.Builder, String, HttpClient, Map, Duration, Runnable)}.
+   *
+   * @param onTimeout Invoked in case the request timeout has been exceeded
+   */
+  static CompletableFuture<Optional<HttpResponse<byte[]>>> loadUrlAsync(HttpRequest.Builder requestTemplate, String uri, HttpClient httpClient, Map<String, List<String>> requestHeaders, Duration requestTimeout, Runnable onCancelled, Runnable onTimeout) {
     try {
       logger.debug("[Ableron] Loading {} with timeout {}ms", uri, requestTimeout.toMillis());
-      var httpRequestBuilder = HttpRequest.newBuilder().uri(URI.create(uri));
+      var httpRequestBuilder = requestTemplate.copy();
       requestHeaders.forEach((name, values) -> values.forEach(value -> httpRequestBuilder.header(name, value)));
       httpRequestBuilder.setHeader("Accept-Encoding", "gzip");
 
@@ -65,25 +155,61 @@ public class HttpUtil {
         httpRequestBuilder.setHeader(HEADER_USER_AGENT, "Ableron/2.0");
       }
 
-      var httpResponse = httpClient.sendAsync(httpRequestBuilder.GET().build(), HttpResponse.BodyHandlers.ofByteArray());
-      return Optional.of(httpResponse.get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS));
-    } catch (TimeoutException e) {
-      logger.error("[Ableron] Unable to load '{}': {}ms timeout exceeded", uri, requestTimeout.toMillis());
-      return Optional.empty();
+      var exchange = httpClient.sendAsync(httpRequestBuilder.timeout(requestTimeout).build(), HttpResponse.BodyHandlers.ofByteArray());
+      var response = detach(exchange)
+        .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+        .handle((httpResponse, throwable) -> {
+          if (throwable == null) {
+            return Optional.of(httpResponse);
+          }
+
+          var cause = (throwable instanceof CompletionException && throwable.getCause() != null) ? throwable.getCause() : throwable;
+
+          if (cause instanceof TimeoutException || cause instanceof HttpTimeoutException) {
+            if (exchange.cancel(true) || cause instanceof HttpTimeoutException) {
+              onCancelled.run();
+            }
+
+            onTimeout.run();
+
+            logger.error("[Ableron] Unable to load '{}': {}ms timeout exceeded", uri, requestTimeout.toMillis());
+          } else {
+            logger.error("[Ableron] Unable to load '{}': {}", uri, Optional.ofNullable(cause.getMessage()).orElse(cause.getClass().getSimpleName()));
+          }
+
+          return Optional.<HttpResponse<byte[]>>empty();
+        });
+      response.whenComplete((httpResponse, throwable) -> {
+        if (response.isCancelled() && exchange.cancel(true)) {
+          onCancelled.run();
+        }
+      });
+      return response;
     } catch (Exception e) {
       logger.error("[Ableron] Unable to load '{}': {}", uri, Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName()));
-      return Optional.empty();
+      return CompletableFuture.completedFuture(Optional.empty());
     }
   }
 
+  /**
+   * Futures returned by the HTTP client cancel the exchange as soon as any of their dependent stages is
+   * cancelled. Dependent stages are created on a plain future in order to decide on cancellation explicitly.
+   */
+  private static <T> CompletableFuture<T> detach(CompletableFuture<T> future) {
+    var detachedFuture = new CompletableFuture<T>();
+    future.whenComplete((value, throwable) -> {
+      if (throwable != null) {
+        detachedFuture.completeExceptionally(throwable);
+      } else {
+        detachedFuture.complete(value);
+      }
+    });
+    return detachedFuture;
+  }
+
   public static Instant calculateResponseExpirationTime(Map<String, List<String>> responseHeaders) {
     var headers = toHttpHeaders(responseHeaders);
-    var cacheControlDirectives = headers
-      .firstValue(HEADER_CACHE_CONTROL)
-      .stream()
-      .flatMap(value -> Arrays.stream(value.toLowerCase().split(",")))
-      .map(String::trim)
-      .collect(Collectors.toList());
+    var cacheControlDirectives = getCacheControlDirectives(headers);
 
     return getCacheLifetimeBySharedCacheMaxAge(cacheControlDirectives)
       .or(() -> getCacheLifetimeByMaxAge(
@@ -97,6 +223,51 @@ public class HttpUtil {
       .orElse(Instant.EPOCH);
   }
 
+  /**
+   * Calculates the period of time after expiration of a response, in which the response may be served stale
+   * while it is revalidated in the background.
+   *
+   * @param responseHeaders The response headers
+   * @return The period of time as indicated by the <code>stale-while-revalidate</code> Cache-Control directive
+   * or an empty Optional if the directive is not present
+   * @see <a href="https://www.rfc-editor.org/rfc/rfc5861#section-3">RFC 5861 Section 3. The stale-while-revalidate Cache-Control Extension</a>
+   */
+  public static Optional<Duration> calculateResponseStaleWhileRevalidate(Map<String, List<String>> responseHeaders) {
+    return getCacheControlDirectiveSeconds(getCacheControlDirectives(toHttpHeaders(responseHeaders)), "stale-while-revalidate")
+      .map(Duration::ofSeconds);
+  }
+
+  /**
+   * Calculates the period of time after expiration of a response, in which the response may be served stale
+   * in case the origin cannot be reached or responds with an error.
+   *
+   * @param responseHeaders The response headers
+   * @return The period of time as indicated by the <code>stale-if-error</code> Cache-Control directive
+   * or an empty Optional if the directive is not present
+   * @see <a href="https://www.rfc-editor.org/rfc/rfc5861#section-4">RFC 5861 Section 4. The stale-if-error Cache-Control Extension</a>
+   */
+  public static Optional<Duration> calculateResponseStaleIfError(Map<String, List<String>> responseHeaders) {
+    return getCacheControlDirectiveSeconds(getCacheControlDirectives(toHttpHeaders(responseHeaders)), "stale-if-error")
+      .map(Duration::ofSeconds);
+  }
+
+  private static List<String> getCacheControlDirectives(HttpHeaders headers) {
+    return headers
+      .firstValue(HEADER_CACHE_CONTROL)
+      .stream()
+      .flatMap(value -> Arrays.stream(value.toLowerCase().split(",")))
+      .map(String::trim)
+      .collect(Collectors.toList());
+  }
+
+  private static Optional<Long> getCacheControlDirectiveSeconds(List<String> cacheControlDirectives, String directiveName) {
+    return cacheControlDirectives.stream()
+      .filter(directive -> directive.matches("^" + directiveName + "=[0-9]{1,9}$"))
+      .findFirst()
+      .map(directive -> directive.substring(directiveName.length() + 1))
+      .map(Long::parseLong);
+  }
+
   private static Optional<Instant> getCacheLifetimeBySharedCacheMaxAge(List<String> cacheControlDirectives) {
     return cacheControlDirectives.stream()
       .filter(directive -> directive.matches("^s-maxage=[1-9][0-9]*$"))
@@ -144,24 +315,32 @@ public class HttpUtil {
    * Handles gzip compressed body automatically.
    */
   public static String getResponseBodyAsString(HttpResponse<byte[]> httpResponse) {
+    return new String(getResponseBody(httpResponse), charsetFrom(httpResponse.headers()));
+  }
+
+  /**
+   * Returns the body of the given http response without decoding it. The charset of the body is provided
+   * by {@link #charsetFrom(HttpHeaders)}.
+   * Handles gzip compressed body automatically.
+   */
+  public static byte[] getResponseBody(HttpResponse<byte[]> httpResponse) {
     var contentEncoding = httpResponse.headers()
       .firstValue("Content-Encoding")
       .orElse("plaintext");
-    var charset = charsetFrom(httpResponse.headers());
 
     switch (contentEncoding) {
       case "plaintext":
-        return new String(httpResponse.body(), charset);
+        return httpResponse.body();
       case "gzip":
         try {
-          return new String(new GZIPInputStream(new ByteArrayInputStream(httpResponse.body())).readAllBytes(), charset);
+          return new GZIPInputStream(new ByteArrayInputStream(httpResponse.body())).readAllBytes();
         } catch (IOException e) {
           logger.error("[Ableron] Unable to decode response body with content encoding 'gzip'", e);
-          return "";
+          return new byte[0];
         }
       default:
         logger.error("[Ableron] Unknown content encoding '{}'. Discarding response body", contentEncoding);
-        return "";
+        return new byte[0];
     }
   }
 
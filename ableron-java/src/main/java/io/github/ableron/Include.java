@@ -9,66 +9,14 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Include {
 
-  /**
-   * Name of the optional attribute which contains the ID of the include - an optional unique name.
-   */
-  private static final String ATTR_ID = "id";
-
-  /**
-   * Name of the optional attribute which contains the source URl to resolve the include to.
-   */
-  private static final String ATTR_SOURCE = "src";
-
-  /**
-   * Name of the optional attribute which contains the timeout for requesting the src URL.
-   */
-  private static final String ATTR_SOURCE_TIMEOUT = "src-timeout";
-
-  /**
-   * Name of the optional attribute which contains the fallback URL to resolve the include to in case the
-   * source URL could not be loaded.
-   */
-  private static final String ATTR_FALLBACK_SOURCE = "fallback-src";
-
-  /**
-   * Name of the optional attribute which contains the timeout for requesting the fallback-src URL.
-   */
-  private static final String ATTR_FALLBACK_SOURCE_TIMEOUT = "fallback-src-timeout";
-
-  /**
-   * Name of the optional attribute which denotes a fragment whose response code is set as response code
-   * for the page.
-   */
-  private static final String ATTR_PRIMARY = "primary";
-
-  /**
-   * Name of the optional attribute which contains a comma separated list of request headers that shall
-   * be forwarded from the parent request to fragment requests.
-   */
-  private static final String ATTR_HEADERS = "headers";
-
-  /**
-   * Name of the optional attribute which contains a comma separated list of HTTP cookie names that shall
-   * be passed from the parent request to fragment requests.
-   */
-  private static final String ATTR_COOKIES = "cookies";
-
-  /**
-   * Regular expression for parsing timeouts.<br>
-   * <br>
-   * Accepts plain numbers and numbers suffixed with either <code>s</code> indicating <code>seconds</code> or
-   * <code>ms</code> indicating <code>milliseconds</code>.
-   */
-  private static final Pattern TIMEOUT_PATTERN = Pattern.compile("(\\d+)(ms|s)?");
-
   /**
    * HTTP status codes indicating successful and cacheable responses.
    */
@@ -81,74 +29,15 @@ public class Include {
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   /**
-   * Raw include tag.
-   */
-  private final String rawIncludeTag;
-
-  /**
-   * Raw attributes of the include tag.
-   */
-  private final Map<String, String> rawAttributes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-
-  /**
-   * Fragment ID. Either generated or passed via attribute.
-   */
-  private final String id;
-
-  /**
-   * URL of the fragment to include.
-   */
-  private final String src;
-
-  /**
-   * Timeout for requesting the src URL.
-   */
-  private final Duration srcTimeout;
-
-  /**
-   * URL of the fragment to include in case the request to the source URL failed.
-   */
-  private final String fallbackSrc;
-
-  /**
-   * Timeout for requesting the fallback-src URL.
+   * Definition of this include as given by its include tag. May be shared with other Includes.
    */
-  private final Duration fallbackSrcTimeout;
+  private final IncludeDefinition definition;
 
   /**
-   * Whether the include provides the primary fragment and thus sets the response code of the page.
+   * Outcome of resolving this include. Set only once, so that an in-flight resolution completing after this
+   * include has already been resolved otherwise, e.g. due to an exceeded composition deadline, is ignored.
    */
-  private final boolean primary;
-
-  /**
-   * Request headers, that shall be forwarded from the parent request to fragment requests.
-   */
-  private final Collection<String> headersToForward = new ArrayList<>();
-
-  /**
-   * Cookies, that shall be forwarded from the parent request to fragment requests.
-   */
-  private final Collection<String> cookiesToForward = new ArrayList<>();
-
-  /**
-   * Fallback content to use in case the include could not be resolved.
-   */
-  private final String fallbackContent;
-
-  /**
-   * Recorded response of the errored primary fragment.
-   */
-  private Fragment erroredPrimaryFragment = null;
-
-  /**
-   * Fragment source of the errored primary fragment
-   */
-  private String erroredPrimaryFragmentSource = null;
-
-  private boolean resolved = false;
-  private Fragment resolvedFragment = null;
-  private String resolvedFragmentSource = null;
-  private int resolveTimeMillis = 0;
+  private final AtomicReference<Resolution> resolution = new AtomicReference<>();
 
   /**
    * Constructs a new Include.
@@ -177,235 +66,451 @@ public class Include {
    * @param fallbackContent Fallback content to use in case the include could not be resolved
    */
   public Include(String rawIncludeTag, Map<String, String> rawAttributes, String fallbackContent) {
-    this.rawIncludeTag = Optional.ofNullable(rawIncludeTag).orElse("");
-    this.rawAttributes.putAll(Optional.ofNullable(rawAttributes).orElseGet(Map::of));
-    this.id = buildIncludeId(this.rawAttributes.get(ATTR_ID));
-    this.src = this.rawAttributes.get(ATTR_SOURCE);
-    this.srcTimeout = parseTimeout(this.rawAttributes.get(ATTR_SOURCE_TIMEOUT));
-    this.fallbackSrc = this.rawAttributes.get(ATTR_FALLBACK_SOURCE);
-    this.fallbackSrcTimeout = parseTimeout(this.rawAttributes.get(ATTR_FALLBACK_SOURCE_TIMEOUT));
-    this.primary = hasBooleanAttribute(ATTR_PRIMARY);
-    this.headersToForward.addAll(parseCommaSeparatedList(this.rawAttributes.get(ATTR_HEADERS), true));
-    this.cookiesToForward.addAll(parseCommaSeparatedList(this.rawAttributes.get(ATTR_COOKIES), false));
-    this.fallbackContent = Optional.ofNullable(fallbackContent).orElse("");
+    this(new IncludeDefinition(rawIncludeTag, rawAttributes, fallbackContent), null);
+  }
+
+  /**
+   * Unused second parameter keeps <code>new Include(null)</code> unambiguous for dynamically typed callers like Groovy,
+   * which consider non-public constructors as well.
+   */
+  private Include(IncludeDefinition definition, Void unused) {
+    this.definition = Objects.requireNonNull(definition, "definition must not be null");
+  }
+
+  /**
+   * Creates a new unresolved Include of the given definition without parsing the include tag again.
+   *
+   * @param definition Definition of the include
+   * @return The Include
+   */
+  static Include of(IncludeDefinition definition) {
+    return new Include(definition, null);
+  }
+
+  /**
+   * @return Definition of this include as given by its include tag
+   */
+  public IncludeDefinition getDefinition() {
+    return definition;
   }
 
   /**
    * @return The raw include tag
    */
   public String getRawIncludeTag() {
-    return rawIncludeTag;
+    return definition.getRawIncludeTag();
   }
 
   /**
    * @return The raw attributes of the include tag.
    */
   public Map<String, String> getRawAttributes() {
-    return rawAttributes;
+    return definition.getRawAttributes();
   }
 
   /**
    * @return ID of the include
    */
   public String getId() {
-    return id;
+    return definition.getId();
   }
 
   /**
    * @return URL of the fragment to include
    */
   public String getSrc() {
-    return src;
+    return definition.getSrc();
   }
 
   /**
    * @return The timeout for requesting the src URL
    */
   public Duration getSrcTimeout() {
-    return srcTimeout;
+    return definition.getSrcTimeout();
   }
 
   /**
    * @return URL of the fragment to include in case the source URL could not be loaded
    */
   public String getFallbackSrc() {
-    return fallbackSrc;
+    return definition.getFallbackSrc();
   }
 
   /**
    * @return The timeout for requesting the fallback-src URL
    */
   public Duration getFallbackSrcTimeout() {
-    return fallbackSrcTimeout;
+    return definition.getFallbackSrcTimeout();
   }
 
   /**
    * @return Whether this is a primary include
    */
   public boolean isPrimary() {
-    return primary;
+    return definition.isPrimary();
   }
 
   public Collection<String> getHeadersToForward() {
-    return headersToForward;
+    return definition.getHeadersToForward();
   }
 
   public Collection<String> getCookiesToForward() {
-    return cookiesToForward;
+    return definition.getCookiesToForward();
   }
 
   /**
    * @return Fallback content to use in case the include could not be resolved
    */
   public String getFallbackContent() {
-    return fallbackContent;
+    return definition.getFallbackContent();
   }
 
   public boolean isResolved() {
-    return resolved;
+    return resolution.get() != null;
   }
 
   public Fragment getResolvedFragment() {
-    return resolvedFragment;
+    var resolution = this.resolution.get();
+    return resolution != null ? resolution.fragment : null;
   }
 
   public String getResolvedFragmentSource() {
-    return resolvedFragmentSource;
+    var resolution = this.resolution.get();
+    return resolution != null ? resolution.fragmentSource : null;
   }
 
   public int getResolveTimeMillis() {
-    return resolveTimeMillis;
+    var resolution = this.resolution.get();
+    return resolution != null ? (int) (resolution.resolveTimeNanos / NANO_2_MILLIS) : 0;
+  }
+
+  long getResolveTimeNanos() {
+    var resolution = this.resolution.get();
+    return resolution != null ? resolution.resolveTimeNanos : 0;
   }
 
   /**
-   * Resolves this include.
+   * Resolves this include without blocking the calling thread.<br>
+   * <br>
+   * Fragments are loaded asynchronously. Processing of loaded fragments is performed in the given
+   * thread pool or, in case it rejects the task, on the thread which received the fragment, so that a loaded
+   * fragment is never discarded. No thread waits for network I/O.<br>
+   * <br>
+   * Discards the outcome of a previous resolution. Once resolved, this include is not resolved again by the same
+   * resolution, e.g. in case its fragment arrives after the include has been resolved due to an exceeded deadline.
    *
    * @param httpClient HTTP client used to resolve this include
    * @param parentRequestHeaders Parent request headers which are passed to fragment requests if allowed by config
    * @param fragmentCache Cache for fragments
    * @param config Global ableron configuration
-   * @param resolveThreadPool Thread pool to use for resolving
+   * @param resolveThreadPool Thread pool to use for processing loaded fragments
    * @return The resolved Include
    */
-  public CompletableFuture<Include> resolve(HttpClient httpClient, Map<String, List<String>> parentRequestHeaders, FragmentCache fragmentCache, AbleronConfig config, ExecutorService resolveThreadPool) {
+  public CompletableFuture<Include> resolve(HttpClient httpClient, Map<String, List<String>> parentRequestHeaders, FragmentCache fragmentCache, AbleronConfig config, Executor resolveThreadPool) {
     var resolveStartTime = System.nanoTime();
     var requestHeaders = buildRequestHeaders(parentRequestHeaders, config);
-    erroredPrimaryFragment = null;
-
-    return CompletableFuture.supplyAsync(
-      () -> load(src, httpClient, requestHeaders, fragmentCache, config, getRequestTimeout(srcTimeout, config), ATTR_SOURCE)
-        .or(() -> load(fallbackSrc, httpClient, requestHeaders, fragmentCache, config, getRequestTimeout(fallbackSrcTimeout, config), ATTR_FALLBACK_SOURCE))
-        .or(() -> {
-          resolvedFragmentSource = erroredPrimaryFragmentSource;
-          return Optional.ofNullable(erroredPrimaryFragment);
-        })
-        .or(() -> {
-          resolvedFragmentSource = "fallback content";
-          return Optional.of(new Fragment(200, fallbackContent));
-        })
-        .map(fragment -> resolveWith(fragment, (int) ((System.nanoTime() - resolveStartTime) / NANO_2_MILLIS), resolvedFragmentSource))
-        .orElse(this), resolveThreadPool);
+    var cancellationScope = new CancellationScope();
+    resolution.set(null);
+
+    var resolutionFuture = load(definition.getSrc(), httpClient, requestHeaders, fragmentCache, config, getRequestTimeout(definition.getSrcTimeout(), config), IncludeDefinition.ATTR_SOURCE, resolveThreadPool, cancellationScope)
+      .thenCompose(loadedSrc -> loadedSrc.isSuccessful()
+        ? CompletableFuture.completedFuture(loadedSrc)
+        : load(definition.getFallbackSrc(), httpClient, requestHeaders, fragmentCache, config, getRequestTimeout(definition.getFallbackSrcTimeout(), config), IncludeDefinition.ATTR_FALLBACK_SOURCE, resolveThreadPool, cancellationScope)
+          .thenApply(loadedFallbackSrc -> loadedFallbackSrc.isSuccessful()
+            ? loadedFallbackSrc
+            : getErroredPrimaryFragmentOrFallbackContent(loadedSrc, loadedFallbackSrc)))
+      .thenApply(loadedFragment -> resolveWith(loadedFragment.fragment, loadedFragment.fragmentSource, resolveStartTime));
+    resolutionFuture.whenComplete((include, throwable) -> {
+      if (resolutionFuture.isCancelled()) {
+        cancellationScope.cancel();
+      }
+    });
+    return resolutionFuture;
+  }
+
+  /**
+   * Resolves this include on the calling thread, in case the fragment of its src is cached and has a success
+   * status code. Does neither load anything nor touch any executor. In case this include cannot be resolved
+   * from the cache, it has to be resolved via {@link #resolve}.
+   *
+   * @param parentRequestHeaders Parent request headers which are passed to fragment requests if allowed by config
+   * @param fragmentCache Cache for fragments
+   * @param config Global ableron configuration
+   * @return Whether this include has been resolved
+   */
+  boolean resolveFromCache(Map<String, List<String>> parentRequestHeaders, FragmentCache fragmentCache, AbleronConfig config) {
+    if (definition.getSrc() == null) {
+      return false;
+    }
+
+    var resolveStartTime = System.nanoTime();
+    var fragmentCacheKey = buildFragmentCacheKey(definition.getSrc(), buildRequestHeaders(parentRequestHeaders, config), config);
+    var fragment = fragmentCache.getIfCached(fragmentCacheKey, cachedFragment -> HTTP_STATUS_CODES_SUCCESS.contains(cachedFragment.getStatusCode()));
+
+    if (fragment.isEmpty()) {
+      return false;
+    }
+
+    resolution.set(null);
+    resolveWith(
+      fragment.get(),
+      (fragment.get().getExpirationTime().isAfter(Instant.now()) ? "cached " : "stale ") + IncludeDefinition.ATTR_SOURCE,
+      resolveStartTime);
+    return true;
+  }
+
+  /**
+   * Resolves this include with a stale fragment of its src, if available, or with its fallback content.
+   * Used in case the include could not be resolved in time.
+   *
+   * @param parentRequestHeaders Parent request headers which are passed to fragment requests if allowed by config
+   * @param fragmentCache Cache for fragments
+   * @param config Global ableron configuration
+   * @param resolveTimeMillis The time in milliseconds it took to resolve the Include
+   * @return The resolved Include
+   */
+  public Include resolveWithStaleFragmentOrFallbackContent(Map<String, List<String>> parentRequestHeaders, FragmentCache fragmentCache, AbleronConfig config, int resolveTimeMillis) {
+    if (definition.getSrc() != null) {
+      var fragmentCacheKey = buildFragmentCacheKey(definition.getSrc(), buildRequestHeaders(parentRequestHeaders, config), config);
+      var staleFragment = fragmentCache.getStaleIfError(fragmentCacheKey);
+
+      if (staleFragment.isPresent()) {
+        return resolveWith(staleFragment.get(), resolveTimeMillis, "stale " + IncludeDefinition.ATTR_SOURCE);
+      }
+    }
+
+    return resolveWith(new Fragment(200, definition.getFallbackContent()), resolveTimeMillis, "fallback content");
   }
 
   /**
-   * Resolves this Include with the given Fragment.
+   * Resolves this Include with the given Fragment. Does nothing, if this Include has already been resolved.
    *
    * @param fragment The Fragment to resolve this Include with
    * @param resolveTimeMillis The time in milliseconds it took to resolve the Include
    * @param resolvedFragmentSource Source of the fragment
    */
   public Include resolveWith(Fragment fragment, int resolveTimeMillis, String resolvedFragmentSource) {
-    this.resolved = true;
-    this.resolvedFragment = fragment;
-    this.resolvedFragmentSource = resolvedFragmentSource != null ? resolvedFragmentSource : "fallback content";
-    this.resolveTimeMillis = resolveTimeMillis;
-    this.logger.debug("[Ableron] Resolved include '{}' in {}ms", this.id, this.resolveTimeMillis);
+    return complete(fragment, resolvedFragmentSource, resolveTimeMillis * NANO_2_MILLIS);
+  }
+
+  /**
+   * Resolves this Include with the given Fragment. The resolve time is measured from the given start time
+   * with nanosecond precision.
+   *
+   * @param fragment The Fragment to resolve this Include with
+   * @param resolvedFragmentSource Source of the fragment
+   * @param resolveStartTime Value of {@link System#nanoTime()} when resolving this Include started
+   */
+  Include resolveWith(Fragment fragment, String resolvedFragmentSource, long resolveStartTime) {
+    return complete(fragment, resolvedFragmentSource, System.nanoTime() - resolveStartTime);
+  }
+
+  private Include complete(Fragment fragment, String resolvedFragmentSource, long resolveTimeNanos) {
+    if (this.resolution.compareAndSet(null, new Resolution(fragment, resolvedFragmentSource != null ? resolvedFragmentSource : "fallback content", resolveTimeNanos))) {
+      this.logger.debug("[Ableron] Resolved include '{}' in {}ms", getId(), getResolveTimeMillis());
+    }
+
     return this;
   }
 
-  private Map<String, List<String>> buildRequestHeaders(Map<String, List<String>> parentRequestHeaders, AbleronConfig config) {
-    var requestHeaders = filterHeaders(
-      parentRequestHeaders,
-      Stream.of(
-          config.getRequestHeadersForward().stream(),
-          config.getRequestHeadersForwardVary().stream(),
-          this.headersToForward.stream())
-        .flatMap(headers -> headers)
-        .collect(Collectors.toList())
-    );
-    HttpUtil.getCookieHeaderValue(parentRequestHeaders, this.cookiesToForward).ifPresent(value -> requestHeaders.put(HttpUtil.HEADER_COOKIE, List.of(value)));
+  Map<String, List<String>> buildRequestHeaders(Map<String, List<String>> parentRequestHeaders, AbleronConfig config) {
+    var headersToForward = definition.getRequestHeadersToForward(config);
+    var requestHeaders = new HashMap<String, List<String>>();
+
+    for (var header : parentRequestHeaders.entrySet()) {
+      if (headersToForward.contains(header.getKey().toLowerCase())) {
+        requestHeaders.put(header.getKey(), header.getValue());
+      }
+    }
+
+    HttpUtil.getCookieHeaderValue(parentRequestHeaders, definition.getCookiesToForward()).ifPresent(value -> requestHeaders.put(HttpUtil.HEADER_COOKIE, List.of(value)));
     return requestHeaders;
   }
 
-  private Optional<Fragment> load(
+  /**
+   * Loads the fragment of the given URI from the cache or from its source. In case the fragment cannot be loaded
+   * from its source, a stale fragment is used, if available.
+   */
+  private CompletableFuture<LoadedFragment> load(
     String uri,
     HttpClient httpClient,
     Map<String, List<String>> requestHeaders,
     FragmentCache fragmentCache,
     AbleronConfig config,
     Duration requestTimeout,
-    String urlSource) {
-    return Optional.ofNullable(uri)
-      .map(uri1 -> {
-        var fragmentCacheKey = buildFragmentCacheKey(uri, requestHeaders, config.getRequestHeadersForwardVary());
-        var fragmentFromCache = fragmentCache.get(fragmentCacheKey);
-        this.resolvedFragmentSource = (fragmentFromCache.isPresent() ? "cached " : "remote ") + urlSource;
-
-        return fragmentFromCache.orElseGet(() -> HttpUtil.loadUrl(uri, httpClient, requestHeaders, requestTimeout)
-          .filter(response -> {
-            if (!isHttpStatusCacheable(response.statusCode())) {
-              logger.error("[Ableron] Fragment '{}' returned status code {}", uri, response.statusCode());
-              recordErroredPrimaryFragment(
-                toFragment(response, uri, config.getResponseHeadersForward(), true),
-                this.resolvedFragmentSource
-              );
-              return false;
-            }
-
-            return true;
-          })
-          .map(response -> {
-            var fragment = toFragment(response, uri, config.getResponseHeadersForward(), false);
-            fragmentCache.set(fragmentCacheKey, fragment, () ->
-              HttpUtil.loadUrl(uri, httpClient, requestHeaders, requestTimeout)
-                .map(res -> toFragment(res, uri, config.getResponseHeadersForward(), false))
-                .orElse(null));
-            return fragment;
+    String urlSource,
+    Executor resolveThreadPool,
+    CancellationScope cancellationScope) {
+    if (uri == null || cancellationScope.isCancelled()) {
+      return CompletableFuture.completedFuture(LoadedFragment.NONE);
+    }
+
+    var fragmentCacheKey = buildFragmentCacheKey(uri, requestHeaders, config);
+    var fragmentFromCache = fragmentCache.get(fragmentCacheKey);
+
+    if (fragmentFromCache.isPresent()) {
+      var cachedFragment = fragmentFromCache.get();
+      return CompletableFuture.completedFuture(logErroredFragment(new LoadedFragment(
+        cachedFragment,
+        (cachedFragment.getExpirationTime().isAfter(Instant.now()) ? "cached " : "stale ") + urlSource), uri));
+    }
+
+    return cancellationScope.track(fragmentCache.load(fragmentCacheKey, requestTimeout, () -> {
+        var fragmentRequest = loadFragment(uri, fragmentCacheKey, httpClient, requestHeaders, fragmentCache, config, requestTimeout, resolveThreadPool);
+        return CancellationScope.propagateCancellation(fragmentRequest.thenApply(loadedFragment -> {
+          loadedFragment
+            .filter(f -> isHttpStatusCacheable(f.getStatusCode()))
+            .ifPresent(f -> fragmentCache.setWithAsyncAutoRefresh(fragmentCacheKey, f, () ->
+              fragmentCache.load(fragmentCacheKey, requestTimeout, () -> loadFragment(uri, fragmentCacheKey, httpClient, requestHeaders, fragmentCache, config, requestTimeout, resolveThreadPool))
+                .thenApply(refreshedFragment -> refreshedFragment.orElse(null))));
+          return loadedFragment;
+        }), fragmentRequest);
+      }))
+      .thenApply(loadedFragment -> loadedFragment.isPresent() && isHttpStatusCacheable(loadedFragment.get().getStatusCode())
+        ? new LoadedFragment(loadedFragment.get(), "remote " + urlSource)
+        : fragmentCache.getStaleIfError(fragmentCacheKey)
+          .map(staleFragment -> {
+            logger.warn("[Ableron] Unable to load fragment '{}'. Using stale fragment", uri);
+            return new LoadedFragment(staleFragment, "stale " + urlSource);
           })
-          .orElse(null));
-      })
-      .filter(fragment -> {
-        if (!HTTP_STATUS_CODES_SUCCESS.contains(fragment.getStatusCode())) {
-          logger.error("[Ableron] Fragment '{}' returned status code {}", uri, fragment.getStatusCode());
-          recordErroredPrimaryFragment(fragment, this.resolvedFragmentSource);
-          return false;
-        }
+          .orElseGet(() -> new LoadedFragment(loadedFragment.orElse(null), "remote " + urlSource)))
+      .thenApply(loadedFragment -> logErroredFragment(loadedFragment, uri));
+  }
+
+  private LoadedFragment logErroredFragment(LoadedFragment loadedFragment, String uri) {
+    if (loadedFragment.fragment != null && !loadedFragment.isSuccessful()) {
+      logger.error("[Ableron] Fragment '{}' returned status code {}", uri, loadedFragment.fragment.getStatusCode());
+    }
 
-        return true;
-      });
+    return loadedFragment;
+  }
+
+  /**
+   * Provides the errored fragment of the src or fallback-src of a primary include, so that its status code is
+   * forwarded, or the fallback content otherwise.
+   */
+  private LoadedFragment getErroredPrimaryFragmentOrFallbackContent(LoadedFragment loadedSrc, LoadedFragment loadedFallbackSrc) {
+    if (definition.isPrimary() && loadedSrc.fragment != null) {
+      return loadedSrc;
+    }
+
+    if (definition.isPrimary() && loadedFallbackSrc.fragment != null) {
+      return loadedFallbackSrc;
+    }
+
+    return new LoadedFragment(new Fragment(200, definition.getFallbackContent()), "fallback content");
+  }
+
+  /**
+   * Loads a fragment from its source. In case the fragment is cached with validators, the fragment is revalidated
+   * via conditional request. A response with status code 304 extends the lifetime of the cached fragment without
+   * transferring the fragment again.
+   */
+  private CompletableFuture<Optional<Fragment>> loadFragment(
+    String uri,
+    String fragmentCacheKey,
+    HttpClient httpClient,
+    Map<String, List<String>> requestHeaders,
+    FragmentCache fragmentCache,
+    AbleronConfig config,
+    Duration requestTimeout,
+    Executor resolveThreadPool) {
+    var cachedFragment = fragmentCache.peek(fragmentCacheKey).filter(Fragment::hasValidators);
+
+    var requestTemplate = definition.getRequestTemplate(uri);
+    var fragmentRequestHeaders = addConditionalRequestHeaders(requestHeaders, cachedFragment);
+    var metrics = config.getMetrics();
+    var fetchStartTime = System.nanoTime();
+    var response = requestTemplate != null
+      ? HttpUtil.loadUrlAsync(requestTemplate, uri, httpClient, fragmentRequestHeaders, requestTimeout, fragmentCache.stats()::recordCancelledRequest, metrics::recordFragmentRequestTimeout)
+      : HttpUtil.loadUrlAsync(uri, httpClient, fragmentRequestHeaders, requestTimeout, fragmentCache.stats()::recordCancelledRequest, metrics::recordFragmentRequestTimeout);
+    response.thenAccept(httpResponse -> httpResponse.ifPresent(res -> {
+      var fetchTimeNanos = System.nanoTime() - fetchStartTime;
+      fragmentCache.stats().fragmentFetchTime().record(fetchTimeNanos);
+      metrics.recordFragmentResponse(res.statusCode(), fetchTimeNanos);
+    }));
+
+    return CancellationScope.propagateCancellation(response.thenApplyAsync(httpResponse -> httpResponse.map(res -> {
+      if (res.statusCode() == 304 && cachedFragment.isPresent()) {
+        fragmentCache.stats().recordNotModified();
+        return revalidate(cachedFragment.get(), res, config);
+      }
+
+      return toFragment(res, uri, config, !isHttpStatusCacheable(res.statusCode()));
+    }), orCallingThread(resolveThreadPool)), response);
+  }
+
+  /**
+   * @return Executor executing tasks in the given executor or on the calling thread, in case the given executor
+   * rejects them
+   */
+  private static Executor orCallingThread(Executor executor) {
+    return task -> {
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.run();
+      }
+    };
+  }
+
+  private Map<String, List<String>> addConditionalRequestHeaders(Map<String, List<String>> requestHeaders, Optional<Fragment> cachedFragment) {
+    if (cachedFragment.isEmpty()) {
+      return requestHeaders;
+    }
+
+    var conditionalRequestHeaders = new HashMap<>(requestHeaders);
+    cachedFragment.get().getETag().ifPresent(eTag -> conditionalRequestHeaders.put(HttpUtil.HEADER_IF_NONE_MATCH, List.of(eTag)));
+    cachedFragment.get().getLastModified().ifPresent(lastModified -> conditionalRequestHeaders.put(HttpUtil.HEADER_IF_MODIFIED_SINCE, List.of(lastModified)));
+    return conditionalRequestHeaders;
+  }
+
+  /**
+   * Extends the lifetime of the cached fragment as indicated by the 304 response. In case the 304 response does
+   * not contain freshness information, the freshness lifetime and stale periods of the cached fragment remain
+   * in force.
+   */
+  private Fragment revalidate(Fragment cachedFragment, HttpResponse<byte[]> notModifiedResponse, AbleronConfig config) {
+    var responseHeaders = notModifiedResponse.headers().map();
+
+    if (notModifiedResponse.headers().firstValue(HttpUtil.HEADER_CACHE_CONTROL).isEmpty()
+      && notModifiedResponse.headers().firstValue(HttpUtil.HEADER_EXPIRES).isEmpty()) {
+      return cachedFragment.withLifetime(
+        Instant.now().plus(cachedFragment.getFreshnessLifetime()),
+        cachedFragment.getStaleWhileRevalidate(),
+        cachedFragment.getStaleIfError()
+      );
+    }
+
+    return cachedFragment.withLifetime(
+      HttpUtil.calculateResponseExpirationTime(responseHeaders),
+      HttpUtil.calculateResponseStaleWhileRevalidate(responseHeaders).orElse(config.getCacheStaleWhileRevalidateDefault()),
+      HttpUtil.calculateResponseStaleIfError(responseHeaders).orElse(config.getCacheStaleIfErrorDefault())
+    );
   }
 
   private Fragment toFragment(
     HttpResponse<byte[]> response,
     String url,
-    Collection<String> responseHeadersForward,
+    AbleronConfig config,
     boolean preventCaching) {
     return new Fragment(
       url,
       response.statusCode(),
-      HttpUtil.getResponseBodyAsString(response),
+      HttpUtil.getResponseBody(response),
+      HttpUtil.charsetFrom(response.headers()),
       preventCaching ? Instant.EPOCH : HttpUtil.calculateResponseExpirationTime(response.headers().map()),
-      filterHeaders(response.headers().map(), responseHeadersForward)
+      preventCaching ? Duration.ZERO : HttpUtil.calculateResponseStaleWhileRevalidate(response.headers().map())
+        .orElse(config.getCacheStaleWhileRevalidateDefault()),
+      preventCaching ? Duration.ZERO : HttpUtil.calculateResponseStaleIfError(response.headers().map())
+        .orElse(config.getCacheStaleIfErrorDefault()),
+      filterHeaders(response.headers().map(), config.getResponseHeadersForward())
+    ).withValidators(
+      preventCaching ? null : response.headers().firstValue(HttpUtil.HEADER_ETAG).orElse(null),
+      preventCaching ? null : response.headers().firstValue(HttpUtil.HEADER_LAST_MODIFIED).orElse(null)
     );
   }
 
-  private void recordErroredPrimaryFragment(Fragment fragment, String fragmentSource) {
-    if (primary && erroredPrimaryFragment == null) {
-      this.erroredPrimaryFragment = fragment;
-      this.erroredPrimaryFragmentSource = fragmentSource;
-    }
-  }
-
   private Map<String, List<String>> filterHeaders(Map<String, List<String>> headersToFilter, Collection<String> allowedHeaders) {
     return headersToFilter.entrySet()
       .stream()
@@ -413,40 +518,6 @@ public class Include {
       .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
   }
 
-  private Duration parseTimeout(String timeoutAsString) {
-    return Optional.ofNullable(timeoutAsString)
-      .map(timeout -> {
-          Matcher matcher = TIMEOUT_PATTERN.matcher(timeout);
-
-          if (matcher.matches()) {
-            String amount = matcher.group(1);
-            String unit = matcher.group(2);
-
-            if ("s".equals(unit)) {
-              return Duration.ofSeconds(Long.parseLong(amount));
-            }
-
-            return Duration.ofMillis(Long.parseLong(amount));
-          }
-
-          logger.error("[Ableron] Invalid request timeout: '{}'", timeout);
-          return null;
-      })
-      .orElse(null);
-  }
-
-  private List<String> parseCommaSeparatedList(String entriesAsString, boolean toLowerCase) {
-    return Optional.ofNullable(entriesAsString)
-      .map(entries -> Arrays.stream(entries.split(","))
-          .map(String::trim)
-          .map(entry -> toLowerCase ? entry.toLowerCase() : entry)
-          .filter(entry -> !entry.isEmpty())
-          .distinct()
-          .collect(Collectors.toList())
-      )
-      .orElse(List.of());
-  }
-
   private Duration getRequestTimeout(Duration localTimeout, AbleronConfig config) {
     return Optional.ofNullable(localTimeout)
       .orElse(config.getRequestTimeout());
@@ -456,24 +527,15 @@ public class Include {
     return HttpUtil.HTTP_STATUS_CODES_CACHEABLE.contains(httpStatusCode);
   }
 
-  private String buildIncludeId(String providedId) {
-    return Optional.ofNullable(providedId)
-      .map(id -> id.replaceAll("[^A-Za-z0-9_-]", ""))
-      .filter(id -> !id.isEmpty())
-      .orElse(String.valueOf(Math.abs(rawIncludeTag.hashCode())));
-  }
-
-  private String buildFragmentCacheKey(String fragmentUrl, Map<String, List<String>> requestHeaders, Collection<String> requestHeadersForwardVary) {
-    var headersRelevantForCaching = Stream.concat(requestHeadersForwardVary.stream(), this.headersToForward.stream())
-      .map(String::toLowerCase)
-      .collect(Collectors.toSet());
+  String buildFragmentCacheKey(String fragmentUrl, Map<String, List<String>> requestHeaders, AbleronConfig config) {
+    var headersRelevantForCaching = definition.getRequestHeadersVary(config);
     var headersCacheKey = requestHeaders.entrySet()
       .stream()
       .filter(header -> headersRelevantForCaching.contains(header.getKey().toLowerCase()))
       .sorted((c1, c2) -> c1.getKey().compareToIgnoreCase(c2.getKey()))
       .map(header -> "\nh:" + header.getKey().toLowerCase() + "=" + String.join(",", header.getValue()))
       .collect(Collectors.joining());
-    var cookiesCacheKey = HttpUtil.getCookieHeaderValue(requestHeaders, this.cookiesToForward)
+    var cookiesCacheKey = HttpUtil.getCookieHeaderValue(requestHeaders, definition.getCookiesToForward())
       .map(cookieHeader -> cookieHeader.split(";"))
       .stream()
       .flatMap(Stream::of)
@@ -484,11 +546,6 @@ public class Include {
     return fragmentUrl + headersCacheKey + cookiesCacheKey;
   }
 
-  private boolean hasBooleanAttribute(String attributeName) {
-    return rawAttributes.containsKey(attributeName)
-      && List.of("", attributeName.toLowerCase()).contains(rawAttributes.get(attributeName).toLowerCase());
-  }
-
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -500,11 +557,48 @@ public class Include {
 
     Include include = (Include) o;
 
-    return rawIncludeTag.equals(include.rawIncludeTag);
+    return getRawIncludeTag().equals(include.getRawIncludeTag());
   }
 
   @Override
   public int hashCode() {
-    return rawIncludeTag.hashCode();
+    return getRawIncludeTag().hashCode();
+  }
+
+  /**
+   * Fragment loaded while resolving this include along with its source. Passed along the resolution instead of
+   * being recorded in this include, because it is loaded on other threads.
+   */
+  private static class LoadedFragment {
+
+    private static final LoadedFragment NONE = new LoadedFragment(null, null);
+
+    /**
+     * The loaded fragment. Null in case no fragment could be loaded.
+     */
+    private final Fragment fragment;
+    private final String fragmentSource;
+
+    private LoadedFragment(Fragment fragment, String fragmentSource) {
+      this.fragment = fragment;
+      this.fragmentSource = fragmentSource;
+    }
+
+    private boolean isSuccessful() {
+      return fragment != null && HTTP_STATUS_CODES_SUCCESS.contains(fragment.getStatusCode());
+    }
+  }
+
+  private static class Resolution {
+
+    private final Fragment fragment;
+    private final String fragmentSource;
+    private final long resolveTimeNanos;
+
+    private Resolution(Fragment fragment, String fragmentSource, long resolveTimeNanos) {
+      this.fragment = fragment;
+      this.fragmentSource = fragmentSource;
+      this.resolveTimeNanos = resolveTimeNanos;
+    }
   }
 }
@@ -0,0 +1,390 @@
+package io.github.ableron;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Immutable definition of an include as given by its include tag.<br>
+ * <br>
+ * Holds everything which can be derived from the include tag alone, i.e. without knowing the request the include
+ * is resolved for. Thus, a definition may be shared between requests, whereas the state of resolving an include
+ * for a specific request is held by {@link Include}.
+ */
+public final class IncludeDefinition {
+
+  /**
+   * Name of the optional attribute which contains the ID of the include - an optional unique name.
+   */
+  static final String ATTR_ID = "id";
+
+  /**
+   * Name of the optional attribute which contains the source URl to resolve the include to.
+   */
+  static final String ATTR_SOURCE = "src";
+
+  /**
+   * Name of the optional attribute which contains the timeout for requesting the src URL.
+   */
+  static final String ATTR_SOURCE_TIMEOUT = "src-timeout";
+
+  /**
+   * Name of the optional attribute which contains the fallback URL to resolve the include to in case the
+   * source URL could not be loaded.
+   */
+  static final String ATTR_FALLBACK_SOURCE = "fallback-src";
+
+  /**
+   * Name of the optional attribute which contains the timeout for requesting the fallback-src URL.
+   */
+  static final String ATTR_FALLBACK_SOURCE_TIMEOUT = "fallback-src-timeout";
+
+  /**
+   * Name of the optional attribute which denotes a fragment whose response code is set as response code
+   * for the page.
+   */
+  static final String ATTR_PRIMARY = "primary";
+
+  /**
+   * Name of the optional attribute which contains a comma separated list of request headers that shall
+   * be forwarded from the parent request to fragment requests.
+   */
+  static final String ATTR_HEADERS = "headers";
+
+  /**
+   * Name of the optional attribute which contains a comma separated list of HTTP cookie names that shall
+   * be passed from the parent request to fragment requests.
+   */
+  static final String ATTR_COOKIES = "cookies";
+
+  /**
+   * Regular expression for parsing timeouts.<br>
+   * <br>
+   * Accepts plain numbers and numbers suffixed with either <code>s</code> indicating <code>seconds</code> or
+   * <code>ms</code> indicating <code>milliseconds</code>.
+   */
+  private static final Pattern TIMEOUT_PATTERN = Pattern.compile("(\\d+)(ms|s)?");
+
+  private static final Logger logger = LoggerFactory.getLogger(IncludeDefinition.class);
+
+  /**
+   * Raw include tag.
+   */
+  private final String rawIncludeTag;
+
+  /**
+   * Raw attributes of the include tag.
+   */
+  private final Map<String, String> rawAttributes;
+
+  /**
+   * Fragment ID. Either generated or passed via attribute.
+   */
+  private final String id;
+
+  /**
+   * URL of the fragment to include.
+   */
+  private final String src;
+
+  /**
+   * Request template for the src URL. Null, if there is no src URL or if it is invalid.
+   */
+  private final HttpRequest.Builder srcRequestTemplate;
+
+  /**
+   * Timeout for requesting the src URL.
+   */
+  private final Duration srcTimeout;
+
+  /**
+   * URL of the fragment to include in case the request to the source URL failed.
+   */
+  private final String fallbackSrc;
+
+  /**
+   * Request template for the fallback-src URL. Null, if there is no fallback-src URL or if it is invalid.
+   */
+  private final HttpRequest.Builder fallbackSrcRequestTemplate;
+
+  /**
+   * Timeout for requesting the fallback-src URL.
+   */
+  private final Duration fallbackSrcTimeout;
+
+  /**
+   * Whether the include provides the primary fragment and thus sets the response code of the page.
+   */
+  private final boolean primary;
+
+  /**
+   * Request headers in lower case, that shall be forwarded from the parent request to fragment requests.
+   */
+  private final List<String> headersToForward;
+
+  /**
+   * Cookies, that shall be forwarded from the parent request to fragment requests.
+   */
+  private final List<String> cookiesToForward;
+
+  /**
+   * Fallback content to use in case the include could not be resolved.
+   */
+  private final String fallbackContent;
+
+  /**
+   * Names of the request headers to forward and of the request headers influencing caching for the
+   * most recently used config.
+   */
+  private volatile RequestHeaderNames requestHeaderNames;
+
+  /**
+   * Constructs a new IncludeDefinition.
+   *
+   * @param rawIncludeTag Raw include tag
+   * @param rawAttributes Raw attributes of the include tag
+   * @param fallbackContent Fallback content to use in case the include could not be resolved
+   */
+  public IncludeDefinition(String rawIncludeTag, Map<String, String> rawAttributes, String fallbackContent) {
+    var attributes = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+    attributes.putAll(Optional.ofNullable(rawAttributes).orElseGet(Map::of));
+    this.rawIncludeTag = Optional.ofNullable(rawIncludeTag).orElse("");
+    this.rawAttributes = Collections.unmodifiableMap(attributes);
+    this.id = buildIncludeId(this.rawIncludeTag, attributes.get(ATTR_ID));
+    this.src = attributes.get(ATTR_SOURCE);
+    this.srcRequestTemplate = buildRequestTemplate(this.src);
+    this.srcTimeout = parseTimeout(attributes.get(ATTR_SOURCE_TIMEOUT));
+    this.fallbackSrc = attributes.get(ATTR_FALLBACK_SOURCE);
+    this.fallbackSrcRequestTemplate = buildRequestTemplate(this.fallbackSrc);
+    this.fallbackSrcTimeout = parseTimeout(attributes.get(ATTR_FALLBACK_SOURCE_TIMEOUT));
+    this.primary = hasBooleanAttribute(attributes, ATTR_PRIMARY);
+    this.headersToForward = parseCommaSeparatedList(attributes.get(ATTR_HEADERS), true);
+    this.cookiesToForward = parseCommaSeparatedList(attributes.get(ATTR_COOKIES), false);
+    this.fallbackContent = Optional.ofNullable(fallbackContent).orElse("");
+  }
+
+  /**
+   * @return The raw include tag
+   */
+  public String getRawIncludeTag() {
+    return rawIncludeTag;
+  }
+
+  /**
+   * @return The raw attributes of the include tag
+   */
+  public Map<String, String> getRawAttributes() {
+    return rawAttributes;
+  }
+
+  /**
+   * @return ID of the include
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return URL of the fragment to include
+   */
+  public String getSrc() {
+    return src;
+  }
+
+  /**
+   * @return The timeout for requesting the src URL
+   */
+  public Duration getSrcTimeout() {
+    return srcTimeout;
+  }
+
+  /**
+   * @return URL of the fragment to include in case the source URL could not be loaded
+   */
+  public String getFallbackSrc() {
+    return fallbackSrc;
+  }
+
+  /**
+   * @return The timeout for requesting the fallback-src URL
+   */
+  public Duration getFallbackSrcTimeout() {
+    return fallbackSrcTimeout;
+  }
+
+  /**
+   * @return Whether this is a primary include
+   */
+  public boolean isPrimary() {
+    return primary;
+  }
+
+  /**
+   * @return Request headers in lower case, that shall be forwarded from the parent request to fragment requests
+   */
+  public List<String> getHeadersToForward() {
+    return headersToForward;
+  }
+
+  /**
+   * @return Cookies, that shall be forwarded from the parent request to fragment requests
+   */
+  public List<String> getCookiesToForward() {
+    return cookiesToForward;
+  }
+
+  /**
+   * @return Fallback content to use in case the include could not be resolved
+   */
+  public String getFallbackContent() {
+    return fallbackContent;
+  }
+
+  /**
+   * Creates the request template for the given URL of this include. Templates must not be modified but copied.
+   *
+   * @param url The src or fallback-src URL of this include
+   * @return The request template or null, in case the URL is not the valid src or fallback-src URL of this include
+   */
+  HttpRequest.Builder getRequestTemplate(String url) {
+    if (url == null) {
+      return null;
+    }
+
+    if (url.equals(src)) {
+      return srcRequestTemplate;
+    }
+
+    return url.equals(fallbackSrc) ? fallbackSrcRequestTemplate : null;
+  }
+
+  /**
+   * @return Names of the request headers to forward to fragment requests of this include in lower case
+   */
+  Set<String> getRequestHeadersToForward(AbleronConfig config) {
+    return getRequestHeaderNames(config).forward;
+  }
+
+  /**
+   * @return Names of the request headers in lower case, which influence the fragments of this include
+   * aside from their URL and which are thus part of the fragment cache key
+   */
+  Set<String> getRequestHeadersVary(AbleronConfig config) {
+    return getRequestHeaderNames(config).vary;
+  }
+
+  private RequestHeaderNames getRequestHeaderNames(AbleronConfig config) {
+    var names = requestHeaderNames;
+
+    if (names == null || names.config != config) {
+      names = new RequestHeaderNames(config, headersToForward);
+      requestHeaderNames = names;
+    }
+
+    return names;
+  }
+
+  private static HttpRequest.Builder buildRequestTemplate(String url) {
+    if (url == null) {
+      return null;
+    }
+
+    try {
+      return HttpRequest.newBuilder(URI.create(url)).GET();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static Duration parseTimeout(String timeoutAsString) {
+    return Optional.ofNullable(timeoutAsString)
+      .map(timeout -> {
+          Matcher matcher = TIMEOUT_PATTERN.matcher(timeout);
+
+          if (matcher.matches()) {
+            String amount = matcher.group(1);
+            String unit = matcher.group(2);
+
+            if ("s".equals(unit)) {
+              return Duration.ofSeconds(Long.parseLong(amount));
+            }
+
+            return Duration.ofMillis(Long.parseLong(amount));
+          }
+
+          logger.error("[Ableron] Invalid request timeout: '{}'", timeout);
+          return null;
+      })
+      .orElse(null);
+  }
+
+  private static List<String> parseCommaSeparatedList(String entriesAsString, boolean toLowerCase) {
+    return Optional.ofNullable(entriesAsString)
+      .map(entries -> Arrays.stream(entries.split(","))
+          .map(String::trim)
+          .map(entry -> toLowerCase ? entry.toLowerCase() : entry)
+          .filter(entry -> !entry.isEmpty())
+          .distinct()
+          .collect(Collectors.toUnmodifiableList())
+      )
+      .orElse(List.of());
+  }
+
+  private static String buildIncludeId(String rawIncludeTag, String providedId) {
+    return Optional.ofNullable(providedId)
+      .map(id -> id.replaceAll("[^A-Za-z0-9_-]", ""))
+      .filter(id -> !id.isEmpty())
+      .orElse(String.valueOf(Math.abs(rawIncludeTag.hashCode())));
+  }
+
+  private static boolean hasBooleanAttribute(Map<String, String> attributes, String attributeName) {
+    return attributes.containsKey(attributeName)
+      && List.of("", attributeName.toLowerCase()).contains(attributes.get(attributeName).toLowerCase());
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+
+    IncludeDefinition includeDefinition = (IncludeDefinition) o;
+
+    return rawIncludeTag.equals(includeDefinition.rawIncludeTag);
+  }
+
+  @Override
+  public int hashCode() {
+    return rawIncludeTag.hashCode();
+  }
+
+  private static class RequestHeaderNames {
+
+    private final AbleronConfig config;
+    private final Set<String> forward;
+    private final Set<String> vary;
+
+    private RequestHeaderNames(AbleronConfig config, List<String> headersToForward) {
+      this.config = config;
+      this.forward = Stream.of(config.getRequestHeadersForward(), config.getRequestHeadersForwardVary(), headersToForward)
+        .flatMap(Collection::stream)
+        .map(String::toLowerCase)
+        .collect(Collectors.toUnmodifiableSet());
+      this.vary = Stream.of(config.getRequestHeadersForwardVary(), headersToForward)
+        .flatMap(Collection::stream)
+        .map(String::toLowerCase)
+        .collect(Collectors.toUnmodifiableSet());
+    }
+  }
+}
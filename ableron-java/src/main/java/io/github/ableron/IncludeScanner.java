@@ -0,0 +1,384 @@
+package io.github.ableron;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass scanner for ableron include tags.<br>
+ * <br>
+ * Recognizes exactly the same tags as the regular expression
+ * <code>&lt;(ableron-include)\s(([^"&gt;]|"[^"]*")*?)(/&gt;|&gt;(.*?)&lt;/\1&gt;)</code> but works directly on the
+ * given content without copying it and in time linear to the content length, even for content with unclosed
+ * include tags or unbalanced quotes. Encoded content is scanned without decoding it, given its charset is ASCII
+ * compatible.
+ */
+public class IncludeScanner {
+
+  /**
+   * Start of an include tag.
+   */
+  public static final String INCLUDE_TAG_START = "<ableron-include";
+
+  /**
+   * Closing tag of an include with fallback content.
+   */
+  static final String INCLUDE_TAG_END = "</ableron-include>";
+
+  private final CharSequence content;
+
+  /**
+   * Position to start scanning at.
+   */
+  private final int fromIndex;
+
+  /**
+   * Positions which have already been visited outside quotes while scanning the attributes of an include tag
+   * that turned out to be invalid. Scanning from such a position is known to fail. Only allocated once the first
+   * invalid include tag has been found.
+   */
+  private BitSet failedAttributePositions = null;
+
+  /**
+   * Position the most recent search for the closing tag started at.
+   */
+  private int closingTagSearchStart = Integer.MAX_VALUE;
+
+  /**
+   * Result of the most recent search for the closing tag.
+   */
+  private int closingTagPosition = -1;
+
+  private IncludeScanner(CharSequence content, int fromIndex) {
+    this.content = content;
+    this.fromIndex = fromIndex;
+  }
+
+  /**
+   * Finds all include tags in the given content.
+   *
+   * @param content Content to find the include tags in
+   * @return The include tags in document order
+   */
+  public static List<IncludeTag> scan(String content) {
+    return new IncludeScanner(content, 0).scan();
+  }
+
+  /**
+   * Finds all include tags in the given content starting at the given position without copying the content.
+   *
+   * @param content Content to find the include tags in
+   * @param fromIndex Position to start scanning at
+   * @return The include tags in document order. Positions refer to the whole content
+   */
+  static List<IncludeTag> scan(StringBuilder content, int fromIndex) {
+    return new IncludeScanner(content, fromIndex).scan();
+  }
+
+  /**
+   * Finds all include tags in the given encoded content. Positions of the include tags are byte offsets.
+   *
+   * @param content Encoded content to find the include tags in
+   * @return The include tags in document order
+   */
+  static List<IncludeTag> scan(ByteContent content) {
+    return new IncludeScanner(content, 0).scan();
+  }
+
+  /**
+   * Checks for the start of an include tag in the given encoded content without decoding it.
+   *
+   * @param content Encoded content
+   * @param charset Charset of the content
+   * @return False, if the content does definitely not contain include tags. Always true for content of charsets
+   * which are not ASCII compatible
+   */
+  public static boolean mayContainIncludeTags(byte[] content, Charset charset) {
+    return !ByteContent.isAsciiCompatible(charset)
+      || ByteContent.of(ByteBuffer.wrap(content), charset).indexOf(INCLUDE_TAG_START, 0) != -1;
+  }
+
+  /**
+   * Parses the attributes of an include tag.<br>
+   * <br>
+   * Attribute names consist of <code>[a-zA-Z0-9_-]</code>. Values must be enclosed in double quotes. Attributes
+   * without value or with empty value are mapped to an empty string. In case an attribute occurs multiple times,
+   * the first occurrence wins.
+   *
+   * @param content Content containing the attributes
+   * @param start Start index of the attributes string, inclusive
+   * @param end End index of the attributes string, exclusive
+   * @return A key-value map of the attributes
+   */
+  public static Map<String, String> parseAttributes(String content, int start, int end) {
+    return parseAttributes((CharSequence) content, start, end);
+  }
+
+  private static Map<String, String> parseAttributes(CharSequence content, int start, int end) {
+    var attributes = new HashMap<String, String>();
+    var i = start;
+
+    while (i < end) {
+      if (!isAttributeNameChar(content.charAt(i))) {
+        i++;
+        continue;
+      }
+
+      var nameStart = i;
+
+      while (i < end && isAttributeNameChar(content.charAt(i))) {
+        i++;
+      }
+
+      var name = substring(content, nameStart, i);
+      var value = "";
+
+      if (i + 2 < end && content.charAt(i) == '=' && content.charAt(i + 1) == '"' && content.charAt(i + 2) != '"') {
+        var valueEnd = indexOf(content, '"', i + 2);
+
+        if (valueEnd != -1 && valueEnd < end) {
+          value = substring(content, i + 2, valueEnd);
+          i = valueEnd + 1;
+        }
+      }
+
+      attributes.putIfAbsent(name, value);
+    }
+
+    return attributes;
+  }
+
+  private List<IncludeTag> scan() {
+    var includeTags = new ArrayList<IncludeTag>();
+    var position = indexOf(content, INCLUDE_TAG_START, fromIndex);
+
+    while (position != -1) {
+      var includeTag = scanIncludeTag(position);
+
+      if (includeTag != null) {
+        includeTags.add(includeTag);
+        position = indexOf(content, INCLUDE_TAG_START, includeTag.getEnd());
+      } else {
+        position = indexOf(content, INCLUDE_TAG_START, position + 1);
+      }
+    }
+
+    return includeTags;
+  }
+
+  private IncludeTag scanIncludeTag(int tagStart) {
+    var attributesStart = tagStart + INCLUDE_TAG_START.length() + 1;
+
+    if (attributesStart > content.length() || !isWhitespace(content.charAt(attributesStart - 1))) {
+      return null;
+    }
+
+    var includeTag = scanAttributes(tagStart, attributesStart, false);
+
+    if (includeTag == null && failedAttributePositions == null) {
+      failedAttributePositions = new BitSet(content.length());
+      scanAttributes(tagStart, attributesStart, true);
+    }
+
+    return includeTag;
+  }
+
+  private IncludeTag scanAttributes(int tagStart, int attributesStart, boolean forceMarking) {
+    var length = content.length();
+    var i = attributesStart;
+
+    while (i < length) {
+      if (failedAttributePositions != null) {
+        if (failedAttributePositions.get(i) && !forceMarking) {
+          return null;
+        }
+
+        failedAttributePositions.set(i);
+      }
+
+      var c = content.charAt(i);
+
+      if (c == '/' && i + 1 < length && content.charAt(i + 1) == '>') {
+        return new IncludeTag(tagStart, i + 2, attributesStart, i, -1, -1);
+      }
+
+      if (c == '>') {
+        var closingTagStart = findClosingTag(i + 1);
+        return closingTagStart == -1 ? null
+          : new IncludeTag(tagStart, closingTagStart + INCLUDE_TAG_END.length(), attributesStart, i, i + 1, closingTagStart);
+      }
+
+      if (c == '"') {
+        var closingQuote = indexOf(content, '"', i + 1);
+
+        if (closingQuote == -1) {
+          return null;
+        }
+
+        i = closingQuote + 1;
+      } else {
+        i++;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Finds the first closing tag at or after the given position. Remembers the result of the previous search so
+   * that include tags without closing tag do not lead to searching the remaining content over and over again.
+   */
+  private int findClosingTag(int fromIndex) {
+    if (fromIndex < closingTagSearchStart || (closingTagPosition != -1 && fromIndex > closingTagPosition)) {
+      closingTagSearchStart = fromIndex;
+      closingTagPosition = indexOf(content, INCLUDE_TAG_END, fromIndex);
+    }
+
+    return closingTagPosition;
+  }
+
+  private static int indexOf(CharSequence content, String str, int fromIndex) {
+    if (content instanceof ByteContent) {
+      return ((ByteContent) content).indexOf(str, fromIndex);
+    }
+
+    return content instanceof StringBuilder
+      ? ((StringBuilder) content).indexOf(str, fromIndex)
+      : ((String) content).indexOf(str, fromIndex);
+  }
+
+  private static int indexOf(CharSequence content, char c, int fromIndex) {
+    if (content instanceof ByteContent) {
+      return ((ByteContent) content).indexOf(c, fromIndex);
+    }
+
+    if (content instanceof String) {
+      return ((String) content).indexOf(c, fromIndex);
+    }
+
+    for (var i = fromIndex; i < content.length(); i++) {
+      if (content.charAt(i) == c) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static String substring(CharSequence content, int start, int end) {
+    return content instanceof ByteContent
+      ? ((ByteContent) content).decode(start, end)
+      : content.subSequence(start, end).toString();
+  }
+
+  static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private static boolean isAttributeNameChar(char c) {
+    return (c >= 'a' && c <= 'z')
+      || (c >= 'A' && c <= 'Z')
+      || (c >= '0' && c <= '9')
+      || c == '_'
+      || c == '-';
+  }
+
+  /**
+   * Location of an include tag within the scanned content.
+   */
+  public static class IncludeTag {
+
+    private final int start;
+    private final int end;
+    private final int attributesStart;
+    private final int attributesEnd;
+    private final int fallbackContentStart;
+    private final int fallbackContentEnd;
+
+    IncludeTag(int start, int end, int attributesStart, int attributesEnd, int fallbackContentStart, int fallbackContentEnd) {
+      this.start = start;
+      this.end = end;
+      this.attributesStart = attributesStart;
+      this.attributesEnd = attributesEnd;
+      this.fallbackContentStart = fallbackContentStart;
+      this.fallbackContentEnd = fallbackContentEnd;
+    }
+
+    /**
+     * @return Index of the first character of the include tag
+     */
+    public int getStart() {
+      return start;
+    }
+
+    /**
+     * @return Index after the last character of the include tag
+     */
+    public int getEnd() {
+      return end;
+    }
+
+    public int getAttributesStart() {
+      return attributesStart;
+    }
+
+    public int getAttributesEnd() {
+      return attributesEnd;
+    }
+
+    /**
+     * @return Whether the include tag is self-closing and thus has no fallback content
+     */
+    public boolean isSelfClosing() {
+      return fallbackContentStart == -1;
+    }
+
+    public int getFallbackContentStart() {
+      return fallbackContentStart;
+    }
+
+    public int getFallbackContentEnd() {
+      return fallbackContentEnd;
+    }
+
+    /**
+     * Creates the Include represented by this include tag.
+     *
+     * @param content The scanned content
+     * @return The Include
+     */
+    public Include toInclude(String content) {
+      return Include.of(toIncludeDefinition(content));
+    }
+
+    /**
+     * Creates the definition of the include represented by this include tag.
+     *
+     * @param content The scanned content
+     * @return The include definition
+     */
+    public IncludeDefinition toIncludeDefinition(String content) {
+      return toIncludeDefinition(content, content.substring(start, end));
+    }
+
+    IncludeDefinition toIncludeDefinition(String content, String rawIncludeTag) {
+      return new IncludeDefinition(
+        rawIncludeTag,
+        parseAttributes(content, attributesStart, attributesEnd),
+        isSelfClosing() ? null : content.substring(fallbackContentStart, fallbackContentEnd)
+      );
+    }
+
+    IncludeDefinition toIncludeDefinition(ByteContent content, String rawIncludeTag) {
+      return new IncludeDefinition(
+        rawIncludeTag,
+        parseAttributes(content, attributesStart, attributesEnd),
+        isSelfClosing() ? null : content.decode(fallbackContentStart, fallbackContentEnd)
+      );
+    }
+  }
+}
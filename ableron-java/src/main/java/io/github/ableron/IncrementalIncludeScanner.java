@@ -0,0 +1,336 @@
+package io.github.ableron;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Finds include tags in content which is provided in chunks, e.g. while a page is being rendered.<br>
+ * <br>
+ * Complete include tags are reported as soon as their end has been seen. Only the content starting at the
+ * first incomplete include tag is retained. Each character is scanned only once: The scanner remembers how far
+ * the attributes of incomplete include tags have been scanned and where the search for their closing tag
+ * stopped, and resumes from there with the next chunk. Include tags are detected the same way as by
+ * {@link IncludeScanner}. However, an include tag found in a part of the content is not necessarily an include
+ * tag of the whole content, e.g. in case it turns out to be the fallback content of another include tag.
+ */
+public class IncrementalIncludeScanner {
+
+  /**
+   * Maximum number of characters retained for an incomplete include tag. Include tags exceeding this size are
+   * not reported.
+   */
+  static final int MAX_INCOMPLETE_INCLUDE_TAG_LENGTH = 64 * 1024;
+
+  /**
+   * Marks a position which is not known yet.
+   */
+  private static final int NONE = -1;
+
+  private final Consumer<String> includeTagsConsumer;
+  private final CharsetDecoder decoder;
+
+  /**
+   * Whether bytes of the US-ASCII range are decoded to the same characters, so that they can be scanned without
+   * the decoder.
+   */
+  private final boolean asciiBytesDecodedAsIs;
+
+  private ByteBuffer undecodedBytes = ByteBuffer.allocate(0);
+
+  /**
+   * Content which may still be part of an include tag. All positions below refer to the whole content.
+   */
+  private final StringBuilder pendingContent = new StringBuilder();
+
+  /**
+   * Position of the first pending character within the whole content.
+   */
+  private int pendingContentStart = 0;
+
+  /**
+   * Position of the first character which has not been scanned yet.
+   */
+  private int scanPosition = 0;
+
+  /**
+   * Position to search the start of the next include tag from.
+   */
+  private int includeTagSearchPosition = 0;
+
+  /**
+   * Start of the next include tag, whose attributes have not been reached yet.
+   */
+  private int nextIncludeTagStart = NONE;
+
+  /**
+   * Start of the earliest incomplete include tag whose attributes are currently scanned outside of quotes.
+   */
+  private int unquotedAttributesTagStart = NONE;
+
+  /**
+   * Start of the earliest incomplete include tag whose attributes are currently scanned within quotes.
+   */
+  private int quotedAttributesTagStart = NONE;
+
+  /**
+   * Start of the earliest incomplete include tag awaiting its closing tag.
+   */
+  private int closingTagAwaitingTagStart = NONE;
+
+  /**
+   * Position the closing tag may start at the earliest.
+   */
+  private int closingTagSearchPosition = NONE;
+
+  /**
+   * @param charset Charset of the content in case it is provided as bytes
+   * @param includeTagsConsumer Consumer of content parts containing complete include tags
+   */
+  public IncrementalIncludeScanner(Charset charset, Consumer<String> includeTagsConsumer) {
+    this.includeTagsConsumer = includeTagsConsumer;
+    this.decoder = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.asciiBytesDecodedAsIs = decodesAsciiBytesAsIs(charset);
+  }
+
+  /**
+   * Scans the next chunk of the content.
+   *
+   * @param bytes Bytes of the chunk
+   * @param offset Start offset of the chunk in the given bytes
+   * @param length Length of the chunk
+   */
+  public void scan(byte[] bytes, int offset, int length) {
+    var input = undecodedBytes.hasRemaining()
+      ? ByteBuffer.allocate(undecodedBytes.remaining() + length).put(undecodedBytes).put(bytes, offset, length).flip()
+      : ByteBuffer.wrap(bytes, offset, length);
+    var output = CharBuffer.allocate((int) (input.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+    decoder.decode(input, output, false);
+    undecodedBytes = input.hasRemaining() ? ByteBuffer.allocate(input.remaining()).put(input).flip() : ByteBuffer.allocate(0);
+    scan(output.flip());
+  }
+
+  /**
+   * Scans the next byte of the content. Bytes of the US-ASCII range are scanned without allocating any buffer,
+   * given the charset decodes them as is.
+   *
+   * @param b The byte
+   */
+  public void scan(byte b) {
+    if (b >= 0 && asciiBytesDecodedAsIs && !undecodedBytes.hasRemaining()) {
+      pendingContent.append((char) b);
+      scanPendingContent();
+    } else {
+      scan(new byte[] {b}, 0, 1);
+    }
+  }
+
+  /**
+   * Scans the next chunk of the content.
+   *
+   * @param chars Characters of the chunk
+   */
+  public void scan(CharSequence chars) {
+    if (chars.length() == 0) {
+      return;
+    }
+
+    pendingContent.append(chars);
+    scanPendingContent();
+  }
+
+  private void scanPendingContent() {
+    var contentLength = pendingContentStart + pendingContent.length();
+    var includeTagSearched = false;
+
+    while (scanPosition < contentLength) {
+      if (nextIncludeTagStart == NONE && !includeTagSearched) {
+        findNextIncludeTag(contentLength);
+        includeTagSearched = nextIncludeTagStart == NONE;
+      }
+
+      if (unquotedAttributesTagStart == NONE && quotedAttributesTagStart == NONE && closingTagAwaitingTagStart == NONE) {
+        if (nextIncludeTagStart == NONE) {
+          scanPosition = contentLength;
+          break;
+        }
+
+        scanPosition = getAttributesStart(nextIncludeTagStart);
+      }
+
+      if (nextIncludeTagStart != NONE && scanPosition == getAttributesStart(nextIncludeTagStart)) {
+        unquotedAttributesTagStart = earliest(unquotedAttributesTagStart, nextIncludeTagStart);
+        includeTagSearchPosition = nextIncludeTagStart + 1;
+        nextIncludeTagStart = NONE;
+        continue;
+      }
+
+      var c = charAt(scanPosition);
+
+      if (unquotedAttributesTagStart != NONE && c == '/') {
+        if (scanPosition + 1 == contentLength) {
+          // whether the include tag is self-closing is decided by the next chunk
+          break;
+        }
+
+        if (charAt(scanPosition + 1) == '>') {
+          reportIncludeTags();
+          includeTagSearched = false;
+          continue;
+        }
+      }
+
+      if (closingTagAwaitingTagStart != NONE && c == '>' && isClosingTagEnd(scanPosition)) {
+        reportIncludeTags();
+        includeTagSearched = false;
+        continue;
+      }
+
+      if (c == '"') {
+        var tagStart = unquotedAttributesTagStart;
+        unquotedAttributesTagStart = quotedAttributesTagStart;
+        quotedAttributesTagStart = tagStart;
+      } else if (c == '>' && unquotedAttributesTagStart != NONE) {
+        closingTagAwaitingTagStart = earliest(closingTagAwaitingTagStart, unquotedAttributesTagStart);
+        closingTagSearchPosition = earliest(closingTagSearchPosition, scanPosition + 1);
+        unquotedAttributesTagStart = NONE;
+      }
+
+      scanPosition++;
+    }
+
+    dropIncludeTagsExceedingMaxLength(contentLength);
+    dropScannedContent();
+  }
+
+  /**
+   * Finds the start of the next include tag whose attributes have not been reached yet. The start is only known
+   * once the whitespace character following the tag name is part of the content.
+   */
+  private void findNextIncludeTag(int contentLength) {
+    while (true) {
+      var includeTagStart = pendingContent.indexOf(IncludeScanner.INCLUDE_TAG_START, includeTagSearchPosition - pendingContentStart);
+
+      if (includeTagStart == -1) {
+        includeTagSearchPosition = Math.max(includeTagSearchPosition, contentLength - IncludeScanner.INCLUDE_TAG_START.length() + 1);
+        return;
+      }
+
+      includeTagStart += pendingContentStart;
+
+      if (getAttributesStart(includeTagStart) > contentLength) {
+        includeTagSearchPosition = includeTagStart;
+        return;
+      }
+
+      if (IncludeScanner.isWhitespace(charAt(getAttributesStart(includeTagStart) - 1))) {
+        nextIncludeTagStart = includeTagStart;
+        return;
+      }
+
+      includeTagSearchPosition = includeTagStart + 1;
+    }
+  }
+
+  private boolean isClosingTagEnd(int position) {
+    var closingTagStart = position + 1 - IncludeScanner.INCLUDE_TAG_END.length();
+
+    if (closingTagStart < closingTagSearchPosition) {
+      return false;
+    }
+
+    for (var i = 0; i < IncludeScanner.INCLUDE_TAG_END.length(); i++) {
+      if (charAt(closingTagStart + i) != IncludeScanner.INCLUDE_TAG_END.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Reports the include tags which have been completed by the current character and continues scanning after
+   * the last of them.
+   */
+  private void reportIncludeTags() {
+    var includeTags = IncludeScanner.scan(pendingContent, 0);
+
+    if (includeTags.isEmpty()) {
+      scanPosition++;
+      return;
+    }
+
+    var includeTagsEnd = includeTags.get(includeTags.size() - 1).getEnd();
+    includeTagsConsumer.accept(pendingContent.substring(includeTags.get(0).getStart(), includeTagsEnd));
+    pendingContent.delete(0, includeTagsEnd);
+    pendingContentStart += includeTagsEnd;
+    scanPosition = pendingContentStart;
+    includeTagSearchPosition = pendingContentStart;
+    nextIncludeTagStart = NONE;
+    unquotedAttributesTagStart = NONE;
+    quotedAttributesTagStart = NONE;
+    closingTagAwaitingTagStart = NONE;
+    closingTagSearchPosition = NONE;
+  }
+
+  private void dropIncludeTagsExceedingMaxLength(int contentLength) {
+    var minTagStart = contentLength - MAX_INCOMPLETE_INCLUDE_TAG_LENGTH;
+
+    if (unquotedAttributesTagStart != NONE && unquotedAttributesTagStart < minTagStart) {
+      unquotedAttributesTagStart = NONE;
+    }
+
+    if (quotedAttributesTagStart != NONE && quotedAttributesTagStart < minTagStart) {
+      quotedAttributesTagStart = NONE;
+    }
+
+    if (closingTagAwaitingTagStart != NONE && closingTagAwaitingTagStart < minTagStart) {
+      closingTagAwaitingTagStart = NONE;
+      closingTagSearchPosition = NONE;
+    }
+  }
+
+  /**
+   * Drops the content which can neither be part of an incomplete include tag nor of the next include tag.
+   */
+  private void dropScannedContent() {
+    var retainedContentStart = Math.min(scanPosition, includeTagSearchPosition);
+    retainedContentStart = earliest(retainedContentStart, unquotedAttributesTagStart);
+    retainedContentStart = earliest(retainedContentStart, quotedAttributesTagStart);
+    retainedContentStart = earliest(retainedContentStart, closingTagAwaitingTagStart);
+
+    if (retainedContentStart > pendingContentStart) {
+      pendingContent.delete(0, retainedContentStart - pendingContentStart);
+      pendingContentStart = retainedContentStart;
+    }
+  }
+
+  private char charAt(int position) {
+    return pendingContent.charAt(position - pendingContentStart);
+  }
+
+  private static int getAttributesStart(int includeTagStart) {
+    return includeTagStart + IncludeScanner.INCLUDE_TAG_START.length() + 1;
+  }
+
+  private static int earliest(int position, int otherPosition) {
+    return position == NONE ? otherPosition : otherPosition == NONE ? position : Math.min(position, otherPosition);
+  }
+
+  private static boolean decodesAsciiBytesAsIs(Charset charset) {
+    var asciiBytes = new byte[128];
+
+    for (var i = 0; i < asciiBytes.length; i++) {
+      asciiBytes[i] = (byte) i;
+    }
+
+    return (StandardCharsets.UTF_8.equals(charset) || (charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1f))
+      && new String(asciiBytes, charset).equals(new String(asciiBytes, StandardCharsets.US_ASCII));
+  }
+}
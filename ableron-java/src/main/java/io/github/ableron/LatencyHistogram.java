@@ -0,0 +1,191 @@
+package io.github.ableron;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with log-linear buckets.<br>
+ * <br>
+ * Each power of two is divided into 16 linear buckets, so that recorded values are reproduced with a relative
+ * error below 6.25%. Values up to about 146 minutes are distinguished, larger values are recorded as the
+ * largest value. Memory is fixed. Recording is lock-free and does not allocate, thus can be done on the
+ * hot path.<br>
+ * <br>
+ * Values are recorded into the current window, which is read via {@link #snapshot()} or read and reset via
+ * {@link #snapshotAndReset()}. Values recorded while a window is reset are part of either the returned or
+ * the next window, but never lost.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 42;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+  private volatile long windowStartTimeMillis = System.currentTimeMillis();
+
+  /**
+   * Records the given latency.
+   *
+   * @param nanos Latency in nanoseconds. Negative values are recorded as zero
+   */
+  public void record(long nanos) {
+    var value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+    counts.incrementAndGet(bucketIndex(value));
+    sum.addAndGet(value);
+
+    if (value > max.get()) {
+      max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * @return Snapshot of the current window
+   */
+  public Snapshot snapshot() {
+    var bucketCounts = new long[BUCKET_COUNT];
+
+    for (var i = 0; i < BUCKET_COUNT; i++) {
+      bucketCounts[i] = counts.get(i);
+    }
+
+    return new Snapshot(bucketCounts, sum.get(), max.get(), Instant.ofEpochMilli(windowStartTimeMillis), Instant.now());
+  }
+
+  /**
+   * Takes a snapshot of the current window and starts a new window.
+   *
+   * @return Snapshot of the window which has been ended
+   */
+  public Snapshot snapshotAndReset() {
+    var now = System.currentTimeMillis();
+    var windowStartTime = Instant.ofEpochMilli(windowStartTimeMillis);
+    windowStartTimeMillis = now;
+    var bucketCounts = new long[BUCKET_COUNT];
+
+    for (var i = 0; i < BUCKET_COUNT; i++) {
+      bucketCounts[i] = counts.getAndSet(i, 0);
+    }
+
+    return new Snapshot(bucketCounts, sum.getAndSet(0), max.getAndSet(0), windowStartTime, Instant.ofEpochMilli(now));
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    var exponent = 63 - Long.numberOfLeadingZeros(value);
+    var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long lowestValue(int bucketIndex) {
+    if (bucketIndex < SUB_BUCKET_COUNT) {
+      return bucketIndex;
+    }
+
+    var exponent = bucketIndex / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+    var subBucket = bucketIndex % SUB_BUCKET_COUNT;
+    return (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  static long highestValue(int bucketIndex) {
+    return bucketIndex == BUCKET_COUNT - 1 ? MAX_VALUE : lowestValue(bucketIndex + 1) - 1;
+  }
+
+  /**
+   * Latencies recorded in a window of a {@link LatencyHistogram}.
+   */
+  public static class Snapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final Instant startTime;
+    private final Instant endTime;
+
+    private Snapshot(long[] bucketCounts, long sum, long max, Instant startTime, Instant endTime) {
+      var count = 0L;
+
+      for (var bucketCount : bucketCounts) {
+        count += bucketCount;
+      }
+
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+      this.startTime = startTime;
+      this.endTime = endTime;
+    }
+
+    /**
+     * @return Number of recorded latencies
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @return Mean of the recorded latencies or zero, if no latency has been recorded
+     */
+    public Duration getMean() {
+      return Duration.ofNanos(count > 0 ? sum / count : 0);
+    }
+
+    /**
+     * @return Highest recorded latency or zero, if no latency has been recorded
+     */
+    public Duration getMax() {
+      return Duration.ofNanos(max);
+    }
+
+    /**
+     * Gets the latency which the given percentage of the recorded latencies is less than or equal to.
+     * Latencies are reproduced with a relative error below 6.25%, but never exceed the highest recorded latency.
+     *
+     * @param percentile The percentile, e.g. <code>99.9</code>
+     * @return The latency at the given percentile or zero, if no latency has been recorded
+     */
+    public Duration getPercentile(double percentile) {
+      if (percentile < 0 || percentile > 100) {
+        throw new IllegalArgumentException("percentile must be between 0 and 100");
+      }
+
+      var rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+      var cumulativeCount = 0L;
+
+      for (var i = 0; i < bucketCounts.length; i++) {
+        cumulativeCount += bucketCounts[i];
+
+        if (cumulativeCount >= rank) {
+          return Duration.ofNanos(Math.min(highestValue(i), max));
+        }
+      }
+
+      return Duration.ZERO;
+    }
+
+    /**
+     * @return Start of the window
+     */
+    public Instant getStartTime() {
+      return startTime;
+    }
+
+    /**
+     * @return End of the window, i.e. the time the snapshot has been taken
+     */
+    public Instant getEndTime() {
+      return endTime;
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package io.github.ableron;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Composition of a single page.<br>
+ * <br>
+ * Allows to start resolving includes before the page has been rendered completely, e.g. as soon as an include
+ * tag has been written by the application. Resolving the includes of the final page reuses the resolutions
+ * which have already been started. Resolutions of includes which are not part of the final page are cancelled.
+ */
+public class PageComposition {
+
+  private final TransclusionProcessor transclusionProcessor;
+  private final AbleronConfig ableronConfig;
+  private final Map<String, List<String>> parentRequestHeaders;
+
+  /**
+   * Includes whose resolution has been started in advance by raw include tag.
+   */
+  private final Map<String, Include> prefetchedIncludes = new ConcurrentHashMap<>();
+
+  /**
+   * Resolutions of the prefetched includes.
+   */
+  private final Map<Include, CompletableFuture<Include>> prefetchedResolutions = new ConcurrentHashMap<>();
+
+  PageComposition(TransclusionProcessor transclusionProcessor, AbleronConfig ableronConfig, Map<String, List<String>> parentRequestHeaders) {
+    this.transclusionProcessor = transclusionProcessor;
+    this.ableronConfig = ableronConfig;
+    this.parentRequestHeaders = parentRequestHeaders;
+  }
+
+  /**
+   * Starts resolving the includes found in the given content. Includes whose resolution has already been
+   * started are not resolved again.
+   *
+   * @param content Content with includes, e.g. the part of the page which has been rendered so far
+   * @return Number of includes whose resolution has been started
+   */
+  public int prefetch(String content) {
+    var prefetchedIncludesCount = 0;
+
+    if (!ableronConfig.isEnabled()) {
+      return prefetchedIncludesCount;
+    }
+
+    for (var includeTag : IncludeScanner.scan(content)) {
+      var rawIncludeTag = content.substring(includeTag.getStart(), includeTag.getEnd());
+
+      if (!prefetchedIncludes.containsKey(rawIncludeTag)) {
+        var include = Include.of(transclusionProcessor.getParseCache().getIncludeDefinition(rawIncludeTag, tag -> includeTag.toIncludeDefinition(content, tag)));
+        prefetchedResolutions.put(include, transclusionProcessor.resolveInclude(include, parentRequestHeaders, System.nanoTime()));
+        prefetchedIncludes.put(rawIncludeTag, include);
+        prefetchedIncludesCount++;
+      }
+    }
+
+    return prefetchedIncludesCount;
+  }
+
+  /**
+   * @return Number of includes whose resolution has been started in advance
+   */
+  public int getPrefetchedIncludesCount() {
+    return prefetchedIncludes.size();
+  }
+
+  /**
+   * Resolves all includes in the given content.
+   *
+   * @param content The content of the page
+   * @return Transclusion result including the content with resolved includes as well as metadata
+   */
+  public TransclusionResult resolveIncludes(String content) {
+    return resolveIncludesAsync(content).join();
+  }
+
+  /**
+   * Resolves all includes in the given content without blocking the calling thread.
+   *
+   * @param content The content of the page
+   * @return Future of the transclusion result including the content with resolved includes as well as metadata
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(String content) {
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludesAsync(content, this, ableronConfig.getCompositionDeadline().orElse(null));
+    }
+
+    return CompletableFuture.completedFuture(new TransclusionResult(content));
+  }
+
+  /**
+   * Resolves all includes in the given encoded content without decoding it to a string.
+   *
+   * @param content The encoded content of the page. Its position is not modified
+   * @param charset Charset of the content
+   * @return Transclusion result including the content with resolved includes as segments as well as metadata
+   * @see Ableron#resolveIncludes(ByteBuffer, Charset, Map)
+   */
+  public TransclusionResult resolveIncludes(ByteBuffer content, Charset charset) {
+    return resolveIncludesAsync(content, charset).join();
+  }
+
+  /**
+   * Resolves all includes in the given encoded content without decoding it to a string and without blocking
+   * the calling thread.
+   *
+   * @param content The encoded content of the page. Its position is not modified
+   * @param charset Charset of the content
+   * @return Future of the transclusion result including the content with resolved includes as segments as well as metadata
+   * @see Ableron#resolveIncludes(ByteBuffer, Charset, Map)
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(ByteBuffer content, Charset charset) {
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludesAsync(content, charset, this, ableronConfig.getCompositionDeadline().orElse(null));
+    }
+
+    return CompletableFuture.completedFuture(new TransclusionResult(ByteContent.of(content, charset)));
+  }
+
+  /**
+   * Resolves all includes in the given content and writes the content to the given writer in document order.
+   *
+   * @param content The content of the page
+   * @param writer The writer to write the content with resolved includes to. Is flushed but not closed
+   * @param beforeFirstWrite Invoked before anything is written to the writer
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the writer fails
+   * @see Ableron#resolveIncludes(String, Map, Writer, Consumer)
+   */
+  public TransclusionResult resolveIncludes(String content, Writer writer, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludes(content, this, writer, beforeFirstWrite);
+    }
+
+    var transclusionResult = new TransclusionResult(content);
+    beforeFirstWrite.accept(transclusionResult);
+    writer.write(transclusionResult.getContent());
+    writer.flush();
+    return transclusionResult;
+  }
+
+  /**
+   * Resolves all includes in the given content and writes the content to the given output stream in
+   * document order.
+   *
+   * @param content The content of the page
+   * @param outputStream The output stream to write the content with resolved includes to. Is flushed but not closed
+   * @param charset The charset to encode the content with
+   * @param beforeFirstWrite Invoked before anything is written to the output stream
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the output stream fails
+   * @see Ableron#resolveIncludes(String, Map, Writer, Consumer)
+   */
+  public TransclusionResult resolveIncludes(String content, OutputStream outputStream, Charset charset, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    return resolveIncludes(content, new OutputStreamWriter(outputStream, charset), beforeFirstWrite);
+  }
+
+  /**
+   * Resolves all includes in the given encoded content and writes the content to the given output stream in
+   * document order without decoding it to a string.
+   *
+   * @param content The encoded content of the page. Its position is not modified
+   * @param charset Charset of the content
+   * @param outputStream The output stream to write the content with resolved includes to. Is flushed but not closed
+   * @param beforeFirstWrite Invoked before anything is written to the output stream
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the output stream fails
+   * @see Ableron#resolveIncludes(ByteBuffer, Charset, Map, OutputStream, Consumer)
+   */
+  public TransclusionResult resolveIncludes(ByteBuffer content, Charset charset, OutputStream outputStream, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    if (ableronConfig.isEnabled()) {
+      return transclusionProcessor.resolveIncludes(content, charset, this, outputStream, beforeFirstWrite);
+    }
+
+    var transclusionResult = new TransclusionResult(ByteContent.of(content, charset));
+    beforeFirstWrite.accept(transclusionResult);
+    transclusionResult.writeContentTo(outputStream);
+    outputStream.flush();
+    return transclusionResult;
+  }
+
+  /**
+   * Cancels the resolution of all prefetched includes, e.g. in case the page is not composed at all.
+   */
+  public void cancel() {
+    prefetchedResolutions.values().forEach(resolution -> resolution.cancel(true));
+  }
+
+  Map<String, List<String>> getParentRequestHeaders() {
+    return parentRequestHeaders;
+  }
+
+  Optional<Include> getPrefetchedInclude(String rawIncludeTag) {
+    return Optional.ofNullable(prefetchedIncludes.get(rawIncludeTag));
+  }
+
+  Optional<CompletableFuture<Include>> getPrefetchedResolution(Include include) {
+    return Optional.ofNullable(prefetchedResolutions.get(include));
+  }
+
+  void cancelPrefetchedIncludesNotIn(Set<Include> includes) {
+    prefetchedResolutions.forEach((include, resolution) -> {
+      if (!includes.contains(include)) {
+        resolution.cancel(true);
+      }
+    });
+  }
+}
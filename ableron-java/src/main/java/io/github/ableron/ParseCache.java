@@ -0,0 +1,144 @@
+package io.github.ableron;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Cache for the include definitions of include tags.<br>
+ * <br>
+ * Pages rendered from the same template often contain identical include tags, e.g. for the header and footer
+ * includes which are part of nearly every page. Content is scanned for include tags each time, which is cheaper
+ * than identifying repeated content. But the include definitions, i.e. the parsed attributes, request header
+ * templates and fallback content, of identical include tags are created only once and shared between pages,
+ * regardless of whether the content is given as string or encoded.
+ */
+public class ParseCache {
+
+  /**
+   * Estimated size in bytes of a cached include definition without its include tag and fallback content.
+   */
+  private static final int ENTRY_BASE_SIZE = 256;
+
+  private final Cache<String, IncludeDefinition> includeDefinitions;
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final LongAdder missCount = new LongAdder();
+
+  /**
+   * @param maxSizeInBytes Maximum size in bytes the cache may have. <code>0</code> disables the cache
+   */
+  public ParseCache(long maxSizeInBytes) {
+    this.includeDefinitions = maxSizeInBytes > 0 ? Caffeine.newBuilder()
+      .maximumWeight(maxSizeInBytes)
+      .weigher((String rawIncludeTag, IncludeDefinition definition) -> ENTRY_BASE_SIZE
+        + 2 * (rawIncludeTag.length() + definition.getFallbackContent().length()))
+      .build() : null;
+  }
+
+  /**
+   * Finds all include tags in the given content. Include definitions of include tags which have been parsed
+   * before are shared, if the cache is enabled.
+   *
+   * @param content Content to find the include tags in
+   * @return The include tags and their include definitions
+   */
+  public ParsedContent parse(String content) {
+    return ParsedContent.of(content, (includeTag, rawIncludeTag) -> getIncludeDefinition(
+      rawIncludeTag, tag -> includeTag.toIncludeDefinition(content, tag)));
+  }
+
+  /**
+   * Returns the include definition of the given include tag. Shares definitions of identical include tags,
+   * if the cache is enabled.
+   *
+   * @param rawIncludeTag The raw include tag
+   * @param definitionFactory Creates the definition of the include tag, in case it is not shared yet
+   * @return The include definition
+   */
+  IncludeDefinition getIncludeDefinition(String rawIncludeTag, Function<String, IncludeDefinition> definitionFactory) {
+    if (includeDefinitions == null) {
+      return definitionFactory.apply(rawIncludeTag);
+    }
+
+    var includeDefinition = includeDefinitions.getIfPresent(rawIncludeTag);
+
+    if (includeDefinition != null) {
+      hitCount.increment();
+      return includeDefinition;
+    }
+
+    missCount.increment();
+    return includeDefinitions.get(rawIncludeTag, definitionFactory);
+  }
+
+  /**
+   * @return Number of times the include definition of an include tag has been found in the cache
+   */
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return Number of times an include tag had to be parsed
+   */
+  public long missCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * @return Approximate number of cached include definitions
+   */
+  public long estimatedSize() {
+    return includeDefinitions != null ? includeDefinitions.estimatedSize() : 0;
+  }
+
+  /**
+   * Include tags found in content along with their include definitions.
+   */
+  public static class ParsedContent {
+
+    private final List<IncludeScanner.IncludeTag> includeTags;
+    private final List<IncludeDefinition> includeDefinitions;
+
+    private ParsedContent(List<IncludeScanner.IncludeTag> includeTags, List<IncludeDefinition> includeDefinitions) {
+      this.includeTags = includeTags;
+      this.includeDefinitions = includeDefinitions;
+    }
+
+    static ParsedContent of(String content, BiFunction<IncludeScanner.IncludeTag, String, IncludeDefinition> definitionFactory) {
+      var includeTags = IncludeScanner.scan(content);
+      var definitionsByRawIncludeTag = new HashMap<String, IncludeDefinition>();
+      var includeDefinitions = new ArrayList<IncludeDefinition>(includeTags.size());
+
+      for (var includeTag : includeTags) {
+        includeDefinitions.add(definitionsByRawIncludeTag.computeIfAbsent(
+          content.substring(includeTag.getStart(), includeTag.getEnd()),
+          rawIncludeTag -> definitionFactory.apply(includeTag, rawIncludeTag)));
+      }
+
+      return new ParsedContent(includeTags, includeDefinitions);
+    }
+
+    /**
+     * @return Include tags in document order
+     */
+    public List<IncludeScanner.IncludeTag> getIncludeTags() {
+      return includeTags;
+    }
+
+    /**
+     * @return Include definition of each include tag. Identical include tags share the same definition
+     */
+    public List<IncludeDefinition> getIncludeDefinitions() {
+      return includeDefinitions;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package io.github.ableron;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent requests with the same key.<br>
+ * <br>
+ * While a request for a key is in flight, further requests for the same key share its result instead of
+ * issuing a request on their own. Each caller still honors its own timeout: Callers with a timeout not longer
+ * than the timeout of the in-flight request join it and stop waiting when their timeout is exceeded. Callers
+ * with a longer timeout issue a new request, which is then shared with subsequent callers.<br>
+ * <br>
+ * Once all callers of an in-flight request stopped waiting for it, i.e. their futures have been cancelled or
+ * their timeout has been exceeded, the request is cancelled.
+ *
+ * @param <T> Type of the request result
+ */
+public class RequestCoalescer<T> {
+
+  private final Map<String, InFlightRequest> inFlightRequests = new ConcurrentHashMap<>();
+
+  /**
+   * Invoked each time a request is served by joining an in-flight request.
+   */
+  private final Runnable onCoalescedRequest;
+
+  public RequestCoalescer() {
+    this(() -> {});
+  }
+
+  public RequestCoalescer(Runnable onCoalescedRequest) {
+    this.onCoalescedRequest = onCoalescedRequest;
+  }
+
+  /**
+   * Performs a request via the given loader, unless a request with the same key and at least the same
+   * timeout is already in flight.
+   *
+   * @param key Key identifying identical requests
+   * @param timeout Timeout of the caller
+   * @param timeoutValue Value to complete with, in case the timeout is exceeded while waiting for an in-flight request
+   * @param loader Loader performing the actual request. Must honor the given timeout on its own
+   * @return Future of the request result
+   */
+  public CompletableFuture<T> load(String key, Duration timeout, T timeoutValue, Supplier<CompletableFuture<T>> loader) {
+    var request = new InFlightRequest(timeout);
+    var inFlightRequest = inFlightRequests.compute(key, (k, existingRequest) ->
+      existingRequest != null && existingRequest.timeout.compareTo(timeout) >= 0 && existingRequest.join() ? existingRequest : request);
+
+    if (inFlightRequest != request) {
+      onCoalescedRequest.run();
+      return inFlightRequest.release(key, inFlightRequest.result
+        .copy()
+        .completeOnTimeout(timeoutValue, timeout.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    try {
+      request.loading = loader.get();
+    } catch (RuntimeException e) {
+      request.loading = CompletableFuture.failedFuture(e);
+    }
+
+    return request.release(key, request.loading.whenComplete((value, throwable) -> {
+      inFlightRequests.remove(key, request);
+
+      if (throwable != null) {
+        request.result.completeExceptionally(throwable);
+      } else {
+        request.result.complete(value);
+      }
+    }));
+  }
+
+  /**
+   * @return Number of requests currently in flight
+   */
+  public int inFlightRequestCount() {
+    return inFlightRequests.size();
+  }
+
+  private class InFlightRequest {
+
+    private final Duration timeout;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    /**
+     * Number of callers waiting for this request.
+     */
+    private final AtomicInteger waitingCallers = new AtomicInteger(1);
+
+    private volatile CompletableFuture<T> loading;
+
+    private InFlightRequest(Duration timeout) {
+      this.timeout = timeout;
+    }
+
+    /**
+     * Registers another caller waiting for this request.
+     *
+     * @return Whether the caller joined this request. False in case this request has already been abandoned
+     */
+    private boolean join() {
+      var callers = waitingCallers.get();
+
+      while (callers > 0) {
+        if (waitingCallers.compareAndSet(callers, callers + 1)) {
+          return true;
+        }
+
+        callers = waitingCallers.get();
+      }
+
+      return false;
+    }
+
+    /**
+     * Unregisters the caller of the given future as soon as it stops waiting for this request without this
+     * request being completed. Cancels this request, once no caller is waiting for it anymore.
+     */
+    private CompletableFuture<T> release(String key, CompletableFuture<T> callerFuture) {
+      callerFuture.whenComplete((value, throwable) -> {
+        if (!result.isDone() && waitingCallers.decrementAndGet() == 0) {
+          inFlightRequests.remove(key, this);
+          loading.cancel(true);
+        }
+      });
+      return callerFuture;
+    }
+  }
+}
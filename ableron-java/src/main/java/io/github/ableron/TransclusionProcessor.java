@@ -3,27 +3,29 @@ package io.github.ableron;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.http.HttpClient;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Pattern;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-public class TransclusionProcessor {
-
-  /**
-   * Regular expression for matching ableron includes.
-   */
-  private static final Pattern INCLUDE_PATTERN =
-    Pattern.compile("<(ableron-include)\\s(([^\">]|\"[^\"]*\")*?)(/>|>(.*?)</\\1>)", Pattern.DOTALL);
-
-  /**
-   * Regular expression for parsing include tag attributes.
-   */
-  private static final Pattern ATTRIBUTES_PATTERN = Pattern.compile("\\s*([a-zA-Z0-9_-]+)(=\"([^\"]+)\")?");
+public class TransclusionProcessor implements AutoCloseable {
 
   private static final long NANO_2_MILLIS = 1000000L;
 
@@ -42,9 +44,35 @@ public class TransclusionProcessor {
   private final FragmentCache fragmentCache;
 
   /**
-   * Thread pool used to resolve includes in parallel.
+   * Cache for the include tags found in content.
+   */
+  private final ParseCache parseCache;
+
+  /**
+   * Executor used to resolve includes in parallel.
+   */
+  private final Executor resolveExecutor;
+
+  /**
+   * Stats of the executor used to resolve includes.
+   */
+  private final ExecutorStats resolveExecutorStats;
+
+  /**
+   * Latencies of composing pages and resolving includes.
+   */
+  private final CompositionStats compositionStats = new CompositionStats();
+
+  /**
+   * Executors created by this processor, which are shut down when this processor is closed.
+   * Executors provided via config are not shut down.
+   */
+  private final List<ExecutorService> ownedExecutors = new ArrayList<>();
+
+  /**
+   * Whether includes are resolved on virtual threads.
    */
-  private final ExecutorService resolveThreadPool = Executors.newFixedThreadPool(64);
+  private final boolean virtualThreadsEnabled;
 
   public TransclusionProcessor() {
     this(AbleronConfig.builder().build());
@@ -52,8 +80,14 @@ public class TransclusionProcessor {
 
   public TransclusionProcessor(AbleronConfig ableronConfig) {
     this.ableronConfig = ableronConfig;
+    var virtualThreadPool = ableronConfig.getResolveExecutor().isPresent() ? Optional.<ExecutorService>empty() : buildVirtualThreadPool();
+    this.virtualThreadsEnabled = virtualThreadPool.isPresent();
+    this.resolveExecutor = ableronConfig.getResolveExecutor()
+      .orElseGet(() -> own(virtualThreadPool.orElseGet(this::buildResolveThreadPool)));
+    this.resolveExecutorStats = ExecutorStats.of(this.resolveExecutor);
     this.httpClient = buildHttpClient();
-    this.fragmentCache = new FragmentCache(this.ableronConfig);
+    this.fragmentCache = new FragmentCache(this.ableronConfig, virtualThreadsEnabled ? this.resolveExecutor : Runnable::run);
+    this.parseCache = new ParseCache(ableronConfig.getParseCacheMaxSizeInBytes());
   }
 
   public HttpClient getHttpClient() {
@@ -64,6 +98,18 @@ public class TransclusionProcessor {
     return fragmentCache;
   }
 
+  public ExecutorStats getResolveExecutorStats() {
+    return resolveExecutorStats;
+  }
+
+  public ParseCache getParseCache() {
+    return parseCache;
+  }
+
+  public CompositionStats getCompositionStats() {
+    return compositionStats;
+  }
+
   /**
    * Finds all includes in the given content.
    *
@@ -71,12 +117,9 @@ public class TransclusionProcessor {
    * @return The includes
    */
   public Set<Include> findIncludes(String content) {
-    int firstIncludePosition = content.indexOf("<ableron-include");
-
-    return (firstIncludePosition == -1) ? Set.of() : INCLUDE_PATTERN.matcher(content.substring(firstIncludePosition))
-      .results()
-      .parallel()
-      .map(match -> new Include(match.group(0), parseAttributes(match.group(2)), match.group(5)))
+    return IncludeScanner.scan(content)
+      .stream()
+      .map(includeTag -> includeTag.toInclude(content))
       .collect(Collectors.toSet());
   }
 
@@ -88,49 +131,400 @@ public class TransclusionProcessor {
    * @return Content with resolved includes
    */
   public TransclusionResult resolveIncludes(String content, Map<String, List<String>> parentRequestHeaders) {
+    return resolveIncludesAsync(content, parentRequestHeaders).join();
+  }
+
+  /**
+   * Resolves all includes in the given content within the given composition deadline.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param compositionDeadline Maximum time to resolve all includes
+   * @return Content with resolved includes
+   * @see #resolveIncludesAsync(String, Map, Duration)
+   */
+  public TransclusionResult resolveIncludes(String content, Map<String, List<String>> parentRequestHeaders, Duration compositionDeadline) {
+    return resolveIncludesAsync(content, parentRequestHeaders, compositionDeadline).join();
+  }
+
+  /**
+   * Resolves all includes in the given content without blocking the calling thread. The composition
+   * deadline from the config applies, if set.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Future of the content with resolved includes
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(String content, Map<String, List<String>> parentRequestHeaders) {
+    return resolveIncludesAsync(content, parentRequestHeaders, ableronConfig.getCompositionDeadline().orElse(null));
+  }
+
+  /**
+   * Resolves all includes in the given content without blocking the calling thread.<br>
+   * <br>
+   * Includes, which are not resolved when the composition deadline passes, are resolved with a stale fragment
+   * of their src, if available, or with their fallback content. Their in-flight resolution is cancelled.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param compositionDeadline Maximum time to resolve all includes. May be null to wait for all includes
+   * @return Future of the content with resolved includes
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(String content, Map<String, List<String>> parentRequestHeaders, Duration compositionDeadline) {
+    return resolveIncludesAsync(content, new PageComposition(this, ableronConfig, parentRequestHeaders), compositionDeadline);
+  }
+
+  /**
+   * Resolves all includes in the given encoded content.
+   *
+   * @param content The encoded content to resolve the includes of. Its position is not modified
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Content with resolved includes
+   * @see #resolveIncludesAsync(ByteBuffer, Charset, Map)
+   */
+  public TransclusionResult resolveIncludes(ByteBuffer content, Charset charset, Map<String, List<String>> parentRequestHeaders) {
+    return resolveIncludesAsync(content, charset, parentRequestHeaders).join();
+  }
+
+  /**
+   * Resolves all includes in the given encoded content without blocking the calling thread. The composition
+   * deadline from the config applies, if set.<br>
+   * <br>
+   * Content of an ASCII compatible charset like UTF-8 or ISO-8859-1 is scanned for include tags without
+   * decoding it. Fragments of the same charset are not decoded either. The content with resolved includes is
+   * provided as segments via {@link TransclusionResult#getContentSegments()}. Content of other charsets is
+   * decoded before its includes are resolved.
+   *
+   * @param content The encoded content to resolve the includes of. Its position is not modified
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return Future of the content with resolved includes
+   */
+  public CompletableFuture<TransclusionResult> resolveIncludesAsync(ByteBuffer content, Charset charset, Map<String, List<String>> parentRequestHeaders) {
+    return resolveIncludesAsync(content, charset, new PageComposition(this, ableronConfig, parentRequestHeaders), ableronConfig.getCompositionDeadline().orElse(null));
+  }
+
+  /**
+   * Resolves all includes in the given content and writes the content to the given writer in document order
+   * while the includes are still being resolved. Static content and includes are written as soon as all
+   * content before them is available. Thus, the first bytes of the content do not have to wait for the
+   * slowest fragment.<br>
+   * <br>
+   * In case the content has primary includes, writing does not start before they have been resolved, so
+   * that status code and response headers can be settled in <code>beforeFirstWrite</code>.
+   *
+   * @param content The content to resolve the includes of
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param writer The writer to write the content with resolved includes to. Is flushed but not closed
+   * @param beforeFirstWrite Invoked before anything is written to the writer
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the writer fails
+   */
+  public TransclusionResult resolveIncludes(String content, Map<String, List<String>> parentRequestHeaders, Writer writer, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    return resolveIncludes(content, new PageComposition(this, ableronConfig, parentRequestHeaders), writer, beforeFirstWrite);
+  }
+
+  /**
+   * Starts the composition of a page. Allows to start resolving includes while the page is still being
+   * rendered.
+   *
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @return The page composition
+   */
+  public PageComposition startPageComposition(Map<String, List<String>> parentRequestHeaders) {
+    return new PageComposition(this, ableronConfig, parentRequestHeaders);
+  }
+
+  CompletableFuture<TransclusionResult> resolveIncludesAsync(String content, PageComposition pageComposition, Duration compositionDeadline) {
     var startTime = System.nanoTime();
-    var transclusionResult = new TransclusionResult(content, this.fragmentCache.stats(), ableronConfig.statsAppendToContent(), ableronConfig.statsExposeFragmentUrl());
-    CompletableFuture.allOf(findIncludes(content).stream()
-      .map(include -> {
-        try {
-          return include.resolve(httpClient, parentRequestHeaders, fragmentCache, ableronConfig, resolveThreadPool)
-            .thenAccept(transclusionResult::addResolvedInclude);
-        } catch (Exception e) {
-          handleResolveError(include, e, transclusionResult, startTime);
-          return CompletableFuture.completedFuture(null);
-        }
-      })
-      .toArray(CompletableFuture[]::new)
-    ).join();
-    transclusionResult.setProcessingTimeMillis((System.nanoTime() - startTime) / NANO_2_MILLIS);
+    return resolveIncludesAsync(createTransclusionResult(content, pageComposition), pageComposition, compositionDeadline, startTime);
+  }
+
+  CompletableFuture<TransclusionResult> resolveIncludesAsync(ByteBuffer content, Charset charset, PageComposition pageComposition, Duration compositionDeadline) {
+    if (!ByteContent.isAsciiCompatible(charset)) {
+      return resolveIncludesAsync(charset.decode(content.duplicate()).toString(), pageComposition, compositionDeadline)
+        .thenApply(transclusionResult -> {
+          transclusionResult.setCharset(charset);
+          return transclusionResult;
+        });
+    }
+
+    var startTime = System.nanoTime();
+    return resolveIncludesAsync(createTransclusionResult(ByteContent.of(content, charset), pageComposition), pageComposition, compositionDeadline, startTime);
+  }
+
+  TransclusionResult resolveIncludes(String content, PageComposition pageComposition, Writer writer, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    var startTime = System.nanoTime();
+    var transclusionResult = createTransclusionResult(content, pageComposition);
+    var allIncludesResolved = resolveIncludesAsync(transclusionResult, pageComposition, ableronConfig.getCompositionDeadline().orElse(null), startTime);
+    transclusionResult.writeContent(writer, beforeFirstWrite);
+    allIncludesResolved.join();
+    transclusionResult.writeStats(writer);
+    writer.flush();
+    return transclusionResult;
+  }
+
+  /**
+   * Resolves all includes in the given encoded content and writes the content to the given output stream in
+   * document order while the includes are still being resolved. Content of an ASCII compatible charset is
+   * neither decoded nor copied. Content of other charsets is decoded and written via a writer.
+   *
+   * @param content The encoded content to resolve the includes of. Its position is not modified
+   * @param charset Charset of the content
+   * @param parentRequestHeaders Request headers of the initial request having the includes in its response
+   * @param outputStream The output stream to write the content with resolved includes to. Is flushed but not closed
+   * @param beforeFirstWrite Invoked before anything is written to the output stream
+   * @return Transclusion result of the written content
+   * @throws IOException In case writing to the output stream fails
+   * @see #resolveIncludes(String, Map, Writer, Consumer)
+   */
+  public TransclusionResult resolveIncludes(ByteBuffer content, Charset charset, Map<String, List<String>> parentRequestHeaders, OutputStream outputStream, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    return resolveIncludes(content, charset, new PageComposition(this, ableronConfig, parentRequestHeaders), outputStream, beforeFirstWrite);
+  }
+
+  TransclusionResult resolveIncludes(ByteBuffer content, Charset charset, PageComposition pageComposition, OutputStream outputStream, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    if (!ByteContent.isAsciiCompatible(charset)) {
+      var transclusionResult = resolveIncludes(charset.decode(content.duplicate()).toString(), pageComposition, new OutputStreamWriter(outputStream, charset), beforeFirstWrite);
+      transclusionResult.setCharset(charset);
+      return transclusionResult;
+    }
+
+    var startTime = System.nanoTime();
+    var transclusionResult = createTransclusionResult(ByteContent.of(content, charset), pageComposition);
+    var allIncludesResolved = resolveIncludesAsync(transclusionResult, pageComposition, ableronConfig.getCompositionDeadline().orElse(null), startTime);
+    transclusionResult.writeContent(outputStream, beforeFirstWrite);
+    allIncludesResolved.join();
+    transclusionResult.writeStats(outputStream);
+    outputStream.flush();
+    return transclusionResult;
+  }
+
+  /**
+   * Starts resolving the given include. The returned future completes with the resolved include and does
+   * not complete exceptionally. Includes which cannot be resolved are resolved with their fallback content.
+   * Cancelling the returned future cancels the resolution of the include.
+   */
+  CompletableFuture<Include> resolveInclude(Include include, Map<String, List<String>> parentRequestHeaders, long startTime) {
+    try {
+      if (isResolveExecutorShutDown()) {
+        logger.warn("[Ableron] Unable to resolve include '{}': Resolve executor shut down. Using fallback content", include.getId());
+        return CompletableFuture.completedFuture(resolveWithFallbackContent(include, startTime));
+      }
+
+      if (isResolveExecutorSaturated()) {
+        return CompletableFuture.completedFuture(handleSaturatedResolveExecutor(include, startTime));
+      }
+
+      var resolution = include.resolve(httpClient, parentRequestHeaders, fragmentCache, ableronConfig, resolveExecutor);
+      return CancellationScope.propagateCancellation(resolution.exceptionally(e -> unwrap(e) instanceof RejectedExecutionException
+        ? handleSaturatedResolveExecutor(include, startTime)
+        : handleResolveError(include, e, startTime)), resolution);
+    } catch (Exception e) {
+      return CompletableFuture.completedFuture(handleResolveError(include, e, startTime));
+    }
+  }
+
+  private TransclusionResult createTransclusionResult(String content, PageComposition pageComposition) {
+    var parsedContent = parseCache.parse(content);
+    var includesByRawIncludeTag = new HashMap<String, Include>();
+    var includes = new ArrayList<Include>(parsedContent.getIncludeDefinitions().size());
+
+    for (var includeDefinition : parsedContent.getIncludeDefinitions()) {
+      includes.add(includesByRawIncludeTag.computeIfAbsent(
+        includeDefinition.getRawIncludeTag(),
+        rawIncludeTag -> pageComposition.getPrefetchedInclude(rawIncludeTag).orElseGet(() -> Include.of(includeDefinition))));
+    }
+
+    return new TransclusionResult(content, parsedContent.getIncludeTags(), includes, this.fragmentCache.stats(), ableronConfig.statsAppendToContent(), ableronConfig.statsExposeFragmentUrl());
+  }
+
+  /**
+   * Creates the transclusion result of encoded content. Scans the content for include tags without decoding it.
+   * Only the include tags are decoded.
+   */
+  private TransclusionResult createTransclusionResult(ByteContent content, PageComposition pageComposition) {
+    var includeTags = IncludeScanner.scan(content);
+    var includesByRawIncludeTag = new HashMap<String, Include>();
+    var includes = new ArrayList<Include>(includeTags.size());
+
+    for (var includeTag : includeTags) {
+      includes.add(includesByRawIncludeTag.computeIfAbsent(
+        content.decode(includeTag.getStart(), includeTag.getEnd()),
+        rawIncludeTag -> pageComposition.getPrefetchedInclude(rawIncludeTag).orElseGet(() -> Include.of(
+          parseCache.getIncludeDefinition(rawIncludeTag, tag -> includeTag.toIncludeDefinition(content, tag))))));
+    }
+
+    return new TransclusionResult(content, includeTags, includes, this.fragmentCache.stats(), ableronConfig.statsAppendToContent(), ableronConfig.statsExposeFragmentUrl());
+  }
+
+  /**
+   * Resolves the includes of the given transclusion result. Includes whose fragment is cached are resolved on
+   * the calling thread right away. Only the remaining includes are resolved asynchronously. Thus, resolving a
+   * page whose includes are all cached neither touches any executor nor waits for any other thread.
+   */
+  private CompletableFuture<TransclusionResult> resolveIncludesAsync(TransclusionResult transclusionResult, PageComposition pageComposition, Duration compositionDeadline, long startTime) {
+    var parentRequestHeaders = pageComposition.getParentRequestHeaders();
+    var resolvedIncludes = ConcurrentHashMap.<Include>newKeySet();
+    var resolutions = new HashMap<Include, CompletableFuture<Include>>();
+    var pendingResolutions = new ArrayList<CompletableFuture<Void>>();
+    pageComposition.cancelPrefetchedIncludesNotIn(transclusionResult.getDistinctIncludes());
+
+    for (var include : transclusionResult.getDistinctIncludes()) {
+      var prefetchedResolution = pageComposition.getPrefetchedResolution(include);
+
+      if (prefetchedResolution.isEmpty() && include.resolveFromCache(parentRequestHeaders, fragmentCache, ableronConfig)) {
+        addResolvedInclude(include, transclusionResult, resolvedIncludes);
+        continue;
+      }
+
+      var resolution = prefetchedResolution.orElseGet(() -> resolveInclude(include, parentRequestHeaders, startTime));
+      resolutions.put(include, resolution);
+      pendingResolutions.add(resolution.thenAccept(resolvedInclude -> addResolvedInclude(resolvedInclude, transclusionResult, resolvedIncludes)));
+    }
+
+    if (pendingResolutions.isEmpty()) {
+      return CompletableFuture.completedFuture(completeTransclusionResult(transclusionResult, startTime));
+    }
+
+    var allIncludesResolved = CompletableFuture.allOf(pendingResolutions.toArray(CompletableFuture[]::new));
+
+    if (compositionDeadline != null && !allIncludesResolved.isDone()) {
+      allIncludesResolved = allIncludesResolved
+        .completeOnTimeout(null, compositionDeadline.toMillis(), TimeUnit.MILLISECONDS)
+        .thenRun(() -> resolutions.forEach((include, resolution) -> {
+          if (!resolution.isDone()) {
+            handleCompositionDeadlineExceeded(include, resolution, parentRequestHeaders, compositionDeadline, transclusionResult, resolvedIncludes, startTime);
+          }
+        }));
+    }
+
+    return allIncludesResolved.thenApply(v -> completeTransclusionResult(transclusionResult, startTime));
+  }
+
+  private TransclusionResult completeTransclusionResult(TransclusionResult transclusionResult, long startTime) {
+    var compositionTimeNanos = System.nanoTime() - startTime;
+    transclusionResult.setProcessingTimeMillis(compositionTimeNanos / NANO_2_MILLIS);
+    compositionStats.compositionTime().record(compositionTimeNanos);
+    ableronConfig.getMetrics().recordComposition(compositionTimeNanos, transclusionResult.getProcessedIncludesCount());
     logger.debug("[Ableron] {} ({})", transclusionResult.getProcessedIncludesLogLine(), transclusionResult.getCacheStatsLogLine());
     return transclusionResult;
   }
 
-  private void handleResolveError(Include include, Exception e, TransclusionResult transclusionResult, long resolveStartTimeMillis) {
+  /**
+   * Shuts down the executors created by this processor and stops auto-refreshing cached fragments.
+   * Executors provided via config are not shut down.
+   */
+  @Override
+  public void close() {
+    fragmentCache.close();
+    ownedExecutors.forEach(ExecutorService::shutdownNow);
+  }
+
+  private void addResolvedInclude(Include include, TransclusionResult transclusionResult, Set<Include> resolvedIncludes) {
+    if (resolvedIncludes.add(include)) {
+      transclusionResult.addResolvedInclude(include);
+      recordIncludeResolved(include);
+    }
+  }
+
+  private void recordIncludeResolved(Include include) {
+    compositionStats.includeResolveTime().record(include.getResolveTimeNanos());
+    ableronConfig.getMetrics().recordIncludeResolved(include.getResolvedFragmentSource(), include.getResolveTimeNanos());
+  }
+
+  private void handleCompositionDeadlineExceeded(Include include, CompletableFuture<Include> resolution, Map<String, List<String>> parentRequestHeaders, Duration compositionDeadline, TransclusionResult transclusionResult, Set<Include> resolvedIncludes, long resolveStartTimeMillis) {
+    if (resolvedIncludes.add(include)) {
+      resolution.cancel(true);
+      logger.warn("[Ableron] Unable to resolve include '{}': Composition deadline of {}ms exceeded", include.getId(), compositionDeadline.toMillis());
+      transclusionResult.addResolvedInclude(include.resolveWithStaleFragmentOrFallbackContent(
+        parentRequestHeaders,
+        fragmentCache,
+        ableronConfig,
+        (int) ((System.nanoTime() - resolveStartTimeMillis) / NANO_2_MILLIS)));
+      recordIncludeResolved(include);
+    }
+  }
+
+  private Include handleSaturatedResolveExecutor(Include include, long resolveStartTimeMillis) {
+    resolveExecutorStats.recordRejection();
+    logger.warn("[Ableron] Unable to resolve include '{}': Resolve executor saturated. Using fallback content", include.getId());
+    return resolveWithFallbackContent(include, resolveStartTimeMillis);
+  }
+
+  private Include handleResolveError(Include include, Throwable e, long resolveStartTimeMillis) {
     logger.error("[Ableron] Unable to resolve include '{}'", include.getId(), e);
-    transclusionResult.addResolvedInclude(include.resolveWith(
+    return resolveWithFallbackContent(include, resolveStartTimeMillis);
+  }
+
+  private Include resolveWithFallbackContent(Include include, long resolveStartTimeMillis) {
+    return include.resolveWith(
       new Fragment(null, 200, include.getFallbackContent(), Instant.now().plusSeconds(60), Map.of()),
-      (int) ((System.nanoTime() - resolveStartTimeMillis) / NANO_2_MILLIS),
-      "fallback content"));
+      "fallback content",
+      resolveStartTimeMillis);
   }
 
   /**
-   * Parses the given include tag attributes string.
-   *
-   * @param attributesString Attributes string to parse
-   * @return A key-value map of the attributes
+   * @return Whether includes are resolved on virtual threads
    */
-  private Map<String, String> parseAttributes(String attributesString) {
-    return ATTRIBUTES_PATTERN.matcher(Optional.ofNullable(attributesString).orElse(""))
-      .results()
-      .map(match -> new AbstractMap.SimpleEntry<>(match.group(1), Optional.ofNullable(match.group(3)).orElse("")))
-      .collect(Collectors.toMap(AbstractMap.SimpleEntry::getKey, AbstractMap.SimpleEntry::getValue));
+  public boolean virtualThreadsEnabled() {
+    return virtualThreadsEnabled;
+  }
+
+  private boolean isResolveExecutorShutDown() {
+    return resolveExecutor instanceof ExecutorService && ((ExecutorService) resolveExecutor).isShutdown();
+  }
+
+  private boolean isResolveExecutorSaturated() {
+    return resolveExecutor instanceof ThreadPoolExecutor
+      && ((ThreadPoolExecutor) resolveExecutor).getQueue().remainingCapacity() == 0;
+  }
+
+  private Throwable unwrap(Throwable throwable) {
+    return (throwable instanceof CompletionException && throwable.getCause() != null) ? throwable.getCause() : throwable;
+  }
+
+  private ExecutorService own(ExecutorService executorService) {
+    ownedExecutors.add(executorService);
+    return executorService;
+  }
+
+  private ExecutorService buildResolveThreadPool() {
+    return new ThreadPoolExecutor(
+      ableronConfig.getResolveThreadPoolSize(),
+      ableronConfig.getResolveThreadPoolSize(),
+      0L,
+      TimeUnit.MILLISECONDS,
+      new LinkedBlockingQueue<>(ableronConfig.getResolveThreadPoolQueueCapacity())
+    );
+  }
+
+  private Optional<ExecutorService> buildVirtualThreadPool() {
+    if (!ableronConfig.virtualThreadsEnabled()) {
+      return Optional.empty();
+    }
+
+    if (!VirtualThreads.isSupported()) {
+      logger.warn("[Ableron] Virtual threads are enabled but not supported by the running JVM. Falling back to platform threads");
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.of(VirtualThreads.newVirtualThreadPerTaskExecutor());
+    } catch (Exception e) {
+      logger.warn("[Ableron] Unable to use virtual threads. Falling back to platform threads", e);
+      return Optional.empty();
+    }
   }
 
   private HttpClient buildHttpClient() {
-    return HttpClient.newBuilder()
-      .followRedirects(HttpClient.Redirect.NEVER)
-      .build();
+    var httpClientBuilder = HttpClient.newBuilder()
+      .followRedirects(HttpClient.Redirect.NEVER);
+
+    if (virtualThreadsEnabled) {
+      httpClientBuilder.executor(resolveExecutor);
+    }
+
+    return httpClientBuilder.build();
   }
 }
@@ -3,10 +3,21 @@ package io.github.ableron;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class TransclusionResult {
 
@@ -25,9 +36,41 @@ public class TransclusionResult {
   private final boolean exposeFragmentUrl;
 
   /**
-   * Content with resolved includes.
+   * Content with unresolved includes. Null, if the content has been given encoded.
    */
-  private String content;
+  private final String content;
+
+  /**
+   * Encoded content with unresolved includes. Null, if the content has been given as string.
+   */
+  private final ByteContent encodedContent;
+
+  /**
+   * Charset to encode the content segments with.
+   */
+  private volatile Charset charset;
+
+  /**
+   * Include tags found in the content in document order. <code>null</code>, if the positions of the
+   * includes in the content are unknown.
+   */
+  private final List<IncludeScanner.IncludeTag> includeTags;
+
+  /**
+   * Includes of the include tags. Identical include tags share the same Include.
+   */
+  private final List<Include> includes;
+
+  /**
+   * Completed once the respective include has been resolved. Empty, if the positions of the includes in the
+   * content are unknown.
+   */
+  private final Map<Include, CompletableFuture<Include>> includeResolutions;
+
+  /**
+   * Content with resolved includes. Assembled once all includes have been resolved.
+   */
+  private volatile String assembledContent;
 
   private final CacheStats cacheStats;
 
@@ -35,18 +78,18 @@ public class TransclusionResult {
    * Expiration time of the content as defined by the fragment with the lowest expiration
    * time.
    */
-  private Instant contentExpirationTime;
+  private final AtomicReference<Instant> contentExpirationTime = new AtomicReference<>();
 
   /**
    * Whether one of the resolved includes was a primary include and thus result contains
    * status code and response headers of this primary include.
    */
-  private boolean hasPrimaryInclude = false;
+  private final AtomicBoolean hasPrimaryInclude = new AtomicBoolean(false);
 
   /**
    * Status code set by a primary include which is to be sent along the content.
    */
-  private Integer statusCodeOverride;
+  private volatile Integer statusCodeOverride;
 
   /**
    * Response headers of primary includes, that shall be forwarded to the final response.
@@ -61,29 +104,111 @@ public class TransclusionResult {
   /**
    * List of processed Includes.
    */
-  private final List<Include> processedIncludes = new ArrayList<>();
+  private final Queue<Include> processedIncludes = new ConcurrentLinkedQueue<>();
 
   public TransclusionResult(String content) {
     this(content, emptyCacheStats, false, false);
   }
 
   public TransclusionResult(String content, CacheStats cacheStats, boolean appendStatsToContent, boolean exposeFragmentUrl) {
+    this(content, null, null, cacheStats, appendStatsToContent, exposeFragmentUrl);
+  }
+
+  /**
+   * Constructs a new TransclusionResult for content whose include positions are known.
+   *
+   * @param content Content with unresolved includes
+   * @param includeTags Include tags found in the content in document order
+   * @param includes Include of each include tag
+   * @param cacheStats Fragment cache stats
+   * @param appendStatsToContent Whether to append stats as HTML comment to the content
+   * @param exposeFragmentUrl Whether to include fragment URLs in stats
+   */
+  TransclusionResult(String content, List<IncludeScanner.IncludeTag> includeTags, List<Include> includes, CacheStats cacheStats, boolean appendStatsToContent, boolean exposeFragmentUrl) {
+    this(content, null, includeTags, includes, cacheStats, appendStatsToContent, exposeFragmentUrl);
+  }
+
+  /**
+   * Constructs a new TransclusionResult for encoded content without includes.
+   *
+   * @param content Encoded content
+   */
+  TransclusionResult(ByteContent content) {
+    this(content, List.of(), List.of(), emptyCacheStats, false, false);
+  }
+
+  /**
+   * Constructs a new TransclusionResult for encoded content whose include positions are known.
+   *
+   * @param content Encoded content with unresolved includes
+   * @param includeTags Include tags found in the content in document order
+   * @param includes Include of each include tag
+   * @param cacheStats Fragment cache stats
+   * @param appendStatsToContent Whether to append stats as HTML comment to the content
+   * @param exposeFragmentUrl Whether to include fragment URLs in stats
+   */
+  TransclusionResult(ByteContent content, List<IncludeScanner.IncludeTag> includeTags, List<Include> includes, CacheStats cacheStats, boolean appendStatsToContent, boolean exposeFragmentUrl) {
+    this(null, content, includeTags, includes, cacheStats, appendStatsToContent, exposeFragmentUrl);
+  }
+
+  private TransclusionResult(String content, ByteContent encodedContent, List<IncludeScanner.IncludeTag> includeTags, List<Include> includes, CacheStats cacheStats, boolean appendStatsToContent, boolean exposeFragmentUrl) {
     this.content = content;
+    this.encodedContent = encodedContent;
+    this.charset = encodedContent != null ? encodedContent.getCharset() : StandardCharsets.UTF_8;
+    this.includeTags = includeTags;
+    this.includes = includes;
+    this.includeResolutions = new HashMap<>();
     this.cacheStats = cacheStats;
+
+    if (includes != null) {
+      includes.forEach(include -> includeResolutions.computeIfAbsent(include, i -> new CompletableFuture<>()));
+    }
     this.appendStatsToContent = appendStatsToContent;
     this.exposeFragmentUrl = exposeFragmentUrl;
   }
 
   public String getContent() {
-    return appendStatsToContent ? content + getStatsAsHtmlComment() : content;
+    var assembledContent = getAssembledContent();
+    return appendStatsToContent ? assembledContent + getStatsAsHtmlComment() : assembledContent;
+  }
+
+  /**
+   * Returns the content as segments in document order without assembling it. In case the content has been
+   * given encoded, the segments are encoded with its charset and consist of parts of the original content as
+   * well as of fragments, both without being copied. Otherwise, the content is encoded with UTF-8, unless
+   * another charset has been requested when resolving the includes.
+   *
+   * @return Read-only segments of the content with resolved includes
+   */
+  public List<ByteBuffer> getContentSegments() {
+    var contentSegments = new ArrayList<ByteBuffer>();
+
+    for (var contentSegment : assembleContentSegments()) {
+      contentSegments.add(contentSegment.asReadOnlyBuffer());
+    }
+
+    return contentSegments;
+  }
+
+  /**
+   * Writes the content segments to the given output stream without copying them.
+   *
+   * @param outputStream The output stream to write the content to. Is not flushed
+   * @throws IOException In case writing fails
+   * @see #getContentSegments()
+   */
+  public void writeContentTo(OutputStream outputStream) throws IOException {
+    for (var contentSegment : assembleContentSegments()) {
+      write(outputStream, contentSegment);
+    }
   }
 
   public Optional<Instant> getContentExpirationTime() {
-    return Optional.ofNullable(contentExpirationTime);
+    return Optional.ofNullable(contentExpirationTime.get());
   }
 
   public boolean hasPrimaryInclude() {
-    return hasPrimaryInclude;
+    return hasPrimaryInclude.get();
   }
 
   public Optional<Integer> getStatusCodeOverride() {
@@ -94,6 +219,28 @@ public class TransclusionResult {
     return responseHeadersToForward;
   }
 
+  /**
+   * @return Includes of the content without duplicates. Empty, if the positions of the includes in the
+   * content are unknown
+   */
+  Set<Include> getDistinctIncludes() {
+    return includeResolutions.keySet();
+  }
+
+  /**
+   * @return Raw include tags of the content in document order and without duplicates. Empty, if the positions
+   * of the includes in the content are unknown
+   */
+  public Set<String> getRawIncludeTags() {
+    var rawIncludeTags = new LinkedHashSet<String>();
+
+    if (includes != null) {
+      includes.forEach(include -> rawIncludeTags.add(include.getRawIncludeTag()));
+    }
+
+    return rawIncludeTags;
+  }
+
   public int getProcessedIncludesCount() {
     return processedIncludes.size();
   }
@@ -106,25 +253,153 @@ public class TransclusionResult {
     this.processingTimeMillis = processingTimeMillis;
   }
 
-  public synchronized void addResolvedInclude(Include include) {
+  /**
+   * Sets the charset to encode the segments of content given as string with.
+   *
+   * @param charset The charset
+   */
+  void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   * Adds a resolved include. May be called concurrently. The content is assembled not before
+   * it is requested via {@link #getContent()}.
+   *
+   * @param include The resolved include
+   */
+  public void addResolvedInclude(Include include) {
     Fragment fragment = include.getResolvedFragment();
 
     if (include.isPrimary()) {
-      if (hasPrimaryInclude) {
-        logger.error("[Ableron] Found multiple primary includes in one page. Only treating one of them as primary");
-      } else {
-        hasPrimaryInclude = true;
+      if (hasPrimaryInclude.compareAndSet(false, true)) {
         statusCodeOverride = fragment.getStatusCode();
         responseHeadersToForward.putAll(fragment.getResponseHeaders());
+      } else {
+        logger.error("[Ableron] Found multiple primary includes in one page. Only treating one of them as primary");
       }
     }
 
-    if (contentExpirationTime == null || fragment.getExpirationTime().isBefore(contentExpirationTime)) {
-      contentExpirationTime = fragment.getExpirationTime();
+    contentExpirationTime.accumulateAndGet(fragment.getExpirationTime(), (currentExpirationTime, fragmentExpirationTime) ->
+      currentExpirationTime == null || fragmentExpirationTime.isBefore(currentExpirationTime) ? fragmentExpirationTime : currentExpirationTime);
+    processedIncludes.add(include);
+    assembledContent = null;
+    Optional.ofNullable(includeResolutions.get(include)).ifPresent(includeResolution -> includeResolution.complete(include));
+  }
+
+  /**
+   * Writes the content to the given writer in document order while its includes are still being resolved.
+   * Static content and includes are written as soon as all content before them is available. The writer is
+   * flushed whenever writing has to wait for an include to be resolved, so that already available content
+   * is not held back by slow fragments.<br>
+   * <br>
+   * In case the content has primary includes, writing does not start before they have been resolved. Thus,
+   * status code and response headers to forward are settled when <code>beforeFirstWrite</code> is invoked.
+   * The writer is not flushed after the last write. Only applicable to content given as string.
+   *
+   * @param writer The writer to write the content to
+   * @param beforeFirstWrite Invoked before anything is written, e.g. to set status code and response headers
+   * @throws IOException In case writing fails
+   */
+  void writeContent(Writer writer, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    if (includeTags == null) {
+      beforeFirstWrite.accept(this);
+      writer.write(getAssembledContent());
+      return;
     }
 
-    content = content.replace(include.getRawIncludeTag(), fragment.getContent());
-    processedIncludes.add(include);
+    includes.stream()
+      .filter(Include::isPrimary)
+      .forEach(include -> includeResolutions.get(include).join());
+    beforeFirstWrite.accept(this);
+    var position = 0;
+
+    for (int i = 0; i < includeTags.size(); i++) {
+      var includeTag = includeTags.get(i);
+      var includeResolution = includeResolutions.get(includes.get(i));
+      writer.write(content, position, includeTag.getStart() - position);
+
+      if (!includeResolution.isDone()) {
+        writer.flush();
+      }
+
+      writer.write(includeResolution.join().getResolvedFragment().getContent());
+      position = includeTag.getEnd();
+    }
+
+    writer.write(content, position, content.length() - position);
+  }
+
+  /**
+   * Writes the encoded content to the given output stream in document order while its includes are still being
+   * resolved, like {@link #writeContent(Writer, Consumer)}. Parts of the original content are written without
+   * being decoded or copied. Content given as string is encoded with the charset of this result and written
+   * once all includes have been resolved.
+   *
+   * @param outputStream The output stream to write the content to
+   * @param beforeFirstWrite Invoked before anything is written, e.g. to set status code and response headers
+   * @throws IOException In case writing fails
+   */
+  void writeContent(OutputStream outputStream, Consumer<TransclusionResult> beforeFirstWrite) throws IOException {
+    if (encodedContent == null) {
+      includeResolutions.values().forEach(CompletableFuture::join);
+      beforeFirstWrite.accept(this);
+      outputStream.write(getAssembledContent().getBytes(charset));
+      return;
+    }
+
+    includes.stream()
+      .filter(Include::isPrimary)
+      .forEach(include -> includeResolutions.get(include).join());
+    beforeFirstWrite.accept(this);
+    var position = 0;
+
+    for (int i = 0; i < includeTags.size(); i++) {
+      var includeTag = includeTags.get(i);
+      var includeResolution = includeResolutions.get(includes.get(i));
+      write(outputStream, encodedContent.slice(position, includeTag.getStart()));
+
+      if (!includeResolution.isDone()) {
+        outputStream.flush();
+      }
+
+      outputStream.write(includeResolution.join().getResolvedFragment().getContentBytes(charset));
+      position = includeTag.getEnd();
+    }
+
+    write(outputStream, encodedContent.slice(position, encodedContent.length()));
+  }
+
+  /**
+   * Writes the stats as HTML comment to the given writer, if stats shall be appended to the content.
+   *
+   * @param writer The writer to write the stats to
+   * @throws IOException In case writing fails
+   */
+  void writeStats(Writer writer) throws IOException {
+    if (appendStatsToContent) {
+      writer.write(getStatsAsHtmlComment());
+    }
+  }
+
+  /**
+   * Writes the stats as HTML comment to the given output stream, if stats shall be appended to the content.
+   *
+   * @param outputStream The output stream to write the stats to
+   * @throws IOException In case writing fails
+   */
+  void writeStats(OutputStream outputStream) throws IOException {
+    if (appendStatsToContent) {
+      outputStream.write(getStatsAsHtmlComment().getBytes(charset));
+    }
+  }
+
+  /**
+   * @return Whether some includes of the content have not been resolved yet, e.g. while the content is
+   * being written progressively
+   */
+  public boolean hasUnresolvedIncludes() {
+    return includeResolutions.values().stream().anyMatch(includeResolution -> !includeResolution.isDone());
   }
 
   /**
@@ -139,14 +414,17 @@ public class TransclusionResult {
 
   /**
    * Calculates the <code>Cache-Control</code> header value based on the fragment with the lowest
-   * expiration time and the given page max age.
+   * expiration time and the given page max age. As long as some includes have not been resolved yet,
+   * the content is not cacheable.
    *
    * @return The Cache-Control header value. Either "no-store" or "max-age=xxx"
    */
   public String calculateCacheControlHeaderValue(Duration pageMaxAge) {
     Instant now = Instant.now();
+    Instant contentExpirationTime = this.contentExpirationTime.get();
 
     if ((contentExpirationTime != null && contentExpirationTime.isBefore(now))
+      || hasUnresolvedIncludes()
       || pageMaxAge == null
       || pageMaxAge.toSeconds() <= 0) {
       return "no-store";
@@ -173,6 +451,131 @@ public class TransclusionResult {
     return calculateCacheControlHeaderValue(pageMaxAge);
   }
 
+  private String getAssembledContent() {
+    var assembledContent = this.assembledContent;
+
+    if (assembledContent == null) {
+      if (encodedContent != null) {
+        assembledContent = decodeContentSegments();
+      } else {
+        assembledContent = (includeTags != null) ? assembleContent() : assembleContentByReplacingIncludeTags();
+      }
+
+      this.assembledContent = assembledContent;
+    }
+
+    return assembledContent;
+  }
+
+  /**
+   * Assembles the content by splicing the fragments of the resolved includes into the content at the
+   * positions of their include tags. Copies the content only once into an exactly sized buffer, from which the
+   * String is created. Unlike a StringBuilder, the buffer is never grown or inflated from Latin-1 to UTF-16.
+   */
+  private String assembleContent() {
+    if (includeTags.isEmpty()) {
+      return content;
+    }
+
+    var length = content.length();
+    var includeContents = new String[includeTags.size()];
+
+    for (int i = 0; i < includeTags.size(); i++) {
+      var includeTag = includeTags.get(i);
+      var include = includes.get(i);
+
+      if (include.isResolved()) {
+        includeContents[i] = include.getResolvedFragment().getContent();
+        length += includeContents[i].length() - (includeTag.getEnd() - includeTag.getStart());
+      }
+    }
+
+    var assembledContent = new char[length];
+    var position = 0;
+    var assembledPosition = 0;
+
+    for (int i = 0; i < includeTags.size(); i++) {
+      var includeTag = includeTags.get(i);
+      content.getChars(position, includeTag.getStart(), assembledContent, assembledPosition);
+      assembledPosition += includeTag.getStart() - position;
+
+      if (includeContents[i] != null) {
+        includeContents[i].getChars(0, includeContents[i].length(), assembledContent, assembledPosition);
+        assembledPosition += includeContents[i].length();
+      } else {
+        content.getChars(includeTag.getStart(), includeTag.getEnd(), assembledContent, assembledPosition);
+        assembledPosition += includeTag.getEnd() - includeTag.getStart();
+      }
+
+      position = includeTag.getEnd();
+    }
+
+    content.getChars(position, content.length(), assembledContent, assembledPosition);
+    return new String(assembledContent);
+  }
+
+  /**
+   * Assembles the content segments. Parts of encoded content are exposed without being copied.
+   */
+  private List<ByteBuffer> assembleContentSegments() {
+    var charset = this.charset;
+    var contentSegments = new ArrayList<ByteBuffer>();
+
+    if (encodedContent == null) {
+      contentSegments.add(ByteBuffer.wrap(getContent().getBytes(charset)));
+      return contentSegments;
+    }
+
+    var position = 0;
+
+    for (int i = 0; i < includeTags.size(); i++) {
+      var includeTag = includeTags.get(i);
+      var include = includes.get(i);
+      contentSegments.add(encodedContent.slice(position, includeTag.getStart()));
+      contentSegments.add(include.isResolved()
+        ? ByteBuffer.wrap(include.getResolvedFragment().getContentBytes(charset))
+        : encodedContent.slice(includeTag.getStart(), includeTag.getEnd()));
+      position = includeTag.getEnd();
+    }
+
+    contentSegments.add(encodedContent.slice(position, encodedContent.length()));
+
+    if (appendStatsToContent) {
+      contentSegments.add(ByteBuffer.wrap(getStatsAsHtmlComment().getBytes(charset)));
+    }
+
+    return contentSegments;
+  }
+
+  private static void write(OutputStream outputStream, ByteBuffer contentSegment) throws IOException {
+    outputStream.write(contentSegment.array(), contentSegment.arrayOffset() + contentSegment.position(), contentSegment.remaining());
+  }
+
+  /**
+   * Decodes the content segments of encoded content without stats.
+   */
+  private String decodeContentSegments() {
+    var contentSegments = assembleContentSegments();
+    var contentSegmentsWithoutStats = appendStatsToContent ? contentSegments.subList(0, contentSegments.size() - 1) : contentSegments;
+    var assembledContent = ByteBuffer.allocate(contentSegmentsWithoutStats.stream().mapToInt(ByteBuffer::remaining).sum());
+    contentSegmentsWithoutStats.forEach(assembledContent::put);
+    return new String(assembledContent.array(), encodedContent.getCharset());
+  }
+
+  /**
+   * Assembles the content by replacing the raw include tags of the resolved includes. Used in case the
+   * positions of the includes in the content are unknown.
+   */
+  private String assembleContentByReplacingIncludeTags() {
+    var assembledContent = content;
+
+    for (Include include : processedIncludes) {
+      assembledContent = assembledContent.replace(include.getRawIncludeTag(), include.getResolvedFragment().getContent());
+    }
+
+    return assembledContent;
+  }
+
   public String getProcessedIncludesLogLine() {
     return "Processed " + getProcessedIncludesCount() + (getProcessedIncludesCount() == 1 ? " include" : " includes") + " in " + this.processingTimeMillis + "ms";
   }
@@ -237,6 +640,10 @@ public class TransclusionResult {
       return "not cacheable";
     }
 
+    if (!include.getResolvedFragment().getExpirationTime().isAfter(Instant.now())) {
+      return "expired";
+    }
+
     return "expires in " + (int) Math.ceil((include.getResolvedFragment().getExpirationTime().toEpochMilli() - Instant.now().toEpochMilli()) / 1000.0) + 's';
   }
 
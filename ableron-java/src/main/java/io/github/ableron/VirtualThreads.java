@@ -0,0 +1,65 @@
+package io.github.ableron;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runtime detection of virtual threads (Java 21+).<br>
+ * <br>
+ * The library is compiled for Java 11. Thus, virtual thread APIs are looked up via method handles instead of
+ * being referenced directly.
+ */
+public final class VirtualThreads {
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupNewVirtualThreadPerTaskExecutor();
+
+  private VirtualThreads() {}
+
+  /**
+   * @return Whether the running JVM supports virtual threads
+   */
+  public static boolean isSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   *
+   * @return The executor
+   * @throws UnsupportedOperationException In case the running JVM does not support virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21+");
+    }
+
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException("Unable to create virtual thread executor", e);
+    }
+  }
+
+  private static MethodHandle lookupNewVirtualThreadPerTaskExecutor() {
+    try {
+      return MethodHandles.publicLookup().findStatic(
+        Executors.class,
+        "newVirtualThreadPerTaskExecutor",
+        MethodType.methodType(ExecutorService.class)
+      );
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      logger.debug("[Ableron] Virtual threads are not supported by the running JVM");
+      return null;
+    }
+  }
+}
@@ -3,6 +3,7 @@ package io.github.ableron
 import spock.lang.Specification
 
 import java.time.Duration
+import java.util.concurrent.Executors
 
 class AbleronConfigSpec extends Specification {
 
@@ -26,15 +27,31 @@ class AbleronConfigSpec extends Specification {
         "Refresh"
       ]
       cacheMaxSizeInBytes == 1024 * 1024 * 50
+      parseCacheMaxSizeInBytes == 0
       !cacheAutoRefreshEnabled()
       cacheAutoRefreshMaxAttempts == 3
       cacheAutoRefreshInactiveFragmentsMaxRefreshs == 2
+      cacheStaleWhileRevalidateDefault == Duration.ZERO
+      cacheStaleIfErrorDefault == Duration.ZERO
+      compositionDeadline.isEmpty()
+      resolveThreadPoolSize == 64
+      resolveThreadPoolQueueCapacity == 1000
+      resolveExecutor.isEmpty()
+      cacheAutoRefreshThreadPoolSize == 3
+      cacheAutoRefreshScheduler.isEmpty()
+      !virtualThreadsEnabled()
       !statsAppendToContent()
       !statsExposeFragmentUrl()
+      metrics == AbleronMetrics.NOOP
     }
   }
 
   def "should use values provided via builder"() {
+    given:
+    def executor = Executors.newSingleThreadExecutor()
+    def scheduler = Executors.newSingleThreadScheduledExecutor()
+    def customMetrics = new AbleronMetrics() {}
+
     when:
     def config = AbleronConfig.builder()
       .enabled(false)
@@ -43,11 +60,22 @@ class AbleronConfigSpec extends Specification {
       .requestHeadersForwardVary(["X-Test-Groups", "X-ACME-Country"])
       .responseHeadersForward(["X-Test-Response-Header", "X-Test-Response-Header-2"])
       .cacheMaxSizeInBytes(1024 * 100)
+      .parseCacheMaxSizeInBytes(1024 * 10)
       .cacheAutoRefreshEnabled(true)
       .cacheAutoRefreshMaxAttempts(5)
       .cacheAutoRefreshInactiveFragmentsMaxRefreshs(4)
+      .cacheStaleWhileRevalidateDefault(Duration.ofSeconds(30))
+      .cacheStaleIfErrorDefault(Duration.ofHours(1))
+      .compositionDeadline(Duration.ofMillis(500))
+      .resolveThreadPoolSize(8)
+      .resolveThreadPoolQueueCapacity(16)
+      .resolveExecutor(executor)
+      .cacheAutoRefreshThreadPoolSize(1)
+      .cacheAutoRefreshScheduler(scheduler)
+      .virtualThreadsEnabled(true)
       .statsAppendToContent(true)
       .statsExposeFragmentUrl(true)
+      .metrics(customMetrics)
       .build()
 
     then:
@@ -58,12 +86,27 @@ class AbleronConfigSpec extends Specification {
       requestHeadersForwardVary == ["X-Test-Groups", "X-ACME-Country"]
       responseHeadersForward == ["X-Test-Response-Header", "X-Test-Response-Header-2"]
       cacheMaxSizeInBytes == 1024 * 100
+      parseCacheMaxSizeInBytes == 1024 * 10
       cacheAutoRefreshEnabled()
       cacheAutoRefreshMaxAttempts == 5
       cacheAutoRefreshInactiveFragmentsMaxRefreshs == 4
+      cacheStaleWhileRevalidateDefault == Duration.ofSeconds(30)
+      cacheStaleIfErrorDefault == Duration.ofHours(1)
+      compositionDeadline.get() == Duration.ofMillis(500)
+      resolveThreadPoolSize == 8
+      resolveThreadPoolQueueCapacity == 16
+      resolveExecutor.get() == executor
+      cacheAutoRefreshThreadPoolSize == 1
+      cacheAutoRefreshScheduler.get() == scheduler
+      virtualThreadsEnabled()
       statsAppendToContent()
       statsExposeFragmentUrl()
+      metrics == customMetrics
     }
+
+    cleanup:
+    executor.shutdown()
+    scheduler.shutdown()
   }
 
   def "should throw exception if requestTimeout is tried to be set to null"() {
@@ -110,6 +153,72 @@ class AbleronConfigSpec extends Specification {
     exception.message == "responseHeadersForward must not be null"
   }
 
+  def "should throw exception if cacheStaleWhileRevalidateDefault is tried to be set to null"() {
+    when:
+    AbleronConfig.builder()
+      .cacheStaleWhileRevalidateDefault(null)
+      .build()
+
+    then:
+    def exception = thrown(NullPointerException)
+    exception.message == "cacheStaleWhileRevalidateDefault must not be null"
+  }
+
+  def "should throw exception if cacheStaleIfErrorDefault is tried to be set to null"() {
+    when:
+    AbleronConfig.builder()
+      .cacheStaleIfErrorDefault(null)
+      .build()
+
+    then:
+    def exception = thrown(NullPointerException)
+    exception.message == "cacheStaleIfErrorDefault must not be null"
+  }
+
+  def "should throw exception if compositionDeadline is tried to be set to null"() {
+    when:
+    AbleronConfig.builder()
+      .compositionDeadline(null)
+      .build()
+
+    then:
+    def exception = thrown(NullPointerException)
+    exception.message == "compositionDeadline must not be null"
+  }
+
+  def "should throw exception if resolveExecutor is tried to be set to null"() {
+    when:
+    AbleronConfig.builder()
+      .resolveExecutor(null)
+      .build()
+
+    then:
+    def exception = thrown(NullPointerException)
+    exception.message == "resolveExecutor must not be null"
+  }
+
+  def "should throw exception if cacheAutoRefreshScheduler is tried to be set to null"() {
+    when:
+    AbleronConfig.builder()
+      .cacheAutoRefreshScheduler(null)
+      .build()
+
+    then:
+    def exception = thrown(NullPointerException)
+    exception.message == "cacheAutoRefreshScheduler must not be null"
+  }
+
+  def "should throw exception if metrics is tried to be set to null"() {
+    when:
+    AbleronConfig.builder()
+      .metrics(null)
+      .build()
+
+    then:
+    def exception = thrown(NullPointerException)
+    exception.message == "metrics must not be null"
+  }
+
   def "should expose only immutable collections - default values"() {
     given:
     def config = AbleronConfig.builder().build()
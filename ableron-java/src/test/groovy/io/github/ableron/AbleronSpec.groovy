@@ -2,6 +2,9 @@ package io.github.ableron
 
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
 class AbleronSpec extends Specification {
 
   def "should throw exception if ableronConfig is not provided"() {
@@ -27,4 +30,80 @@ class AbleronSpec extends Specification {
     true    | "fallback"                                                            | 1
     false   | "<ableron-include src=\"https://foo-bar\">fallback</ableron-include>" | 0
   }
+
+  def "should write content with resolved includes to output stream only if enabled"() {
+    given:
+    def outputStream = new ByteArrayOutputStream()
+    def beforeFirstWriteInvocations = 0
+
+    when:
+    def result = new Ableron(AbleronConfig.builder().enabled(enabled).build())
+      .resolveIncludes("<p>ä</p><ableron-include src=\"https://foo-bar\">fallback</ableron-include>", [:], outputStream, StandardCharsets.UTF_8, { beforeFirstWriteInvocations++ })
+
+    then:
+    outputStream.toString(StandardCharsets.UTF_8) == expectedContent
+    result.processedIncludesCount == expectedProcessedIncludesCount
+    beforeFirstWriteInvocations == 1
+
+    where:
+    enabled | expectedContent                                                                | expectedProcessedIncludesCount
+    true    | "<p>ä</p>fallback"                                                             | 1
+    false   | "<p>ä</p><ableron-include src=\"https://foo-bar\">fallback</ableron-include>" | 0
+  }
+
+  def "should write encoded content with resolved includes to output stream only if enabled"() {
+    given:
+    def outputStream = new ByteArrayOutputStream()
+    def beforeFirstWriteInvocations = 0
+
+    when:
+    def result = new Ableron(AbleronConfig.builder().enabled(enabled).build())
+      .resolveIncludes(ByteBuffer.wrap("<p>ä</p><ableron-include src=\"https://foo-bar\">fallback</ableron-include>".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, [:], outputStream, { beforeFirstWriteInvocations++ })
+
+    then:
+    outputStream.toString(StandardCharsets.UTF_8) == expectedContent
+    result.processedIncludesCount == expectedProcessedIncludesCount
+    beforeFirstWriteInvocations == 1
+
+    where:
+    enabled | expectedContent                                                                | expectedProcessedIncludesCount
+    true    | "<p>ä</p>fallback"                                                             | 1
+    false   | "<p>ä</p><ableron-include src=\"https://foo-bar\">fallback</ableron-include>" | 0
+  }
+
+  def "should perform transclusion asynchronously only if enabled"() {
+    when:
+    def result = new Ableron(AbleronConfig.builder().enabled(enabled).build())
+      .resolveIncludesAsync("<ableron-include src=\"https://foo-bar\">fallback</ableron-include>", [:])
+      .get()
+
+    then:
+    result.content == expectedContent
+    result.processedIncludesCount == expectedProcessedIncludesCount
+
+    where:
+    enabled | expectedContent                                                       | expectedProcessedIncludesCount
+    true    | "fallback"                                                            | 1
+    false   | "<ableron-include src=\"https://foo-bar\">fallback</ableron-include>" | 0
+  }
+
+  def "should perform transclusion of encoded content only if enabled"() {
+    given:
+    def outputStream = new ByteArrayOutputStream()
+
+    when:
+    def result = new Ableron(AbleronConfig.builder().enabled(enabled).build())
+      .resolveIncludes("<p>ä</p><ableron-include src=\"https://foo-bar\">fallback</ableron-include>".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, [:])
+    result.writeContentTo(outputStream)
+
+    then:
+    outputStream.toString(StandardCharsets.UTF_8) == expectedContent
+    result.content == expectedContent
+    result.processedIncludesCount == expectedProcessedIncludesCount
+
+    where:
+    enabled | expectedContent                                                                | expectedProcessedIncludesCount
+    true    | "<p>ä</p>fallback"                                                             | 1
+    false   | "<p>ä</p><ableron-include src=\"https://foo-bar\">fallback</ableron-include>" | 0
+  }
 }
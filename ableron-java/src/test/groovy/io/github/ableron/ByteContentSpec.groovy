@@ -0,0 +1,68 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+
+class ByteContentSpec extends Specification {
+
+  def "should determine whether charset is ASCII compatible"() {
+    expect:
+    ByteContent.isAsciiCompatible(Charset.forName(charset)) == expectedAsciiCompatible
+
+    where:
+    charset        | expectedAsciiCompatible
+    "UTF-8"        | true
+    "US-ASCII"     | true
+    "ISO-8859-1"   | true
+    "ISO-8859-15"  | true
+    "windows-1252" | true
+    "UTF-16"       | false
+    "UTF-16LE"     | false
+    "UTF-32"       | false
+    "Shift_JIS"    | false
+    "GB18030"      | false
+  }
+
+  def "should expose bytes as characters"() {
+    given:
+    def content = ByteContent.of(ByteBuffer.wrap("ä<a>".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+
+    expect:
+    content.length() == 5
+    content.charAt(2) == '<' as char
+    content.indexOf('>' as char, 0) == 4
+    content.indexOf("<a", 0) == 2
+    content.indexOf("<a", 3) == -1
+    content.indexOf("a>", 0) == 3
+    content.decode(0, 2) == "ä"
+    content.toString() == "ä<a>"
+  }
+
+  def "should not copy bytes of array backed buffer"() {
+    given:
+    def bytes = "skipped<a>".getBytes(StandardCharsets.UTF_8)
+    def buffer = ByteBuffer.wrap(bytes)
+    buffer.position(7)
+
+    when:
+    def content = ByteContent.of(buffer, StandardCharsets.UTF_8)
+    bytes[8] = (byte) 'b'
+
+    then:
+    content.toString() == "<b>"
+    content.slice(1, 2).array().is(bytes)
+    buffer.position() == 7
+  }
+
+  def "should copy bytes of direct buffer"() {
+    given:
+    def buffer = ByteBuffer.allocateDirect(3).put("<a>".getBytes(StandardCharsets.UTF_8)).flip()
+
+    expect:
+    ByteContent.of(buffer, StandardCharsets.UTF_8).toString() == "<a>"
+    buffer.remaining() == 3
+  }
+}
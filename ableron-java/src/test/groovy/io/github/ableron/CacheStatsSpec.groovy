@@ -51,4 +51,14 @@ class CacheStatsSpec extends Specification {
     stats.recordRefreshFailure()
     stats.refreshFailureCount() == 2
   }
+
+  def "should record cache eviction"() {
+    given:
+    def stats = new CacheStats()
+
+    expect:
+    stats.evictionCount() == 0
+    stats.recordEviction()
+    stats.evictionCount() == 1
+  }
 }
@@ -0,0 +1,61 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class CancellationScopeSpec extends Specification {
+
+  def cancellationScope = new CancellationScope()
+
+  def "should cancel tracked futures"() {
+    given:
+    def future1 = cancellationScope.track(new CompletableFuture<String>())
+    def future2 = cancellationScope.track(CompletableFuture.completedFuture("done"))
+
+    when:
+    cancellationScope.cancel()
+
+    then:
+    cancellationScope.isCancelled()
+    future1.isCancelled()
+    !future2.isCancelled()
+    future2.join() == "done"
+  }
+
+  def "should cancel futures tracked after cancellation immediately"() {
+    given:
+    cancellationScope.cancel()
+
+    when:
+    def future = cancellationScope.track(new CompletableFuture<String>())
+
+    then:
+    future.isCancelled()
+  }
+
+  def "should propagate cancellation to upstream future"() {
+    given:
+    def upstream = new CompletableFuture<String>()
+    def dependent = CancellationScope.propagateCancellation(upstream.thenApply { it.toUpperCase() }, upstream)
+
+    when:
+    dependent.cancel(true)
+
+    then:
+    upstream.isCancelled()
+  }
+
+  def "should not cancel upstream future if dependent future completes normally"() {
+    given:
+    def upstream = new CompletableFuture<String>()
+    def dependent = CancellationScope.propagateCancellation(upstream.thenApply { it.toUpperCase() }, upstream)
+
+    when:
+    upstream.complete("foo")
+
+    then:
+    dependent.join() == "FOO"
+    !upstream.isCancelled()
+  }
+}
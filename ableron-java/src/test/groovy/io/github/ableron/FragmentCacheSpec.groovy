@@ -4,6 +4,9 @@ import spock.lang.Specification
 
 import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 
 class FragmentCacheSpec extends Specification {
 
@@ -27,6 +30,7 @@ class FragmentCacheSpec extends Specification {
 
     then:
     fragmentCache.stats().itemCount() == 100
+    fragmentCache.stats().evictionCount() == 60
   }
 
   def "should not auto refresh fragments if disabled"() {
@@ -81,6 +85,18 @@ class FragmentCacheSpec extends Specification {
     fragmentCache.get('cacheKey').isEmpty()
   }
 
+  def "should get cached fragment only if it matches condition"() {
+    given:
+    fragmentCache.set('cacheKey', new Fragment('url', 404, 'not found', Instant.now().plusSeconds(5), [:]))
+
+    expect:
+    fragmentCache.getIfCached('cacheKey', fragment -> fragment.statusCode == 200).isEmpty()
+    fragmentCache.getIfCached('cacheKey', fragment -> fragment.statusCode == 404).get().content == 'not found'
+    fragmentCache.getIfCached('unknown', fragment -> true).isEmpty()
+    fragmentCache.stats().hitCount() == 1
+    fragmentCache.stats().missCount() == 0
+  }
+
   def "should not cache expired fragments"() {
     when:
     fragmentCache.set('cacheKey', new Fragment('url', 200, 'fragment', Instant.now(), [:]))
@@ -246,4 +262,206 @@ class FragmentCacheSpec extends Specification {
     then:
     fragmentCache.stats().refreshSuccessCount() == 1
   }
+
+  def "should not shut down provided auto refresh scheduler on close"() {
+    given:
+    def scheduler = Executors.newSingleThreadScheduledExecutor()
+    def fragmentCache = new FragmentCache(AbleronConfig.builder()
+      .cacheAutoRefreshEnabled(true)
+      .cacheAutoRefreshScheduler(scheduler)
+      .build())
+
+    when:
+    fragmentCache.close()
+
+    then:
+    !scheduler.isShutdown()
+
+    cleanup:
+    scheduler.shutdown()
+  }
+
+  def "should discard auto refreshs registered before clear"() {
+    given:
+    def newFragment = () -> new Fragment('url', 200, 'fragment', Instant.now().plusMillis(200), [:])
+    def fragmentCache = new FragmentCache(AbleronConfig.builder()
+      .cacheAutoRefreshEnabled(true)
+      .cacheAutoRefreshInactiveFragmentsMaxRefreshs(1)
+      .build())
+    fragmentCache.set('key', newFragment(), () -> newFragment())
+
+    when:
+    fragmentCache.clear()
+    fragmentCache.set('key', newFragment(), () -> newFragment())
+    sleep(300)
+
+    then:
+    fragmentCache.stats().refreshSuccessCount() == 1
+  }
+
+  def "should serve stale fragment within stale-while-revalidate period and revalidate it once"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    def revalidatedFragment = new CompletableFuture<Fragment>()
+    def revalidations = new AtomicInteger()
+    fragmentCache.setWithAsyncAutoRefresh('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ofSeconds(5), [:]), () -> {
+      revalidations.incrementAndGet()
+      return revalidatedFragment
+    })
+    sleep(150)
+
+    when:
+    def fragment1 = fragmentCache.get('key')
+    def fragment2 = fragmentCache.get('key')
+
+    then:
+    fragment1.get().content == 'stale'
+    fragment2.get().content == 'stale'
+    revalidations.get() == 1
+    fragmentCache.stats().staleHitCount() == 2
+
+    when:
+    revalidatedFragment.complete(new Fragment('url', 200, 'fresh', Instant.now().plusSeconds(5), [:]))
+
+    then:
+    fragmentCache.get('key').get().content == 'fresh'
+    fragmentCache.stats().staleHitCount() == 2
+  }
+
+  def "should keep stale fragment if revalidation failed"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    fragmentCache.setWithAsyncAutoRefresh('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ofSeconds(5), [:]), () ->
+      CompletableFuture.failedFuture(new IllegalStateException("revalidation failed")))
+    sleep(150)
+
+    expect:
+    fragmentCache.get('key').get().content == 'stale'
+    fragmentCache.get('key').get().content == 'stale'
+  }
+
+  def "should not revalidate stale fragment again right after revalidation failed"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    def revalidations = new AtomicInteger()
+    fragmentCache.setWithAsyncAutoRefresh('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ofSeconds(5), [:]), () -> {
+      revalidations.incrementAndGet()
+      return CompletableFuture.failedFuture(new IllegalStateException("revalidation failed"))
+    })
+    sleep(150)
+
+    when:
+    fragmentCache.get('key')
+    fragmentCache.get('key')
+    fragmentCache.get('key')
+
+    then:
+    revalidations.get() == 1
+
+    when:
+    sleep(1100)
+    fragmentCache.get('key')
+
+    then:
+    revalidations.get() == 2
+  }
+
+  def "should auto refresh revalidated fragment"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder()
+      .cacheAutoRefreshEnabled(true)
+      .build())
+    def loads = new AtomicInteger()
+    fragmentCache.setWithAsyncAutoRefresh('key', new Fragment('url', 200, 'stale', Instant.now().minusSeconds(1), Duration.ofSeconds(5), [:]), () -> {
+      loads.incrementAndGet()
+      return CompletableFuture.completedFuture(new Fragment('url', 200, 'fresh', Instant.now().plusMillis(200), [:]))
+    })
+
+    when:
+    fragmentCache.get('key')
+    sleep(500)
+
+    then:
+    fragmentCache.get('key').get().content == 'fresh'
+    loads.get() >= 2
+    fragmentCache.stats().refreshSuccessCount() >= 1
+  }
+
+  def "should not serve fragment beyond stale-while-revalidate period"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    fragmentCache.set('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ofMillis(100), [:]))
+
+    when:
+    sleep(250)
+
+    then:
+    fragmentCache.get('key').isEmpty()
+  }
+
+  def "should provide expired fragment within stale-if-error period"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    fragmentCache.set('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ZERO, Duration.ofSeconds(5), [:]))
+
+    when:
+    sleep(150)
+
+    then:
+    fragmentCache.get('key').isEmpty()
+    fragmentCache.getStaleIfError('key').get().content == 'stale'
+    fragmentCache.stats().staleIfErrorHitCount() == 1
+  }
+
+  def "should not provide expired fragment beyond stale-if-error period"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    fragmentCache.set('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ZERO, Duration.ofMillis(100), [:]))
+
+    when:
+    sleep(250)
+
+    then:
+    fragmentCache.getStaleIfError('key').isEmpty()
+    fragmentCache.stats().staleIfErrorHitCount() == 0
+  }
+
+  def "should serve stale fragment until revalidated after loading it from its source failed"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    def revalidatedFragment = new CompletableFuture<Fragment>()
+    fragmentCache.setWithAsyncAutoRefresh('key', new Fragment('url', 200, 'stale', Instant.now().plusMillis(100), Duration.ZERO, Duration.ofSeconds(5), [:]), () -> revalidatedFragment)
+    sleep(150)
+    fragmentCache.getStaleIfError('key')
+
+    when:
+    def fragment = fragmentCache.get('key')
+
+    then:
+    fragment.get().content == 'stale'
+    fragmentCache.stats().staleHitCount() == 1
+
+    when:
+    revalidatedFragment.complete(new Fragment('url', 200, 'fresh', Instant.now().plusSeconds(5), [:]))
+
+    then:
+    fragmentCache.get('key').get().content == 'fresh'
+  }
+
+  def "should keep expired fragments with validators for revalidation without serving them"() {
+    given:
+    def fragmentCache = new FragmentCache(AbleronConfig.builder().build())
+    fragmentCache.set('with-validators', new Fragment('url', 200, 'fragment', Instant.now().plusMillis(100), [:]).withValidators('"abc"', null))
+    fragmentCache.set('without-validators', new Fragment('url', 200, 'fragment', Instant.now().plusMillis(100), [:]))
+
+    when:
+    sleep(150)
+
+    then:
+    fragmentCache.get('with-validators').isEmpty()
+    fragmentCache.peek('with-validators').get().ETag.get() == '"abc"'
+    fragmentCache.peek('without-validators').isEmpty()
+    fragmentCache.stats().hitCount() == 0
+    fragmentCache.stats().missCount() == 1
+  }
 }
@@ -2,6 +2,8 @@ package io.github.ableron
 
 import spock.lang.Specification
 
+import java.nio.charset.StandardCharsets
+import java.time.Duration
 import java.time.Instant
 
 class FragmentSpec extends Specification {
@@ -10,4 +12,71 @@ class FragmentSpec extends Specification {
     expect:
     new Fragment(200, "").expirationTime.isBefore(Instant.now())
   }
+
+  def "should copy fragment with validators"() {
+    given:
+    def fragment = new Fragment("url", 200, "content", Instant.ofEpochSecond(1000), ["X-Foo": ["bar"]])
+
+    when:
+    def fragmentWithValidators = fragment.withValidators('"abc"', "Wed, 21 Oct 2015 07:28:00 GMT")
+
+    then:
+    !fragment.hasValidators()
+    fragmentWithValidators.hasValidators()
+    fragmentWithValidators.ETag.get() == '"abc"'
+    fragmentWithValidators.lastModified.get() == "Wed, 21 Oct 2015 07:28:00 GMT"
+    fragmentWithValidators.content == "content"
+    fragmentWithValidators.expirationTime == Instant.ofEpochSecond(1000)
+    fragmentWithValidators.responseHeaders == ["X-Foo": ["bar"]]
+  }
+
+  def "should copy fragment with new lifetime retaining content and validators"() {
+    given:
+    def fragment = new Fragment("url", 200, "content", Instant.ofEpochSecond(1000), ["X-Foo": ["bar"]])
+      .withValidators('"abc"', null)
+
+    when:
+    def revalidatedFragment = fragment.withLifetime(Instant.ofEpochSecond(2000), Duration.ofSeconds(10), Duration.ofSeconds(20))
+
+    then:
+    revalidatedFragment.content.is(fragment.content)
+    revalidatedFragment.statusCode == 200
+    revalidatedFragment.url.get() == "url"
+    revalidatedFragment.expirationTime == Instant.ofEpochSecond(2000)
+    revalidatedFragment.staleWhileRevalidate == Duration.ofSeconds(10)
+    revalidatedFragment.staleIfError == Duration.ofSeconds(20)
+    revalidatedFragment.ETag.get() == '"abc"'
+    revalidatedFragment.lastModified.isEmpty()
+    revalidatedFragment.responseHeaders == ["X-Foo": ["bar"]]
+  }
+
+  def "should provide freshness lifetime"() {
+    expect:
+    new Fragment("url", 200, "content", Instant.now().plusSeconds(60), [:]).freshnessLifetime > Duration.ofSeconds(59)
+    new Fragment("url", 200, "content", Instant.now().plusSeconds(60), [:]).withValidators('"abc"', null).freshnessLifetime > Duration.ofSeconds(59)
+    new Fragment("url", 200, "content", Instant.now().plusSeconds(60), [:]).freshnessLifetime <= Duration.ofSeconds(60)
+    new Fragment(200, "content").freshnessLifetime == Duration.ZERO
+  }
+
+  def "should keep encoded content without decoding it"() {
+    given:
+    def contentBytes = "Grüße".getBytes(StandardCharsets.UTF_8)
+    def fragment = new Fragment("url", 200, contentBytes, StandardCharsets.UTF_8, Instant.EPOCH, Duration.ZERO, Duration.ZERO, [:])
+
+    expect:
+    fragment.getContentBytes(StandardCharsets.UTF_8).is(contentBytes)
+    fragment.getContentBytes(StandardCharsets.ISO_8859_1) == "Grüße".getBytes(StandardCharsets.ISO_8859_1)
+    fragment.contentSize == contentBytes.length
+    fragment.content == "Grüße"
+    fragment.withValidators('"abc"', null).getContentBytes(StandardCharsets.UTF_8).is(contentBytes)
+  }
+
+  def "should encode content given as string"() {
+    given:
+    def fragment = new Fragment(200, "Grüße")
+
+    expect:
+    fragment.getContentBytes(StandardCharsets.UTF_8) == "Grüße".getBytes(StandardCharsets.UTF_8)
+    fragment.contentSize == 5
+  }
 }
@@ -8,10 +8,14 @@ import spock.lang.Specification
 import java.net.http.HttpClient
 import java.net.http.HttpRequest
 import java.net.http.HttpResponse
+import java.nio.charset.Charset
+import java.time.Duration
 import java.time.Instant
 import java.time.ZonedDateTime
 import java.time.format.DateTimeFormatter
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.zip.GZIPOutputStream
 
 class HttpUtilSpec extends Specification {
@@ -96,6 +100,35 @@ class HttpUtilSpec extends Specification {
     HttpUtil.calculateResponseExpirationTime([:]) == Instant.EPOCH
   }
 
+  def "should calculate stale-while-revalidate period"() {
+    expect:
+    HttpUtil.calculateResponseStaleWhileRevalidate(responseHeaders) == expectedStaleWhileRevalidate
+
+    where:
+    responseHeaders                                                    | expectedStaleWhileRevalidate
+    [:]                                                                | Optional.empty()
+    ["Cache-Control": ["max-age=60"]]                                  | Optional.empty()
+    ["Cache-Control": ["max-age=60, stale-while-revalidate=30"]]       | Optional.of(Duration.ofSeconds(30))
+    ["cache-control": ["STALE-WHILE-REVALIDATE=30 , max-age=60"]]      | Optional.of(Duration.ofSeconds(30))
+    ["Cache-Control": ["max-age=60, stale-while-revalidate=0"]]        | Optional.of(Duration.ZERO)
+    ["Cache-Control": ["max-age=60, stale-while-revalidate=-1"]]       | Optional.empty()
+    ["Cache-Control": ["max-age=60, stale-while-revalidate=foo"]]      | Optional.empty()
+    ["Cache-Control": ["stale-while-revalidate=99999999999999999999"]] | Optional.empty()
+  }
+
+  def "should calculate stale-if-error period"() {
+    expect:
+    HttpUtil.calculateResponseStaleIfError(responseHeaders) == expectedStaleIfError
+
+    where:
+    responseHeaders                                                           | expectedStaleIfError
+    [:]                                                                       | Optional.empty()
+    ["Cache-Control": ["max-age=60, stale-while-revalidate=30"]]               | Optional.empty()
+    ["Cache-Control": ["max-age=60, stale-if-error=86400"]]                   | Optional.of(Duration.ofDays(1))
+    ["cache-control": ["STALE-IF-ERROR=60, stale-while-revalidate=30"]]       | Optional.of(Duration.ofSeconds(60))
+    ["Cache-Control": ["max-age=60, stale-if-error=1h"]]                      | Optional.empty()
+  }
+
   def "should get plain text response body as string from http response"() {
     given:
     def mockWebServer = new MockWebServer()
@@ -118,6 +151,31 @@ class HttpUtilSpec extends Specification {
     mockWebServer.close()
   }
 
+  def "should get gzipped response body without decoding it from http response"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .code(200)
+      .addHeader("Content-Encoding", "gzip")
+      .addHeader("Content-Type", "text/html; charset=iso-8859-1")
+      .body(new Buffer().write(gzip("gzipped body")))
+      .build())
+    mockWebServer.start()
+
+    when:
+    def httpResponse = HttpClient.newHttpClient()
+      .send(HttpRequest.newBuilder()
+        .uri(mockWebServer.url("/").uri())
+        .build(), HttpResponse.BodyHandlers.ofByteArray())
+
+    then:
+    HttpUtil.getResponseBody(httpResponse) == "gzipped body".getBytes("ISO-8859-1")
+    HttpUtil.charsetFrom(httpResponse.headers()) == Charset.forName("ISO-8859-1")
+
+    cleanup:
+    mockWebServer.close()
+  }
+
   def "should get gzipped response body as string from http response"() {
     given:
     def mockWebServer = new MockWebServer()
@@ -187,6 +245,101 @@ class HttpUtilSpec extends Specification {
     mockWebServer.close()
   }
 
+  def "should load url asynchronously and complete with empty response if request timed out"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .headersDelay(2, TimeUnit.SECONDS)
+      .build())
+    mockWebServer.start()
+
+    when:
+    def response = HttpUtil.loadUrlAsync(mockWebServer.url("/").toString(), HttpClient.newHttpClient(), [:], Duration.ofMillis(200))
+
+    then:
+    !response.isDone()
+    response.get(1, TimeUnit.SECONDS) == Optional.empty()
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should cancel http exchange if request timed out"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .headersDelay(2, TimeUnit.SECONDS)
+      .build())
+    mockWebServer.start()
+    def cancelledRequests = new AtomicInteger()
+
+    when:
+    def response = HttpUtil.loadUrlAsync(mockWebServer.url("/").toString(), HttpClient.newHttpClient(), [:], Duration.ofMillis(200), () -> cancelledRequests.incrementAndGet())
+
+    then:
+    response.get(1, TimeUnit.SECONDS) == Optional.empty()
+    cancelledRequests.get() == 1
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should notify about exceeded request timeout"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .headersDelay(2, TimeUnit.SECONDS)
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .build())
+    mockWebServer.start()
+    def timeouts = new AtomicInteger()
+
+    when:
+    def timedOutResponse = HttpUtil.loadUrlAsync(mockWebServer.url("/").toString(), HttpClient.newHttpClient(), [:], Duration.ofMillis(200), () -> {}, () -> timeouts.incrementAndGet())
+      .get(1, TimeUnit.SECONDS)
+    def response = HttpUtil.loadUrlAsync(mockWebServer.url("/").toString(), HttpClient.newHttpClient(), [:], Duration.ofSeconds(1), () -> {}, () -> timeouts.incrementAndGet())
+      .get(1, TimeUnit.SECONDS)
+
+    then:
+    timedOutResponse == Optional.empty()
+    response.get().statusCode() == 200
+    timeouts.get() == 1
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should cancel http exchange if returned future is cancelled"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .headersDelay(2, TimeUnit.SECONDS)
+      .build())
+    mockWebServer.start()
+    def cancelledRequests = new AtomicInteger()
+
+    when:
+    HttpUtil.loadUrlAsync(mockWebServer.url("/").toString(), HttpClient.newHttpClient(), [:], Duration.ofSeconds(5), () -> cancelledRequests.incrementAndGet())
+      .cancel(true)
+
+    then:
+    cancelledRequests.get() == 1
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should load url asynchronously and complete with empty response if url is invalid"() {
+    expect:
+    HttpUtil.loadUrlAsync("foo", HttpClient.newHttpClient(), [:], Duration.ofSeconds(1)).getNow(null) == Optional.empty()
+  }
+
   def "getCookieHeaderValue() should extract cookie header value"() {
     expect:
     HttpUtil.getCookieHeaderValue(headers, cookieNameAllowlist) == expectedResult
@@ -0,0 +1,101 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class IncludeDefinitionSpec extends Specification {
+
+  def "should parse include tag attributes"() {
+    when:
+    def definition = new IncludeDefinition('<ableron-include ...>', [
+      "ID": "foo",
+      "src": "https://example.com/src",
+      "src-timeout": "2s",
+      "fallback-src": "https://example.com/fallback",
+      "fallback-src-timeout": "500",
+      "primary": "",
+      "headers": "X-Test, Accept-Language",
+      "cookies": "session"
+    ], "fallback")
+
+    then:
+    definition.id == "foo"
+    definition.src == "https://example.com/src"
+    definition.srcTimeout == Duration.ofSeconds(2)
+    definition.fallbackSrc == "https://example.com/fallback"
+    definition.fallbackSrcTimeout == Duration.ofMillis(500)
+    definition.primary
+    definition.headersToForward == ["x-test", "accept-language"]
+    definition.cookiesToForward == ["session"]
+    definition.fallbackContent == "fallback"
+  }
+
+  def "should be immutable"() {
+    given:
+    def attributes = ["src": "https://example.com/src"]
+    def definition = new IncludeDefinition('<ableron-include src="https://example.com/src"/>', attributes, null)
+
+    when:
+    attributes.put("src", "https://example.com/other")
+
+    then:
+    definition.src == "https://example.com/src"
+    definition.rawAttributes["src"] == "https://example.com/src"
+
+    when:
+    definition.rawAttributes.put("src", "https://example.com/other")
+
+    then:
+    thrown(UnsupportedOperationException)
+  }
+
+  def "should share definition between includes"() {
+    given:
+    def definition = new IncludeDefinition('<ableron-include src="https://example.com"/>', ["src": "https://example.com"], null)
+
+    when:
+    def include1 = Include.of(definition)
+    def include2 = Include.of(definition)
+
+    then:
+    include1.definition.is(include2.definition)
+    include1.src == "https://example.com"
+    include1 == include2
+    !include1.is(include2)
+  }
+
+  def "should provide request templates for src and fallback-src only"() {
+    given:
+    def definition = new IncludeDefinition('<ableron-include ...>', [
+      "src": "https://example.com/src",
+      "fallback-src": "invalid url"
+    ], null)
+
+    expect:
+    definition.getRequestTemplate("https://example.com/src").copy().build().uri() == URI.create("https://example.com/src")
+    definition.getRequestTemplate("https://example.com/src").is(definition.getRequestTemplate("https://example.com/src"))
+    definition.getRequestTemplate("invalid url") == null
+    definition.getRequestTemplate("https://example.com/other") == null
+    definition.getRequestTemplate(null) == null
+  }
+
+  def "should provide lower case names of request headers to forward per config"() {
+    given:
+    def definition = new IncludeDefinition('<ableron-include ...>', ["headers": "X-Include"], null)
+    def config = AbleronConfig.builder()
+      .requestHeadersForward(["X-Forward"])
+      .requestHeadersForwardVary(["X-Vary"])
+      .build()
+    def otherConfig = AbleronConfig.builder()
+      .requestHeadersForward([])
+      .requestHeadersForwardVary([])
+      .build()
+
+    expect:
+    definition.getRequestHeadersToForward(config) == ["x-forward", "x-vary", "x-include"] as Set
+    definition.getRequestHeadersVary(config) == ["x-vary", "x-include"] as Set
+    definition.getRequestHeadersToForward(config).is(definition.getRequestHeadersToForward(config))
+    definition.getRequestHeadersToForward(otherConfig) == ["x-include"] as Set
+  }
+}
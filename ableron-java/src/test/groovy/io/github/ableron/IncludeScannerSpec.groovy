@@ -0,0 +1,172 @@
+package io.github.ableron
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.regex.Pattern
+import java.util.stream.Collectors
+
+class IncludeScannerSpec extends Specification {
+
+  /**
+   * Regular expression formerly used to find includes. Used as reference implementation.
+   */
+  static final Pattern INCLUDE_PATTERN =
+    Pattern.compile("<(ableron-include)\\s(([^\">]|\"[^\"]*\")*?)(/>|>(.*?)</\\1>)", Pattern.DOTALL)
+
+  /**
+   * Regular expression formerly used to parse include tag attributes. Used as reference implementation.
+   */
+  static final Pattern ATTRIBUTES_PATTERN = Pattern.compile("\\s*([a-zA-Z0-9_-]+)(=\"([^\"]+)\")?")
+
+  def "should find include tags with offsets"() {
+    when:
+    def includeTags = IncludeScanner.scan('foo<ableron-include src="a"/>bar<ableron-include src="b">fallback</ableron-include>baz')
+
+    then:
+    includeTags.size() == 2
+    includeTags[0].start == 3
+    includeTags[0].end == 29
+    includeTags[0].selfClosing
+    includeTags[1].start == 32
+    includeTags[1].end == 83
+    !includeTags[1].selfClosing
+    'foo<ableron-include src="a"/>bar<ableron-include src="b">fallback</ableron-include>baz'
+      .substring(includeTags[1].fallbackContentStart, includeTags[1].fallbackContentEnd) == "fallback"
+  }
+
+  def "should find same include tags as regular expression"() {
+    expect:
+    scanWithScanner(content) == scanWithRegex(content)
+
+    where:
+    content << [
+      '',
+      '<ableron-include src="test"/>',
+      '<ableron-include src="test" />',
+      '<ableron-include\nsrc="test" />',
+      '<ableron-include src="test"></ableron-include>',
+      '<ableron-include src="test">foo\nbar\nbaz</ableron-include>',
+      '<ableron-include src=">>"/>',
+      '<ableron-include src="/>"/>',
+      '<ableron-include src="test" primary/>',
+      '<ableron-include/>',
+      '<ableron-include >',
+      '<ableron-include src="s">',
+      '<ableron-include src="s" b="b">',
+      '<ableron-include src="unclosed/>',
+      '<ableron-include src="a"><ableron-include src="b"/></ableron-include>',
+      '<ableron-include a <ableron-include b/>',
+      '<ableron-include a="<ableron-include b/>"/>',
+      '<ableron-include x="y" <ableron-include src="z">fallback</ableron-include>',
+      '<ableron-include src="a" foo="" bar="b c" baz=""x"/>',
+      '<ableron-include src="a" src="b"/>',
+      '<ableron-include a=b/c/>',
+      '<ableron-include >a</ableron-include><ableron-include >b</ableron-include>',
+      '<ableron-include src="a"></ableron-include</ableron-include>'
+    ]
+  }
+
+  def "should find same include tags as regular expression for random content"() {
+    given:
+    def random = new Random(seed)
+    def tokens = ['<ableron-include', ' ', '\n', '"', '>', '/', '/>', '</ableron-include>', 'src', '=', 'x', 'fallback-src="y"', 'primary', '-', '<']
+
+    expect:
+    1000.times {
+      def content = (0..random.nextInt(30)).collect { tokens[random.nextInt(tokens.size())] }.join()
+      assert scanWithScanner(content) == scanWithRegex(content)
+    }
+
+    where:
+    seed << [1, 2, 3]
+  }
+
+  def "should find same include tags in encoded content as in decoded content"() {
+    given:
+    def random = new Random(seed)
+    def tokens = ['<ableron-include', ' ', '"', '>', '/>', '</ableron-include>', 'src', '=', 'ä', '€', '𝄞', 'primary']
+
+    expect:
+    1000.times {
+      def content = (0..random.nextInt(30)).collect { tokens[random.nextInt(tokens.size())] }.join()
+      def byteContent = ByteContent.of(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8)
+      assert IncludeScanner.scan(byteContent).collect { includeTag ->
+        def definition = includeTag.toIncludeDefinition(byteContent, byteContent.decode(includeTag.start, includeTag.end))
+        [definition.rawIncludeTag, definition.rawAttributes, definition.fallbackContent]
+      } == scanWithScanner(content).collect { it.subList(1, 4) }
+    }
+
+    where:
+    seed << [1, 2, 3]
+  }
+
+  def "should check for include tags in encoded content"() {
+    expect:
+    IncludeScanner.mayContainIncludeTags(content.getBytes(charset), charset) == expectedResult
+
+    where:
+    content                              | charset                     | expectedResult
+    ''                                   | StandardCharsets.UTF_8      | false
+    '<html>ä</html>'                     | StandardCharsets.UTF_8      | false
+    '<ableron-include'                   | StandardCharsets.UTF_8      | true
+    '<p>ä</p><ableron-include src="a"/>' | StandardCharsets.UTF_8      | true
+    '<p>ä</p><ableron-include src="a"/>' | StandardCharsets.ISO_8859_1 | true
+    '<html></html>'                      | StandardCharsets.UTF_16     | true
+  }
+
+  @Timeout(10)
+  def "should scan in linear time for content with #scenarioName"() {
+    expect:
+    IncludeScanner.scan(content.toString()).isEmpty()
+
+    where:
+    scenarioName        | content
+    "unclosed tags"     | '<ableron-include src="a">'.repeat(100000)
+    "unbalanced quotes" | '<ableron-include src="a" "'.repeat(100000)
+    "nested tag starts" | '<ableron-include '.repeat(100000) + '>'
+  }
+
+  def "should parse attributes"() {
+    expect:
+    IncludeScanner.parseAttributes(attributes, 0, attributes.length()) == expectedAttributes
+
+    where:
+    attributes                       | expectedAttributes
+    ''                               | [:]
+    'src="a"'                        | ["src": "a"]
+    ' src="a"  fallback-src="b" '    | ["src": "a", "fallback-src": "b"]
+    'primary'                        | ["primary": ""]
+    'foo="" src="a"'                 | ["foo": "", "src": "a"]
+    'src="a b c"'                    | ["src": "a b c"]
+    'src="a=b"'                      | ["src": "a=b"]
+    'src="a" src="b"'                | ["src": "a"]
+    "src='a'"                        | ["src": "", "a": ""]
+  }
+
+  private static List<List<Object>> scanWithScanner(String content) {
+    return IncludeScanner.scan(content).collect { includeTag ->
+      def include = includeTag.toInclude(content)
+      [includeTag.start, include.rawIncludeTag, include.rawAttributes, include.fallbackContent]
+    }
+  }
+
+  private static List<List<Object>> scanWithRegex(String content) {
+    def result = []
+    def matcher = INCLUDE_PATTERN.matcher(content)
+
+    while (matcher.find()) {
+      result.add([matcher.start(), matcher.group(0), new Include(matcher.group(0), parseAttributesWithRegex(matcher.group(2))).rawAttributes, matcher.group(5) ?: ""])
+    }
+
+    return result
+  }
+
+  private static Map<String, String> parseAttributesWithRegex(String attributes) {
+    return ATTRIBUTES_PATTERN.matcher(attributes)
+      .results()
+      .collect(Collectors.toMap({ it.group(1) }, { it.group(3) ?: "" }, { first, second -> first }))
+  }
+}
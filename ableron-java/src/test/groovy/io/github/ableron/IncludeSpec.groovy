@@ -445,6 +445,39 @@ class IncludeSpec extends Specification {
     mockWebServer.close()
   }
 
+  def "should ignore fragment resolved after include has already been resolved"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("late fragment")
+      .headersDelay(200, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def include = new Include("", ["src": mockWebServer.url("/").toString()], "fallback")
+
+    when:
+    def resolution = include.resolve(httpClient, [:], cache, config, supplyPool)
+    include.resolveWithStaleFragmentOrFallbackContent([:], cache, config, 100)
+    resolution.get()
+
+    then:
+    include.resolved
+    include.resolvedFragment.content == "fallback"
+    include.resolvedFragmentSource == "fallback content"
+    include.resolveTimeMillis == 100
+
+    when:
+    include.resolveWith(new Fragment(200, "other"), 50, "remote src")
+
+    then:
+    include.resolvedFragment.content == "fallback"
+    include.resolvedFragmentSource == "fallback content"
+    include.resolveTimeMillis == 100
+
+    cleanup:
+    mockWebServer.close()
+  }
+
   def "should ignore fallback content and set fragment status code and body of errored src if primary"() {
     given:
     def mockWebServer = new MockWebServer()
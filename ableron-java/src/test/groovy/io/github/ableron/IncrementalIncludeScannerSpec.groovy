@@ -0,0 +1,155 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+import java.nio.charset.StandardCharsets
+
+class IncrementalIncludeScannerSpec extends Specification {
+
+  def "should report include tags as soon as they are complete"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+
+    when:
+    scanner.scan("<html><ableron-inc")
+    scanner.scan("lude src=\"a\"/><div>")
+
+    then:
+    includeTags == ["<ableron-include src=\"a\"/>"]
+
+    when:
+    scanner.scan("<ableron-include src=\"b\">fall")
+
+    then:
+    includeTags == ["<ableron-include src=\"a\"/>"]
+
+    when:
+    scanner.scan("back</ableron-include></div>")
+
+    then:
+    includeTags == ["<ableron-include src=\"a\"/>", "<ableron-include src=\"b\">fallback</ableron-include>"]
+  }
+
+  def "should report include tags of the same chunk together"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+
+    when:
+    scanner.scan("<ableron-include src=\"a\"/>text<ableron-include src=\"b\"/>tail")
+
+    then:
+    includeTags == ["<ableron-include src=\"a\"/>text<ableron-include src=\"b\"/>"]
+  }
+
+  def "should decode bytes split within multi-byte characters"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+    def bytes = "<p>ä</p><ableron-include src=\"a\">öü</ableron-include>".getBytes(StandardCharsets.UTF_8)
+
+    when:
+    bytes.each { scanner.scan([it] as byte[], 0, 1) }
+
+    then:
+    includeTags == ["<ableron-include src=\"a\">öü</ableron-include>"]
+  }
+
+  def "should not report invalid include tags"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { content ->
+      IncludeScanner.scan(content).each { includeTags.add(it.toInclude(content).rawIncludeTag) }
+    })
+
+    when:
+    scanner.scan("<ableron-include/><ableron-include >")
+    scanner.scan("<ableron-include src=\"a\"/>")
+
+    then:
+    includeTags == ["<ableron-include src=\"a\"/>"]
+  }
+
+  def "should not copy or rescan incomplete include tag for each chunk"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+    def chunks = (1..3000).collect { "if (a && b) c(); " }
+    def threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.threadMXBean
+    scanner.scan("<ableron-include src=\"a\"")
+
+    when:
+    def allocatedBytesBefore = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().id)
+    chunks.each { scanner.scan(it) }
+    def allocatedBytes = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().id) - allocatedBytesBefore
+    scanner.scan("/>")
+
+    then:
+    allocatedBytes < 4 * 1024 * 1024
+    includeTags == ["<ableron-include src=\"a\"" + chunks.join() + "/>"]
+  }
+
+  def "should not rescan incomplete include tag for chunks containing tag ends"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+    def chunks = (1..3000).collect { "<p>fallback<br/></p>" }
+    def threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.threadMXBean
+    scanner.scan("<ableron-include src=\"a\">")
+
+    when:
+    def allocatedBytesBefore = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().id)
+    chunks.each { scanner.scan(it) }
+    def allocatedBytes = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().id) - allocatedBytesBefore
+    scanner.scan("</ableron-include>")
+
+    then:
+    allocatedBytes < 4 * 1024 * 1024
+    includeTags == ["<ableron-include src=\"a\">" + chunks.join() + "</ableron-include>"]
+  }
+
+  def "should scan content provided byte by byte"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+
+    when:
+    "<p>ä</p><ableron-include src=\"a\">ö</ableron-include><ableron-include src=\"b\"/>".getBytes(StandardCharsets.UTF_8).each { scanner.scan(it) }
+
+    then:
+    includeTags == ["<ableron-include src=\"a\">ö</ableron-include>", "<ableron-include src=\"b\"/>"]
+  }
+
+  def "should find include tags like include scanner regardless of chunk boundaries"() {
+    given:
+    def content = '<ableron-include src="a">1</ableron-include>x<ableron-include src=">"/>' +
+      '<ableron-include src="c" / ><ableron-include src="d"/ ><ableron-include src="e">2</ableron-include>' +
+      '<ableron-include/><ableron-include src="f"/><ableron-include src="g>'
+
+    expect:
+    (1..content.length()).every { chunkSize ->
+      def includeTags = []
+      def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { part ->
+        IncludeScanner.scan(part).each { includeTags.add(part.substring(it.start, it.end)) }
+      })
+      content.toList().collate(chunkSize).each { scanner.scan(it.join()) }
+      includeTags == IncludeScanner.scan(content).collect { content.substring(it.start, it.end) }
+    }
+  }
+
+  def "should give up on include tags exceeding the maximum length"() {
+    given:
+    def includeTags = []
+    def scanner = new IncrementalIncludeScanner(StandardCharsets.UTF_8, { includeTags.add(it) })
+
+    when:
+    scanner.scan("<ableron-include src=\"a\">")
+    scanner.scan("x" * IncrementalIncludeScanner.MAX_INCOMPLETE_INCLUDE_TAG_LENGTH)
+    scanner.scan("</ableron-include><ableron-include src=\"b\"/>")
+
+    then:
+    includeTags == ["<ableron-include src=\"b\"/>"]
+  }
+}
@@ -0,0 +1,141 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class LatencyHistogramSpec extends Specification {
+
+  def "should map values to buckets with relative error below 6.25%"() {
+    expect:
+    for (long value : [0L, 1L, 15L, 16L, 17L, 31L, 32L, 33L, 1000L, 123_456L, 1_000_000L, 999_999_999L, 4_000_000_000_000L]) {
+      def bucketIndex = LatencyHistogram.bucketIndex(value)
+      assert bucketIndex >= 0 && bucketIndex < LatencyHistogram.BUCKET_COUNT
+      assert LatencyHistogram.lowestValue(bucketIndex) <= value
+      assert LatencyHistogram.highestValue(bucketIndex) >= value
+      assert LatencyHistogram.highestValue(bucketIndex) - LatencyHistogram.lowestValue(bucketIndex) <= value * 0.0625
+    }
+  }
+
+  def "should have adjacent buckets"() {
+    expect:
+    for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; i++) {
+      assert LatencyHistogram.lowestValue(i) == LatencyHistogram.highestValue(i - 1) + 1
+      assert LatencyHistogram.bucketIndex(LatencyHistogram.lowestValue(i)) == i
+      assert LatencyHistogram.bucketIndex(LatencyHistogram.highestValue(i)) == i
+    }
+  }
+
+  def "should provide empty snapshot if nothing has been recorded"() {
+    when:
+    def snapshot = new LatencyHistogram().snapshot()
+
+    then:
+    snapshot.count == 0
+    snapshot.mean == Duration.ZERO
+    snapshot.max == Duration.ZERO
+    snapshot.getPercentile(99) == Duration.ZERO
+  }
+
+  def "should provide count, mean, max and percentiles of recorded latencies"() {
+    given:
+    def histogram = new LatencyHistogram()
+
+    when:
+    (1..1000).each { histogram.record(TimeUnit.MILLISECONDS.toNanos(it)) }
+    def snapshot = histogram.snapshot()
+
+    then:
+    snapshot.count == 1000
+    snapshot.mean == Duration.ofNanos(500_500_000)
+    snapshot.max == Duration.ofMillis(1000)
+    isWithinRelativeError(snapshot.getPercentile(50), Duration.ofMillis(500))
+    isWithinRelativeError(snapshot.getPercentile(99), Duration.ofMillis(990))
+    isWithinRelativeError(snapshot.getPercentile(99.9), Duration.ofMillis(999))
+    snapshot.getPercentile(100) == Duration.ofMillis(1000)
+    isWithinRelativeError(snapshot.getPercentile(0), Duration.ofMillis(1))
+  }
+
+  def "should record negative latencies as zero and clamp huge latencies"() {
+    given:
+    def histogram = new LatencyHistogram()
+
+    when:
+    histogram.record(-5)
+    histogram.record(Long.MAX_VALUE)
+    def snapshot = histogram.snapshot()
+
+    then:
+    snapshot.count == 2
+    snapshot.getPercentile(50) == Duration.ZERO
+    snapshot.max == Duration.ofNanos(LatencyHistogram.highestValue(LatencyHistogram.BUCKET_COUNT - 1))
+  }
+
+  def "should reject invalid percentile"() {
+    when:
+    new LatencyHistogram().snapshot().getPercentile(percentile)
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    percentile << [-1, 100.1]
+  }
+
+  def "should start new window on reset"() {
+    given:
+    def histogram = new LatencyHistogram()
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(100))
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(200))
+
+    when:
+    def firstWindow = histogram.snapshotAndReset()
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(10))
+    def secondWindow = histogram.snapshot()
+
+    then:
+    firstWindow.count == 2
+    firstWindow.max == Duration.ofMillis(200)
+    !firstWindow.endTime.isBefore(firstWindow.startTime)
+    secondWindow.count == 1
+    secondWindow.max == Duration.ofMillis(10)
+    secondWindow.mean == Duration.ofMillis(10)
+    secondWindow.startTime == firstWindow.endTime
+  }
+
+  def "should not lose latencies recorded concurrently to resets"() {
+    given:
+    def histogram = new LatencyHistogram()
+    def executor = Executors.newFixedThreadPool(4)
+    def done = new CountDownLatch(4)
+    def recordedCount = 0L
+
+    when:
+    4.times {
+      executor.execute(() -> {
+        for (int i = 0; i < 100_000; i++) {
+          histogram.record(i)
+        }
+        done.countDown()
+      })
+    }
+
+    while (done.count > 0) {
+      recordedCount += histogram.snapshotAndReset().count
+    }
+    recordedCount += histogram.snapshotAndReset().count
+
+    then:
+    recordedCount == 400_000
+
+    cleanup:
+    executor.shutdown()
+  }
+
+  private static boolean isWithinRelativeError(Duration actual, Duration expected) {
+    return Math.abs(actual.toNanos() - expected.toNanos()) <= expected.toNanos() * 0.0625
+  }
+}
@@ -0,0 +1,125 @@
+package io.github.ableron
+
+import mockwebserver3.Dispatcher
+import mockwebserver3.MockResponse
+import mockwebserver3.MockWebServer
+import mockwebserver3.RecordedRequest
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.TimeUnit
+
+class PageCompositionSpec extends Specification {
+
+  def mockWebServer = new MockWebServer()
+  def transclusionProcessor = new TransclusionProcessor()
+
+  def setup() {
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        return new MockResponse.Builder()
+          .body(recordedRequest.url.encodedPath())
+          .headersDelay(recordedRequest.url.encodedPath().startsWith("/slow") ? 500 : 0, TimeUnit.MILLISECONDS)
+          .build()
+      }
+    })
+    mockWebServer.start()
+  }
+
+  def cleanup() {
+    transclusionProcessor.close()
+    mockWebServer.close()
+  }
+
+  def "should reuse resolutions of prefetched includes"() {
+    given:
+    def pageComposition = transclusionProcessor.startPageComposition([:])
+    def include = "<ableron-include src=\"${mockWebServer.url("/slow")}\"/>"
+
+    when:
+    def prefetchedIncludesCount = pageComposition.prefetch("<html>" + include)
+    Thread.sleep(600)
+    def result = pageComposition.resolveIncludes("<html>" + include + "</html>")
+
+    then:
+    prefetchedIncludesCount == 1
+    pageComposition.prefetchedIncludesCount == 1
+    result.content == "<html>/slow</html>"
+    result.processingTimeMillis < 400
+    mockWebServer.requestCount == 1
+  }
+
+  def "should not prefetch the same include twice"() {
+    given:
+    def pageComposition = transclusionProcessor.startPageComposition([:])
+    def include = "<ableron-include src=\"${mockWebServer.url("/fast")}\"/>"
+
+    expect:
+    pageComposition.prefetch(include) == 1
+    pageComposition.prefetch(include) == 0
+    pageComposition.prefetch(include + include) == 0
+    pageComposition.prefetchedIncludesCount == 1
+  }
+
+  def "should share include definitions of prefetched includes"() {
+    given:
+    def transclusionProcessor = new TransclusionProcessor(AbleronConfig.builder().parseCacheMaxSizeInBytes(1024 * 1024).build())
+    def include = "<ableron-include src=\"${mockWebServer.url("/fast")}\"/>"
+    def parsedDefinition = transclusionProcessor.parseCache.parse(include).includeDefinitions.first()
+    def pageComposition = transclusionProcessor.startPageComposition([:])
+
+    when:
+    pageComposition.prefetch(include)
+
+    then:
+    pageComposition.getPrefetchedInclude(include).get().definition.is(parsedDefinition)
+
+    cleanup:
+    transclusionProcessor.close()
+  }
+
+  def "should cancel prefetched includes which are not part of the final page"() {
+    given:
+    def pageComposition = transclusionProcessor.startPageComposition([:])
+
+    when:
+    pageComposition.prefetch("<ableron-include src=\"${mockWebServer.url("/slow-unused")}\"/>")
+    def result = pageComposition.resolveIncludes("<ableron-include src=\"${mockWebServer.url("/fast")}\"/>")
+
+    then:
+    result.content == "/fast"
+    new PollingConditions(timeout: 2).eventually {
+      assert transclusionProcessor.fragmentCache.stats().cancelledRequestCount() == 1
+    }
+  }
+
+  def "should cancel prefetched includes if page is not composed"() {
+    given:
+    def pageComposition = transclusionProcessor.startPageComposition([:])
+
+    when:
+    pageComposition.prefetch("<ableron-include src=\"${mockWebServer.url("/slow")}\"/>")
+    pageComposition.cancel()
+
+    then:
+    new PollingConditions(timeout: 2).eventually {
+      assert transclusionProcessor.fragmentCache.stats().cancelledRequestCount() == 1
+    }
+  }
+
+  def "should not prefetch includes if ableron is disabled"() {
+    given:
+    def processor = new TransclusionProcessor(AbleronConfig.builder().enabled(false).build())
+    def pageComposition = processor.startPageComposition([:])
+    def content = "<ableron-include src=\"${mockWebServer.url("/fast")}\">fallback</ableron-include>"
+
+    expect:
+    pageComposition.prefetch(content) == 0
+    pageComposition.resolveIncludes(content).content == content
+    mockWebServer.requestCount == 0
+
+    cleanup:
+    processor.close()
+  }
+}
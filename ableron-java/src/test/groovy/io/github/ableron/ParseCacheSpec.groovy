@@ -0,0 +1,94 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+class ParseCacheSpec extends Specification {
+
+  def "should find include tags"() {
+    given:
+    def parseCache = new ParseCache(1024 * 1024)
+    def content = 'a<ableron-include src="1"/>b<ableron-include src="2">fallback</ableron-include>c<ableron-include src="1"/>'
+
+    when:
+    def parsedContent = parseCache.parse(content)
+
+    then:
+    parsedContent.includeTags.collect { content.substring(it.start, it.end) } == [
+      '<ableron-include src="1"/>',
+      '<ableron-include src="2">fallback</ableron-include>',
+      '<ableron-include src="1"/>'
+    ]
+    parsedContent.includeDefinitions*.src == ["1", "2", "1"]
+    parsedContent.includeDefinitions[1].fallbackContent == "fallback"
+    parsedContent.includeDefinitions[0].is(parsedContent.includeDefinitions[2])
+  }
+
+  def "should share include definitions between different content"() {
+    given:
+    def parseCache = new ParseCache(1024 * 1024)
+
+    when:
+    def parsedContent1 = parseCache.parse('a<ableron-include src="header"/>b')
+    def parsedContent2 = parseCache.parse('c<ableron-include src="header"/>d<ableron-include src="footer"/>')
+
+    then:
+    parsedContent2.includeDefinitions[0].is(parsedContent1.includeDefinitions[0])
+    parsedContent2.includeDefinitions*.src == ["header", "footer"]
+    parseCache.hitCount() == 1
+    parseCache.missCount() == 2
+    parseCache.estimatedSize() == 2
+  }
+
+  def "should look up include definition only once per distinct include tag in content"() {
+    given:
+    def parseCache = new ParseCache(1024 * 1024)
+
+    when:
+    parseCache.parse('<ableron-include src="1"/><ableron-include src="1"/><ableron-include src="1"/>')
+
+    then:
+    parseCache.hitCount() == 0
+    parseCache.missCount() == 1
+  }
+
+  def "should not look up include definitions for content without includes"() {
+    given:
+    def parseCache = new ParseCache(1024 * 1024)
+
+    when:
+    def parsedContent = parseCache.parse("<ableron-include/>no include")
+
+    then:
+    parsedContent.includeTags.isEmpty()
+    parseCache.hitCount() == 0
+    parseCache.missCount() == 0
+  }
+
+  def "should not share include definitions if disabled"() {
+    given:
+    def parseCache = new ParseCache(0)
+
+    when:
+    def parsedContent1 = parseCache.parse('<ableron-include src="1"/>')
+    def parsedContent2 = parseCache.parse('<ableron-include src="1"/>')
+
+    then:
+    parsedContent2.includeDefinitions*.src == ["1"]
+    !parsedContent2.includeDefinitions[0].is(parsedContent1.includeDefinitions[0])
+    parseCache.hitCount() == 0
+    parseCache.missCount() == 0
+    parseCache.estimatedSize() == 0
+  }
+
+  def "should limit cache size"() {
+    given:
+    def parseCache = new ParseCache(1024)
+
+    when:
+    (1..100).each { parseCache.parse("<ableron-include src=\"${it}\"/>") }
+    parseCache.includeDefinitions.cleanUp()
+
+    then:
+    parseCache.estimatedSize() < 100
+  }
+}
@@ -0,0 +1,185 @@
+package io.github.ableron
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestCoalescerSpec extends Specification {
+
+  def coalescedRequestCount = new AtomicInteger()
+  def requestCoalescer = new RequestCoalescer<String>(() -> coalescedRequestCount.incrementAndGet())
+
+  def "should share result of in-flight request"() {
+    given:
+    def request = new CompletableFuture<String>()
+    def loaderInvocations = new AtomicInteger()
+    def loader = () -> { loaderInvocations.incrementAndGet(); request }
+
+    when:
+    def result1 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", loader)
+    def result2 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", loader)
+    def result3 = requestCoalescer.load("key", Duration.ofMillis(500), "timeout", loader)
+    request.complete("result")
+
+    then:
+    result1.join() == "result"
+    result2.join() == "result"
+    result3.join() == "result"
+    loaderInvocations.get() == 1
+    coalescedRequestCount.get() == 2
+    requestCoalescer.inFlightRequestCount() == 0
+  }
+
+  def "should not share requests of different keys"() {
+    when:
+    def result1 = requestCoalescer.load("key1", Duration.ofSeconds(1), "timeout", () -> new CompletableFuture<String>())
+    def result2 = requestCoalescer.load("key2", Duration.ofSeconds(1), "timeout", () -> CompletableFuture.completedFuture("result2"))
+
+    then:
+    !result1.isDone()
+    result2.join() == "result2"
+    coalescedRequestCount.get() == 0
+  }
+
+  def "should perform new request after in-flight request completed"() {
+    given:
+    def loaderInvocations = new AtomicInteger()
+    def loader = () -> CompletableFuture.completedFuture("result-" + loaderInvocations.incrementAndGet())
+
+    expect:
+    requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", loader).join() == "result-1"
+    requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", loader).join() == "result-2"
+    coalescedRequestCount.get() == 0
+  }
+
+  def "should honor timeout of joining caller"() {
+    given:
+    def request = new CompletableFuture<String>()
+
+    when:
+    def result1 = requestCoalescer.load("key", Duration.ofSeconds(5), "timeout", () -> request)
+    def result2 = requestCoalescer.load("key", Duration.ofMillis(50), "timeout", () -> request)
+
+    then:
+    result2.join() == "timeout"
+    !result1.isDone()
+
+    when:
+    request.complete("result")
+
+    then:
+    result1.join() == "result"
+  }
+
+  def "should not join in-flight request with shorter timeout"() {
+    given:
+    def shortRequest = new CompletableFuture<String>()
+    def longRequest = new CompletableFuture<String>()
+
+    when:
+    def result1 = requestCoalescer.load("key", Duration.ofMillis(100), "timeout", () -> shortRequest)
+    def result2 = requestCoalescer.load("key", Duration.ofSeconds(5), "timeout", () -> longRequest)
+    def result3 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> new CompletableFuture<String>())
+    shortRequest.complete("short")
+    longRequest.complete("long")
+
+    then:
+    result1.join() == "short"
+    result2.join() == "long"
+    result3.join() == "long"
+    coalescedRequestCount.get() == 1
+  }
+
+  def "should share failures of in-flight request"() {
+    given:
+    def request = new CompletableFuture<String>()
+
+    when:
+    def result1 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request)
+    def result2 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request)
+    request.completeExceptionally(new IllegalStateException("failed"))
+    result2.join()
+
+    then:
+    def exception = thrown(CompletionException)
+    exception.cause instanceof IllegalStateException
+    result1.isCompletedExceptionally()
+    requestCoalescer.inFlightRequestCount() == 0
+  }
+
+  def "should handle loader throwing exception"() {
+    when:
+    def result = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> { throw new IllegalStateException("failed") })
+
+    then:
+    result.isCompletedExceptionally()
+    requestCoalescer.inFlightRequestCount() == 0
+  }
+
+  def "should cancel in-flight request once all callers stopped waiting"() {
+    given:
+    def request = new CompletableFuture<String>()
+
+    when:
+    def result1 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request)
+    def result2 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request)
+    result1.cancel(true)
+
+    then:
+    !request.isCancelled()
+
+    when:
+    result2.cancel(true)
+
+    then:
+    request.isCancelled()
+    requestCoalescer.inFlightRequestCount() == 0
+  }
+
+  def "should cancel in-flight request once timeout of remaining caller is exceeded"() {
+    given:
+    def request = new CompletableFuture<String>()
+
+    when:
+    def result1 = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request)
+    def result2 = requestCoalescer.load("key", Duration.ofMillis(100), "timeout", () -> request)
+    result1.cancel(true)
+
+    then:
+    result2.join() == "timeout"
+    request.isCancelled()
+  }
+
+  def "should not join abandoned request"() {
+    given:
+    def request1 = new CompletableFuture<String>()
+    def request2 = new CompletableFuture<String>()
+
+    when:
+    requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request1).cancel(true)
+    def result = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request2)
+    request2.complete("result")
+
+    then:
+    request1.isCancelled()
+    result.join() == "result"
+    coalescedRequestCount.get() == 0
+  }
+
+  def "should not cancel completed request"() {
+    given:
+    def request = new CompletableFuture<String>()
+
+    when:
+    def result = requestCoalescer.load("key", Duration.ofSeconds(1), "timeout", () -> request)
+    request.complete("result")
+    result.cancel(true)
+
+    then:
+    !request.isCancelled()
+    result.join() == "result"
+  }
+}
@@ -7,9 +7,22 @@ import mockwebserver3.RecordedRequest
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Timeout
+import spock.util.concurrent.PollingConditions
 
+import java.nio.ByteBuffer
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 class TransclusionProcessorSpec extends Specification {
 
@@ -475,6 +488,726 @@ class TransclusionProcessorSpec extends Specification {
   }
 
   @Timeout(value = 5000, unit = TimeUnit.MILLISECONDS)
+  def "should share one request between concurrent cache misses of the same fragment"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .headersDelay(500, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+
+    when:
+    def result1 = processor.resolveIncludesAsync("<ableron-include src=\"${mockWebServer.url("/")}\" src-timeout=\"2s\"/>", [:])
+    def result2 = processor.resolveIncludesAsync("<ableron-include src=\"${mockWebServer.url("/")}\" src-timeout=\"2s\">fallback</ableron-include>", [:])
+    def result3 = processor.resolveIncludesAsync("<ableron-include src=\"${mockWebServer.url("/")}\" src-timeout=\"100ms\">timed out</ableron-include>", [:])
+
+    then:
+    result1.join().content == "fragment"
+    result2.join().content == "fragment"
+    result3.join().content == "timed out"
+    mockWebServer.requestCount == 1
+    processor.fragmentCache.stats().coalescedRequestCount() == 2
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should serve stale fragment while revalidating it"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=1, stale-while-revalidate=10")
+      .body("fragment-1")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=60")
+      .body("fragment-2")
+      .headersDelay(200, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder().statsAppendToContent(true).build())
+    def content = "<ableron-include id=\"1\" src=\"${mockWebServer.url("/")}\"/>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result2 = processor.resolveIncludes(content, [:])
+    sleep(400)
+    def result3 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content.startsWith("fragment-1")
+    result2.content.startsWith("fragment-1")
+    result2.content.contains("| 1 | stale src | expired")
+    result2.contentExpirationTime.get().isBefore(Instant.now())
+    result3.content.startsWith("fragment-2")
+    result3.content.contains("| 1 | cached src | expires in 60s")
+    mockWebServer.requestCount == 2
+    processor.fragmentCache.stats().staleHitCount() == 1
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should use default stale-while-revalidate period if not specified by fragment"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=1")
+      .body("fragment-1")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=60")
+      .body("fragment-2")
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .cacheStaleWhileRevalidateDefault(staleWhileRevalidateDefault)
+      .build())
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\"/>"
+
+    when:
+    processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result = processor.resolveIncludes(content, [:])
+
+    then:
+    result.content == expectedContent
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+
+    where:
+    staleWhileRevalidateDefault | expectedContent
+    Duration.ZERO               | "fragment-2"
+    Duration.ofSeconds(10)      | "fragment-1"
+  }
+
+  def "should serve stale fragment if fragment cannot be loaded from its source"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=1, stale-if-error=10")
+      .body("fragment-1")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .code(503)
+      .body("fragment-2")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment-3")
+      .headersDelay(1000, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder().statsAppendToContent(true).build())
+    def content = "<ableron-include id=\"1\" src=\"${mockWebServer.url("/")}\" primary>fallback</ableron-include>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result2 = processor.resolveIncludes(content, [:])
+    def result3 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content.startsWith("fragment-1")
+    result2.content.startsWith("fragment-1")
+    result2.content.contains("| 1 (primary) | stale src | expired")
+    result2.statusCodeOverride.get() == 200
+    result3.content.startsWith("fragment-1")
+    result3.processingTimeMillis < 500
+    processor.fragmentCache.stats().staleIfErrorHitCount() == 1
+    processor.fragmentCache.stats().staleHitCount() == 1
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should revalidate expired fragment via conditional request"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=1")
+      .setHeader("ETag", '"v1"')
+      .setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")
+      .setHeader("Content-Language", "de")
+      .body("fragment-1")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .code(304)
+      .setHeader("Cache-Control", "max-age=60")
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\" primary/>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result2 = processor.resolveIncludes(content, [:])
+    def result3 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content == "fragment-1"
+    result2.content == "fragment-1"
+    result2.responseHeadersToForward == ["content-language": ["de"]]
+    result2.contentExpirationTime.get().isAfter(Instant.now().plusSeconds(50))
+    result3.content == "fragment-1"
+    mockWebServer.requestCount == 2
+    mockWebServer.takeRequest().headers["If-None-Match"] == null
+    with(mockWebServer.takeRequest()) {
+      headers["If-None-Match"] == '"v1"'
+      headers["If-Modified-Since"] == "Wed, 21 Oct 2015 07:28:00 GMT"
+    }
+    processor.fragmentCache.stats().notModifiedCount() == 1
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should retain freshness lifetime of cached fragment if 304 response does not specify one"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=1")
+      .setHeader("ETag", '"v1"')
+      .body("fragment-1")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .code(304)
+      .setHeader("ETag", '"v1"')
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .code(304)
+      .setHeader("ETag", '"v1"')
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\" primary/>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result2 = processor.resolveIncludes(content, [:])
+    def result3 = processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result4 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content == "fragment-1"
+    result2.content == "fragment-1"
+    result3.content == "fragment-1"
+    result4.content == "fragment-1"
+    mockWebServer.requestCount == 3
+    mockWebServer.takeRequest().headers["If-None-Match"] == null
+    mockWebServer.takeRequest().headers["If-None-Match"] == '"v1"'
+    mockWebServer.takeRequest().headers["If-None-Match"] == '"v1"'
+    processor.fragmentCache.stats().notModifiedCount() == 2
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should share include definitions of repeated content using parse cache"() {
+    given:
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .parseCacheMaxSizeInBytes(1024 * 1024)
+      .build())
+    def content = "<p><ableron-include src=\"foo\">fallback</ableron-include></p>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    def result2 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content == "<p>fallback</p>"
+    result2.content == "<p>fallback</p>"
+    processor.parseCache.hitCount() == 1
+    processor.parseCache.missCount() == 1
+
+    cleanup:
+    processor.close()
+  }
+
+  def "should share include definitions of repeated encoded content using parse cache"() {
+    given:
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .parseCacheMaxSizeInBytes(1024 * 1024)
+      .build())
+    def content = "<p><ableron-include src=\"foo\">fallback</ableron-include></p>"
+
+    when:
+    def result1 = processor.resolveIncludes(ByteBuffer.wrap(content.getBytes("UTF-8")), StandardCharsets.UTF_8, [:])
+    def result2 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content == "<p>fallback</p>"
+    result2.content == "<p>fallback</p>"
+    processor.parseCache.hitCount() == 1
+    processor.parseCache.missCount() == 1
+
+    cleanup:
+    processor.close()
+  }
+
+  def "should resolve includes of encoded content"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        switch (recordedRequest.url.encodedPath()) {
+          case "/utf-8":
+            return new MockResponse.Builder()
+              .addHeader("Content-Type", "text/html; charset=utf-8")
+              .body("<b>Grüße</b>")
+              .build()
+          case "/iso-8859-1":
+            return new MockResponse.Builder()
+              .addHeader("Content-Type", "text/html; charset=iso-8859-1")
+              .body(new okio.Buffer().write("<i>Größe</i>".getBytes("ISO-8859-1")))
+              .build()
+        }
+        return new MockResponse.Builder().code(404).build()
+      }
+    })
+    mockWebServer.start()
+    def content = "<p>ä</p><ableron-include src=\"${mockWebServer.url("/utf-8")}\"/>" +
+      "<p>ö</p><ableron-include src=\"${mockWebServer.url("/iso-8859-1")}\"/>" +
+      "<ableron-include src=\"${mockWebServer.url("/404")}\">Fallbäck</ableron-include><p>ü</p>"
+    def contentBytes = content.getBytes("UTF-8")
+
+    when:
+    def result = transclusionProcessor.resolveIncludes(ByteBuffer.wrap(contentBytes), StandardCharsets.UTF_8, [:])
+    def output = new ByteArrayOutputStream()
+    result.writeContentTo(output)
+
+    then:
+    result.processedIncludesCount == 3
+    result.content == "<p>ä</p><b>Grüße</b><p>ö</p><i>Größe</i>Fallbäck<p>ü</p>"
+    new String(output.toByteArray(), "UTF-8") == "<p>ä</p><b>Grüße</b><p>ö</p><i>Größe</i>Fallbäck<p>ü</p>"
+    result.contentSegments.collect { it.remaining() }.sum() == output.size()
+    result.contentSegments.every { it.isReadOnly() }
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should not copy encoded content when resolving includes"() {
+    given:
+    def contentBytes = "<p>ä</p><ableron-include >fallback</ableron-include><p>ü</p>".getBytes("UTF-8")
+
+    when:
+    def result = transclusionProcessor.resolveIncludes(ByteBuffer.wrap(contentBytes), StandardCharsets.UTF_8, [:])
+    contentBytes[1] = (byte) 'b'
+
+    then:
+    new String(result.contentSegments[0].with { def bytes = new byte[it.remaining()]; it.get(bytes); bytes }, "UTF-8") == "<b>ä</p>"
+  }
+
+  def "should resolve includes of encoded content of charset which is not ASCII compatible"() {
+    given:
+    def charset = Charset.forName("UTF-16")
+    def contentBytes = "<p>ä</p><ableron-include >fallback</ableron-include>".getBytes(charset)
+
+    when:
+    def result = transclusionProcessor.resolveIncludes(ByteBuffer.wrap(contentBytes), charset, [:])
+    def output = new ByteArrayOutputStream()
+    result.writeContentTo(output)
+
+    then:
+    result.content == "<p>ä</p>fallback"
+    new String(output.toByteArray(), charset) == "<p>ä</p>fallback"
+  }
+
+  def "should resolve includes of encoded content from position of buffer"() {
+    given:
+    def buffer = ByteBuffer.wrap("skipped<ableron-include >fallback</ableron-include>".getBytes("UTF-8"))
+    buffer.position(7)
+
+    when:
+    def result = transclusionProcessor.resolveIncludes(buffer, StandardCharsets.UTF_8, [:])
+
+    then:
+    result.content == "fallback"
+    buffer.position() == 7
+  }
+
+  def "should record latencies of composition, includes and fragment requests in histograms"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .setHeader("Cache-Control", "max-age=60")
+      .headersDelay(100, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\"/>"
+
+    when:
+    processor.resolveIncludes(content, [:])
+    processor.resolveIncludes(content, [:])
+    def compositionTime = processor.compositionStats.compositionTime().snapshot()
+    def includeResolveTime = processor.compositionStats.includeResolveTime().snapshot()
+
+    then:
+    compositionTime.count == 2
+    compositionTime.max >= Duration.ofMillis(100)
+    compositionTime.getPercentile(50) < Duration.ofMillis(100)
+    includeResolveTime.count == 2
+    includeResolveTime.max >= Duration.ofMillis(100)
+    includeResolveTime.getPercentile(50) < Duration.ofMillis(100)
+    new PollingConditions(timeout: 2).eventually {
+      def fragmentFetchTime = processor.fragmentCache.stats().fragmentFetchTime().snapshot()
+      assert fragmentFetchTime.count == 1
+      assert fragmentFetchTime.max >= Duration.ofMillis(100)
+    }
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should record metrics of composition, includes and fragment requests"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        switch (recordedRequest.url.encodedPath()) {
+          case "/fragment":
+          case "/fallback":
+            return new MockResponse.Builder().body("fragment").setHeader("Cache-Control", "max-age=60").build()
+          case "/slow":
+            return new MockResponse.Builder().body("slow").headersDelay(2, TimeUnit.SECONDS).build()
+          default:
+            return new MockResponse.Builder().code(500).build()
+        }
+      }
+    })
+    mockWebServer.start()
+    def compositions = new CopyOnWriteArrayList<Integer>()
+    def resolvedIncludes = new CopyOnWriteArrayList<String>()
+    def fragmentResponses = new CopyOnWriteArrayList<Integer>()
+    def timeouts = new AtomicInteger()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .requestTimeout(Duration.ofMillis(300))
+      .metrics(new AbleronMetrics() {
+        void recordComposition(long compositionTimeNanos, int includeCount) {
+          assert compositionTimeNanos > 0
+          compositions.add(includeCount)
+        }
+        void recordIncludeResolved(String fragmentSource, long resolveTimeNanos) {
+          assert resolveTimeNanos >= 0
+          resolvedIncludes.add(fragmentSource)
+        }
+        void recordFragmentResponse(int statusCode, long fetchTimeNanos) {
+          assert fetchTimeNanos > 0
+          fragmentResponses.add(statusCode)
+        }
+        void recordFragmentRequestTimeout() {
+          timeouts.incrementAndGet()
+        }
+      })
+      .build())
+    def content = "<ableron-include id=\"1\" src=\"${mockWebServer.url("/fragment")}\"/>" +
+      "<ableron-include id=\"2\" src=\"${mockWebServer.url("/error")}\" fallback-src=\"${mockWebServer.url("/fallback")}\"/>" +
+      "<ableron-include id=\"3\" src=\"${mockWebServer.url("/slow")}\">fallback</ableron-include>"
+
+    when:
+    processor.resolveIncludes(content, [:])
+    processor.resolveIncludes("<ableron-include src=\"${mockWebServer.url("/fragment")}\"/>", [:])
+
+    then:
+    compositions == [3, 1]
+    resolvedIncludes.sort() == ["cached src", "fallback content", "remote fallback-src", "remote src"]
+    new PollingConditions(timeout: 2).eventually {
+      assert fragmentResponses.sort() == [200, 200, 500]
+      assert timeouts.get() == 1
+    }
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should resolve unresolved includes with fallback content when composition deadline passes"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        return new MockResponse.Builder()
+          .body(recordedRequest.url.encodedPath())
+          .headersDelay(recordedRequest.url.encodedPath() == "/slow" ? 2000 : 0, TimeUnit.MILLISECONDS)
+          .build()
+      }
+    })
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .compositionDeadline(Duration.ofMillis(300))
+      .build())
+    def content = "<ableron-include src=\"${mockWebServer.url("/fast")}\"/>" +
+      "<ableron-include src=\"${mockWebServer.url("/slow")}\">fallback</ableron-include>"
+
+    when:
+    def result = processor.resolveIncludes(content, [:])
+
+    then:
+    result.content == "/fastfallback"
+    result.processingTimeMillis < 1000
+    !result.contentExpirationTime.get().isAfter(Instant.now())
+    processor.fragmentCache.stats().cancelledRequestCount() == 1
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should resolve unresolved includes with stale fragment when composition deadline passes"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .setHeader("Cache-Control", "max-age=1, stale-if-error=10")
+      .body("fragment-1")
+      .build())
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment-2")
+      .headersDelay(2000, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\">fallback</ableron-include>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    sleep(1100)
+    def result2 = processor.resolveIncludes(content, [:], Duration.ofMillis(300))
+
+    then:
+    result1.content == "fragment-1"
+    result2.content == "fragment-1"
+    result2.processingTimeMillis < 1000
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should not mix late fragment into content of primary include resolved when composition deadline passed"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        return new MockResponse.Builder()
+          .code(503)
+          .body("fragment")
+          .setHeader("Content-Language", "de")
+          .headersDelay(100, TimeUnit.MILLISECONDS)
+          .build()
+      }
+    })
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .compositionDeadline(Duration.ofMillis(100))
+      .build())
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\" primary>fallback</ableron-include>"
+
+    when:
+    def results = (1..20).collect { processor.resolveIncludes(content, [:]) }
+    sleep(200)
+
+    then:
+    results.every { result ->
+      result.content == "fragment"
+        ? result.statusCodeOverride.get() == 503 && result.responseHeadersToForward == ["content-language": ["de"]]
+        : result.content == "fallback" && result.statusCodeOverride.get() == 200 && result.responseHeadersToForward.isEmpty()
+    }
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should prefer composition deadline passed per call over configured one"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .body("fragment")
+      .headersDelay(500, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .compositionDeadline(Duration.ofMillis(100))
+      .build())
+
+    when:
+    def result = processor.resolveIncludes("<ableron-include src=\"${mockWebServer.url("/")}\">fallback</ableron-include>", [:], Duration.ofSeconds(2))
+
+    then:
+    result.content == "fragment"
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should write content progressively in document order"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        return new MockResponse.Builder()
+          .body(recordedRequest.url.encodedPath())
+          .headersDelay(recordedRequest.url.encodedPath() == "/slow" ? 1000 : 0, TimeUnit.MILLISECONDS)
+          .build()
+      }
+    })
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def flushes = []
+    def writer = new StringWriter() {
+      @Override
+      void flush() {
+        flushes.add(toString())
+      }
+    }
+    def cacheControlBeforeFirstWrite = null
+    def content = "<head></head><ableron-include src=\"${mockWebServer.url("/fast")}\"/>" +
+      "<div><ableron-include src=\"${mockWebServer.url("/slow")}\"/></div>"
+
+    when:
+    def result = processor.resolveIncludes(content, [:], writer, { cacheControlBeforeFirstWrite = it.calculateCacheControlHeaderValue(Duration.ofMinutes(5)) })
+
+    then:
+    writer.toString() == "<head></head>/fast<div>/slow</div>"
+    flushes.contains("<head></head>/fast<div>")
+    flushes.last() == writer.toString()
+    cacheControlBeforeFirstWrite == "no-store"
+    result.processedIncludesCount == 2
+    !result.hasUnresolvedIncludes()
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should settle primary include before writing content progressively"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder()
+      .code(404)
+      .setHeader("Content-Language", "de")
+      .body("not found")
+      .headersDelay(300, TimeUnit.MILLISECONDS)
+      .build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def writer = new StringWriter()
+    def writtenContentBeforeFirstWrite = null
+    def statusCodeBeforeFirstWrite = null
+    def responseHeadersBeforeFirstWrite = null
+
+    when:
+    processor.resolveIncludes("<head></head><ableron-include src=\"${mockWebServer.url("/")}\" primary/>", [:], writer, { result ->
+      writtenContentBeforeFirstWrite = writer.toString()
+      statusCodeBeforeFirstWrite = result.statusCodeOverride.orElse(null)
+      responseHeadersBeforeFirstWrite = result.responseHeadersToForward
+    })
+
+    then:
+    writtenContentBeforeFirstWrite == ""
+    statusCodeBeforeFirstWrite == 404
+    responseHeadersBeforeFirstWrite == ["content-language": ["de"]]
+    writer.toString() == "<head></head>not found"
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should append stats when writing content progressively"() {
+    given:
+    def processor = new TransclusionProcessor(AbleronConfig.builder().statsAppendToContent(true).build())
+    def writer = new StringWriter()
+
+    when:
+    processor.resolveIncludes("<ableron-include >fallback</ableron-include>", [:], writer, {})
+
+    then:
+    writer.toString().matches("(?s)fallback\\n<!-- Processed 1 include in \\d+ms.+-->")
+
+    cleanup:
+    processor.close()
+  }
+
+  def "should write encoded content progressively in document order"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) {
+        return new MockResponse.Builder()
+          .body(recordedRequest.url.encodedPath())
+          .headersDelay(recordedRequest.url.encodedPath() == "/slow" ? 1000 : 0, TimeUnit.MILLISECONDS)
+          .build()
+      }
+    })
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def flushes = []
+    def outputStream = new ByteArrayOutputStream() {
+      @Override
+      void flush() {
+        flushes.add(toString(StandardCharsets.UTF_8))
+      }
+    }
+    def content = "<head>ä</head><ableron-include src=\"${mockWebServer.url("/fast")}\"/>" +
+      "<div><ableron-include src=\"${mockWebServer.url("/slow")}\"/></div>"
+
+    when:
+    def result = processor.resolveIncludes(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8, [:], outputStream, {})
+
+    then:
+    outputStream.toString(StandardCharsets.UTF_8) == "<head>ä</head>/fast<div>/slow</div>"
+    flushes.contains("<head>ä</head>/fast<div>")
+    flushes.last() == outputStream.toString(StandardCharsets.UTF_8)
+    result.processedIncludesCount == 2
+    !result.hasUnresolvedIncludes()
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should write encoded content progressively regardless of charset"() {
+    given:
+    def processor = new TransclusionProcessor(AbleronConfig.builder().statsAppendToContent(true).build())
+    def outputStream = new ByteArrayOutputStream()
+
+    when:
+    processor.resolveIncludes(ByteBuffer.wrap("<p>ä</p><ableron-include >fällback</ableron-include>".getBytes(charset)), charset, [:], outputStream, {})
+
+    then:
+    outputStream.toString(charset).matches("(?s)<p>ä</p>fällback\\n<!-- Processed 1 include in \\d+ms.+-->")
+
+    cleanup:
+    processor.close()
+
+    where:
+    charset << [StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16]
+  }
+
   def "should resolve includes in parallel"() {
     given:
     def mockWebServer = new MockWebServer()
@@ -557,6 +1290,219 @@ class TransclusionProcessorSpec extends Specification {
     mockWebServer.close()
   }
 
+  def "should not limit number of concurrent fragment requests to resolve thread pool size"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      MockResponse dispatch(RecordedRequest recordedRequest) throws InterruptedException {
+        return new MockResponse.Builder()
+          .body(recordedRequest.url.encodedPath())
+          .headersDelay(1000, TimeUnit.MILLISECONDS)
+          .build()
+      }
+    })
+    mockWebServer.start()
+    def baseUrl = mockWebServer.url("/").toString()
+
+    when:
+    def result = transclusionProcessor.resolveIncludes((1..200).collect { "<ableron-include src=\"${baseUrl}${it}\"/>" }.join(), [:])
+
+    then:
+    result.content == (1..200).collect { "/${it}" }.join()
+    result.processingTimeMillis < 3000
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should use virtual threads only if enabled and supported by the running JVM"() {
+    when:
+    def processor = new TransclusionProcessor(AbleronConfig.builder().virtualThreadsEnabled(enabled).build())
+
+    then:
+    processor.virtualThreadsEnabled() == (enabled && VirtualThreads.isSupported())
+    processor.resolveIncludes('<ableron-include src="foo">fallback</ableron-include>', [:]).content == "fallback"
+
+    where:
+    enabled << [true, false]
+  }
+
+  def "should use fallback content if resolve executor is saturated"() {
+    given:
+    def resolveExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1))
+    def blocker = new CountDownLatch(1)
+    resolveExecutor.execute(() -> blocker.await())
+    new PollingConditions(timeout: 2).eventually {
+      assert resolveExecutor.activeCount == 1
+    }
+    resolveExecutor.execute(() -> blocker.await())
+    def processor = new TransclusionProcessor(AbleronConfig.builder().resolveExecutor(resolveExecutor).build())
+
+    when:
+    def result = processor.resolveIncludes('<ableron-include src="http://localhost:1/">fallback</ableron-include>', [:])
+
+    then:
+    result.content == "fallback"
+    processor.resolveExecutorStats.rejectionCount() == 1
+    processor.resolveExecutorStats.activeCount() == 1
+    processor.resolveExecutorStats.queueSize() == 1
+
+    cleanup:
+    blocker.countDown()
+    resolveExecutor.shutdown()
+  }
+
+  def "should not discard loaded fragment if resolve executor rejects processing it"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder().setHeader("Cache-Control", "max-age=60").body("fragment").build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .resolveExecutor({ throw new RejectedExecutionException() } as Executor)
+      .build())
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\">fallback</ableron-include>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    def result2 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content == "fragment"
+    result2.content == "fragment"
+    result2.distinctIncludes.first().resolvedFragmentSource == "cached src"
+    mockWebServer.requestCount == 1
+    processor.resolveExecutorStats.rejectionCount() == 0
+
+    cleanup:
+    mockWebServer.close()
+  }
+
+  def "should resolve cached includes on calling thread without touching resolve executor"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder().setHeader("Cache-Control", "max-age=60").body("fragment").build())
+    mockWebServer.start()
+    def resolveExecutor = Executors.newSingleThreadExecutor()
+    def executedTasks = new AtomicInteger()
+    def processor = new TransclusionProcessor(AbleronConfig.builder()
+      .resolveExecutor({ Runnable task -> executedTasks.incrementAndGet(); resolveExecutor.execute(task) } as Executor)
+      .build())
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\">fallback</ableron-include>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    def executedTasksAfterCacheMiss = executedTasks.get()
+    def result2 = processor.resolveIncludesAsync(content, [:])
+
+    then:
+    result1.content == "fragment"
+    executedTasksAfterCacheMiss > 0
+    result2.isDone()
+    result2.join().content == "fragment"
+    result2.join().distinctIncludes.first().resolvedFragmentSource == "cached src"
+    executedTasks.get() == executedTasksAfterCacheMiss
+    processor.fragmentCache.stats().hitCount() == 1
+    processor.fragmentCache.stats().missCount() == 1
+
+    cleanup:
+    processor.close()
+    resolveExecutor.shutdown()
+    mockWebServer.close()
+  }
+
+  def "should resolve only uncached includes asynchronously"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder().setHeader("Cache-Control", "max-age=60").body("cached").build())
+    mockWebServer.enqueue(new MockResponse.Builder().body("uncached").build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+    def cachedInclude = "<ableron-include src=\"${mockWebServer.url("/cached")}\"/>"
+    def uncachedInclude = "<ableron-include src=\"${mockWebServer.url("/uncached")}\"/>"
+
+    when:
+    processor.resolveIncludes(cachedInclude, [:])
+    def result = processor.resolveIncludes(cachedInclude + uncachedInclude, [:])
+
+    then:
+    result.content == "cacheduncached"
+    result.distinctIncludes*.resolvedFragmentSource as Set == ["cached src", "remote src"] as Set
+    mockWebServer.requestCount == 2
+    processor.fragmentCache.stats().hitCount() == 1
+    processor.fragmentCache.stats().missCount() == 2
+
+    cleanup:
+    processor.close()
+    mockWebServer.close()
+  }
+
+  def "should resolve cached includes even if resolve executor is saturated"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder().setHeader("Cache-Control", "max-age=60").body("fragment").build())
+    mockWebServer.start()
+    def resolveExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1))
+    def blocker = new CountDownLatch(1)
+    def processor = new TransclusionProcessor(AbleronConfig.builder().resolveExecutor(resolveExecutor).build())
+    def content = "<ableron-include src=\"${mockWebServer.url("/")}\">fallback</ableron-include>"
+
+    when:
+    def result1 = processor.resolveIncludes(content, [:])
+    new PollingConditions(timeout: 2).eventually {
+      assert resolveExecutor.completedTaskCount == resolveExecutor.taskCount
+    }
+    resolveExecutor.execute(() -> blocker.await())
+    new PollingConditions(timeout: 2).eventually {
+      assert resolveExecutor.activeCount == 1
+    }
+    resolveExecutor.execute(() -> blocker.await())
+    def result2 = processor.resolveIncludes(content, [:])
+
+    then:
+    result1.content == "fragment"
+    result2.content == "fragment"
+    processor.resolveExecutorStats.rejectionCount() == 0
+
+    cleanup:
+    blocker.countDown()
+    resolveExecutor.shutdown()
+    mockWebServer.close()
+  }
+
+  def "should not shut down provided resolve executor on close"() {
+    given:
+    def resolveExecutor = Executors.newSingleThreadExecutor()
+    def processor = new TransclusionProcessor(AbleronConfig.builder().resolveExecutor(resolveExecutor).build())
+
+    when:
+    processor.close()
+
+    then:
+    !resolveExecutor.isShutdown()
+
+    cleanup:
+    resolveExecutor.shutdown()
+  }
+
+  def "should resolve includes with fallback content after close"() {
+    given:
+    def mockWebServer = new MockWebServer()
+    mockWebServer.enqueue(new MockResponse.Builder().body("fragment").build())
+    mockWebServer.start()
+    def processor = new TransclusionProcessor()
+
+    when:
+    processor.close()
+    def result = processor.resolveIncludes("<ableron-include src=\"${mockWebServer.url("/")}\">fallback</ableron-include>", [:])
+
+    then:
+    result.content == "fallback"
+
+    cleanup:
+    mockWebServer.close()
+  }
+
   def "should handle unresolvable include"() {
     given:
     def transclusionProcessor = new TransclusionProcessor(AbleronConfig.builder().statsAppendToContent(true).build())
@@ -659,7 +1605,7 @@ XXXms | e | remote src | not cacheable
 XXXms | h (primary) | remote src | not cacheable
 XXXms | z | remote fallback-src | not cacheable
 
-Cache: 3 items, 5 hits, 18 misses, 0 successful refreshs, 0 failed refreshs
+Cache: 1 items, 5 hits, 18 misses, 0 successful refreshs, 0 failed refreshs
 -->"""
 
     cleanup:
@@ -57,6 +57,41 @@ class TransclusionResultSpec extends Specification {
     transclusionResult.getProcessingTimeMillis() == 0
   }
 
+  def "should splice resolved includes into content at include tag positions"() {
+    given:
+    def content = 'a<ableron-include src="1"/>b<ableron-include src="2"/>c<ableron-include src="1"/>d'
+    def includeTags = IncludeScanner.scan(content)
+    def include1 = includeTags[0].toInclude(content)
+    def include2 = includeTags[1].toInclude(content)
+    def transclusionResult = new TransclusionResult(content, includeTags, [include1, include2, include1], new CacheStats(), false, false)
+
+    when:
+    transclusionResult.addResolvedInclude(include1.resolveWith(new Fragment(200, "fragment-1"), 0, ""))
+
+    then:
+    transclusionResult.getContent() == 'afragment-1b<ableron-include src="2"/>cfragment-1d'
+
+    when:
+    transclusionResult.addResolvedInclude(include2.resolveWith(new Fragment(200, ""), 0, ""))
+
+    then:
+    transclusionResult.getContent() == 'afragment-1bcfragment-1d'
+    transclusionResult.getProcessedIncludesCount() == 2
+  }
+
+  def "should provide raw include tags in document order without duplicates"() {
+    given:
+    def content = 'a<ableron-include src="2"/>b<ableron-include src="1"/>c<ableron-include src="2"/>d'
+    def includeTags = IncludeScanner.scan(content)
+    def include1 = includeTags[0].toInclude(content)
+    def include2 = includeTags[1].toInclude(content)
+
+    expect:
+    new TransclusionResult(content, includeTags, [include1, include2, include1], new CacheStats(), false, false)
+      .getRawIncludeTags() as List == ['<ableron-include src="2"/>', '<ableron-include src="1"/>']
+    new TransclusionResult(content).getRawIncludeTags().isEmpty()
+  }
+
   def "should calculate cache control header value"() {
     given:
     def transclusionResult = new TransclusionResult("content")
@@ -223,7 +258,7 @@ class TransclusionResultSpec extends Specification {
       "XXXms | 3 | remote src | expires in XXXs | http://localhost:80/cacheable-fragment-1\n" +
       "XXXms | 4 | cached fallback-src | expires in 10s | http://localhost:80/cacheable-fragment-2\n" +
       "\n" +
-      "Cache: 3 items, 1 hits, 3 misses, 0 successful refreshs, 0 failed refreshs\n" +
+      "Cache: 2 items, 1 hits, 3 misses, 0 successful refreshs, 0 failed refreshs\n" +
       "-->"
 
     cleanup:
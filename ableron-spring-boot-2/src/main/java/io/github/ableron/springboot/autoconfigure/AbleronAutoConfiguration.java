@@ -2,7 +2,12 @@ package io.github.ableron.springboot.autoconfigure;
 
 import io.github.ableron.Ableron;
 import io.github.ableron.AbleronConfig;
+import io.github.ableron.AbleronMetrics;
+import io.github.ableron.springboot.filter.PredictiveIncludePrefetcher;
 import io.github.ableron.springboot.filter.UiCompositionFilter;
+import io.github.ableron.springboot.metrics.AbleronMeterBinder;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -10,6 +15,9 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.Optional;
 
 import javax.servlet.Filter;
 
@@ -20,27 +28,43 @@ import javax.servlet.Filter;
 public class AbleronAutoConfiguration {
 
   private final AbleronProperties ableronProperties;
+  private final Environment environment;
 
-  public AbleronAutoConfiguration(AbleronProperties ableronProperties) {
+  public AbleronAutoConfiguration(AbleronProperties ableronProperties, Environment environment) {
     this.ableronProperties = ableronProperties;
+    this.environment = environment;
   }
 
   @Bean
   @ConditionalOnMissingBean
-  public AbleronConfig ableronConfig() {
-    return AbleronConfig.builder()
+  public AbleronConfig ableronConfig(ObjectProvider<AbleronMetrics> ableronMetrics) {
+    var ableronConfigBuilder = AbleronConfig.builder()
       .enabled(ableronProperties.isEnabled())
       .requestTimeout(ableronProperties.getRequestTimeout())
       .requestHeadersForward(ableronProperties.getRequestHeadersForward())
       .requestHeadersForwardVary(ableronProperties.getRequestHeadersForwardVary())
       .responseHeadersForward(ableronProperties.getResponseHeadersForward())
       .cacheMaxSizeInBytes(ableronProperties.getCache().getMaxSize().toBytes())
+      .parseCacheMaxSizeInBytes(ableronProperties.getParseCacheMaxSize().toBytes())
       .cacheAutoRefreshEnabled(ableronProperties.getCache().isAutoRefreshEnabled())
       .cacheAutoRefreshMaxAttempts(ableronProperties.getCache().getAutoRefreshMaxAttempts())
+      .resolveThreadPoolSize(ableronProperties.getResolveThreadPool().getSize())
+      .resolveThreadPoolQueueCapacity(ableronProperties.getResolveThreadPool().getQueueCapacity())
       .cacheAutoRefreshInactiveFragmentsMaxRefreshs(ableronProperties.getCache().getAutoRefreshInactiveFragmentsMaxRefreshs())
+      .cacheAutoRefreshThreadPoolSize(ableronProperties.getCache().getAutoRefreshThreadPoolSize())
+      .cacheStaleWhileRevalidateDefault(ableronProperties.getCache().getStaleWhileRevalidateDefault())
+      .cacheStaleIfErrorDefault(ableronProperties.getCache().getStaleIfErrorDefault())
+      .virtualThreadsEnabled(isVirtualThreadsEnabled())
       .statsAppendToContent(ableronProperties.getStats().isAppendToContent())
-      .statsExposeFragmentUrl(ableronProperties.getStats().isExposeFragmentUrl())
-      .build();
+      .statsExposeFragmentUrl(ableronProperties.getStats().isExposeFragmentUrl());
+    Optional.ofNullable(ableronProperties.getCompositionDeadline()).ifPresent(ableronConfigBuilder::compositionDeadline);
+    ableronMetrics.ifUnique(ableronConfigBuilder::metrics);
+    return ableronConfigBuilder.build();
+  }
+
+  private boolean isVirtualThreadsEnabled() {
+    return Optional.ofNullable(ableronProperties.getVirtualThreadsEnabled())
+      .orElseGet(() -> environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false));
   }
 
   @Bean
@@ -49,14 +73,44 @@ public class AbleronAutoConfiguration {
     return new Ableron(ableronConfig);
   }
 
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnClass(MeterBinder.class)
+  public static class MicrometerConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public AbleronMeterBinder ableronMeterBinder(ObjectProvider<Ableron> ableron) {
+      return new AbleronMeterBinder(ableron::getObject);
+    }
+  }
+
   @Configuration(proxyBeanMethods = false)
   @ConditionalOnClass(Filter.class)
   public static class SpringWebMvcConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public UiCompositionFilter uiCompositionFilter(Ableron ableron) {
-      return new UiCompositionFilter(ableron);
+    @ConditionalOnProperty(value = "ableron.predictive-prefetch.enabled", havingValue = "true")
+    public PredictiveIncludePrefetcher predictiveIncludePrefetcher(AbleronProperties ableronProperties) {
+      return new PredictiveIncludePrefetcher(
+        ableronProperties.getPredictivePrefetch().getMaxIncludesPerRequest(),
+        ableronProperties.getPredictivePrefetch().getMaxRoutes()
+      );
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public UiCompositionFilter uiCompositionFilter(Ableron ableron, AbleronProperties ableronProperties, ObjectProvider<PredictiveIncludePrefetcher> predictiveIncludePrefetcher) {
+      UiCompositionFilter uiCompositionFilter = new UiCompositionFilter(
+        ableron,
+        ableronProperties.isStreamingEnabled(),
+        ableronProperties.isEarlyIncludeDiscoveryEnabled(),
+        predictiveIncludePrefetcher.getIfAvailable()
+      );
+      uiCompositionFilter.setIncludePathPatterns(ableronProperties.getIncludePathPatterns());
+      uiCompositionFilter.setExcludePathPatterns(ableronProperties.getExcludePathPatterns());
+      uiCompositionFilter.setAsyncEnabled(ableronProperties.isAsyncEnabled());
+      return uiCompositionFilter;
     }
   }
 }
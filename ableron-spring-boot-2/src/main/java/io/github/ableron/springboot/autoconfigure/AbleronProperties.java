@@ -20,6 +20,13 @@ public class AbleronProperties {
    */
   private Duration requestTimeout = Duration.ofSeconds(3);
 
+  /**
+   * Maximum time to resolve all includes of a page. Includes, which are not resolved when the deadline
+   * passes, are resolved with a stale fragment, if available, or with their fallback content.
+   * Defaults to no deadline.
+   */
+  private Duration compositionDeadline = null;
+
   /**
    * Request headers that are forwarded to fragment requests, if present.
    * These request headers are not considered to influence the response and thus will not influence caching.
@@ -46,10 +53,54 @@ public class AbleronProperties {
     "Refresh"
   );
 
+  /**
+   * Whether to resolve includes and to perform auto-refreshs of cached fragments on virtual threads.
+   * Only takes effect on Java 21+. Defaults to the value of spring.threads.virtual.enabled.
+   */
+  private Boolean virtualThreadsEnabled = null;
+
+  /**
+   * Whether to write the response body progressively while includes are still being resolved, instead of
+   * writing it at once after all includes have been resolved.
+   */
+  private boolean streamingEnabled = false;
+
+  /**
+   * Whether to start resolving includes while the response body is still being written by the application,
+   * i.e. as soon as an include tag has been written completely.
+   */
+  private boolean earlyIncludeDiscoveryEnabled = true;
+
+  /**
+   * Whether to release the container thread while includes are being resolved, by processing the request
+   * asynchronously. Does not apply to streaming. Requires a composition deadline.
+   */
+  private boolean asyncEnabled = false;
+
+  private final ResolveThreadPool resolveThreadPool = new ResolveThreadPool();
+
   private final Cache cache = new Cache();
 
   private final Stats stats = new Stats();
 
+  /**
+   * Maximum size, the cache for the include definitions of include tags may have. 0 disables the cache.
+   */
+  private DataSize parseCacheMaxSize = DataSize.ofBytes(0);
+
+  private final PredictivePrefetch predictivePrefetch = new PredictivePrefetch();
+
+  /**
+   * Ant-style patterns of the request paths to compose responses for. Empty to compose responses for all paths.
+   */
+  private Collection<String> includePathPatterns = List.of();
+
+  /**
+   * Ant-style patterns of the request paths to never compose responses for. Responses of these paths are
+   * not buffered at all.
+   */
+  private Collection<String> excludePathPatterns = List.of();
+
   public boolean isEnabled() {
     return enabled;
   }
@@ -66,6 +117,14 @@ public class AbleronProperties {
     this.requestTimeout = requestTimeout;
   }
 
+  public Duration getCompositionDeadline() {
+    return compositionDeadline;
+  }
+
+  public void setCompositionDeadline(Duration compositionDeadline) {
+    this.compositionDeadline = compositionDeadline;
+  }
+
   public Collection<String> getRequestHeadersForward() {
     return requestHeadersForward;
   }
@@ -90,6 +149,42 @@ public class AbleronProperties {
     this.responseHeadersForward = responseHeadersForward;
   }
 
+  public Boolean getVirtualThreadsEnabled() {
+    return virtualThreadsEnabled;
+  }
+
+  public void setVirtualThreadsEnabled(Boolean virtualThreadsEnabled) {
+    this.virtualThreadsEnabled = virtualThreadsEnabled;
+  }
+
+  public boolean isStreamingEnabled() {
+    return streamingEnabled;
+  }
+
+  public void setStreamingEnabled(boolean streamingEnabled) {
+    this.streamingEnabled = streamingEnabled;
+  }
+
+  public boolean isEarlyIncludeDiscoveryEnabled() {
+    return earlyIncludeDiscoveryEnabled;
+  }
+
+  public void setEarlyIncludeDiscoveryEnabled(boolean earlyIncludeDiscoveryEnabled) {
+    this.earlyIncludeDiscoveryEnabled = earlyIncludeDiscoveryEnabled;
+  }
+
+  public boolean isAsyncEnabled() {
+    return asyncEnabled;
+  }
+
+  public void setAsyncEnabled(boolean asyncEnabled) {
+    this.asyncEnabled = asyncEnabled;
+  }
+
+  public ResolveThreadPool getResolveThreadPool() {
+    return resolveThreadPool;
+  }
+
   public Cache getCache() {
     return cache;
   }
@@ -98,6 +193,64 @@ public class AbleronProperties {
     return stats;
   }
 
+  public DataSize getParseCacheMaxSize() {
+    return parseCacheMaxSize;
+  }
+
+  public void setParseCacheMaxSize(DataSize parseCacheMaxSize) {
+    this.parseCacheMaxSize = parseCacheMaxSize;
+  }
+
+  public PredictivePrefetch getPredictivePrefetch() {
+    return predictivePrefetch;
+  }
+
+  public Collection<String> getIncludePathPatterns() {
+    return includePathPatterns;
+  }
+
+  public void setIncludePathPatterns(Collection<String> includePathPatterns) {
+    this.includePathPatterns = includePathPatterns;
+  }
+
+  public Collection<String> getExcludePathPatterns() {
+    return excludePathPatterns;
+  }
+
+  public void setExcludePathPatterns(Collection<String> excludePathPatterns) {
+    this.excludePathPatterns = excludePathPatterns;
+  }
+
+  public static class ResolveThreadPool {
+
+    /**
+     * Number of threads used to resolve includes. Not used, if virtual threads are enabled.
+     */
+    private int size = 64;
+
+    /**
+     * Maximum number of tasks waiting for a resolve thread. Includes, which cannot be resolved due to
+     * a saturated thread pool, are resolved with their fallback content.
+     */
+    private int queueCapacity = 1000;
+
+    public int getSize() {
+      return size;
+    }
+
+    public void setSize(int size) {
+      this.size = size;
+    }
+
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+  }
+
   public static class Cache {
 
     /**
@@ -120,6 +273,23 @@ public class AbleronProperties {
      */
     private int autoRefreshInactiveFragmentsMaxRefreshs = 2;
 
+    /**
+     * Number of threads used to trigger auto-refreshs of cached fragments.
+     */
+    private int autoRefreshThreadPoolSize = 3;
+
+    /**
+     * Period of time after expiration, in which cached fragments are served stale while they are
+     * revalidated in the background. Used for fragments which do not specify stale-while-revalidate.
+     */
+    private Duration staleWhileRevalidateDefault = Duration.ZERO;
+
+    /**
+     * Period of time after expiration, in which cached fragments are served stale in case they cannot
+     * be loaded from their source. Used for fragments which do not specify stale-if-error.
+     */
+    private Duration staleIfErrorDefault = Duration.ZERO;
+
     public DataSize getMaxSize() {
       return maxSize;
     }
@@ -151,6 +321,30 @@ public class AbleronProperties {
     public void setAutoRefreshInactiveFragmentsMaxRefreshs(int autoRefreshInactiveFragmentsMaxRefreshs) {
       this.autoRefreshInactiveFragmentsMaxRefreshs = autoRefreshInactiveFragmentsMaxRefreshs;
     }
+
+    public int getAutoRefreshThreadPoolSize() {
+      return autoRefreshThreadPoolSize;
+    }
+
+    public void setAutoRefreshThreadPoolSize(int autoRefreshThreadPoolSize) {
+      this.autoRefreshThreadPoolSize = autoRefreshThreadPoolSize;
+    }
+
+    public Duration getStaleWhileRevalidateDefault() {
+      return staleWhileRevalidateDefault;
+    }
+
+    public void setStaleWhileRevalidateDefault(Duration staleWhileRevalidateDefault) {
+      this.staleWhileRevalidateDefault = staleWhileRevalidateDefault;
+    }
+
+    public Duration getStaleIfErrorDefault() {
+      return staleIfErrorDefault;
+    }
+
+    public void setStaleIfErrorDefault(Duration staleIfErrorDefault) {
+      this.staleIfErrorDefault = staleIfErrorDefault;
+    }
   }
 
   public static class Stats {
@@ -181,4 +375,47 @@ public class AbleronProperties {
       this.exposeFragmentUrl = exposeFragmentUrl;
     }
   }
+
+  public static class PredictivePrefetch {
+
+    /**
+     * Whether to learn the includes of the pages of each route and to start resolving them for subsequent
+     * requests of the same route before the page is rendered.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of includes to prefetch per request.
+     */
+    private int maxIncludesPerRequest = 20;
+
+    /**
+     * Maximum number of routes to learn includes for.
+     */
+    private int maxRoutes = 1000;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMaxIncludesPerRequest() {
+      return maxIncludesPerRequest;
+    }
+
+    public void setMaxIncludesPerRequest(int maxIncludesPerRequest) {
+      this.maxIncludesPerRequest = maxIncludesPerRequest;
+    }
+
+    public int getMaxRoutes() {
+      return maxRoutes;
+    }
+
+    public void setMaxRoutes(int maxRoutes) {
+      this.maxRoutes = maxRoutes;
+    }
+  }
 }
@@ -0,0 +1,198 @@
+package io.github.ableron.springboot.filter;
+
+import io.github.ableron.PageComposition;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.ConcurrentLruCache;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Learns which includes the pages of a route consist of and starts resolving them for subsequent requests
+ * of the same route before the page is rendered, so that fragment latency overlaps with rendering the page.<br>
+ * <br>
+ * Routes are identified by the request path pattern of the handler which rendered the page, e.g.
+ * <code>/product/{id}</code>. Only include tags which occurred in the last two pages of a route are prefetched.
+ * Thus, include tags which differ from request to request, e.g. because they contain the product id, are not
+ * prefetched. Only applies to GET requests. Requests which have not been handled by a handler with a path
+ * pattern, e.g. requests of static resources, are not learned.
+ */
+public class PredictiveIncludePrefetcher {
+
+  private static final String PREFETCHED_INCLUDE_TAGS_ATTRIBUTE = PredictiveIncludePrefetcher.class.getName() + ".prefetchedIncludeTags";
+
+  /**
+   * Maximum number of request paths to remember the matching route for.
+   */
+  private static final int MAX_CACHED_LOOKUP_PATHS = 4096;
+
+  private final PathMatcher pathMatcher = new AntPathMatcher();
+
+  private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+  /**
+   * Maximum number of includes to prefetch per request.
+   */
+  private final int maxPrefetchedIncludesPerRequest;
+
+  /**
+   * Maximum number of routes to learn includes for.
+   */
+  private final int maxRoutes;
+
+  private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+  /**
+   * Routes matching request paths. Cleared whenever a route is added, because a new route may match
+   * request paths which did not match any route before.
+   */
+  private final ConcurrentLruCache<String, Optional<Route>> routesByLookupPath = new ConcurrentLruCache<>(MAX_CACHED_LOOKUP_PATHS, this::matchRoute);
+
+  private final LongAdder prefetchedIncludesCount = new LongAdder();
+
+  private final LongAdder hitCount = new LongAdder();
+
+  private final LongAdder wasteCount = new LongAdder();
+
+  public PredictiveIncludePrefetcher(int maxPrefetchedIncludesPerRequest, int maxRoutes) {
+    this.maxPrefetchedIncludesPerRequest = maxPrefetchedIncludesPerRequest;
+    this.maxRoutes = maxRoutes;
+  }
+
+  /**
+   * Starts resolving the includes learned for the route of the given request.
+   *
+   * @param request The request
+   * @param pageComposition The page composition of the request
+   * @return Number of includes whose resolution has been started
+   */
+  public int prefetch(HttpServletRequest request, PageComposition pageComposition) {
+    if (!HttpMethod.GET.matches(request.getMethod())) {
+      return 0;
+    }
+
+    var includeTags = routesByLookupPath.get(urlPathHelper.getLookupPathForRequest(request))
+      .map(route -> route.stableIncludeTags)
+      .orElse(List.of());
+
+    if (includeTags.isEmpty()) {
+      return 0;
+    }
+
+    request.setAttribute(PREFETCHED_INCLUDE_TAGS_ATTRIBUTE, includeTags);
+    var count = pageComposition.prefetch(String.join("", includeTags));
+    prefetchedIncludesCount.add(count);
+    return count;
+  }
+
+  /**
+   * Learns the includes of the page of the given request and records whether the includes prefetched for this
+   * request were part of the page.
+   *
+   * @param request The request
+   * @param rawIncludeTags Raw include tags of the page
+   */
+  public void learn(HttpServletRequest request, Set<String> rawIncludeTags) {
+    if (!HttpMethod.GET.matches(request.getMethod())) {
+      return;
+    }
+
+    if (request.getAttribute(PREFETCHED_INCLUDE_TAGS_ATTRIBUTE) instanceof List) {
+      for (var includeTag : (List<?>) request.getAttribute(PREFETCHED_INCLUDE_TAGS_ATTRIBUTE)) {
+        if (rawIncludeTags.contains(includeTag)) {
+          hitCount.increment();
+        } else {
+          wasteCount.increment();
+        }
+      }
+    }
+
+    var routePattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+
+    if (routePattern == null) {
+      return;
+    }
+
+    var route = routes.get(routePattern.toString());
+
+    if (route == null && routes.size() < maxRoutes) {
+      route = routes.computeIfAbsent(routePattern.toString(), pattern -> new Route());
+      routesByLookupPath.clear();
+    }
+
+    if (route != null) {
+      route.learn(rawIncludeTags, maxPrefetchedIncludesPerRequest);
+    }
+  }
+
+  /**
+   * @return Number of includes whose resolution has been started speculatively
+   */
+  public long prefetchedIncludesCount() {
+    return prefetchedIncludesCount.sum();
+  }
+
+  /**
+   * @return Number of prefetched includes which were part of the page
+   */
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return Number of prefetched includes which were not part of the page
+   */
+  public long wasteCount() {
+    return wasteCount.sum();
+  }
+
+  /**
+   * @return Number of routes includes have been learned for
+   */
+  public int routeCount() {
+    return routes.size();
+  }
+
+  private Optional<Route> matchRoute(String lookupPath) {
+    var route = routes.get(lookupPath);
+
+    if (route != null) {
+      return Optional.of(route);
+    }
+
+    return routes.keySet()
+      .stream()
+      .filter(pattern -> pathMatcher.match(pattern, lookupPath))
+      .min(pathMatcher.getPatternComparator(lookupPath))
+      .map(routes::get);
+  }
+
+  private static class Route {
+
+    /**
+     * Include tags of the most recent page of this route.
+     */
+    private volatile Set<String> lastIncludeTags = Set.of();
+
+    /**
+     * Include tags which occurred in the two most recent pages of this route.
+     */
+    private volatile List<String> stableIncludeTags = List.of();
+
+    private synchronized void learn(Set<String> includeTags, int maxIncludeTags) {
+      var previousIncludeTags = lastIncludeTags;
+      stableIncludeTags = includeTags.stream()
+        .filter(previousIncludeTags::contains)
+        .limit(maxIncludeTags)
+        .collect(Collectors.toUnmodifiableList());
+      lastIncludeTags = Set.copyOf(includeTags);
+    }
+  }
+}
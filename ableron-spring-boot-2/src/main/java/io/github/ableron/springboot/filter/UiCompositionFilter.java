@@ -1,29 +1,143 @@
 package io.github.ableron.springboot.filter;
 
 import io.github.ableron.Ableron;
+import io.github.ableron.IncludeScanner;
+import io.github.ableron.PageComposition;
 import io.github.ableron.TransclusionResult;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.util.Assert;
+import org.springframework.util.PathMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UrlPathHelper;
 import org.springframework.web.util.WebUtils;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class UiCompositionFilter extends OncePerRequestFilter {
 
+  /**
+   * Time granted to an asynchronous request in addition to the composition deadline.
+   */
+  private static final Duration ASYNC_TIMEOUT_MARGIN = Duration.ofSeconds(1);
+
   private final Ableron ableron;
 
+  /**
+   * Whether to write the response body progressively while includes are still being resolved.
+   */
+  private final boolean streamingEnabled;
+
+  /**
+   * Whether to start resolving includes while the response body is still being written.
+   */
+  private final boolean earlyIncludeDiscoveryEnabled;
+
+  /**
+   * Prefetches includes learned for the route of a request. May be null.
+   */
+  private final PredictiveIncludePrefetcher predictiveIncludePrefetcher;
+
+  /**
+   * Number of responses passed through untouched, because their body does not contain any include tag.
+   */
+  private final LongAdder skippedResponsesCount = new LongAdder();
+
+  private final PathMatcher pathMatcher = new AntPathMatcher();
+
+  private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+  /**
+   * Ant-style patterns of the request paths to compose responses for. Empty to compose responses for all paths.
+   */
+  private Collection<String> includePathPatterns = List.of();
+
+  /**
+   * Ant-style patterns of the request paths to never compose responses for.
+   */
+  private Collection<String> excludePathPatterns = List.of();
+
+  /**
+   * Whether to release the container thread while includes are being resolved.
+   */
+  private boolean asyncEnabled = false;
+
   public UiCompositionFilter(Ableron ableron) {
+    this(ableron, false);
+  }
+
+  public UiCompositionFilter(Ableron ableron, boolean streamingEnabled) {
+    this(ableron, streamingEnabled, false);
+  }
+
+  public UiCompositionFilter(Ableron ableron, boolean streamingEnabled, boolean earlyIncludeDiscoveryEnabled) {
+    this(ableron, streamingEnabled, earlyIncludeDiscoveryEnabled, null);
+  }
+
+  public UiCompositionFilter(Ableron ableron, boolean streamingEnabled, boolean earlyIncludeDiscoveryEnabled, PredictiveIncludePrefetcher predictiveIncludePrefetcher) {
     this.ableron = ableron;
+    this.streamingEnabled = streamingEnabled;
+    this.earlyIncludeDiscoveryEnabled = earlyIncludeDiscoveryEnabled;
+    this.predictiveIncludePrefetcher = predictiveIncludePrefetcher;
+  }
+
+  /**
+   * @param includePathPatterns Ant-style patterns of the request paths to compose responses for, e.g.
+   * <code>/pages/**</code>. Empty to compose responses for all request paths
+   */
+  public void setIncludePathPatterns(Collection<String> includePathPatterns) {
+    this.includePathPatterns = List.copyOf(includePathPatterns);
+  }
+
+  /**
+   * @param excludePathPatterns Ant-style patterns of the request paths to never compose responses for, e.g.
+   * <code>/api/**</code>. Responses of these paths are neither wrapped nor buffered
+   */
+  public void setExcludePathPatterns(Collection<String> excludePathPatterns) {
+    this.excludePathPatterns = List.copyOf(excludePathPatterns);
+  }
+
+  /**
+   * @param asyncEnabled Whether to put the request into asynchronous mode while includes are being resolved, so
+   * that the container thread is released instead of waiting for fragments. The response is completed once the
+   * composed response body has been written. Does not apply to streaming and to requests which do not support
+   * asynchronous processing. Requires a composition deadline, which bounds the time the request is kept open
+   */
+  public void setAsyncEnabled(boolean asyncEnabled) {
+    Assert.state(!asyncEnabled || ableron.getConfig().getCompositionDeadline().isPresent(),
+      "[Ableron] Asynchronous mode requires a composition deadline");
+    this.asyncEnabled = asyncEnabled;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    if (includePathPatterns.isEmpty() && excludePathPatterns.isEmpty()) {
+      return false;
+    }
+
+    String lookupPath = urlPathHelper.getLookupPathForRequest(request);
+
+    return (!includePathPatterns.isEmpty() && includePathPatterns.stream().noneMatch(pattern -> pathMatcher.match(pattern, lookupPath)))
+      || excludePathPatterns.stream().anyMatch(pattern -> pathMatcher.match(pattern, lookupPath));
   }
 
   @Override
@@ -31,27 +145,98 @@ public class UiCompositionFilter extends OncePerRequestFilter {
     HttpServletResponse responseToUse = response;
 
     if (!isAsyncDispatch(request) && !(response instanceof ContentCachingResponseWrapper)) {
-      responseToUse = new ContentCachingResponseWrapper(response);
+      responseToUse = createResponseWrapper(request, response);
     }
 
-    filterChain.doFilter(request, responseToUse);
+    try {
+      filterChain.doFilter(request, responseToUse);
+    } catch (IOException | ServletException | RuntimeException e) {
+      getPageComposition(responseToUse).ifPresent(PageComposition::cancel);
+      throw e;
+    }
 
     if (!isAsyncStarted(request)) {
       handleResponse(request, responseToUse);
     }
   }
 
+  /**
+   * Creates the wrapper caching the response body in case it may be composed. Starts the composition of the page right away, in case
+   * includes are to be resolved before the response body is complete.
+   */
+  private CompositionResponseWrapper createResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+    if (!earlyIncludeDiscoveryEnabled && predictiveIncludePrefetcher == null) {
+      return new CompositionResponseWrapper(response);
+    }
+
+    PageComposition pageComposition = ableron.startPageComposition(getRequestHeaders(request));
+    IncludeDiscoveringResponseWrapper responseWrapper = new IncludeDiscoveringResponseWrapper(response, pageComposition);
+
+    if (!earlyIncludeDiscoveryEnabled) {
+      responseWrapper.stopIncludeDiscovery();
+    }
+
+    if (predictiveIncludePrefetcher != null) {
+      predictiveIncludePrefetcher.prefetch(request, pageComposition);
+    }
+
+    return responseWrapper;
+  }
+
   private void handleResponse(HttpServletRequest request, HttpServletResponse response) throws IOException {
     ContentCachingResponseWrapper responseWrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
     Assert.notNull(responseWrapper, "ContentCachingResponseWrapper not found");
+    Optional<PageComposition> pageComposition = getPageComposition(responseWrapper);
+
+    if (responseWrapper instanceof IncludeDiscoveringResponseWrapper) {
+      ((IncludeDiscoveringResponseWrapper) responseWrapper).stopIncludeDiscovery();
+    }
+
+    if (responseWrapper instanceof CompositionResponseWrapper && ((CompositionResponseWrapper) responseWrapper).isPassThrough()) {
+      pageComposition.ifPresent(PageComposition::cancel);
+      return;
+    }
 
     if (shouldApplyTransclusion(responseWrapper)) {
-      applyTransclusion(request, responseWrapper);
+      byte[] responseBody = responseWrapper.getContentAsByteArray();
+      Charset charset = Charset.forName(getResponseBodyCharacterEncoding(responseWrapper));
+
+      if (IncludeScanner.mayContainIncludeTags(responseBody, charset)) {
+        if (asyncEnabled && !streamingEnabled && request.isAsyncSupported()) {
+          applyTransclusionAsync(request, responseWrapper, responseBody, charset, pageComposition.orElse(null));
+          return;
+        }
+
+        TransclusionResult transclusionResult = streamingEnabled
+          ? applyTransclusionStreaming(request, responseWrapper, responseBody, charset, pageComposition.orElse(null))
+          : applyTransclusion(request, responseWrapper, responseBody, charset, pageComposition.orElse(null));
+        learnIncludes(request, transclusionResult.getRawIncludeTags());
+      } else {
+        skippedResponsesCount.increment();
+        pageComposition.ifPresent(PageComposition::cancel);
+        learnIncludes(request, Set.of());
+      }
+    } else {
+      pageComposition.ifPresent(PageComposition::cancel);
     }
 
     responseWrapper.copyBodyToResponse();
   }
 
+  /**
+   * @return Number of responses which have been passed through untouched, because their body does not contain
+   * any include tag
+   */
+  public long getSkippedResponsesCount() {
+    return skippedResponsesCount.sum();
+  }
+
+  private void learnIncludes(HttpServletRequest request, Set<String> rawIncludeTags) {
+    if (predictiveIncludePrefetcher != null) {
+      predictiveIncludePrefetcher.learn(request, rawIncludeTags);
+    }
+  }
+
   /**
    * Indicates whether transclusion should be applied to the response. This is {@code true}
    * if all the following conditions are met:
@@ -76,20 +261,173 @@ public class UiCompositionFilter extends OncePerRequestFilter {
   }
 
   /**
+   * Resolves the includes of the response body without decoding it. The response body is written as segments
+   * of the original response body and the fragments.
+   *
    * @param responseWrapper The wrapped HTTP response
+   * @param responseBody The response body
+   * @param charset Charset of the response body
+   * @param pageComposition Page composition with includes discovered while the response body has been written. May be null
    */
-  private void applyTransclusion(HttpServletRequest request, ContentCachingResponseWrapper responseWrapper) throws IOException {
-    String encoding = getResponseBodyCharacterEncoding(responseWrapper);
-    String originalResponseBody = new String(responseWrapper.getContentAsByteArray(), encoding);
-    TransclusionResult transclusionResult = ableron.resolveIncludes(originalResponseBody, getRequestHeaders(request));
+  private TransclusionResult applyTransclusion(HttpServletRequest request, ContentCachingResponseWrapper responseWrapper, byte[] responseBody, Charset charset, PageComposition pageComposition) throws IOException {
+    ByteBuffer originalResponseBody = ByteBuffer.wrap(responseBody);
+    TransclusionResult transclusionResult = pageComposition != null
+      ? pageComposition.resolveIncludes(originalResponseBody, charset)
+      : ableron.resolveIncludes(originalResponseBody, charset, getRequestHeaders(request));
+    writeTransclusionResult(transclusionResult, responseWrapper);
+    return transclusionResult;
+  }
+
+  /**
+   * Resolves the includes of the response body like {@link #applyTransclusion} but without blocking the container
+   * thread. The request is put into asynchronous mode and completed once the composed response body has been
+   * written by the thread which completed the resolution of the includes.<br>
+   * <br>
+   * The request is only put into asynchronous mode, if the includes are not resolved right away, e.g. because all
+   * fragments are cached. The asynchronous request times out shortly after the composition deadline, which also
+   * covers includes with a src-timeout exceeding the request timeout and time spent waiting for a resolve thread.
+   * In case of a timeout or an error, the resolution is cancelled and the response is passed through untouched.
+   *
+   * @param responseWrapper The wrapped HTTP response
+   * @param responseBody The response body
+   * @param charset Charset of the response body
+   * @param pageComposition Page composition with includes discovered while the response body has been written. May be null
+   */
+  private void applyTransclusionAsync(HttpServletRequest request, ContentCachingResponseWrapper responseWrapper, byte[] responseBody, Charset charset, PageComposition pageComposition) {
+    CompletableFuture<TransclusionResult> resolution = resolveIncludesAsync(request, responseBody, charset, pageComposition);
+
+    if (resolution.isDone()) {
+      resolution.whenComplete((transclusionResult, exception) -> writeResponse(request, responseWrapper, transclusionResult, exception));
+      return;
+    }
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(getAsyncTimeout().toMillis());
+    AtomicBoolean responseCompleted = new AtomicBoolean(false);
+
+    asyncContext.addListener(new AsyncListener() {
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        passThroughUnresolved("Unable to resolve includes in time", event.getThrowable());
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        passThroughUnresolved("Unable to complete asynchronous request", event.getThrowable());
+      }
+
+      @Override
+      public void onComplete(AsyncEvent event) {}
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {}
+
+      private void passThroughUnresolved(String message, Throwable throwable) {
+        if (responseCompleted.compareAndSet(false, true)) {
+          logger.error("[Ableron] " + message + ". Passing response through untouched", throwable);
+          resolution.cancel(true);
+
+          if (pageComposition != null) {
+            pageComposition.cancel();
+          }
+
+          try {
+            responseWrapper.copyBodyToResponse();
+          } catch (IOException | RuntimeException e) {
+            logger.error("[Ableron] Unable to write response", e);
+          } finally {
+            asyncContext.complete();
+          }
+        }
+      }
+    });
+
+    resolution.whenComplete((transclusionResult, exception) -> {
+      if (!responseCompleted.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+        writeResponse(request, responseWrapper, transclusionResult, exception);
+      } finally {
+        asyncContext.complete();
+      }
+    });
+  }
+
+  private void writeResponse(HttpServletRequest request, ContentCachingResponseWrapper responseWrapper, TransclusionResult transclusionResult, Throwable exception) {
+    try {
+      if (transclusionResult != null) {
+        writeTransclusionResult(transclusionResult, responseWrapper);
+        learnIncludes(request, transclusionResult.getRawIncludeTags());
+      } else {
+        logger.error("[Ableron] Unable to resolve includes. Passing response through untouched", exception);
+      }
+
+      responseWrapper.copyBodyToResponse();
+    } catch (IOException | RuntimeException e) {
+      logger.error("[Ableron] Unable to write composed response", e);
+    }
+  }
+
+  private Duration getAsyncTimeout() {
+    return ableron.getConfig().getCompositionDeadline().orElseThrow().plus(ASYNC_TIMEOUT_MARGIN);
+  }
+
+  private CompletableFuture<TransclusionResult> resolveIncludesAsync(HttpServletRequest request, byte[] responseBody, Charset charset, PageComposition pageComposition) {
+    ByteBuffer originalResponseBody = ByteBuffer.wrap(responseBody);
+
+    return pageComposition != null
+      ? pageComposition.resolveIncludesAsync(originalResponseBody, charset)
+      : ableron.resolveIncludesAsync(originalResponseBody, charset, getRequestHeaders(request));
+  }
+
+  private void writeTransclusionResult(TransclusionResult transclusionResult, ContentCachingResponseWrapper responseWrapper) throws IOException {
     responseWrapper.resetBuffer();
 
-    if (transclusionResult.getContent().isEmpty()) {
+    if (transclusionResult.getContentSegments().stream().noneMatch(ByteBuffer::hasRemaining)) {
       responseWrapper.getResponse().setContentLength(0);
     } else {
-      responseWrapper.getOutputStream().write(transclusionResult.getContent().getBytes(encoding));
+      transclusionResult.writeContentTo(responseWrapper.getOutputStream());
+    }
+
+    applyStatusCodeAndResponseHeaders(transclusionResult, responseWrapper);
+  }
+
+  /**
+   * Writes the response body directly to the response while includes are still being resolved. Status code
+   * and response headers are applied before the first byte is written, i.e. once primary includes have been
+   * resolved. The response is not cacheable, in case some includes are still unresolved at this time.
+   *
+   * @param responseWrapper The wrapped HTTP response
+   * @param responseBody The response body
+   * @param charset Charset of the response body
+   * @param pageComposition Page composition with includes discovered while the response body has been written. May be null
+   */
+  private TransclusionResult applyTransclusionStreaming(HttpServletRequest request, ContentCachingResponseWrapper responseWrapper, byte[] responseBody, Charset charset, PageComposition pageComposition) throws IOException {
+    ByteBuffer originalResponseBody = ByteBuffer.wrap(responseBody);
+    responseWrapper.resetBuffer();
+    Consumer<TransclusionResult> beforeFirstWrite = transclusionResult -> applyStatusCodeAndResponseHeaders(transclusionResult, responseWrapper);
+
+    if (pageComposition != null) {
+      return pageComposition.resolveIncludes(originalResponseBody, charset, responseWrapper.getResponse().getOutputStream(), beforeFirstWrite);
+    } else {
+      return ableron.resolveIncludes(
+        originalResponseBody,
+        charset,
+        getRequestHeaders(request),
+        responseWrapper.getResponse().getOutputStream(),
+        beforeFirstWrite
+      );
     }
+  }
+
+  private Optional<PageComposition> getPageComposition(HttpServletResponse response) {
+    return Optional.ofNullable(WebUtils.getNativeResponse(response, IncludeDiscoveringResponseWrapper.class))
+      .map(IncludeDiscoveringResponseWrapper::getPageComposition);
+  }
 
+  private void applyStatusCodeAndResponseHeaders(TransclusionResult transclusionResult, ContentCachingResponseWrapper responseWrapper) {
     transclusionResult.getStatusCodeOverride().ifPresent(responseWrapper::setStatus);
     transclusionResult.getResponseHeadersToForward().forEach((name, values) -> {
       for (int i = 0; i < values.size(); i++) {
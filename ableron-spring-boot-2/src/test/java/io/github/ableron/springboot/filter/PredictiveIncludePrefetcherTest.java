@@ -0,0 +1,133 @@
+package io.github.ableron.springboot.filter;
+
+import io.github.ableron.Ableron;
+import io.github.ableron.AbleronConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class PredictiveIncludePrefetcherTest {
+
+  private final Ableron ableron = new Ableron(AbleronConfig.builder().build());
+
+  @AfterEach
+  public void closeAbleron() {
+    ableron.close();
+  }
+
+  @Test
+  public void shouldPrefetchIncludesWhichOccurredInTheLastTwoPagesOfRoute() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    prefetcher.learn(request("GET", "/product/1", "/product/{id}"), Set.of(include("header"), include("price?id=1")));
+    prefetcher.learn(request("GET", "/product/2", "/product/{id}"), Set.of(include("header"), include("price?id=2")));
+    var pageComposition = ableron.startPageComposition(Map.of());
+
+    // when
+    var prefetchedIncludesCount = prefetcher.prefetch(request("GET", "/product/3", null), pageComposition);
+
+    // then
+    assertEquals(1, prefetchedIncludesCount);
+    assertEquals(1, pageComposition.getPrefetchedIncludesCount());
+    assertEquals(1, prefetcher.prefetchedIncludesCount());
+    assertEquals(1, prefetcher.routeCount());
+  }
+
+  @Test
+  public void shouldNotPrefetchIncludesOfUnknownRoute() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    prefetcher.learn(request("GET", "/product/1", "/product/{id}"), Set.of(include("header")));
+    prefetcher.learn(request("GET", "/product/2", "/product/{id}"), Set.of(include("header")));
+
+    // expect
+    assertEquals(0, prefetcher.prefetch(request("GET", "/category/1", null), ableron.startPageComposition(Map.of())));
+  }
+
+  @Test
+  public void shouldNotLearnRoutesOfRequestsWithoutHandlerPattern() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    prefetcher.learn(request("GET", "/product/1", null), Set.of(include("header")));
+    prefetcher.learn(request("GET", "/product/1", null), Set.of(include("header")));
+
+    // expect
+    assertEquals(0, prefetcher.routeCount());
+    assertEquals(0, prefetcher.prefetch(request("GET", "/product/1", null), ableron.startPageComposition(Map.of())));
+  }
+
+  @Test
+  public void shouldPrefetchIncludesOfRouteLearnedAfterRequestPathHasBeenLookedUp() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    prefetcher.prefetch(request("GET", "/product/3", null), ableron.startPageComposition(Map.of()));
+    prefetcher.learn(request("GET", "/product/1", "/product/{id}"), Set.of(include("header")));
+    prefetcher.learn(request("GET", "/product/2", "/product/{id}"), Set.of(include("header")));
+
+    // expect
+    assertEquals(1, prefetcher.prefetch(request("GET", "/product/3", null), ableron.startPageComposition(Map.of())));
+  }
+
+  @Test
+  public void shouldRecordHitsAndWaste() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    prefetcher.learn(request("GET", "/", "/"), Set.of(include("header"), include("footer")));
+    prefetcher.learn(request("GET", "/", "/"), Set.of(include("header"), include("footer")));
+    var request = request("GET", "/", "/");
+
+    // when
+    prefetcher.prefetch(request, ableron.startPageComposition(Map.of()));
+    prefetcher.learn(request, Set.of(include("header")));
+
+    // then
+    assertEquals(2, prefetcher.prefetchedIncludesCount());
+    assertEquals(1, prefetcher.hitCount());
+    assertEquals(1, prefetcher.wasteCount());
+  }
+
+  @Test
+  public void shouldCapPrefetchedIncludesAndRoutes() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(1, 1);
+    prefetcher.learn(request("GET", "/", "/"), Set.of(include("header"), include("footer")));
+    prefetcher.learn(request("GET", "/", "/"), Set.of(include("header"), include("footer")));
+    prefetcher.learn(request("GET", "/other", "/other"), Set.of(include("header")));
+
+    // expect
+    assertEquals(1, prefetcher.prefetch(request("GET", "/", null), ableron.startPageComposition(Map.of())));
+    assertEquals(1, prefetcher.routeCount());
+  }
+
+  @Test
+  public void shouldIgnoreNonGetRequests() {
+    // given
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    prefetcher.learn(request("POST", "/", "/"), Set.of(include("header")));
+    prefetcher.learn(request("POST", "/", "/"), Set.of(include("header")));
+
+    // expect
+    assertEquals(0, prefetcher.routeCount());
+    assertEquals(0, prefetcher.prefetch(request("POST", "/", null), ableron.startPageComposition(Map.of())));
+  }
+
+  private MockHttpServletRequest request(String method, String path, String routePattern) {
+    var request = new MockHttpServletRequest(method, path);
+
+    if (routePattern != null) {
+      request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, routePattern);
+    }
+
+    return request;
+  }
+
+  private String include(String src) {
+    return "<ableron-include src=\"http://localhost:1/" + src + "\"/>";
+  }
+}
@@ -3,23 +3,37 @@ package io.github.ableron.springboot.filter;
 import io.github.ableron.*;
 import io.github.ableron.springboot.autoconfigure.AbleronAutoConfiguration;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.WebUtils;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServlet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 
@@ -45,6 +59,26 @@ public class UiCompositionFilterTest {
     assertEquals(8, response.getHeaderValue(HttpHeaders.CONTENT_LENGTH));
   }
 
+  @Test
+  public void shouldApplyUiCompositionToEncodedResponseBody() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<p>\u00e4</p><ableron-include src=\"foo\">f\u00e4llback</ableron-include>",
+      "text/html;charset=ISO-8859-1"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals("<p>\u00e4</p>f\u00e4llback", response.getContentAsString());
+    assertEquals(16, response.getContentAsByteArray().length);
+  }
+
   @Test
   public void shouldNotApplyUiCompositionIfDisabled() throws ServletException, IOException {
     // given
@@ -81,6 +115,28 @@ public class UiCompositionFilterTest {
     assertEquals("<ableron-include src=\"foo\">fallback</ableron-include>", response.getContentAsString());
   }
 
+  @Test
+  public void shouldPassResponseThroughUntouchedIfResponseBodyContainsNoIncludes() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    response.addHeader(HttpHeaders.CACHE_CONTROL, "max-age=600");
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<html><body>no includes</body></html>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals("<html><body>no includes</body></html>", response.getContentAsString());
+    assertEquals("max-age=600", response.getHeaderValue(HttpHeaders.CACHE_CONTROL));
+    assertEquals(1, uiCompositionFilter.getSkippedResponsesCount());
+    Mockito.verifyNoInteractions(ableron);
+  }
+
   @Test
   public void shouldSetContentLengthHeaderToZeroForEmptyResponse() throws ServletException, IOException {
     // given
@@ -112,7 +168,7 @@ public class UiCompositionFilterTest {
       )
     );
     var ableron = Mockito.mock(Ableron.class);
-    Mockito.when(ableron.resolveIncludes(any(), any())).thenReturn(transclusionResult);
+    Mockito.when(ableron.resolveIncludes(any(ByteBuffer.class), any(), any())).thenReturn(transclusionResult);
     var uiCompositionFilter = new UiCompositionFilter(ableron);
     var request = new MockHttpServletRequest();
     var response = new MockHttpServletResponse();
@@ -140,7 +196,7 @@ public class UiCompositionFilterTest {
       )
     );
     var ableron = Mockito.mock(Ableron.class);
-    Mockito.when(ableron.resolveIncludes(any(), any())).thenReturn(transclusionResult);
+    Mockito.when(ableron.resolveIncludes(any(ByteBuffer.class), any(), any())).thenReturn(transclusionResult);
     var uiCompositionFilter = new UiCompositionFilter(ableron);
     var request = new MockHttpServletRequest();
     var response = new MockHttpServletResponse();
@@ -169,7 +225,7 @@ public class UiCompositionFilterTest {
       )
     );
     var ableron = Mockito.mock(Ableron.class);
-    Mockito.when(ableron.resolveIncludes(any(), any())).thenReturn(transclusionResult);
+    Mockito.when(ableron.resolveIncludes(any(ByteBuffer.class), any(), any())).thenReturn(transclusionResult);
     var uiCompositionFilter = new UiCompositionFilter(ableron);
     var request = new MockHttpServletRequest();
     var response = new MockHttpServletResponse();
@@ -198,7 +254,7 @@ public class UiCompositionFilterTest {
       )
     );
     var ableron = Mockito.mock(Ableron.class);
-    Mockito.when(ableron.resolveIncludes(any(), any())).thenReturn(transclusionResult);
+    Mockito.when(ableron.resolveIncludes(any(ByteBuffer.class), any(), any())).thenReturn(transclusionResult);
     var uiCompositionFilter = new UiCompositionFilter(ableron);
     var request = new MockHttpServletRequest();
     var response = new MockHttpServletResponse();
@@ -215,6 +271,448 @@ public class UiCompositionFilterTest {
     assertEquals("max-age=600", response.getHeaderValue(HttpHeaders.CACHE_CONTROL));
   }
 
+  @Test
+  public void shouldApplyUiCompositionStreaming() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron, true);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    response.addHeader(HttpHeaders.CACHE_CONTROL, "max-age=600");
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<p><ableron-include src=\"foo\">fallback</ableron-include></p>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals("<p>fallback</p>", response.getContentAsString());
+    assertEquals("no-store", response.getHeaderValue(HttpHeaders.CACHE_CONTROL));
+  }
+
+  @Test
+  public void shouldPassStatusCodeAndResponseHeadersFromPrimaryIncludeWhenStreaming() throws ServletException, IOException {
+    // given
+    var transclusionResult = new TransclusionResult("");
+    transclusionResult.addResolvedInclude(
+      new Include("", Map.of("primary", "")).resolveWith(
+        new Fragment(null, 503, "content", Instant.EPOCH, Map.of(HttpHeaders.CONTENT_LANGUAGE, List.of("en"))),
+        0,
+        "src"
+      )
+    );
+    var ableron = Mockito.mock(Ableron.class);
+    Mockito.when(ableron.resolveIncludes(any(ByteBuffer.class), any(), any(), any(OutputStream.class), any())).thenAnswer(invocation -> {
+      invocation.<Consumer<TransclusionResult>>getArgument(4).accept(transclusionResult);
+      invocation.<OutputStream>getArgument(3).write("content".getBytes());
+      return transclusionResult;
+    });
+    var uiCompositionFilter = new UiCompositionFilter(ableron, true);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\" primary>fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals(503, response.getStatus());
+    assertEquals("en", response.getHeaderValue(HttpHeaders.CONTENT_LANGUAGE));
+    assertEquals("content", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldStartResolvingIncludesWhileResponseBodyIsWritten() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron, false, true);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var prefetchedIncludesCounts = new ArrayList<Integer>();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+      var pageComposition = WebUtils.getNativeResponse(servletResponse, IncludeDiscoveringResponseWrapper.class).getPageComposition();
+      servletResponse.setContentType(MediaType.TEXT_HTML_VALUE);
+      servletResponse.getOutputStream().print("<p><ableron-include src=\"foo\">fallback</ableron-");
+      prefetchedIncludesCounts.add(pageComposition.getPrefetchedIncludesCount());
+      servletResponse.getOutputStream().print("include></p>");
+      prefetchedIncludesCounts.add(pageComposition.getPrefetchedIncludesCount());
+    });
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals(List.of(0, 1), prefetchedIncludesCounts);
+    assertEquals("<p>fallback</p>", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldStartResolvingIncludesWhileResponseBodyIsWrittenViaWriter() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron, true, true);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var prefetchedIncludesCounts = new ArrayList<Integer>();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+      var pageComposition = WebUtils.getNativeResponse(servletResponse, IncludeDiscoveringResponseWrapper.class).getPageComposition();
+      servletResponse.setContentType(MediaType.TEXT_HTML_VALUE);
+      servletResponse.getWriter().write("<p><ableron-include src=\"foo\"/>");
+      prefetchedIncludesCounts.add(pageComposition.getPrefetchedIncludesCount());
+      servletResponse.getWriter().write("</p>");
+    });
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals(List.of(1), prefetchedIncludesCounts);
+    assertEquals("<p></p>", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldNotStartResolvingIncludesIfContentTypeIsNotTextHtml() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron, false, true);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var prefetchedIncludesCounts = new ArrayList<Integer>();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+      var pageComposition = WebUtils.getNativeResponse(servletResponse, IncludeDiscoveringResponseWrapper.class).getPageComposition();
+      servletResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      servletResponse.getOutputStream().print("<ableron-include src=\"foo\"/>");
+      prefetchedIncludesCounts.add(pageComposition.getPrefetchedIncludesCount());
+    });
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals(List.of(0), prefetchedIncludesCounts);
+    assertEquals("<ableron-include src=\"foo\"/>", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldPrefetchIncludesLearnedForRoute() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var prefetcher = new PredictiveIncludePrefetcher(20, 1000);
+    var uiCompositionFilter = new UiCompositionFilter(ableron, false, false, prefetcher);
+    var prefetchedIncludesCounts = new ArrayList<Integer>();
+
+    // when
+    for (int i = 0; i < 3; i++) {
+      var response = new MockHttpServletResponse();
+      new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+        var pageComposition = WebUtils.getNativeResponse(servletResponse, IncludeDiscoveringResponseWrapper.class).getPageComposition();
+        prefetchedIncludesCounts.add(pageComposition.getPrefetchedIncludesCount());
+        servletRequest.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/");
+        servletResponse.setContentType(MediaType.TEXT_HTML_VALUE);
+        servletResponse.getOutputStream().print("<ableron-include src=\"foo\">fallback</ableron-include>");
+        prefetchedIncludesCounts.add(pageComposition.getPrefetchedIncludesCount());
+      }).doFilter(new MockHttpServletRequest("GET", "/"), response);
+      assertEquals("fallback", response.getContentAsString());
+    }
+
+    // then
+    assertEquals(List.of(0, 0, 0, 0, 1, 1), prefetchedIncludesCounts);
+    assertEquals(1, prefetcher.hitCount());
+    assertEquals(0, prefetcher.wasteCount());
+  }
+
+  @Test
+  public void shouldPassResponseBodyThroughWithoutBufferingIfContentTypeIsNotTextHtml() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+      servletResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      servletResponse.setContentLength(10);
+      servletResponse.getOutputStream().print("{\"a\":\"b\"}");
+      assertTrue(WebUtils.getNativeResponse(servletResponse, CompositionResponseWrapper.class).isPassThrough());
+      assertEquals("{\"a\":\"b\"}", response.getContentAsString());
+      assertEquals(10, response.getContentLength());
+    });
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals("{\"a\":\"b\"}", response.getContentAsString());
+    assertEquals(0, uiCompositionFilter.getSkippedResponsesCount());
+    Mockito.verifyNoInteractions(ableron);
+  }
+
+  @Test
+  public void shouldBufferResponseBodyIfContentTypeIsUnknownOnFirstWrite() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    var request = new MockHttpServletRequest();
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+      servletResponse.getOutputStream().print("<ableron-include src=\"foo\">fallback</ableron-include>");
+      servletResponse.setContentType(MediaType.TEXT_HTML_VALUE);
+      assertEquals("", response.getContentAsString());
+    });
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals("fallback", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldNotWrapResponseIfRequestPathIsExcluded() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setExcludePathPatterns(List.of("/api/**"));
+    var request = new MockHttpServletRequest("GET", "/api/foo");
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, (servletRequest, servletResponse, chain) -> {
+      assertSame(response, servletResponse);
+      servletResponse.setContentType(MediaType.TEXT_HTML_VALUE);
+      servletResponse.getOutputStream().print("<ableron-include src=\"foo\">fallback</ableron-include>");
+    });
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertEquals("<ableron-include src=\"foo\">fallback</ableron-include>", response.getContentAsString());
+    Mockito.verifyNoInteractions(ableron);
+  }
+
+  @Test
+  public void shouldComposeResponsesOfIncludedRequestPathsOnly() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setIncludePathPatterns(List.of("/pages/**"));
+    var includedPathResponse = new MockHttpServletResponse();
+    var otherPathResponse = new MockHttpServletResponse();
+
+    // when
+    new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    )).doFilter(new MockHttpServletRequest("GET", "/pages/home"), includedPathResponse);
+    new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    )).doFilter(new MockHttpServletRequest("GET", "/other"), otherPathResponse);
+
+    // then
+    assertEquals("fallback", includedPathResponse.getContentAsString());
+    assertEquals("<ableron-include src=\"foo\">fallback</ableron-include>", otherPathResponse.getContentAsString());
+  }
+
+  @Test
+  public void shouldReleaseContainerThreadWhileIncludesAreResolvedInAsyncMode() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    var transclusionResult = new CompletableFuture<TransclusionResult>();
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().compositionDeadline(Duration.ofSeconds(1)).build());
+    Mockito.when(ableron.resolveIncludesAsync(any(ByteBuffer.class), any(), any())).thenReturn(transclusionResult);
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(true);
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertTrue(request.isAsyncStarted());
+    assertEquals("", response.getContentAsString());
+
+    // when
+    transclusionResult.complete(new TransclusionResult("composed"));
+
+    // then
+    assertFalse(request.isAsyncStarted());
+    assertEquals("composed", response.getContentAsString());
+    assertEquals(8, response.getHeaderValue(HttpHeaders.CONTENT_LENGTH));
+  }
+
+  @Test
+  public void shouldPassResponseThroughInAsyncModeIfIncludesCouldNotBeResolved() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().compositionDeadline(Duration.ofSeconds(1)).build());
+    Mockito.when(ableron.resolveIncludesAsync(any(ByteBuffer.class), any(), any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException()));
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(true);
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertFalse(request.isAsyncStarted());
+    assertEquals("<ableron-include src=\"foo\">fallback</ableron-include>", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldSetAsyncTimeoutAccordingToCompositionDeadline() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().compositionDeadline(Duration.ofMillis(500)).build());
+    Mockito.when(ableron.resolveIncludesAsync(any(ByteBuffer.class), any(), any())).thenReturn(new CompletableFuture<>());
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(true);
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, new MockHttpServletResponse());
+
+    // then
+    assertEquals(1500, request.getAsyncContext().getTimeout());
+  }
+
+  @Test
+  public void shouldRequireCompositionDeadlineInAsyncMode() {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().requestTimeout(Duration.ofSeconds(2)).build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+
+    // expect
+    assertThrows(IllegalStateException.class, () -> uiCompositionFilter.setAsyncEnabled(true));
+  }
+
+  @Test
+  public void shouldNotStartAsyncModeIfIncludesAreResolvedRightAway() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().compositionDeadline(Duration.ofSeconds(1)).build());
+    Mockito.when(ableron.resolveIncludesAsync(any(ByteBuffer.class), any(), any())).thenReturn(CompletableFuture.completedFuture(new TransclusionResult("composed")));
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(true);
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertNull(request.getAsyncContext());
+    assertEquals("composed", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldPassResponseThroughOnceAndCancelResolutionInAsyncModeOnTimeout() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    var transclusionResult = new CompletableFuture<TransclusionResult>();
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().compositionDeadline(Duration.ofSeconds(1)).build());
+    Mockito.when(ableron.resolveIncludesAsync(any(ByteBuffer.class), any(), any())).thenReturn(transclusionResult);
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(true);
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+    var asyncContext = request.getAsyncContext();
+
+    for (AsyncListener listener : ((MockAsyncContext) asyncContext).getListeners()) {
+      listener.onTimeout(new AsyncEvent(asyncContext));
+    }
+
+    for (AsyncListener listener : ((MockAsyncContext) asyncContext).getListeners()) {
+      listener.onError(new AsyncEvent(asyncContext, new IOException("Broken pipe")));
+    }
+
+    transclusionResult.complete(new TransclusionResult("composed"));
+
+    // then
+    assertTrue(transclusionResult.isCancelled());
+    assertFalse(request.isAsyncStarted());
+    assertEquals("<ableron-include src=\"foo\">fallback</ableron-include>", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldCancelPageCompositionInAsyncModeOnError() throws ServletException, IOException {
+    // given
+    var ableron = Mockito.mock(Ableron.class);
+    var pageComposition = Mockito.mock(PageComposition.class);
+    var transclusionResult = new CompletableFuture<TransclusionResult>();
+    Mockito.when(ableron.getConfig()).thenReturn(AbleronConfig.builder().compositionDeadline(Duration.ofSeconds(1)).build());
+    Mockito.when(ableron.startPageComposition(any())).thenReturn(pageComposition);
+    Mockito.when(pageComposition.resolveIncludesAsync(any(ByteBuffer.class), any())).thenReturn(transclusionResult);
+    var uiCompositionFilter = new UiCompositionFilter(ableron, false, true);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(true);
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+    var asyncContext = request.getAsyncContext();
+
+    for (AsyncListener listener : ((MockAsyncContext) asyncContext).getListeners()) {
+      listener.onError(new AsyncEvent(asyncContext, new IOException("Broken pipe")));
+    }
+
+    // then
+    Mockito.verify(pageComposition).cancel();
+    assertTrue(transclusionResult.isCancelled());
+    assertFalse(request.isAsyncStarted());
+    assertEquals("<ableron-include src=\"foo\">fallback</ableron-include>", response.getContentAsString());
+  }
+
+  @Test
+  public void shouldResolveIncludesSynchronouslyIfRequestDoesNotSupportAsyncMode() throws ServletException, IOException {
+    // given
+    var ableron = new Ableron(AbleronConfig.builder().compositionDeadline(Duration.ofSeconds(1)).build());
+    var uiCompositionFilter = new UiCompositionFilter(ableron);
+    uiCompositionFilter.setAsyncEnabled(true);
+    var request = new MockHttpServletRequest();
+    request.setAsyncSupported(false);
+    var response = new MockHttpServletResponse();
+    var filterChain = new MockFilterChain(mock(HttpServlet.class), uiCompositionFilter, new OutputGeneratingFilter(
+      "<ableron-include src=\"foo\">fallback</ableron-include>"
+    ));
+
+    // when
+    filterChain.doFilter(request, response);
+
+    // then
+    assertFalse(request.isAsyncStarted());
+    assertEquals("fallback", response.getContentAsString());
+  }
+
   static class OutputGeneratingFilter implements Filter {
 
     private final String content;
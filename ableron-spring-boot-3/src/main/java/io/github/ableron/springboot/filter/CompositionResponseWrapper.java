@@ -0,0 +1,164 @@
+package io.github.ableron.springboot.filter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Response wrapper which caches the response body like {@link ContentCachingResponseWrapper}, but only in case
+ * the response may be composed, i.e. has content type {@code text/html}.<br>
+ * <br>
+ * Whether to cache the response body is decided once, as soon as the content type is set or the response body
+ * is accessed, whichever comes first. Responses of other content types, e.g. JSON, images or static resources,
+ * are passed through to the underlying response without being copied. Responses whose content type is still
+ * unknown when the response body is accessed are cached.
+ */
+public class CompositionResponseWrapper extends ContentCachingResponseWrapper {
+
+  /**
+   * Whether the response body is passed through. Null, as long as this has not been decided.
+   */
+  private Boolean passThrough;
+
+  public CompositionResponseWrapper(HttpServletResponse response) {
+    super(response);
+  }
+
+  /**
+   * @return Whether the response body is passed through to the underlying response without being cached
+   */
+  public boolean isPassThrough() {
+    return Boolean.TRUE.equals(passThrough);
+  }
+
+  private boolean decidePassThrough() {
+    if (passThrough == null) {
+      String contentType = getContentType();
+      passThrough = contentType != null && !isTextHtml(contentType);
+    }
+
+    return passThrough;
+  }
+
+  static boolean isTextHtml(String contentType) {
+    try {
+      return contentType != null && MediaType.TEXT_HTML.isCompatibleWith(MediaType.valueOf(contentType));
+    } catch (InvalidMimeTypeException e) {
+      return false;
+    }
+  }
+
+  private HttpServletResponse getHttpServletResponse() {
+    return (HttpServletResponse) getResponse();
+  }
+
+  @Override
+  public void setContentType(String type) {
+    super.setContentType(type);
+
+    if (type != null) {
+      decidePassThrough();
+    }
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    return decidePassThrough() ? getResponse().getOutputStream() : super.getOutputStream();
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    return decidePassThrough() ? getResponse().getWriter() : super.getWriter();
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    if (decidePassThrough()) {
+      getResponse().flushBuffer();
+    } else {
+      super.flushBuffer();
+    }
+  }
+
+  @Override
+  public void setContentLength(int len) {
+    if (decidePassThrough()) {
+      getResponse().setContentLength(len);
+    } else {
+      super.setContentLength(len);
+    }
+  }
+
+  @Override
+  public void setContentLengthLong(long len) {
+    if (decidePassThrough()) {
+      getResponse().setContentLengthLong(len);
+    } else {
+      super.setContentLengthLong(len);
+    }
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    if (isPassThroughContentLength(name)) {
+      getHttpServletResponse().setHeader(name, value);
+    } else {
+      super.setHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    if (isPassThroughContentLength(name)) {
+      getHttpServletResponse().addHeader(name, value);
+    } else {
+      super.addHeader(name, value);
+    }
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    if (isPassThroughContentLength(name)) {
+      getHttpServletResponse().setIntHeader(name, value);
+    } else {
+      super.setIntHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+    if (isPassThroughContentLength(name)) {
+      getHttpServletResponse().addIntHeader(name, value);
+    } else {
+      super.addIntHeader(name, value);
+    }
+  }
+
+  @Override
+  public void setBufferSize(int size) {
+    if (isPassThrough()) {
+      getResponse().setBufferSize(size);
+    } else {
+      super.setBufferSize(size);
+    }
+  }
+
+  @Override
+  public void resetBuffer() {
+    if (isPassThrough()) {
+      getResponse().resetBuffer();
+    } else {
+      super.resetBuffer();
+    }
+  }
+
+  private boolean isPassThroughContentLength(String headerName) {
+    return HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(headerName) && decidePassThrough();
+  }
+}
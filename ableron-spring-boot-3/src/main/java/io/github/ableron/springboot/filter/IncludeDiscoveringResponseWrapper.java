@@ -0,0 +1,175 @@
+package io.github.ableron.springboot.filter;
+
+import io.github.ableron.IncrementalIncludeScanner;
+import io.github.ableron.PageComposition;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Optional;
+
+/**
+ * Response wrapper which caches the response body like {@link CompositionResponseWrapper} and additionally
+ * scans it for includes while it is being written. Resolving an include starts as soon as its include tag has
+ * been written completely, so that fragment latency overlaps with rendering the rest of the page.
+ */
+public class IncludeDiscoveringResponseWrapper extends CompositionResponseWrapper {
+
+  private final PageComposition pageComposition;
+
+  private IncrementalIncludeScanner includeScanner;
+
+  private boolean includeScanningDecided = false;
+
+  private ServletOutputStream outputStream;
+
+  private PrintWriter writer;
+
+  public IncludeDiscoveringResponseWrapper(HttpServletResponse response, PageComposition pageComposition) {
+    super(response);
+    this.pageComposition = pageComposition;
+  }
+
+  /**
+   * @return The page composition the discovered includes are resolved in
+   */
+  public PageComposition getPageComposition() {
+    return pageComposition;
+  }
+
+  /**
+   * Stops scanning the response body for includes, e.g. once the application has finished writing it.
+   */
+  public void stopIncludeDiscovery() {
+    includeScanningDecided = true;
+    includeScanner = null;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      ServletOutputStream delegate = super.getOutputStream();
+
+      if (isPassThrough()) {
+        return delegate;
+      }
+
+      outputStream = new IncludeDiscoveringOutputStream(delegate);
+    }
+
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      PrintWriter delegate = super.getWriter();
+
+      if (isPassThrough()) {
+        return delegate;
+      }
+
+      writer = new PrintWriter(new IncludeDiscoveringWriter(delegate));
+    }
+
+    return writer;
+  }
+
+  /**
+   * Decides on first write whether the response body is scanned for includes. Only {@code text/html}
+   * responses are scanned.
+   *
+   * @return The include scanner or null, in case the response body is not scanned
+   */
+  private IncrementalIncludeScanner getIncludeScanner() {
+    if (!includeScanningDecided) {
+      includeScanningDecided = true;
+
+      if (isTextHtml(getContentType())) {
+        var charset = Charset.forName(Optional.ofNullable(getCharacterEncoding()).orElse(WebUtils.DEFAULT_CHARACTER_ENCODING));
+        includeScanner = new IncrementalIncludeScanner(charset, pageComposition::prefetch);
+      }
+    }
+
+    return includeScanner;
+  }
+
+  private class IncludeDiscoveringOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream delegate;
+
+    private IncludeDiscoveringOutputStream(ServletOutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      var scanner = getIncludeScanner();
+
+      if (scanner != null) {
+        scanner.scan((byte) b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      var scanner = getIncludeScanner();
+
+      if (scanner != null) {
+        scanner.scan(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+  }
+
+  private class IncludeDiscoveringWriter extends Writer {
+
+    private final PrintWriter delegate;
+
+    private IncludeDiscoveringWriter(PrintWriter delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      delegate.write(cbuf, off, len);
+      var scanner = getIncludeScanner();
+
+      if (scanner != null) {
+        scanner.scan(CharBuffer.wrap(cbuf, off, len));
+      }
+    }
+
+    @Override
+    public void flush() {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package io.github.ableron.springboot.metrics;
+
+import io.github.ableron.Ableron;
+import io.github.ableron.AbleronMetrics;
+import io.github.ableron.CacheStats;
+import io.github.ableron.ExecutorStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Publishes metrics of UI composition via Micrometer.<br>
+ * <br>
+ * Records the measurements of Ableron as timers and counters and exposes the stats of the fragment cache and
+ * of the resolve executor. Measurements are recorded to all registries this binder has been bound to.
+ * Measurements recorded before this binder has been bound to a registry are discarded.
+ */
+public class AbleronMeterBinder implements MeterBinder, AbleronMetrics {
+
+  private final Supplier<Ableron> ableron;
+
+  /**
+   * Registry the timers and counters are registered in. Forwards them to all registries this binder has been
+   * bound to.
+   */
+  private final CompositeMeterRegistry registries = new CompositeMeterRegistry();
+
+  private final Map<String, Timer> includeResolveTimers = new ConcurrentHashMap<>();
+
+  private final Map<Integer, Timer> fragmentRequestTimers = new ConcurrentHashMap<>();
+
+  private final Timer compositionTimer = Timer.builder("ableron.composition")
+    .description("Time to resolve all includes of a page")
+    .register(registries);
+
+  private final DistributionSummary compositionIncludes = DistributionSummary.builder("ableron.composition.includes")
+    .description("Number of includes per page")
+    .baseUnit("includes")
+    .register(registries);
+
+  private final Counter fragmentRequestTimeouts = Counter.builder("ableron.fragment.request.timeouts")
+    .description("Number of fragment requests which exceeded their request timeout")
+    .register(registries);
+
+  /**
+   * @param ableron Supplier of the Ableron instance whose fragment cache and resolve executor to expose.
+   *                Invoked when this binder is bound to a registry
+   */
+  public AbleronMeterBinder(Supplier<Ableron> ableron) {
+    this.ableron = ableron;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    bindCacheStats(ableron.get().getCacheStats(), registry);
+    bindResolveExecutorStats(ableron.get().getResolveExecutorStats(), registry);
+    registries.add(registry);
+  }
+
+  private void bindCacheStats(CacheStats cacheStats, MeterRegistry registry) {
+    FunctionCounter.builder("ableron.fragment.cache.requests", cacheStats, CacheStats::hitCount)
+      .description("Number of fragment cache lookups")
+      .tag("result", "hit")
+      .register(registry);
+    FunctionCounter.builder("ableron.fragment.cache.requests", cacheStats, CacheStats::missCount)
+      .description("Number of fragment cache lookups")
+      .tag("result", "miss")
+      .register(registry);
+    FunctionCounter.builder("ableron.fragment.cache.evictions", cacheStats, CacheStats::evictionCount)
+      .description("Number of fragments removed from the cache due to its maximum size")
+      .register(registry);
+    FunctionCounter.builder("ableron.fragment.cache.refreshes", cacheStats, CacheStats::refreshSuccessCount)
+      .description("Number of auto-refreshs of cached fragments")
+      .tag("result", "success")
+      .register(registry);
+    FunctionCounter.builder("ableron.fragment.cache.refreshes", cacheStats, CacheStats::refreshFailureCount)
+      .description("Number of auto-refreshs of cached fragments")
+      .tag("result", "failure")
+      .register(registry);
+    Gauge.builder("ableron.fragment.cache.size", cacheStats, CacheStats::itemCount)
+      .description("Number of cached fragments")
+      .register(registry);
+  }
+
+  private void bindResolveExecutorStats(ExecutorStats executorStats, MeterRegistry registry) {
+    Gauge.builder("ableron.resolve.executor.active", executorStats, ExecutorStats::activeCount)
+      .description("Approximate number of threads actively resolving includes")
+      .register(registry);
+    Gauge.builder("ableron.resolve.executor.queued", executorStats, ExecutorStats::queueSize)
+      .description("Number of tasks waiting for a resolve thread")
+      .register(registry);
+    FunctionCounter.builder("ableron.resolve.executor.rejected", executorStats, ExecutorStats::rejectionCount)
+      .description("Number of includes resolved with their fallback content due to a saturated resolve executor")
+      .register(registry);
+  }
+
+  @Override
+  public void recordComposition(long compositionTimeNanos, int includeCount) {
+    if (isBound()) {
+      compositionTimer.record(compositionTimeNanos, TimeUnit.NANOSECONDS);
+      compositionIncludes.record(includeCount);
+    }
+  }
+
+  @Override
+  public void recordIncludeResolved(String fragmentSource, long resolveTimeNanos) {
+    if (isBound()) {
+      includeResolveTimers.computeIfAbsent(fragmentSource, source -> Timer.builder("ableron.include.resolve")
+          .description("Time to resolve an include by source of the fragment it has been resolved with")
+          .tag("source", source)
+          .register(registries))
+        .record(resolveTimeNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void recordFragmentResponse(int statusCode, long fetchTimeNanos) {
+    if (isBound()) {
+      fragmentRequestTimers.computeIfAbsent(statusCode, status -> Timer.builder("ableron.fragment.requests")
+          .description("Time to load fragments from their origin by HTTP status code")
+          .tag("status", String.valueOf(status))
+          .register(registries))
+        .record(fetchTimeNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void recordFragmentRequestTimeout() {
+    if (isBound()) {
+      fragmentRequestTimeouts.increment();
+    }
+  }
+
+  private boolean isBound() {
+    return !registries.getRegistries().isEmpty();
+  }
+}
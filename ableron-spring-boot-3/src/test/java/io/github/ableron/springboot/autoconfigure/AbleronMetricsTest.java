@@ -0,0 +1,24 @@
+package io.github.ableron.springboot.autoconfigure;
+
+import io.github.ableron.AbleronConfig;
+import io.github.ableron.springboot.metrics.AbleronMeterBinder;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@SpringBootTest(classes = { AbleronAutoConfiguration.class })
+public class AbleronMetricsTest {
+
+  @Autowired
+  private AbleronConfig ableronConfig;
+
+  @Autowired
+  private AbleronMeterBinder ableronMeterBinder;
+
+  @Test
+  public void shouldRecordMetricsViaMeterBinder() {
+    assertSame(ableronMeterBinder, ableronConfig.getMetrics());
+  }
+}
@@ -16,13 +16,21 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
   properties = {
     "ableron.enabled=true",
     "ableron.request-timeout=5000",
+    "ableron.composition-deadline=800ms",
     "ableron.request-headers-forward=X-Test-Foo,X-Test-Bar,X-Test-Baz",
     "ableron.request-headers-forward-vary=X-Foo,X-Bar",
     "ableron.response-headers-forward=X-Correlation-ID",
+    "ableron.resolve-thread-pool.size=16",
+    "ableron.resolve-thread-pool.queue-capacity=100",
     "ableron.cache.max-size=2MB",
+    "ableron.parse-cache-max-size=1MB",
     "ableron.cache.auto-refresh-enabled=true",
     "ableron.cache.auto-refresh-max-attempts=5",
     "ableron.cache.auto-refresh-inactive-fragments-max-refreshs=6",
+    "ableron.cache.auto-refresh-thread-pool-size=2",
+    "ableron.cache.stale-while-revalidate-default=30s",
+    "ableron.cache.stale-if-error-default=1h",
+    "ableron.virtual-threads-enabled=true",
     "ableron.stats.append-to-content=true",
     "ableron.stats.expose-fragment-url=true"
   }
@@ -36,6 +44,7 @@ public class AbleronPropertiesTest {
   public void shouldCoverWholeAbleronJavaConfig() {
     assertTrue(ableronConfig.isEnabled());
     assertEquals(Duration.ofMillis(5000), ableronConfig.getRequestTimeout());
+    assertEquals(Duration.ofMillis(800), ableronConfig.getCompositionDeadline().orElseThrow());
     assertEquals(List.of(
       "X-Test-Foo",
       "X-Test-Bar",
@@ -46,10 +55,17 @@ public class AbleronPropertiesTest {
       "X-Bar"
     ), ableronConfig.getRequestHeadersForwardVary());
     assertEquals(List.of("X-Correlation-ID"), ableronConfig.getResponseHeadersForward());
+    assertEquals(16, ableronConfig.getResolveThreadPoolSize());
+    assertEquals(100, ableronConfig.getResolveThreadPoolQueueCapacity());
     assertEquals(2097152, ableronConfig.getCacheMaxSizeInBytes());
+    assertEquals(1048576, ableronConfig.getParseCacheMaxSizeInBytes());
     assertTrue(ableronConfig.cacheAutoRefreshEnabled());
     assertEquals(5, ableronConfig.getCacheAutoRefreshMaxAttempts());
     assertEquals(6, ableronConfig.getCacheAutoRefreshInactiveFragmentsMaxRefreshs());
+    assertEquals(2, ableronConfig.getCacheAutoRefreshThreadPoolSize());
+    assertEquals(Duration.ofSeconds(30), ableronConfig.getCacheStaleWhileRevalidateDefault());
+    assertEquals(Duration.ofHours(1), ableronConfig.getCacheStaleIfErrorDefault());
+    assertTrue(ableronConfig.virtualThreadsEnabled());
     assertTrue(ableronConfig.statsAppendToContent());
     assertTrue(ableronConfig.statsExposeFragmentUrl());
   }
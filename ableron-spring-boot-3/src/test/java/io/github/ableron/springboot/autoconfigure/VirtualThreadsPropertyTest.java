@@ -0,0 +1,61 @@
+package io.github.ableron.springboot.autoconfigure;
+
+import io.github.ableron.AbleronConfig;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadsPropertyTest {
+
+  @Nested
+  @SpringBootTest(classes = { AbleronAutoConfiguration.class })
+  class Default {
+
+    @Autowired
+    private AbleronConfig ableronConfig;
+
+    @Test
+    public void shouldNotUseVirtualThreadsByDefault() {
+      assertFalse(ableronConfig.virtualThreadsEnabled());
+    }
+  }
+
+  @Nested
+  @SpringBootTest(
+    classes = { AbleronAutoConfiguration.class },
+    properties = { "spring.threads.virtual.enabled=true" }
+  )
+  class SpringVirtualThreadsEnabled {
+
+    @Autowired
+    private AbleronConfig ableronConfig;
+
+    @Test
+    public void shouldFollowSpringVirtualThreadsProperty() {
+      assertTrue(ableronConfig.virtualThreadsEnabled());
+    }
+  }
+
+  @Nested
+  @SpringBootTest(
+    classes = { AbleronAutoConfiguration.class },
+    properties = {
+      "spring.threads.virtual.enabled=true",
+      "ableron.virtual-threads-enabled=false"
+    }
+  )
+  class AbleronVirtualThreadsDisabled {
+
+    @Autowired
+    private AbleronConfig ableronConfig;
+
+    @Test
+    public void shouldPreferAbleronVirtualThreadsProperty() {
+      assertFalse(ableronConfig.virtualThreadsEnabled());
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package io.github.ableron.springboot.metrics;
+
+import io.github.ableron.Ableron;
+import io.github.ableron.AbleronConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class AbleronMeterBinderTest {
+
+  private final Ableron ableron = new Ableron(AbleronConfig.builder().build());
+  private final AbleronMeterBinder meterBinder = new AbleronMeterBinder(() -> ableron);
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  @AfterEach
+  public void closeAbleron() {
+    ableron.close();
+  }
+
+  @Test
+  public void shouldPublishCompositionMetrics() {
+    meterBinder.bindTo(registry);
+    meterBinder.recordComposition(TimeUnit.MILLISECONDS.toNanos(20), 3);
+    meterBinder.recordComposition(TimeUnit.MILLISECONDS.toNanos(40), 5);
+
+    assertEquals(2, registry.get("ableron.composition").timer().count());
+    assertEquals(60, registry.get("ableron.composition").timer().totalTime(TimeUnit.MILLISECONDS));
+    assertEquals(8, registry.get("ableron.composition.includes").summary().totalAmount());
+  }
+
+  @Test
+  public void shouldPublishIncludeResolveTimeBySource() {
+    meterBinder.bindTo(registry);
+    meterBinder.recordIncludeResolved("cached src", TimeUnit.MICROSECONDS.toNanos(50));
+    meterBinder.recordIncludeResolved("remote src", TimeUnit.MILLISECONDS.toNanos(30));
+    meterBinder.recordIncludeResolved("remote src", TimeUnit.MILLISECONDS.toNanos(10));
+    meterBinder.recordIncludeResolved("fallback content", TimeUnit.MILLISECONDS.toNanos(500));
+
+    assertEquals(1, registry.get("ableron.include.resolve").tag("source", "cached src").timer().count());
+    assertEquals(2, registry.get("ableron.include.resolve").tag("source", "remote src").timer().count());
+    assertEquals(40, registry.get("ableron.include.resolve").tag("source", "remote src").timer().totalTime(TimeUnit.MILLISECONDS));
+    assertEquals(1, registry.get("ableron.include.resolve").tag("source", "fallback content").timer().count());
+  }
+
+  @Test
+  public void shouldPublishFragmentRequestsByStatusAndTimeouts() {
+    meterBinder.bindTo(registry);
+    meterBinder.recordFragmentResponse(200, TimeUnit.MILLISECONDS.toNanos(10));
+    meterBinder.recordFragmentResponse(200, TimeUnit.MILLISECONDS.toNanos(20));
+    meterBinder.recordFragmentResponse(503, TimeUnit.MILLISECONDS.toNanos(5));
+    meterBinder.recordFragmentRequestTimeout();
+
+    assertEquals(2, registry.get("ableron.fragment.requests").tag("status", "200").timer().count());
+    assertEquals(1, registry.get("ableron.fragment.requests").tag("status", "503").timer().count());
+    assertEquals(1, registry.get("ableron.fragment.request.timeouts").counter().count());
+  }
+
+  @Test
+  public void shouldPublishCacheAndResolveExecutorStats() {
+    meterBinder.bindTo(registry);
+    ableron.getCacheStats().recordHit();
+    ableron.getCacheStats().recordHit();
+    ableron.getCacheStats().recordMiss();
+    ableron.getCacheStats().recordEviction();
+    ableron.getCacheStats().recordRefreshSuccess();
+    ableron.getCacheStats().recordRefreshFailure();
+    ableron.getResolveExecutorStats().recordRejection();
+
+    assertEquals(2, registry.get("ableron.fragment.cache.requests").tag("result", "hit").functionCounter().count());
+    assertEquals(1, registry.get("ableron.fragment.cache.requests").tag("result", "miss").functionCounter().count());
+    assertEquals(1, registry.get("ableron.fragment.cache.evictions").functionCounter().count());
+    assertEquals(1, registry.get("ableron.fragment.cache.refreshes").tag("result", "success").functionCounter().count());
+    assertEquals(1, registry.get("ableron.fragment.cache.refreshes").tag("result", "failure").functionCounter().count());
+    assertEquals(0, registry.get("ableron.fragment.cache.size").gauge().value());
+    assertEquals(0, registry.get("ableron.resolve.executor.active").gauge().value());
+    assertEquals(0, registry.get("ableron.resolve.executor.queued").gauge().value());
+    assertEquals(1, registry.get("ableron.resolve.executor.rejected").functionCounter().count());
+  }
+
+  @Test
+  public void shouldPublishMetricsToAllBoundRegistries() {
+    var otherRegistry = new SimpleMeterRegistry();
+    meterBinder.bindTo(registry);
+    meterBinder.bindTo(otherRegistry);
+    meterBinder.recordComposition(TimeUnit.MILLISECONDS.toNanos(20), 3);
+    meterBinder.recordIncludeResolved("remote src", TimeUnit.MILLISECONDS.toNanos(20));
+    meterBinder.recordFragmentResponse(200, TimeUnit.MILLISECONDS.toNanos(10));
+    meterBinder.recordFragmentRequestTimeout();
+    ableron.getCacheStats().recordHit();
+
+    for (var meterRegistry : List.of(registry, otherRegistry)) {
+      assertEquals(1, meterRegistry.get("ableron.composition").timer().count());
+      assertEquals(3, meterRegistry.get("ableron.composition.includes").summary().totalAmount());
+      assertEquals(1, meterRegistry.get("ableron.include.resolve").tag("source", "remote src").timer().count());
+      assertEquals(1, meterRegistry.get("ableron.fragment.requests").tag("status", "200").timer().count());
+      assertEquals(1, meterRegistry.get("ableron.fragment.request.timeouts").counter().count());
+      assertEquals(1, meterRegistry.get("ableron.fragment.cache.requests").tag("result", "hit").functionCounter().count());
+    }
+  }
+
+  @Test
+  public void shouldDiscardMeasurementsRecordedBeforeBinding() {
+    meterBinder.recordComposition(TimeUnit.MILLISECONDS.toNanos(20), 3);
+    meterBinder.recordIncludeResolved("remote src", TimeUnit.MILLISECONDS.toNanos(20));
+    meterBinder.bindTo(registry);
+
+    assertEquals(0, registry.get("ableron.composition").timer().count());
+    assertNull(registry.find("ableron.include.resolve").timer());
+  }
+}